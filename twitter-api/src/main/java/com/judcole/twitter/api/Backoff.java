@@ -0,0 +1,48 @@
+package com.judcole.twitter.api;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The class to calculate exponential reconnection delays with random jitter.
+ */
+class Backoff {
+
+    // Delay before the first retry in milliseconds
+    private final long baseMillis;
+
+    // Maximum delay in milliseconds
+    private final long maxMillis;
+
+    // Number of consecutive failed attempts
+    private int attempts;
+
+    /**
+     * Instantiates a new backoff.
+     *
+     * @param baseMillis the delay before the first retry in milliseconds
+     * @param maxMillis  the maximum delay in milliseconds
+     */
+    Backoff(long baseMillis, long maxMillis) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Record a failed attempt and get a random delay before the next one.
+     *
+     * @return the delay in milliseconds
+     */
+    long nextDelayMillis() {
+        // Double the ceiling for each failure (capping the shift to avoid overflow) and pick a random delay in its upper half
+        var ceiling = Math.min(maxMillis, baseMillis << Math.min(attempts, 20));
+        attempts++;
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * Reset after a successful attempt.
+     */
+    void reset() {
+        attempts = 0;
+    }
+}
@@ -1,15 +1,23 @@
 package com.judcole.twitter.api;
 
 import com.judcole.twitter.shared.BackgroundQueueFactory;
+import com.judcole.twitter.shared.HashtagDictionaryFactory;
 import com.judcole.twitter.shared.SampledStreamStatsFactory;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
 import java.util.concurrent.Executor;
 
 /**
@@ -19,12 +27,26 @@ import java.util.concurrent.Executor;
 @ComponentScan("com.judcole.twitter")
 @EnableAsync
 @Slf4j
-public class Config implements AsyncConfigurer {
+public class Config implements AsyncConfigurer, WebMvcConfigurer {
     // Shared background queue factory instance
     private final BackgroundQueueFactory sharedQueueFactory = new BackgroundQueueFactory();
 
     // Shared stream stats factory instance
-    private final SampledStreamStatsFactory sharedStatsFactory = new SampledStreamStatsFactory();
+    private final SampledStreamStatsFactory sharedStatsFactory;
+
+    // Shared hashtag dictionary factory instance
+    private final HashtagDictionaryFactory sharedDictionaryFactory = new HashtagDictionaryFactory();
+
+    /**
+     * Instantiates a new application configuration.
+     *
+     * @param topHashtagsCeiling     the maximum number of top hashtags that can be requested
+     * @param trendingHalfLifeMillis the half-life of the trending hashtag scores in milliseconds
+     */
+    public Config(@Value("${twitter.stats.top-ceiling:" + SampledStreamStatsFactory.DEFAULT_TOP_HASHTAGS_CEILING + "}") int topHashtagsCeiling,
+                  @Value("${twitter.stats.trending-half-life-ms:" + SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS + "}") long trendingHalfLifeMillis) {
+        sharedStatsFactory = new SampledStreamStatsFactory(topHashtagsCeiling, trendingHalfLifeMillis);
+    }
 
     /**
      * Return the shared background queue factory.
@@ -48,6 +70,42 @@ public class Config implements AsyncConfigurer {
         return sharedStatsFactory;
     }
 
+    /**
+     * Return the shared hashtag dictionary factory.
+     *
+     * @return the hashtag dictionary factory
+     */
+    @Bean
+    public HashtagDictionaryFactory dictionaryFactory() {
+        log.info("Returning the hashtag dictionary factory");
+        return sharedDictionaryFactory;
+    }
+
+    /**
+     * Keep the beans that collect tweets and publish the statistics eager when lazy initialization is enabled (e.g. by
+     * the fast-start profile) so only the beans for the REST API and its documentation wait for their first use.
+     *
+     * @return the filter of beans to initialize eagerly
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerCollectionBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(TweetCollectorService.class, GrpcServer.class,
+                StatsAggregator.class, StatsHistoryRecorder.class);
+    }
+
+    /**
+     * Add the binary (CBOR, Smile and Protocol Buffers) message converters after the JSON one so they are only used when asked for.
+     *
+     * @param converters the configured message converters
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        log.info("Adding the binary message converters");
+        converters.add(new EncodedStatsHttpMessageConverter());
+        converters.add(new MappingJackson2CborHttpMessageConverter());
+        converters.add(new MappingJackson2SmileHttpMessageConverter());
+    }
+
     /**
      * Configure and return the Async executor.
      *
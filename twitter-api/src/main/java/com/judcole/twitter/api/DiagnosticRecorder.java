@@ -0,0 +1,194 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.CollectorEvents;
+import com.judcole.twitter.shared.FlightRecordingStatus;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * The class to take bounded JDK Flight Recorder recordings of the collector events (with the default JVM events)
+ * on request and dump them to local files for diagnosing throughput problems.
+ * <p>
+ * Only the most recent recording files are kept, so the disk space used is bounded by their number and maximum size.
+ */
+@Component
+@Slf4j
+public class DiagnosticRecorder {
+
+    // Prefix of the recording file names
+    private static final String FILE_PREFIX = "collector-";
+
+    // Suffix of the recording file names
+    private static final String FILE_SUFFIX = ".jfr";
+
+    // Format of the start time in the recording file names (which sorts them in time order)
+    private static final DateTimeFormatter FILE_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss").withZone(ZoneOffset.UTC);
+
+    // True if recordings can be taken
+    private final boolean enabled;
+
+    // Directory for the recording files
+    private final Path directory;
+
+    // Maximum length of a recording in milliseconds
+    private final long maxDurationMillis;
+
+    // Maximum size of a recording in bytes
+    private final long maxSizeBytes;
+
+    // Maximum number of recording files kept (including the current one)
+    private final int maxFiles;
+
+    // Current or last recording (or null if none has been taken)
+    private Recording recording;
+
+    // Status of the current or last recording
+    private FlightRecordingStatus status;
+
+    /**
+     * Instantiates a new diagnostic recorder.
+     *
+     * @param enabled           true to allow recordings to be taken
+     * @param directory         the directory for the recording files (blank for the temporary directory)
+     * @param maxDurationMillis the maximum length of a recording in milliseconds
+     * @param maxSizeBytes      the maximum size of a recording in bytes
+     * @param maxFiles          the maximum number of recording files kept (including the current one)
+     */
+    public DiagnosticRecorder(@Value("${twitter.diagnostics.enabled:false}") boolean enabled,
+                              @Value("${twitter.diagnostics.directory:}") String directory,
+                              @Value("${twitter.diagnostics.max-duration-ms:300000}") long maxDurationMillis,
+                              @Value("${twitter.diagnostics.max-size-bytes:104857600}") long maxSizeBytes,
+                              @Value("${twitter.diagnostics.max-files:5}") int maxFiles) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory.isBlank() ? System.getProperty("java.io.tmpdir") : directory);
+        this.maxDurationMillis = maxDurationMillis;
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    /**
+     * Check whether recordings can be taken.
+     *
+     * @return true if they are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start a recording that stops by itself after a time and is then dumped to a new file (deleting the oldest files
+     * beyond the number kept).
+     *
+     * @param durationMillis the length of the recording in milliseconds
+     * @return the status of the new recording or null if another recording is still running
+     */
+    public synchronized FlightRecordingStatus start(long durationMillis) {
+        if (!enabled) {
+            throw new IllegalStateException("Diagnostic recordings are disabled");
+        }
+        if ((durationMillis <= 0) || (durationMillis > maxDurationMillis)) {
+            throw new InvalidParameterException("The duration must be from 1 to " + maxDurationMillis + " ms");
+        }
+        if ((recording != null) && (recording.getState() == RecordingState.RUNNING)) {
+            return null;
+        }
+        if (recording != null) {
+            recording.close();
+        }
+
+        var startMillis = System.currentTimeMillis();
+        var file = directory.resolve(FILE_PREFIX + FILE_TIME_FORMAT.format(Instant.ofEpochMilli(startMillis)) + FILE_SUFFIX);
+        Recording newRecording = null;
+        var started = false;
+        try {
+            Files.createDirectories(directory);
+            DeleteOldFiles(file);
+            newRecording = new Recording(Configuration.getConfiguration("default"));
+            for (var eventType : CollectorEvents.EVENT_TYPES) {
+                newRecording.enable(eventType).withoutThreshold();
+            }
+            newRecording.setName("Twitter collector diagnostics");
+            newRecording.setToDisk(true);
+            newRecording.setMaxSize(maxSizeBytes);
+            newRecording.setDuration(Duration.ofMillis(durationMillis));
+            newRecording.setDestination(file);
+            newRecording.start();
+            started = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            // Do not leave a recording behind that was never started
+            if (!started && (newRecording != null)) {
+                newRecording.close();
+            }
+        }
+        recording = newRecording;
+        log.info("Started a diagnostic recording for {} ms to {}", durationMillis, file);
+
+        status = new FlightRecordingStatus(file.toString(), startMillis, durationMillis, maxSizeBytes, RecordingState.RUNNING.name());
+        return getStatus();
+    }
+
+    /**
+     * Delete the oldest recording files so that only the number kept remain once the new file is written.
+     *
+     * @param newFile the file for the new recording
+     * @throws IOException the IO exception
+     */
+    private void DeleteOldFiles(Path newFile) throws IOException {
+        List<Path> files;
+        try (var paths = Files.list(directory)) {
+            files = paths.filter(path -> {
+                var name = path.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX) && !path.equals(newFile);
+            }).sorted().toList();
+        }
+
+        for (int i = 0; i <= files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * Get the status of the current or last recording.
+     *
+     * @return the status or null if no recording has been taken
+     */
+    public synchronized FlightRecordingStatus getStatus() {
+        if (status == null) {
+            return null;
+        }
+        return new FlightRecordingStatus(status.file, status.startMillis, status.durationMillis, status.maxSizeBytes,
+                recording.getState().name());
+    }
+
+    /**
+     * Stop any running recording without waiting for it to finish.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
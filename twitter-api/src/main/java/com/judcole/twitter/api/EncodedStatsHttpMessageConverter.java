@@ -0,0 +1,122 @@
+package com.judcole.twitter.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.judcole.twitter.shared.SampledStreamStats;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class to write statistics in compact binary formats (CBOR, Smile and Protocol Buffers) for machine consumers.
+ * <p>
+ * The Protocol Buffers encoding is the gRPC {@code Stats} message, so clients can share one schema over both APIs.
+ * The encodings of /getStats are cached per published version by {@link SampledStreamStatsService}, so this converter
+ * only writes statistics that reach it through the usual content negotiation.
+ */
+public class EncodedStatsHttpMessageConverter extends AbstractHttpMessageConverter<SampledStreamStats> {
+
+    /**
+     * The media type for Smile.
+     */
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    /**
+     * The media type for Protocol Buffers.
+     */
+    public static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+    // Binary formats that can be written
+    private static final List<MediaType> FORMATS = List.of(MediaType.APPLICATION_CBOR, APPLICATION_SMILE, APPLICATION_PROTOBUF);
+
+    // Object mappers for each Jackson format
+    private final Map<MediaType, ObjectMapper> mappers = Map.of(
+            MediaType.APPLICATION_CBOR, Jackson2ObjectMapperBuilder.cbor().build(),
+            APPLICATION_SMILE, Jackson2ObjectMapperBuilder.smile().build());
+
+    /**
+     * Instantiates a new encoded stats message converter.
+     */
+    public EncodedStatsHttpMessageConverter() {
+        super(MediaType.APPLICATION_CBOR, APPLICATION_SMILE, APPLICATION_PROTOBUF);
+    }
+
+    /**
+     * Get the binary format a client prefers from its Accept header.
+     *
+     * @param accept the Accept header (or null if there is none)
+     * @return the format or null if the client prefers another format (such as JSON) or accepts anything
+     */
+    public static MediaType PreferredFormat(String accept) {
+        if (StringUtils.isBlank(accept)) {
+            return null;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException ex) {
+            return null;
+        }
+
+        MediaType.sortByQualityValue(accepted);
+        for (var mediaType : accepted) {
+            if (mediaType.getQualityValue() > 0) {
+                return FORMATS.stream().filter(format -> format.equalsTypeAndSubtype(mediaType)).findFirst().orElse(null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encode the statistics in a binary format.
+     *
+     * @param stats     the statistics
+     * @param mediaType the format
+     * @return the encoded statistics
+     */
+    public byte[] encode(SampledStreamStats stats, MediaType mediaType) {
+        if (APPLICATION_PROTOBUF.equalsTypeAndSubtype(mediaType)) {
+            return StatsProtoMapper.ToStats(stats).toByteArray();
+        }
+        try {
+            return mappers.get(new MediaType(mediaType.getType(), mediaType.getSubtype())).writeValueAsBytes(stats);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    protected boolean supports(@NonNull Class<?> clazz) {
+        return SampledStreamStats.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        // Only used for writing
+        return false;
+    }
+
+    @Override
+    @NonNull
+    protected SampledStreamStats readInternal(@NonNull Class<? extends SampledStreamStats> clazz, @NonNull HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading statistics is not supported", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(@NonNull SampledStreamStats stats, HttpOutputMessage outputMessage) throws IOException {
+        var contentType = outputMessage.getHeaders().getContentType();
+        var body = encode(stats, (contentType == null) ? MediaType.APPLICATION_CBOR : contentType);
+        outputMessage.getHeaders().setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+}
@@ -0,0 +1,83 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.*;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The class for the pipeline stage that counts every entity in the dictionaries and keeps the top lists, prefix
+ * index and distinct hashtag estimates up to date.
+ */
+public class EntityCountingProcessor implements ITweetProcessor {
+
+    // Shared total statistics
+    private final SampledStreamStats stats;
+
+    // Dictionaries of all entities and their counts by type
+    private final Map<EntityType, IHashtagDictionary> entityDictionaries;
+
+    // Sorted index of all Hashtags for prefix searches (or null if they are disabled)
+    private final HashtagPrefixIndex hashtagPrefixIndex;
+
+    /**
+     * Instantiates a new entity counting processor.
+     *
+     * @param stats              the shared statistics
+     * @param entityDictionaries the dictionaries for each entity type
+     * @param hashtagPrefixIndex the index of hashtags for prefix searches or null if they are disabled
+     */
+    public EntityCountingProcessor(SampledStreamStats stats, Map<EntityType, IHashtagDictionary> entityDictionaries,
+                                   HashtagPrefixIndex hashtagPrefixIndex) {
+        this.stats = stats;
+        this.entityDictionaries = entityDictionaries;
+        this.hashtagPrefixIndex = hashtagPrefixIndex;
+    }
+
+    @Override
+    public String getName() {
+        return "entities";
+    }
+
+    @Override
+    public Set<EntityType> getEntityTypes() {
+        return EnumSet.allOf(EntityType.class);
+    }
+
+    @Override
+    public void process(ParsedTweet tweet) {
+        for (var type : EntityType.values()) {
+            for (var entity : tweet.getEntities(type)) {
+                CountEntity(type, entity, tweet.getReceivedAtMillis());
+            }
+        }
+    }
+
+    /**
+     * Count an entity extracted from a tweet and update its top list.
+     *
+     * @param type       the entity type
+     * @param entity     the entity text (without its symbol)
+     * @param timeMillis the time the tweet was received
+     */
+    private void CountEntity(EntityType type, String entity, long timeMillis) {
+        // Increment the counter for this entity
+        var entityLower = entity.toLowerCase();
+        var newCount = entityDictionaries.get(type).increment(entityLower);
+
+        if (type == EntityType.HASHTAG) {
+            // Index it for prefix searches the first time it is seen
+            if ((newCount == 1) && (hashtagPrefixIndex != null)) {
+                hashtagPrefixIndex.add(entityLower);
+            }
+
+            // Add it to the distinct hashtag estimates and the trending scores
+            stats.RecordDistinctHashtag(entityLower, timeMillis);
+            stats.RecordTrendingHashtag(entity, timeMillis);
+        }
+
+        // Update the list of top entities with a specified entity and count
+        stats.UpdateTopEntities(type, entity, newCount);
+    }
+}
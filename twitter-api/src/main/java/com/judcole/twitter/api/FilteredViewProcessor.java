@@ -0,0 +1,57 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.EntityType;
+import com.judcole.twitter.shared.FilteredViews;
+import com.judcole.twitter.shared.ITweetProcessor;
+import com.judcole.twitter.shared.ParsedTweet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * The class for the pipeline stage that counts the tweets and their top hashtags in each filtered view.
+ */
+@Component
+public class FilteredViewProcessor implements ITweetProcessor {
+
+    // Views registered through the API
+    private final FilteredViews views;
+
+    /**
+     * Instantiates a new filtered view processor.
+     *
+     * @param maxViews    the maximum number of views
+     * @param maxKeywords the maximum number of distinct keywords over all the views
+     * @param topCapacity the number of top hashtags tracked for each view
+     */
+    public FilteredViewProcessor(@Value("${twitter.views.max-views:1000}") int maxViews,
+                                 @Value("${twitter.views.max-keywords:100000}") int maxKeywords,
+                                 @Value("${twitter.views.top-capacity:100}") int topCapacity) {
+        views = new FilteredViews(maxViews, maxKeywords, topCapacity);
+    }
+
+    @Override
+    public String getName() {
+        return "views";
+    }
+
+    @Override
+    public Set<EntityType> getEntityTypes() {
+        return Set.of(EntityType.HASHTAG);
+    }
+
+    @Override
+    public void process(ParsedTweet tweet) {
+        views.process(tweet.getText(), tweet.getEntities(EntityType.HASHTAG));
+    }
+
+    /**
+     * Get the filtered views.
+     *
+     * @return the views
+     */
+    public FilteredViews getViews() {
+        return views;
+    }
+}
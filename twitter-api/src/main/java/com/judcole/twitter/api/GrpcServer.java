@@ -0,0 +1,76 @@
+package com.judcole.twitter.api;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class to run the gRPC server alongside the REST API when a port is configured (it is disabled by default).
+ */
+@Component
+@Slf4j
+public class GrpcServer {
+
+    // gRPC server (or null if not started)
+    private Server server;
+
+    /**
+     * Instantiates a new gRPC server.
+     *
+     * @param port         the port to listen on (0 for any free port or negative to disable, the default)
+     * @param statsService the gRPC statistics service
+     */
+    public GrpcServer(@Value("${twitter.grpc.port:-1}") int port, SampledStreamStatsGrpcService statsService) {
+        if (port >= 0) {
+            server = NettyServerBuilder.forPort(port)
+                    .addService(statsService)
+                    // Keep long-lived watch connections open through idle periods
+                    .permitKeepAliveTime(10, TimeUnit.SECONDS)
+                    .build();
+        }
+    }
+
+    /**
+     * Start the server if it is enabled.
+     *
+     * @throws IOException the IO exception
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (server != null) {
+            server.start();
+            log.info("Started the gRPC server on port {}", server.getPort());
+        }
+    }
+
+    /**
+     * Get the port the server is listening on.
+     *
+     * @return the port or -1 if it is not enabled
+     */
+    public int getPort() {
+        return (server == null) ? -1 : server.getPort();
+    }
+
+    /**
+     * Stop the server, giving calls a moment to finish.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (server != null) {
+            server.shutdown();
+            if (!server.awaitTermination(1, TimeUnit.SECONDS)) {
+                server.shutdownNow();
+            }
+        }
+    }
+}
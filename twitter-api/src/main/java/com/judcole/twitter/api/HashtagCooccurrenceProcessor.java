@@ -0,0 +1,57 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.EntityType;
+import com.judcole.twitter.shared.HashtagCooccurrenceSketch;
+import com.judcole.twitter.shared.HashtagPartner;
+import com.judcole.twitter.shared.ITweetProcessor;
+import com.judcole.twitter.shared.ParsedTweet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The class for the pipeline stage that counts the pairs of hashtags that appear in the same tweets.
+ */
+@Component
+public class HashtagCooccurrenceProcessor implements ITweetProcessor {
+
+    // Sketch of the most frequent hashtag pairs
+    private final HashtagCooccurrenceSketch sketch;
+
+    /**
+     * Instantiates a new hashtag co-occurrence processor.
+     *
+     * @param capacity the maximum number of hashtag pairs counted
+     */
+    public HashtagCooccurrenceProcessor(@Value("${twitter.cooccurrence.capacity:50000}") int capacity) {
+        sketch = new HashtagCooccurrenceSketch(capacity);
+    }
+
+    @Override
+    public String getName() {
+        return "cooccurrence";
+    }
+
+    @Override
+    public Set<EntityType> getEntityTypes() {
+        return Set.of(EntityType.HASHTAG);
+    }
+
+    @Override
+    public void process(ParsedTweet tweet) {
+        sketch.add(tweet.getEntities(EntityType.HASHTAG));
+    }
+
+    /**
+     * Get the hashtags that most often appear in the same tweets as a hashtag.
+     *
+     * @param hashtag the lower cased hashtag
+     * @param limit   the maximum number of partners to return
+     * @return the partners in descending order of count
+     */
+    public List<HashtagPartner> getPartners(String hashtag, int limit) {
+        return sketch.getPartners(hashtag, limit);
+    }
+}
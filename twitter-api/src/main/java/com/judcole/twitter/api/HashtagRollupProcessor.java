@@ -0,0 +1,116 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.EntityType;
+import com.judcole.twitter.shared.HashtagRollups;
+import com.judcole.twitter.shared.ITweetProcessor;
+import com.judcole.twitter.shared.ParsedTweet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class for the pipeline stage that rolls the hashtag counts up into hourly and daily files for historical queries.
+ */
+@Component
+@Slf4j
+public class HashtagRollupProcessor implements ITweetProcessor {
+
+    // Rollups of the hashtag counts (or null if they are disabled)
+    private final HashtagRollups rollups;
+
+    // Scheduler for sealing the rollups (or null if they are disabled)
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Instantiates a new hashtag rollup processor and starts sealing the rollups if they are enabled.
+     *
+     * @param directory           the directory for the rollup files (blank to disable the rollups)
+     * @param hourRetentionMillis the time to keep the hour files for in milliseconds
+     * @param dayRetentionMillis  the time to keep the day files for in milliseconds
+     */
+    public HashtagRollupProcessor(@Value("${twitter.rollup.directory:}") String directory,
+                                  @Value("${twitter.rollup.hour-retention-ms:604800000}") long hourRetentionMillis,
+                                  @Value("${twitter.rollup.day-retention-ms:31536000000}") long dayRetentionMillis) {
+        if (directory.isBlank()) {
+            rollups = null;
+            scheduler = null;
+            return;
+        }
+
+        log.info("Rolling up the hashtag counts in {}", directory);
+        try {
+            rollups = new HashtagRollups(Path.of(directory), hourRetentionMillis, dayRetentionMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "HashtagRollups");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::seal, 0, HashtagRollups.MINUTE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getName() {
+        return "rollup";
+    }
+
+    @Override
+    public Set<EntityType> getEntityTypes() {
+        return (rollups == null) ? Set.of() : Set.of(EntityType.HASHTAG);
+    }
+
+    @Override
+    public void process(ParsedTweet tweet) {
+        if (rollups != null) {
+            for (var hashtag : tweet.getEntities(EntityType.HASHTAG)) {
+                rollups.record(hashtag, tweet.getReceivedAtMillis());
+            }
+        }
+    }
+
+    /**
+     * Get the rollups of the hashtag counts.
+     *
+     * @return the rollups or null if they are disabled
+     */
+    public HashtagRollups getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Stop sealing and write the counts still in memory to the files so they are kept.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                rollups.flush();
+            } catch (IOException ex) {
+                log.error("An error occurred when flushing the hashtag rollups: Exception: ", ex);
+            }
+        }
+    }
+
+    /**
+     * Seal the hours and days of the rollups that have ended.
+     */
+    private void seal() {
+        try {
+            rollups.seal(System.currentTimeMillis());
+        } catch (Exception ex) {
+            log.error("An error occurred when sealing the hashtag rollups: Exception: ", ex);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.EntityType;
+import com.judcole.twitter.shared.HashtagSamples;
+import com.judcole.twitter.shared.ITweetProcessor;
+import com.judcole.twitter.shared.ParsedTweet;
+import com.judcole.twitter.shared.SampledStreamStats;
+import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import com.judcole.twitter.shared.TweetSample;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class for the pipeline stage that keeps recent example tweets of the top hashtags and a sample of the rest.
+ */
+@Component
+@Slf4j
+public class HashtagSampleProcessor implements ITweetProcessor {
+
+    // Time between refreshes of the top hashtags with their own samples
+    private static final long REFRESH_MILLIS = 1000;
+
+    // Samples of the tweets by hashtag
+    private final HashtagSamples samples;
+
+    // Shared total statistics ranking the top hashtags
+    private final SampledStreamStats stats;
+
+    // Number of top hashtags with their own samples
+    private final int topHashtags;
+
+    // Scheduler for refreshing the top hashtags
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Instantiates a new hashtag sample processor and starts following the top hashtags.
+     *
+     * @param statsFactory      the factory for the shared statistics
+     * @param maxSamples        the maximum number of samples kept over all the hashtags
+     * @param topHashtags       the number of top hashtags with their own samples
+     * @param samplesPerHashtag the number of recent samples kept for each top hashtag
+     */
+    public HashtagSampleProcessor(SampledStreamStatsFactory statsFactory,
+                                  @Value("${twitter.samples.max-samples:10000}") int maxSamples,
+                                  @Value("${twitter.samples.top-hashtags:10}") int topHashtags,
+                                  @Value("${twitter.samples.per-hashtag:20}") int samplesPerHashtag) {
+        stats = statsFactory.getStatsInstance(SampledStreamStatsFactory.DEFAULT_STATS_SIZE);
+        // Check the number of top hashtags is within the ceiling of the stats before starting
+        stats.CopyTopHashtags(topHashtags);
+        samples = new HashtagSamples(maxSamples, topHashtags, samplesPerHashtag);
+        this.topHashtags = topHashtags;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "HashtagSamples");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::refresh, 0, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getName() {
+        return "samples";
+    }
+
+    @Override
+    public Set<EntityType> getEntityTypes() {
+        return Set.of(EntityType.HASHTAG);
+    }
+
+    @Override
+    public void process(ParsedTweet tweet) {
+        samples.add(tweet.getId(), tweet.getText(), tweet.getEntities(EntityType.HASHTAG), tweet.getReceivedAtMillis());
+    }
+
+    /**
+     * Get the most recent samples of a hashtag.
+     *
+     * @param hashtag the hashtag (ignoring case)
+     * @param limit   the maximum number of samples to return
+     * @return the samples from the most recent
+     */
+    public List<TweetSample> getSamples(String hashtag, int limit) {
+        return samples.get(hashtag, limit);
+    }
+
+    /**
+     * Stop refreshing the top hashtags.
+     */
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Give the current top hashtags their own samples.
+     */
+    private void refresh() {
+        try {
+            samples.setTopHashtags(stats.CopyTopHashtags(topHashtags));
+        } catch (Exception ex) {
+            log.error("An error occurred when refreshing the top hashtag samples: Exception: ", ex);
+        }
+    }
+}
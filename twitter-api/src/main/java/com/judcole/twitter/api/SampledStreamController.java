@@ -1,16 +1,33 @@
 package com.judcole.twitter.api;
 
+import com.judcole.twitter.shared.FilteredViewStats;
+import com.judcole.twitter.shared.FlightRecordingStatus;
+import com.judcole.twitter.shared.HashtagCount;
+import com.judcole.twitter.shared.HashtagDictionaryFactory;
+import com.judcole.twitter.shared.HashtagPartner;
 import com.judcole.twitter.shared.SampledStreamStats;
-import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import com.judcole.twitter.shared.SampledStreamStatsExport;
+import com.judcole.twitter.shared.StatsDelta;
+import com.judcole.twitter.shared.StatsHistoryPoint;
+import com.judcole.twitter.shared.TweetProcessorTiming;
+import com.judcole.twitter.shared.TweetSample;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-
-import static java.time.LocalDateTime.now;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.List;
 
 /**
  * The class for the API controller to get the latest statistics.
@@ -19,44 +36,140 @@ import static java.time.LocalDateTime.now;
 @Slf4j
 public class SampledStreamController {
 
-    // Application start time
-    private static final LocalDateTime startTime = now(ZoneOffset.UTC);
+    // Maximum number of hashtags returned by a prefix search
+    private static final int MAX_PREFIX_RESULTS = 1000;
+
+    // Maximum number of partners returned for a hashtag
+    private static final int MAX_PARTNER_RESULTS = 100;
+
+    // Maximum number of samples returned for a hashtag
+    private static final int MAX_SAMPLE_RESULTS = 100;
+
+    // Maximum number of hashtags returned from the rollups
+    private static final int MAX_ROLLUP_RESULTS = 1000;
+
+    // Length of the history returned when no start time is requested (one hour)
+    private static final long DEFAULT_HISTORY_MILLIS = 60 * 60 * 1000;
+
+    // Length of the range of the rollups used when no start time is requested (one day)
+    private static final long DEFAULT_ROLLUP_MILLIS = 24 * 60 * 60 * 1000;
+
+    // Length of a diagnostic recording when none is requested (30 seconds)
+    private static final long DEFAULT_RECORDING_MILLIS = 30 * 1000;
+
+    // Service providing the latest statistics
+    private final SampledStreamStatsService statsService;
+
+    // Factory for the shared hashtag dictionary and prefix index
+    private final HashtagDictionaryFactory dictionaryFactory;
 
-    // Shared total statistics
-    private final SampledStreamStats stats;
+    // Collector running the tweet processing pipeline
+    private final TweetCollector tweetCollector;
+
+    // Recorder of the statistics history
+    private final StatsHistoryRecorder historyRecorder;
+
+    // Pipeline stage counting the hashtags that appear together
+    private final HashtagCooccurrenceProcessor cooccurrenceProcessor;
+
+    // Pipeline stage rolling the hashtag counts up into hourly and daily files
+    private final HashtagRollupProcessor rollupProcessor;
+
+    // Pipeline stage counting the tweets in each filtered view
+    private final FilteredViewProcessor viewProcessor;
+
+    // Recorder of the diagnostic flight recordings
+    private final DiagnosticRecorder diagnosticRecorder;
+
+    // Pipeline stage keeping example tweets of the hashtags
+    private final HashtagSampleProcessor sampleProcessor;
 
     /**
      * Instantiates a new Sampled stream controller.
      *
-     * @param statsFactory the factory to return the shared total statistics instance
+     * @param statsService          the service providing the latest statistics
+     * @param dictionaryFactory     the factory to return the shared hashtag dictionary and prefix index
+     * @param tweetCollector        the collector running the tweet processing pipeline
+     * @param historyRecorder       the recorder of the statistics history
+     * @param cooccurrenceProcessor the pipeline stage counting the hashtags that appear together
+     * @param rollupProcessor       the pipeline stage rolling the hashtag counts up into hourly and daily files
+     * @param viewProcessor         the pipeline stage counting the tweets in each filtered view
+     * @param diagnosticRecorder    the recorder of the diagnostic flight recordings
+     * @param sampleProcessor       the pipeline stage keeping example tweets of the hashtags
      */
-    public SampledStreamController(SampledStreamStatsFactory statsFactory) {
-        // Save the shared stats parameter
-        stats = statsFactory.getStatsInstance(SampledStreamStatsFactory.DEFAULT_STATS_SIZE);
+    public SampledStreamController(SampledStreamStatsService statsService, HashtagDictionaryFactory dictionaryFactory,
+                                   TweetCollector tweetCollector, StatsHistoryRecorder historyRecorder,
+                                   HashtagCooccurrenceProcessor cooccurrenceProcessor, HashtagRollupProcessor rollupProcessor,
+                                   FilteredViewProcessor viewProcessor, DiagnosticRecorder diagnosticRecorder,
+                                   HashtagSampleProcessor sampleProcessor) {
+        this.statsService = statsService;
+        this.dictionaryFactory = dictionaryFactory;
+        this.tweetCollector = tweetCollector;
+        this.historyRecorder = historyRecorder;
+        this.cooccurrenceProcessor = cooccurrenceProcessor;
+        this.rollupProcessor = rollupProcessor;
+        this.viewProcessor = viewProcessor;
+        this.diagnosticRecorder = diagnosticRecorder;
+        this.sampleProcessor = sampleProcessor;
     }
 
     /**
      * Get the latest statistics.
      *
+     * @param top      the number of top hashtags to return (up to the configured ceiling) or null for the default
+     * @param accept   the Accept header (binary formats are written from the encodings cached by the service)
      * @param response the HTTP response object
-     * @return the statistics object containing the latest stats
+     * @return the statistics object containing the latest stats (or null if already written in a binary format)
+     * @throws IOException the IO exception
      */
     @GetMapping(value = "/getStats")
-    public SampledStreamStats getStats(HttpServletResponse response) {
+    public SampledStreamStats getStats(@RequestParam(required = false) Integer top,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                       HttpServletResponse response) throws IOException {
 
         // Log the call
-        log.info("Returning a tweet count of {}", stats.getTotalTweets());
+        log.info("Returning a tweet count of {}", statsService.getLocalStats().getTotalTweets());
 
         // Allow access from localhost UI application to avoid browser CORS errors
-        response.addHeader("Access-Control-Allow-Origin", "http://localhost:5000");
-        response.addHeader("Access-Control-Allow-Methods", "GET");
+        AllowLocalUi(response);
+
+        var format = EncodedStatsHttpMessageConverter.PreferredFormat(accept);
+        if (format != null) {
+            byte[] encoded;
+            try {
+                encoded = statsService.getEncodedStats(top, format);
+            } catch (InvalidParameterException ex) {
+                // Too many top hashtags requested so return a Bad Request status code
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return null;
+            }
+
+            if (encoded == null) {
+                // Something went wrong so return a Not Found status code
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            } else {
+                response.setContentType(format.toString());
+                response.setContentLength(encoded.length);
+                response.getOutputStream().write(encoded);
+            }
+            return null;
+        }
 
         // Get the latest statistics data
-        var stats = GetSampledStreamStats();
+        var stats = statsService.getStats();
 
         if (stats == null) {
             // Something went wrong so return a Not Found status code
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        } else if (top != null) {
+            if ((top < 0) || (top > stats.getTopHashtagsCeiling())) {
+                // Too many top hashtags requested so return a Bad Request status code
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return null;
+            }
+
+            // Read the requested number of top hashtags from the ranked index
+            stats = stats.Snapshot(top);
         }
 
         // Return the statistics data
@@ -64,15 +177,315 @@ public class SampledStreamController {
     }
 
     /**
-     * Get the latest statistics data.
+     * Get the changes in the statistics since a version, so frequent pollers only receive what changed.
      *
-     * @return the latest statistics data
+     * @param since    the version the client has from its last delta (0 for everything)
+     * @param response the HTTP response object
+     * @return the changed fields and ranks (or everything if the version is too old or unknown)
      */
-    private SampledStreamStats GetSampledStreamStats() {
-        // Calculate and set all calculated fields
-        stats.SetCalculatedFields(startTime);
+    @GetMapping(value = "/getStats/delta")
+    public StatsDelta getStatsDelta(@RequestParam(defaultValue = "0") long since, HttpServletResponse response) {
+        // Allow access from localhost UI application to avoid browser CORS errors
+        AllowLocalUi(response);
 
-        // Return the stats data
-        return stats;
+        var delta = statsService.getStatsDelta(since);
+        if (delta == null) {
+            // Something went wrong so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+        return delta;
+    }
+
+    /**
+     * Get the recorded history of the statistics, downsampled to the last sample in each step.
+     *
+     * @param from     the start time in milliseconds since the epoch or null for an hour before the end time
+     * @param to       the end time in milliseconds since the epoch or null for now
+     * @param step     the length of each step in milliseconds or null for the recording interval
+     * @param response the HTTP response object
+     * @return the points in time order
+     */
+    @GetMapping(value = "/history")
+    public List<StatsHistoryPoint> getHistory(@RequestParam(required = false) Long from, @RequestParam(required = false) Long to,
+                                              @RequestParam(required = false) Long step, HttpServletResponse response) {
+        var history = historyRecorder.getHistory();
+        if (history == null) {
+            // Recording is disabled so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        var toMillis = (to == null) ? System.currentTimeMillis() : to;
+        var fromMillis = (from == null) ? toMillis - DEFAULT_HISTORY_MILLIS : from;
+        try {
+            return history.query(fromMillis, toMillis, (step == null) ? history.getIntervalMillis() : step);
+        } catch (InvalidParameterException ex) {
+            // Invalid range or too many points requested so return a Bad Request status code
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+    }
+
+    /**
+     * Get the most frequent hashtags received by this node in a historical time range from the hourly and daily rollups.
+     * <p>
+     * The range is rounded out to whole hours for the sealed rollups and to whole minutes for the current hour.
+     *
+     * @param from     the start time in milliseconds since the epoch or null for a day before the end time
+     * @param to       the end time in milliseconds since the epoch or null for now
+     * @param limit    the maximum number of hashtags to return
+     * @param response the HTTP response object
+     * @return the hashtags and their counts in descending order of count
+     * @throws IOException the IO exception if a rollup file cannot be read
+     */
+    @GetMapping(value = "/getTopHashtags")
+    public List<HashtagCount> getTopHashtags(@RequestParam(required = false) Long from, @RequestParam(required = false) Long to,
+                                             @RequestParam(defaultValue = "10") int limit, HttpServletResponse response)
+            throws IOException {
+        var rollups = rollupProcessor.getRollups();
+        if (rollups == null) {
+            // Rollups are disabled so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        var toMillis = (to == null) ? System.currentTimeMillis() : to;
+        var fromMillis = (from == null) ? toMillis - DEFAULT_ROLLUP_MILLIS : from;
+        try {
+            return rollups.getTop(fromMillis, toMillis, Math.max(0, Math.min(limit, MAX_ROLLUP_RESULTS)));
+        } catch (InvalidParameterException ex) {
+            // Invalid range so return a Bad Request status code
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+    }
+
+    /**
+     * Export the mergeable state of this node's statistics for an aggregator.
+     *
+     * @return the exported state
+     */
+    @GetMapping(value = "/exportStats")
+    public SampledStreamStatsExport exportStats() {
+        return statsService.exportStats();
+    }
+
+    /**
+     * Get the time spent decoding, scanning and in each stage of this node's tweet processing pipeline.
+     *
+     * @return the timings in pipeline order
+     */
+    @GetMapping(value = "/getPipelineStats")
+    public List<TweetProcessorTiming> getPipelineStats() {
+        return tweetCollector.getPipelineTimings();
+    }
+
+    /**
+     * Get the count for a hashtag received by this node.
+     *
+     * @param tag      the hashtag (with or without the leading hash)
+     * @param response the HTTP response object
+     * @return the hashtag and its count or null if it has not been received
+     */
+    @GetMapping(value = "/hashtags/{tag}")
+    public HashtagCount getHashtag(@PathVariable String tag, HttpServletResponse response) {
+        var hashtag = NormalizeHashtag(tag);
+        var dictionary = dictionaryFactory.getDictionaryInstance();
+        var count = (dictionary == null) ? 0 : dictionary.getCount(hashtag);
+
+        if (count == 0) {
+            // Not received so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        return new HashtagCount(hashtag, count);
+    }
+
+    /**
+     * Get the hashtags that most often appear in the same tweets as a hashtag received by this node.
+     *
+     * @param tag   the hashtag (with or without the leading hash)
+     * @param limit the maximum number of partners to return
+     * @return the partners and their estimated counts in descending order of count
+     */
+    @GetMapping(value = "/hashtags/{tag}/partners")
+    public List<HashtagPartner> getHashtagPartners(@PathVariable String tag, @RequestParam(defaultValue = "10") int limit) {
+        return cooccurrenceProcessor.getPartners(NormalizeHashtag(tag), Math.max(0, Math.min(limit, MAX_PARTNER_RESULTS)));
+    }
+
+    /**
+     * Get recent example tweets with a hashtag received by this node.
+     * <p>
+     * The most recent tweets are kept for the top hashtags, while the samples of the other hashtags come from a random
+     * sample of all their tweets.
+     *
+     * @param tag   the hashtag (with or without the leading hash)
+     * @param limit the maximum number of samples to return
+     * @return the samples from the most recent
+     */
+    @GetMapping(value = "/hashtags/{tag}/samples")
+    public List<TweetSample> getHashtagSamples(@PathVariable String tag, @RequestParam(defaultValue = "10") int limit) {
+        return sampleProcessor.getSamples(NormalizeHashtag(tag), Math.max(0, Math.min(limit, MAX_SAMPLE_RESULTS)));
+    }
+
+    /**
+     * Find the hashtags received by this node that start with a prefix.
+     *
+     * @param prefix   the prefix (with or without the leading hash)
+     * @param limit    the maximum number of hashtags to return
+     * @param response the HTTP response object
+     * @return the matching hashtags and their counts in alphabetical order or null if prefix searches are disabled
+     */
+    @GetMapping(value = "/hashtags")
+    public List<HashtagCount> findHashtags(@RequestParam(defaultValue = "") String prefix,
+                                           @RequestParam(defaultValue = "20") int limit, HttpServletResponse response) {
+        var prefixIndex = dictionaryFactory.getPrefixIndexInstance();
+        if (prefixIndex == null) {
+            // Not enabled so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+        var dictionary = dictionaryFactory.getDictionaryInstance();
+        if (dictionary == null) {
+            return List.of();
+        }
+
+        // Search the index and look up the current count for each match
+        return prefixIndex
+                .findByPrefix(NormalizeHashtag(prefix), Math.max(0, Math.min(limit, MAX_PREFIX_RESULTS)))
+                .stream()
+                .map(hashtag -> new HashtagCount(hashtag, dictionary.getCount(hashtag)))
+                .toList();
+    }
+
+    /**
+     * Get the statistics of all the filtered views.
+     *
+     * @param top the number of top hashtags to return for each view
+     * @return the statistics in the order the views were added
+     */
+    @GetMapping(value = "/views")
+    public List<FilteredViewStats> getViews(@RequestParam(defaultValue = "10") int top) {
+        return viewProcessor.getViews().getViews(top);
+    }
+
+    /**
+     * Get the statistics of a filtered view.
+     *
+     * @param name     the name of the view
+     * @param top      the number of top hashtags to return
+     * @param response the HTTP response object
+     * @return the statistics or null if there is no view with the name
+     */
+    @GetMapping(value = "/views/{name}")
+    public FilteredViewStats getView(@PathVariable String name, @RequestParam(defaultValue = "10") int top,
+                                     HttpServletResponse response) {
+        var view = viewProcessor.getViews().getView(name, top);
+        if (view == null) {
+            // No such view so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+        return view;
+    }
+
+    /**
+     * Add a filtered view counting the tweets that mention any of its keywords, or replace the keywords of a view.
+     *
+     * @param name     the name of the view
+     * @param keywords the keywords (matched ignoring case and at word boundaries)
+     * @param response the HTTP response object
+     * @return the statistics of the view or null if the view or keywords are not valid
+     */
+    @PutMapping(value = "/views/{name}")
+    public FilteredViewStats putView(@PathVariable String name, @RequestBody List<String> keywords,
+                                     HttpServletResponse response) {
+        try {
+            return viewProcessor.getViews().put(name, keywords);
+        } catch (InvalidParameterException ex) {
+            // Invalid name, keywords or too many views so return a Bad Request status code
+            log.info("Rejected view {}: {}", name, ex.getMessage());
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+    }
+
+    /**
+     * Remove a filtered view.
+     *
+     * @param name     the name of the view
+     * @param response the HTTP response object
+     */
+    @DeleteMapping(value = "/views/{name}")
+    public void deleteView(@PathVariable String name, HttpServletResponse response) {
+        response.setStatus(viewProcessor.getViews().remove(name)
+                ? HttpServletResponse.SC_NO_CONTENT : HttpServletResponse.SC_NOT_FOUND);
+    }
+
+    /**
+     * Start a bounded flight recording of the collector events that is dumped to a local file when it stops.
+     *
+     * @param durationMs the length of the recording in milliseconds
+     * @param response   the HTTP response object
+     * @return the status of the new recording (or of the running one if it is still going)
+     */
+    @PostMapping(value = "/diagnostics/recording")
+    public FlightRecordingStatus startRecording(@RequestParam(required = false) Long durationMs, HttpServletResponse response) {
+        if (!diagnosticRecorder.isEnabled()) {
+            // Recordings are disabled so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        try {
+            var status = diagnosticRecorder.start((durationMs == null) ? DEFAULT_RECORDING_MILLIS : durationMs);
+            if (status == null) {
+                // Another recording is still running so return a Conflict status code with its status
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                return diagnosticRecorder.getStatus();
+            }
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            return status;
+        } catch (InvalidParameterException ex) {
+            // Invalid duration so return a Bad Request status code
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+    }
+
+    /**
+     * Get the status of the current or last diagnostic flight recording.
+     *
+     * @param response the HTTP response object
+     * @return the status or null if no recording has been taken
+     */
+    @GetMapping(value = "/diagnostics/recording")
+    public FlightRecordingStatus getRecording(HttpServletResponse response) {
+        var status = diagnosticRecorder.getStatus();
+        if (status == null) {
+            // No recording so return a Not Found status code
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+        return status;
+    }
+
+    /**
+     * Allow the localhost UI application to call an endpoint from the browser.
+     *
+     * @param response the HTTP response object
+     */
+    private static void AllowLocalUi(HttpServletResponse response) {
+        response.addHeader("Access-Control-Allow-Origin", "http://localhost:5000");
+        response.addHeader("Access-Control-Allow-Methods", "GET");
+    }
+
+    /**
+     * Convert a hashtag from a request to the lower cased form without the leading hash used as the dictionary key.
+     *
+     * @param hashtag the hashtag from the request
+     * @return the normalized hashtag
+     */
+    private static String NormalizeHashtag(String hashtag) {
+        return StringUtils.removeStart(hashtag.trim(), "#").toLowerCase();
     }
 }
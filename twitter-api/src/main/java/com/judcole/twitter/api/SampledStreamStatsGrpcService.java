@@ -0,0 +1,229 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.grpc.GetStatsRequest;
+import com.judcole.twitter.grpc.SampledStreamStatsServiceGrpc;
+import com.judcole.twitter.grpc.Stats;
+import com.judcole.twitter.grpc.WatchStatsRequest;
+import com.judcole.twitter.shared.SampledStreamStats;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.security.InvalidParameterException;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The class for the gRPC service to get the latest statistics or watch them over a long-lived stream.
+ */
+@Component
+@Slf4j
+public class SampledStreamStatsGrpcService extends SampledStreamStatsServiceGrpc.SampledStreamStatsServiceImplBase {
+
+    // Default interval between watch updates in milliseconds
+    private static final long DEFAULT_WATCH_INTERVAL_MILLIS = 1000;
+
+    // Minimum interval between watch updates in milliseconds
+    private static final long MIN_WATCH_INTERVAL_MILLIS = 10;
+
+    // Service providing the latest statistics
+    private final SampledStreamStatsService statsService;
+
+    // Scheduler for the watch updates of all the streams
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        var thread = new Thread(runnable, "StatsWatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Instantiates a new Sampled stream stats gRPC service.
+     *
+     * @param statsService the service providing the latest statistics
+     */
+    public SampledStreamStatsGrpcService(SampledStreamStatsService statsService) {
+        this.statsService = statsService;
+    }
+
+    /**
+     * Get the latest statistics.
+     *
+     * @param request          the request
+     * @param responseObserver the response observer
+     */
+    @Override
+    public void getStats(GetStatsRequest request, StreamObserver<Stats> responseObserver) {
+        try {
+            var stats = GetSampledStreamStats(request.getTop());
+            if (stats == null) {
+                responseObserver.onError(Status.NOT_FOUND.withDescription("No statistics available").asRuntimeException());
+                return;
+            }
+            responseObserver.onNext(StatsProtoMapper.ToStats(stats));
+            responseObserver.onCompleted();
+        } catch (InvalidParameterException ex) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(ex.getMessage()).asRuntimeException());
+        }
+    }
+
+    /**
+     * Watch the statistics, sending a snapshot (or the changes) at the requested interval until the client cancels.
+     * <p>
+     * Updates are skipped while the stream is not ready for more (so slow clients get the latest rather than a backlog).
+     *
+     * @param request          the request
+     * @param responseObserver the response observer
+     */
+    @Override
+    public void watchStats(WatchStatsRequest request, StreamObserver<Stats> responseObserver) {
+        var observer = (ServerCallStreamObserver<Stats>) responseObserver;
+        var intervalMillis = (request.getIntervalMs() <= 0)
+                ? DEFAULT_WATCH_INTERVAL_MILLIS
+                : Math.max(MIN_WATCH_INTERVAL_MILLIS, request.getIntervalMs());
+
+        // Check the number of top hashtags before starting
+        try {
+            GetSampledStreamStats(request.getTop());
+        } catch (InvalidParameterException ex) {
+            observer.onError(Status.INVALID_ARGUMENT.withDescription(ex.getMessage()).asRuntimeException());
+            return;
+        }
+
+        // Last full update sent (for deltas)
+        var previous = new AtomicReference<Stats>();
+        // Scheduled updates (set once the first update has been sent) and whether they have been stopped
+        var future = new AtomicReference<Future<?>>();
+        var stopped = new AtomicBoolean();
+
+        Runnable update = () -> {
+            try {
+                if (observer.isCancelled()) {
+                    StopUpdates(stopped, future);
+                } else if (observer.isReady()) {
+                    var stats = GetSampledStreamStats(request.getTop());
+                    if (stats != null) {
+                        var current = StatsProtoMapper.ToStats(stats);
+                        observer.onNext(request.getDeltas() ? ToDelta(previous.get(), current) : current);
+                        previous.set(current);
+                    }
+                }
+            } catch (Exception ex) {
+                // Stop updating and close the stream so the client does not wait forever
+                log.warn("Stopping stats watch after an error: {}", ex.toString());
+                StopUpdates(stopped, future);
+                if (!observer.isCancelled()) {
+                    try {
+                        observer.onError(Status.INTERNAL.withDescription(ex.toString()).asRuntimeException());
+                    } catch (Exception closeEx) {
+                        log.debug("Could not close the stats watch: {}", closeEx.toString());
+                    }
+                }
+            }
+        };
+
+        // Stop the updates as soon as the client cancels
+        observer.setOnCancelHandler(() -> StopUpdates(stopped, future));
+
+        // Send the first update now and schedule the rest after it (unless it already stopped the watch)
+        update.run();
+        if (!stopped.get()) {
+            future.set(scheduler.scheduleAtFixedRate(update, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS));
+            // Catch a cancel that arrived while scheduling
+            if (stopped.get()) {
+                future.get().cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Stop all the watch updates.
+     */
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Stop the watch updates of a stream.
+     *
+     * @param stopped the flag to set once the updates are stopped
+     * @param future  the scheduled updates (or null if they are not scheduled yet)
+     */
+    private static void StopUpdates(AtomicBoolean stopped, AtomicReference<Future<?>> future) {
+        stopped.set(true);
+        var scheduled = future.get();
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    /**
+     * Get the latest statistics with a number of top hashtags.
+     *
+     * @param top the number of top hashtags or 0 for the default
+     * @return the statistics
+     */
+    private SampledStreamStats GetSampledStreamStats(int top) {
+        return (top == 0) ? statsService.getStats() : statsService.getStats(top);
+    }
+
+    /**
+     * Convert a full message to a delta with only the fields that changed since the previous one.
+     *
+     * @param previous the previous full message (or null to send the full message)
+     * @param current  the current full message
+     * @return the delta message
+     */
+    private static Stats ToDelta(Stats previous, Stats current) {
+        if (previous == null) {
+            return current;
+        }
+
+        var builder = Stats.newBuilder().setDelta(true).setLastUpdatedMillis(current.getLastUpdatedMillis());
+        if (current.getDailyTweets() != previous.getDailyTweets()) {
+            builder.setDailyTweets(current.getDailyTweets());
+        }
+        if (current.getDuplicateTweets() != previous.getDuplicateTweets()) {
+            builder.setDuplicateTweets(current.getDuplicateTweets());
+        }
+        if (current.getDistinctHashtags() != previous.getDistinctHashtags()) {
+            builder.setDistinctHashtags(current.getDistinctHashtags());
+        }
+        if (current.getDistinctHashtagsLastDay() != previous.getDistinctHashtagsLastDay()) {
+            builder.setDistinctHashtagsLastDay(current.getDistinctHashtagsLastDay());
+        }
+        if (current.getDistinctHashtagsLastHour() != previous.getDistinctHashtagsLastHour()) {
+            builder.setDistinctHashtagsLastHour(current.getDistinctHashtagsLastHour());
+        }
+        if (current.getHourlyTweets() != previous.getHourlyTweets()) {
+            builder.setHourlyTweets(current.getHourlyTweets());
+        }
+        if (current.hasStatus() && !Objects.equals(current.getStatus(), previous.getStatus())) {
+            builder.setStatus(current.getStatus());
+        }
+        if (!current.getTopHashtagsList().equals(previous.getTopHashtagsList())) {
+            builder.addAllTopHashtags(current.getTopHashtagsList());
+        }
+        if (!current.getTrendingHashtagsList().equals(previous.getTrendingHashtagsList())) {
+            builder.addAllTrendingHashtags(current.getTrendingHashtagsList());
+        }
+        if (current.getTotalHashtags() != previous.getTotalHashtags()) {
+            builder.setTotalHashtags(current.getTotalHashtags());
+        }
+        if (current.getTotalTweets() != previous.getTotalTweets()) {
+            builder.setTotalTweets(current.getTotalTweets());
+        }
+        if (current.getTweetQueueCount() != previous.getTweetQueueCount()) {
+            builder.setTweetQueueCount(current.getTweetQueueCount());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,176 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.SampledStreamStats;
+import com.judcole.twitter.shared.SampledStreamStatsExport;
+import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import com.judcole.twitter.shared.StatsDelta;
+import com.judcole.twitter.shared.StatsDeltaTracker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.security.InvalidParameterException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.time.LocalDateTime.now;
+
+/**
+ * The service class to provide the latest statistics to the REST and gRPC APIs.
+ */
+@Service
+public class SampledStreamStatsService {
+
+    // Application start time
+    private static final LocalDateTime startTime = now(ZoneOffset.UTC);
+
+    // Shared total statistics
+    private final SampledStreamStats stats;
+
+    // Aggregator of statistics from peer nodes
+    private final StatsAggregator aggregator;
+
+    // Versions of the published statistics for the deltas
+    private final StatsDeltaTracker deltaTracker;
+
+    // Encoder for the binary formats
+    private final EncodedStatsHttpMessageConverter encoder = new EncodedStatsHttpMessageConverter();
+
+    // Latest binary encoding for each format and number of top hashtags
+    private final Map<String, EncodedStats> encodedStats = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new Sampled stream stats service.
+     *
+     * @param statsFactory        the factory to return the shared total statistics instance
+     * @param aggregator          the aggregator of statistics from peer nodes
+     * @param deltaIntervalMillis the minimum time between published versions of the statistics for the deltas
+     * @param deltaVersions       the number of recent versions kept for the deltas
+     */
+    public SampledStreamStatsService(SampledStreamStatsFactory statsFactory, StatsAggregator aggregator,
+                                     @Value("${twitter.stats.delta-interval-ms:1000}") long deltaIntervalMillis,
+                                     @Value("${twitter.stats.delta-versions:300}") int deltaVersions) {
+        // Save the shared stats parameter
+        stats = statsFactory.getStatsInstance(SampledStreamStatsFactory.DEFAULT_STATS_SIZE);
+        this.aggregator = aggregator;
+        deltaTracker = new StatsDeltaTracker(deltaIntervalMillis, deltaVersions);
+    }
+
+    /**
+     * Get the shared statistics for this node (without calculating the calculated fields).
+     *
+     * @return the statistics
+     */
+    public SampledStreamStats getLocalStats() {
+        return stats;
+    }
+
+    /**
+     * Get the latest statistics data.
+     *
+     * @return the latest statistics data (merged from the peers in aggregator mode)
+     */
+    public SampledStreamStats getStats() {
+        if (aggregator.isEnabled()) {
+            // Return the latest global view
+            return aggregator.getGlobalStats();
+        }
+
+        // Calculate and set all calculated fields
+        stats.SetCalculatedFields(startTime);
+
+        // Return the stats data
+        return stats;
+    }
+
+    /**
+     * Get a snapshot of the latest statistics data with a specified number of top hashtags.
+     *
+     * @param top the number of top hashtags (up to the configured ceiling)
+     * @return the snapshot or null if there are no statistics
+     * @throws java.security.InvalidParameterException if the number of top hashtags exceeds the ceiling
+     */
+    public SampledStreamStats getStats(int top) {
+        var latest = getStats();
+        return (latest == null) ? null : latest.Snapshot(top);
+    }
+
+    /**
+     * Get the latest statistics encoded in a binary format, reusing the encoding until a new version is published.
+     * <p>
+     * The cache is checked before anything is recalculated, so polling clients only pay for an encoding (and for the
+     * calculated fields and top hashtags snapshot behind it) once per published version.
+     *
+     * @param top    the number of top hashtags (up to the configured ceiling) or null for the default
+     * @param format the binary format
+     * @return the encoded statistics or null if there are no statistics
+     * @throws InvalidParameterException if the number of top hashtags exceeds the ceiling
+     */
+    public byte[] getEncodedStats(Integer top, MediaType format) {
+        if ((top != null) && ((top < 0) || (top > stats.getTopHashtagsCeiling()))) {
+            throw new InvalidParameterException("Number of top hashtags must be from 0 to " + stats.getTopHashtagsCeiling());
+        }
+
+        long version = deltaTracker.publishIfDue(this::getStats, System.currentTimeMillis());
+        if (version == 0) {
+            // Nothing has been published yet
+            return null;
+        }
+
+        var key = format.getSubtype() + ":" + top;
+        var encoded = encodedStats.compute(key, (k, cached) -> {
+            if ((cached != null) && (cached.version == version)) {
+                return cached;
+            }
+            var latest = (top == null) ? getStats() : getStats(top);
+            return (latest == null) ? null : new EncodedStats(encoder.encode(latest, format), version);
+        });
+        return (encoded == null) ? null : encoded.bytes;
+    }
+
+    /**
+     * Get the changes in the statistics since a version, publishing a new version first if one is due.
+     *
+     * @param since the version the client has (0 for everything)
+     * @return the changes or null if there are no statistics
+     */
+    public StatsDelta getStatsDelta(long since) {
+        deltaTracker.publishIfDue(this::getStats, System.currentTimeMillis());
+        return deltaTracker.getDelta(since);
+    }
+
+    /**
+     * Export the mergeable state of this node's statistics for an aggregator.
+     *
+     * @return the exported state
+     */
+    public SampledStreamStatsExport exportStats() {
+        // Calculate the rates before exporting them
+        stats.SetCalculatedFields(startTime);
+        return stats.Export();
+    }
+
+    /**
+     * The class for a binary encoding of a published version of the statistics.
+     */
+    private static class EncodedStats {
+        // Encoded statistics
+        private final byte[] bytes;
+
+        // Published version that was encoded
+        private final long version;
+
+        /**
+         * Instantiates a new encoding.
+         *
+         * @param bytes   the encoded statistics
+         * @param version the published version that was encoded
+         */
+        private EncodedStats(byte[] bytes, long version) {
+            this.bytes = bytes;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.judcole.twitter.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.judcole.twitter.shared.SampledStreamStats;
+import com.judcole.twitter.shared.SampledStreamStatsExport;
+import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class to pull the exported statistics from peer nodes on a fixed cadence and merge them into a global view.
+ * <p>
+ * Aggregator mode is enabled by listing the base URLs of the peers (which may include this node). Exports that
+ * cannot be merged are rejected and a peer is left out of the global view once its last export is a few intervals old.
+ */
+@Component
+@Slf4j
+public class StatsAggregator {
+
+    // Accept header for the exports
+    private static final String ACCEPT_EXPORT = MediaType.APPLICATION_CBOR_VALUE + ", " + MediaType.APPLICATION_JSON_VALUE + ";q=0.5";
+
+    // Number of intervals without a successful pull before a peer is left out of the global view
+    private static final int STALE_INTERVALS = 3;
+
+    // Base URLs of the peer nodes
+    private final List<String> peers;
+
+    // Last successful export from each peer (kept if a pull fails as the totals are cumulative)
+    private final Map<String, SampledStreamStatsExport> peerExports = new LinkedHashMap<>();
+
+    // Time of the last successful pull from each peer in milliseconds
+    private final Map<String, Long> peerPulledAt = new HashMap<>();
+
+    // Maximum age of a peer's last export before it is left out of the global view
+    private final long staleMillis;
+
+    // HTTP client for pulling from the peers
+    private final CloseableHttpClient httpClient;
+
+    // Object mapper for deserializing JSON exports
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Object mapper for deserializing CBOR exports
+    private final ObjectMapper cborMapper = new CBORMapper();
+
+    // Scheduler for the pulls (or null if aggregator mode is not enabled)
+    private final ScheduledExecutorService scheduler;
+
+    // Maximum number of top hashtags that can be requested from the global statistics
+    private final int topHashtagsCeiling;
+
+    // Half-life of the trending hashtag scores in the global statistics
+    private final long trendingHalfLifeMillis;
+
+    // Latest merged global statistics
+    private volatile SampledStreamStats globalStats;
+
+    /**
+     * Instantiates a new stats aggregator and starts pulling from the peers if any are configured.
+     *
+     * @param peers                  the comma separated base URLs of the peer nodes (blank to disable aggregator mode)
+     * @param intervalMillis         the interval between pulls in milliseconds
+     * @param topHashtagsCeiling     the maximum number of top hashtags that can be requested
+     * @param trendingHalfLifeMillis the half-life of the trending hashtag scores in milliseconds
+     */
+    public StatsAggregator(@Value("${twitter.aggregator.peers:}") String peers,
+                           @Value("${twitter.aggregator.interval-ms:5000}") long intervalMillis,
+                           @Value("${twitter.stats.top-ceiling:" + SampledStreamStatsFactory.DEFAULT_TOP_HASHTAGS_CEILING + "}") int topHashtagsCeiling,
+                           @Value("${twitter.stats.trending-half-life-ms:" + SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS + "}") long trendingHalfLifeMillis) {
+        this.topHashtagsCeiling = topHashtagsCeiling;
+        staleMillis = STALE_INTERVALS * intervalMillis;
+        this.trendingHalfLifeMillis = trendingHalfLifeMillis;
+        this.peers = Arrays.stream(peers.split(",")).map(String::trim).filter(StringUtils::isNotBlank).toList();
+
+        // Time out pulls well within the interval so a slow peer cannot hold up the others
+        var timeout = (int) Math.max(100, intervalMillis / 2);
+        httpClient = HttpClients.custom().setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(timeout).setSocketTimeout(timeout).build()).build();
+
+        if (this.peers.isEmpty()) {
+            scheduler = null;
+            return;
+        }
+
+        log.info("Starting the stats aggregator for peers {}", this.peers);
+        globalStats = new SampledStreamStats(SampledStreamStatsFactory.DEFAULT_STATS_SIZE, topHashtagsCeiling, trendingHalfLifeMillis);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "StatsAggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::pullAndMerge, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Check if aggregator mode is enabled.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return scheduler != null;
+    }
+
+    /**
+     * Get the latest merged global statistics.
+     *
+     * @return the global statistics or null if aggregator mode is not enabled
+     */
+    public SampledStreamStats getGlobalStats() {
+        return globalStats;
+    }
+
+    /**
+     * Stop pulling from the peers.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Pull the latest export from each peer and merge them into new global statistics.
+     */
+    private void pullAndMerge() {
+        try {
+            // Merge into a new instance (also used to check that each export can be merged)
+            var merged = new SampledStreamStats(SampledStreamStatsFactory.DEFAULT_STATS_SIZE, topHashtagsCeiling, trendingHalfLifeMillis);
+            for (var peer : peers) {
+                // Ask for CBOR to keep the sketches compact, falling back to JSON
+                var request = new HttpGet(StringUtils.removeEnd(peer, "/") + "/exportStats");
+                request.setHeader(HttpHeaders.ACCEPT, ACCEPT_EXPORT);
+                try (var response = httpClient.execute(request)) {
+                    var body = EntityUtils.toByteArray(response.getEntity());
+                    if (response.getStatusLine().getStatusCode() == 200) {
+                        var contentType = response.getEntity().getContentType();
+                        var isCbor = (contentType != null) && contentType.getValue().startsWith(MediaType.APPLICATION_CBOR_VALUE);
+                        var export = (isCbor ? cborMapper : mapper).readValue(body, SampledStreamStatsExport.class);
+                        if (merged.CanMerge(export)) {
+                            peerExports.put(peer, export);
+                            peerPulledAt.put(peer, System.currentTimeMillis());
+                        } else {
+                            log.warn("Stats export from {} cannot be merged so it is ignored", peer);
+                        }
+                    } else {
+                        log.warn("Stats export from {} failed with HTTP status {}", peer, response.getStatusLine().getStatusCode());
+                    }
+                } catch (Exception ex) {
+                    log.warn("Stats export from {} failed: {}", peer, ex.toString());
+                }
+            }
+
+            // Leave out the peers that have not exported for a while
+            var staleBefore = System.currentTimeMillis() - staleMillis;
+            for (var peer : peers) {
+                if (peerExports.containsKey(peer) && (peerPulledAt.get(peer) < staleBefore)) {
+                    log.warn("Leaving {} out of the global stats as its last export is too old", peer);
+                    peerExports.remove(peer);
+                    peerPulledAt.remove(peer);
+                }
+            }
+
+            // Merge the live exports and publish them
+            merged.SetMergedFields(new ArrayList<>(peerExports.values()));
+            merged.setStatus(String.format("Merged from %d of %d peers", peerExports.size(), peers.size()));
+            globalStats = merged;
+        } catch (Exception ex) {
+            log.error("An error occurred when merging peer stats: Exception: ", ex);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import com.judcole.twitter.shared.StatsHistory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class to record a sample of the latest statistics into the compressed history on a fixed cadence.
+ */
+@Component
+@Slf4j
+public class StatsHistoryRecorder {
+
+    // Service providing the latest statistics
+    private final SampledStreamStatsService statsService;
+
+    // History of the samples (or null if recording is disabled)
+    private final StatsHistory history;
+
+    // Scheduler for the samples (or null if recording is disabled)
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Instantiates a new stats history recorder and starts recording if it is enabled.
+     *
+     * @param statsService    the service providing the latest statistics
+     * @param intervalMillis  the interval between samples in milliseconds (0 or negative to disable recording)
+     * @param retentionMillis the time to keep the samples for in milliseconds
+     */
+    public StatsHistoryRecorder(SampledStreamStatsService statsService,
+                                @Value("${twitter.history.interval-ms:10000}") long intervalMillis,
+                                @Value("${twitter.history.retention-ms:259200000}") long retentionMillis) {
+        this.statsService = statsService;
+
+        if (intervalMillis <= 0) {
+            history = null;
+            scheduler = null;
+            return;
+        }
+
+        log.info("Recording the stats history every {} ms for {} ms", intervalMillis, retentionMillis);
+        history = new StatsHistory(intervalMillis, retentionMillis, SampledStreamStatsFactory.DEFAULT_STATS_SIZE);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "StatsHistory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::recordSample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the history of the samples.
+     *
+     * @return the history or null if recording is disabled
+     */
+    public StatsHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Stop recording.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Record a sample of the latest statistics.
+     */
+    private void recordSample() {
+        try {
+            var stats = statsService.getStats();
+            if (stats != null) {
+                history.record(stats, System.currentTimeMillis());
+            }
+        } catch (Exception ex) {
+            log.error("An error occurred when recording the stats history: Exception: ", ex);
+        }
+    }
+}
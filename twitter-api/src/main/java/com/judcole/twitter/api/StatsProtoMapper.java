@@ -0,0 +1,56 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.grpc.Stats;
+import com.judcole.twitter.grpc.TopHashtag;
+import com.judcole.twitter.grpc.TrendingHashtag;
+import com.judcole.twitter.shared.SampledStreamStats;
+
+import java.time.ZoneOffset;
+
+/**
+ * The class to map the statistics to the Protocol Buffers message shared by the gRPC service and the REST API.
+ */
+public final class StatsProtoMapper {
+
+    /**
+     * Instantiates nothing as the class only holds the mapping.
+     */
+    private StatsProtoMapper() {
+    }
+
+    /**
+     * Convert statistics to a full message.
+     *
+     * @param stats the statistics
+     * @return the message
+     */
+    public static Stats ToStats(SampledStreamStats stats) {
+        var builder = Stats.newBuilder()
+                .setDailyTweets(stats.getDailyTweets())
+                .setDuplicateTweets(stats.getDuplicateTweets())
+                .setDistinctHashtags(stats.getDistinctHashtags())
+                .setDistinctHashtagsLastDay(stats.getDistinctHashtagsLastDay())
+                .setDistinctHashtagsLastHour(stats.getDistinctHashtagsLastHour())
+                .setHourlyTweets(stats.getHourlyTweets())
+                .setLastUpdatedMillis(stats.getLastUpdated().toInstant(ZoneOffset.UTC).toEpochMilli())
+                .setTotalHashtags(stats.getTotalHashtags())
+                .setTotalTweets(stats.getTotalTweets())
+                .setTweetQueueCount(stats.getTweetQueueCount());
+        if (stats.getStatus() != null) {
+            builder.setStatus(stats.getStatus());
+        }
+
+        var topHashtags = stats.getTopHashtags();
+        var topHashtagCounts = stats.getTopHashtagCounts();
+        for (int i = 0; (i < topHashtags.length) && (topHashtags[i] != null); i++) {
+            builder.addTopHashtags(TopHashtag.newBuilder().setHashtag(topHashtags[i]).setCount(topHashtagCounts[i]));
+        }
+
+        var trendingHashtags = stats.getTrendingHashtags();
+        var trendingHashtagScores = stats.getTrendingHashtagScores();
+        for (int i = 0; (i < trendingHashtags.length) && (trendingHashtags[i] != null); i++) {
+            builder.addTrendingHashtags(TrendingHashtag.newBuilder().setHashtag(trendingHashtags[i]).setScore(trendingHashtagScores[i]));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,247 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.PooledLineReader;
+import com.judcole.twitter.shared.TweetBlock;
+import com.judcole.twitter.shared.TweetBlockPool;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * The class for a single streaming connection to the Twitter stream API read on its own thread.
+ * <p>
+ * Every line (including keep alive blank lines) counts as activity so that the supervisor can
+ * detect a stalled connection, and the time of the last tweet line is kept (even while inactive) so that it can tell
+ * when a standby is receiving tweets that the active connection is not. Tweet lines are only passed on while the connection is active, either as a new string
+ * block for each line or read straight into pooled blocks.
+ */
+@Slf4j
+class StreamConnection {
+
+    // HTTP request for the stream (aborted to close the connection)
+    private final HttpGet httpGet;
+
+    // Name of the connection for logging
+    private final String name;
+
+    // Consumer of tweet blocks while the connection is active
+    private final Consumer<TweetBlock> blockConsumer;
+
+    // Pool of blocks to read the lines into (or null to create a string block for each line)
+    private final TweetBlockPool blockPool;
+
+    // Time of the last activity (creation, connection or any line)
+    private volatile long lastActivityNanos = System.nanoTime();
+
+    // Time of the last tweet line (or creation if there has not been one)
+    private volatile long lastTweetNanos = lastActivityNanos;
+
+    // True if tweet lines should be passed on
+    private volatile boolean active;
+
+    // True once the stream has connected and sent at least one line
+    private volatile boolean streaming;
+
+    // True once the connection has ended for any reason
+    private volatile boolean closed;
+
+    /**
+     * Instantiates and starts a new stream connection.
+     *
+     * @param httpClient    the HTTP client
+     * @param uri           the stream URI
+     * @param bearerToken   the bearer token for authentication
+     * @param name          the name of the connection for logging
+     * @param active        true to pass on tweet lines straight away
+     * @param blockConsumer the consumer of tweet blocks
+     * @param blockPool     the pool of blocks to read the lines into (or null to create a string block for each line)
+     */
+    StreamConnection(HttpClient httpClient, URI uri, String bearerToken, String name, boolean active,
+                     Consumer<TweetBlock> blockConsumer, TweetBlockPool blockPool) {
+        this.name = name;
+        this.active = active;
+        this.blockConsumer = blockConsumer;
+        this.blockPool = blockPool;
+
+        httpGet = new HttpGet(uri);
+        httpGet.setHeader("Authorization", String.format("Bearer %s", bearerToken));
+
+        // Connect and read on a separate thread so the supervisor never blocks
+        var thread = new Thread(() -> read(httpClient), "StreamReader::" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Connect to the stream and read lines until it ends or is closed.
+     *
+     * @param httpClient the HTTP client
+     */
+    private void read(HttpClient httpClient) {
+        try {
+            // Initiate the connection with the Twitter stream
+            var response = httpClient.execute(httpGet);
+            var status = response.getStatusLine().getStatusCode();
+            var entity = response.getEntity();
+
+            if ((status != 200) || (entity == null)) {
+                log.warn("Stream connection {} failed with HTTP status {}", name, status);
+                return;
+            }
+
+            lastActivityNanos = System.nanoTime();
+            log.info("Stream connection {} connected", name);
+
+            if (blockPool != null) {
+                ReadPooledLines(entity.getContent());
+            } else {
+                ReadLines(entity.getContent());
+            }
+
+            log.info("Stream connection {} ended", name);
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("Stream connection {} failed: {}", name, e.toString());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Read lines as strings until the end of the stream or closed.
+     *
+     * @param content the stream content
+     * @throws IOException the IO exception
+     */
+    private void ReadLines(InputStream content) throws IOException {
+        var reader = new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+        String line;
+        while (!closed && ((line = reader.readLine()) != null)) {
+            lastActivityNanos = System.nanoTime();
+            streaming = true;
+
+            if (!StringUtils.isBlank(line)) {
+                lastTweetNanos = lastActivityNanos;
+                if (active) {
+                    // Not just a keep alive so pass it on
+                    blockConsumer.accept(new TweetBlock(line));
+                }
+            }
+        }
+    }
+
+    /**
+     * Read lines into pooled blocks until the end of the stream or closed.
+     *
+     * @param content the stream content
+     * @throws IOException the IO exception
+     */
+    private void ReadPooledLines(InputStream content) throws IOException {
+        var reader = new PooledLineReader(content, blockPool);
+        while (!closed) {
+            var block = reader.readLine();
+            if (block == null) {
+                break;
+            }
+            lastActivityNanos = System.nanoTime();
+            streaming = true;
+
+            if (block.isBlank()) {
+                block.release();
+                continue;
+            }
+
+            lastTweetNanos = lastActivityNanos;
+            if (active) {
+                // Not just a keep alive so pass it on (handing over the block)
+                blockConsumer.accept(block);
+            } else {
+                block.release();
+            }
+        }
+    }
+
+    /**
+     * Start passing on tweet lines.
+     */
+    void activate() {
+        active = true;
+    }
+
+    /**
+     * Close the connection (unblocking the reader thread).
+     */
+    void close() {
+        if (!closed) {
+            closed = true;
+            httpGet.abort();
+        }
+    }
+
+    /**
+     * Check if the connection has ended.
+     *
+     * @return true if closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Check if the connection has received at least one line.
+     *
+     * @return true if streaming
+     */
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Check if the connection has had no activity for longer than a timeout.
+     *
+     * @param idleTimeoutNanos the idle timeout in nanoseconds
+     * @return true if stalled
+     */
+    boolean isStalled(long idleTimeoutNanos) {
+        return System.nanoTime() - lastActivityNanos > idleTimeoutNanos;
+    }
+
+    /**
+     * Check if the connection has had no tweet lines for longer than a time (keep alives do not count).
+     *
+     * @param stallNanos the time in nanoseconds
+     * @return true if no tweets have arrived within the time
+     */
+    boolean isWithoutTweets(long stallNanos) {
+        return System.nanoTime() - lastTweetNanos > stallNanos;
+    }
+
+    /**
+     * Check if the connection is open and not stalled.
+     *
+     * @param idleTimeoutNanos the idle timeout in nanoseconds
+     * @return true if healthy
+     */
+    boolean isHealthy(long idleTimeoutNanos) {
+        return !closed && !isStalled(idleTimeoutNanos);
+    }
+
+    /**
+     * Get the name of the connection.
+     *
+     * @return the name
+     */
+    String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,250 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.CollectorEvents;
+import com.judcole.twitter.shared.TweetBlock;
+import com.judcole.twitter.shared.TweetBlockPool;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.lang.Thread.sleep;
+
+/**
+ * The class to keep a Twitter stream connected, switching to a pre-warmed standby connection when
+ * the active one stalls or ends and reconnecting with jittered exponential backoff.
+ * <p>
+ * As well as the idle timeout (which a connection only sending keep alives does not reach), the active connection is
+ * replaced as soon as it has had no tweets for a short time while the standby is still receiving them, so a stall
+ * only loses the tweets of that short time rather than of the whole idle timeout.
+ */
+@Slf4j
+public class StreamConnectionSupervisor {
+
+    // Interval between health checks in milliseconds
+    private static final long CHECK_INTERVAL_MILLIS = 10;
+
+    // HTTP client for the connections
+    private final HttpClient httpClient;
+
+    // Stream URI
+    private final URI uri;
+
+    // Bearer token for authentication
+    private final String bearerToken;
+
+    // Consumer of tweet blocks from the active connection
+    private final Consumer<TweetBlock> blockConsumer;
+
+    // Pool of blocks to read the lines into (or null to create a string block for each line)
+    private final TweetBlockPool blockPool;
+
+    // Time without any line (including keep alives) after which a connection is considered stalled
+    private final long idleTimeoutNanos;
+
+    // Time without tweets on the active connection, while the standby is receiving them, after which it is replaced
+    private final long tweetStallNanos;
+
+    // True to keep a standby connection open
+    private final boolean standbyEnabled;
+
+    // Delays before reconnecting the active connection
+    private final Backoff activeBackoff;
+
+    // Delays before reconnecting the standby connection
+    private final Backoff standbyBackoff;
+
+    // Connection currently passing on tweets
+    private StreamConnection active;
+
+    // Pre-warmed connection ready to take over
+    private StreamConnection standby;
+
+    // Earliest time for the next active connection attempt
+    private long nextActiveAttemptNanos;
+
+    // Earliest time for the next standby connection attempt
+    private long nextStandbyAttemptNanos;
+
+    // True once asked to stop
+    private volatile boolean stopped;
+
+    // Number of connections opened
+    @Getter
+    private volatile long connectionCount;
+
+    // Number of times the standby connection has taken over
+    @Getter
+    private volatile long failoverCount;
+
+    /**
+     * Instantiates a new stream connection supervisor.
+     *
+     * @param httpClient        the HTTP client (allowing at least three connections to the stream host)
+     * @param uri               the stream URI
+     * @param bearerToken       the bearer token for authentication
+     * @param blockConsumer     the consumer of tweet blocks
+     * @param blockPool         the pool of blocks to read the lines into (or null to create a string block for each line)
+     * @param idleTimeoutMillis the time without any line after which a connection is considered stalled
+     * @param tweetStallMillis  the time without tweets on the active connection, while the standby is receiving them,
+     *                          after which the standby takes over
+     * @param standbyEnabled    true to keep a pre-warmed standby connection open
+     * @param backoffBaseMillis the delay before the first reconnection attempt
+     * @param backoffMaxMillis  the maximum delay between reconnection attempts
+     */
+    public StreamConnectionSupervisor(HttpClient httpClient, URI uri, String bearerToken, Consumer<TweetBlock> blockConsumer,
+                                      TweetBlockPool blockPool, long idleTimeoutMillis, long tweetStallMillis, boolean standbyEnabled, long backoffBaseMillis, long backoffMaxMillis) {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.bearerToken = bearerToken;
+        this.blockConsumer = blockConsumer;
+        this.blockPool = blockPool;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.tweetStallNanos = TimeUnit.MILLISECONDS.toNanos(tweetStallMillis);
+        this.standbyEnabled = standbyEnabled;
+        activeBackoff = new Backoff(backoffBaseMillis, backoffMaxMillis);
+        standbyBackoff = new Backoff(backoffBaseMillis, backoffMaxMillis);
+        nextActiveAttemptNanos = System.nanoTime();
+        nextStandbyAttemptNanos = nextActiveAttemptNanos;
+    }
+
+    /**
+     * Supervise the connections until stopped.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public void run() throws InterruptedException {
+        log.info("Starting the stream connection supervisor for {}", uri);
+
+        try {
+            while (!stopped) {
+                supervise();
+                sleep(CHECK_INTERVAL_MILLIS);
+            }
+        } finally {
+            // Close everything down
+            if (active != null) {
+                active.close();
+            }
+            if (standby != null) {
+                standby.close();
+            }
+        }
+    }
+
+    /**
+     * Ask the supervisor to close its connections and stop.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Check the health of the connections and replace any that have stalled or ended.
+     */
+    private void supervise() {
+        var now = System.nanoTime();
+
+        if ((active != null) && (!active.isHealthy(idleTimeoutNanos) || isMissingTweets())) {
+            // The active connection has stalled or ended so close it and switch to the standby if possible
+            log.warn("Stream connection {} has {}", active.getName(), active.isClosed() ? "ended" : "stalled");
+            var event = StartReconnectEvent(active, false);
+            active.close();
+            active = null;
+            event.failedOver = promoteStandby();
+            if (!event.failedOver) {
+                event.backoffMillis = activeBackoff.nextDelayMillis();
+                nextActiveAttemptNanos = now + TimeUnit.MILLISECONDS.toNanos(event.backoffMillis);
+            }
+            event.commit();
+        }
+
+        if ((active == null) && !promoteStandby() && (now - nextActiveAttemptNanos >= 0)) {
+            // No standby ready so connect a new active connection
+            active = connect(true);
+        }
+
+        if ((active != null) && active.isStreaming()) {
+            activeBackoff.reset();
+        }
+
+        if (standbyEnabled) {
+            if ((standby != null) && !standby.isHealthy(idleTimeoutNanos)) {
+                // The standby connection has stalled or ended so close it and try again later
+                log.warn("Standby stream connection {} has {}", standby.getName(), standby.isClosed() ? "ended" : "stalled");
+                var event = StartReconnectEvent(standby, true);
+                standby.close();
+                standby = null;
+                event.backoffMillis = standbyBackoff.nextDelayMillis();
+                nextStandbyAttemptNanos = now + TimeUnit.MILLISECONDS.toNanos(event.backoffMillis);
+                event.commit();
+            }
+
+            if ((standby == null) && (active != null) && active.isStreaming() && (now - nextStandbyAttemptNanos >= 0)) {
+                // Pre-warm a new standby connection once the active one is established (so they are not opened together)
+                standby = connect(false);
+            }
+
+            if ((standby != null) && standby.isStreaming()) {
+                standbyBackoff.reset();
+            }
+        }
+    }
+
+    /**
+     * Check if the active connection has had no tweets for the stall time while the standby has been receiving them.
+     *
+     * @return true if the standby should take over
+     */
+    private boolean isMissingTweets() {
+        return (standby != null) && standby.isStreaming() && !standby.isWithoutTweets(tweetStallNanos)
+                && active.isWithoutTweets(tweetStallNanos);
+    }
+
+    /**
+     * Start the event for replacing a connection that has stalled or ended.
+     *
+     * @param connection the connection
+     * @param isStandby  true if it is the standby connection
+     * @return the event (committed once the replacement is scheduled)
+     */
+    private static CollectorEvents.StreamReconnectEvent StartReconnectEvent(StreamConnection connection, boolean isStandby) {
+        var event = new CollectorEvents.StreamReconnectEvent();
+        event.connection = connection.getName();
+        event.ended = connection.isClosed();
+        event.standby = isStandby;
+        return event;
+    }
+
+    /**
+     * Make the standby connection active if it is streaming and healthy.
+     *
+     * @return true if the standby took over
+     */
+    private boolean promoteStandby() {
+        if ((standby == null) || !standby.isStreaming() || !standby.isHealthy(idleTimeoutNanos)) {
+            return false;
+        }
+
+        active = standby;
+        active.activate();
+        standby = null;
+        failoverCount++;
+        log.info("Switched to standby stream connection {}", active.getName());
+        return true;
+    }
+
+    /**
+     * Start a new connection.
+     *
+     * @param isActive true to pass on tweet lines straight away
+     * @return the connection
+     */
+    private StreamConnection connect(boolean isActive) {
+        connectionCount++;
+        return new StreamConnection(httpClient, uri, bearerToken, String.valueOf(connectionCount), isActive, blockConsumer, blockPool);
+    }
+}
@@ -1,32 +1,34 @@
 package com.judcole.twitter.api;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.judcole.twitter.shared.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import javax.annotation.PreDestroy;
+
+import java.lang.management.ManagementFactory;
 import java.net.URISyntaxException;
-import java.time.ZoneOffset;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
-import static java.lang.Thread.sleep;
-import static java.time.LocalDateTime.now;
-
 /**
  * The class to collect tweet data from the Twitter Sampled Stream API
  */
@@ -40,7 +42,7 @@ public class TweetCollector {
     /**
      * The constant HashtagRegex.
      */
-// Regular expression object to match hashtags
+// Regular expression object to match hashtags (the reference for the hashtags found by the entity scanner)
     public static final Pattern hashtagRegex = Pattern.compile(hashtagPattern, Pattern.CASE_INSENSITIVE);
 
     // Name of bearer token environment variable
@@ -50,19 +52,52 @@ public class TweetCollector {
     private final String bearerTokenMissingMessage = "To access the Twitter API please set the " + bearerTokenEnvironmentString + " environment variable";
 
     // URL of Twitter stream API
-    private final String twitterApiUrl = "https://api.twitter.com/2/tweets/sample/stream";
+    private final String twitterApiUrl;
 
     // Twitter stream API authentication bearer token (read from the environment)
-    private final String bearerToken = System.getenv(bearerTokenEnvironmentString);
+    private final String bearerToken;
 
     // Dictionary of all Hashtags and their counts
-    private final HashMap<String, Long> hashtagDictionary = new HashMap<>();
+    private final IHashtagDictionary hashtagDictionary;
+
+    // Dictionaries of all entities and their counts by type (sharing the hashtag dictionary)
+    private final Map<EntityType, IHashtagDictionary> entityDictionaries = new EnumMap<>(EntityType.class);
+
+    // Processing stages shared by the pipelines of all the workers
+    private final List<ITweetProcessor> stages = new ArrayList<>();
+
+    // Pipelines of the running workers by their block processors
+    private final Map<Consumer<TweetBlock>, TweetProcessorPipeline> pipelines = new ConcurrentHashMap<>();
+
+    // Timings summed over the pipelines of the retired workers
+    private List<TweetProcessorTiming> retiredTimings = new ArrayList<>();
+
+    // Object to use for simple locking when retiring a pipeline or summing the timings
+    private final Lock timingsLock = new ReentrantLock();
+
+    // Pool of workers processing the queued tweet blocks
+    private final TweetProcessorPool processorPool;
 
     // HTTP client for accessing the Twitter API
-    private final HttpClient httpClient = HttpClients.custom().setDefaultRequestConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD).build()).build();
+    private final HttpClient httpClient;
+
+    // Time without any line (including keep alives) after which a stream connection is considered stalled
+    private final long streamIdleTimeoutMillis;
 
-    // Object mapper for deserializing tweet JSON
-    private final ObjectMapper mapper = new ObjectMapper();
+    // Time without tweets on the active stream connection, while the standby is receiving them, after which it is replaced
+    private final long streamTweetStallMillis;
+
+    // True to keep a pre-warmed standby stream connection
+    private final boolean streamStandbyEnabled;
+
+    // True to request the entities with each tweet so the text does not need scanning for most of them
+    private final boolean streamEntitiesEnabled;
+
+    // Delay before the first stream reconnection attempt
+    private final long streamBackoffBaseMillis;
+
+    // Maximum delay between stream reconnection attempts
+    private final long streamBackoffMaxMillis;
 
     // Shared total statistics
     private final SampledStreamStats stats;
@@ -70,17 +105,114 @@ public class TweetCollector {
     // Shared background queue
     private final IBackgroundQueue<TweetBlock> tweetQueue;
 
+    // Pool of reusable blocks for the stream lines (or null to create a string block for each line)
+    private final TweetBlockPool blockPool;
+
+    // Filter of recently seen tweet ids to suppress duplicates (or null if not enabled)
+    private final RotatingBloomFilter duplicateFilter;
+
+    // Supervisor keeping the stream connected (or null if not reading)
+    private volatile StreamConnectionSupervisor streamSupervisor;
+
+    // True once the first tweet has been counted (and the time taken to start logged)
+    private volatile boolean firstTweetCounted;
+
     /**
      * Instantiates a new Tweet collector.
      *
-     * @param queueFactory the queue factory
-     * @param statsFactory the stats factory
+     * @param queueFactory              the queue factory
+     * @param statsFactory              the stats factory
+     * @param dictionaryFactory         the hashtag dictionary factory
+     * @param extraProcessors           the additional tweet processing stages (any beans implementing the interface)
+     * @param processorPool             the pool of workers to process the queued tweet blocks
+     * @param offHeapDictionary         true to store the hashtag dictionary outside the Java heap
+     * @param dictionaryMappedDirectory the directory for a memory-mapped off-heap dictionary (blank for direct memory)
+     * @param prefixIndexEnabled        true to index the hashtags on the heap for prefix searches (not off-heap)
+     * @param dedupEnabled              true to suppress duplicate tweets by their id
+     * @param dedupExpectedTweets       the expected number of tweets in each duplicate filter window
+     * @param dedupFalsePositiveRate    the acceptable rate of new tweets wrongly suppressed as duplicates
+     * @param dedupWindowSeconds        the length of each duplicate filter window in seconds
+     * @param bearerToken               the Twitter stream API authentication bearer token (blank if not set)
+     * @param streamUrl                 the URL of the Twitter stream API
+     * @param streamIdleTimeoutMillis   the time without any line after which a stream connection is considered stalled
+     * @param streamTweetStallMillis    the time without tweets on the active stream connection, while the standby is
+     *                                  receiving them, after which the standby takes over
+     * @param streamStandbyEnabled      true to keep a pre-warmed standby stream connection
+     * @param streamEntitiesEnabled     true to request the entities with each tweet instead of scanning for them
+     * @param streamBackoffBaseMillis   the delay before the first stream reconnection attempt
+     * @param streamBackoffMaxMillis    the maximum delay between stream reconnection attempts
+     * @param pooledBlocks              true to read the stream lines into reusable blocks instead of strings
+     * @param blockPoolSize             the maximum number of reusable blocks kept for reuse
      */
-    public TweetCollector(BackgroundQueueFactory queueFactory, SampledStreamStatsFactory statsFactory) {
+    public TweetCollector(BackgroundQueueFactory queueFactory, SampledStreamStatsFactory statsFactory,
+                          HashtagDictionaryFactory dictionaryFactory, ObjectProvider<ITweetProcessor> extraProcessors,
+                          TweetProcessorPool processorPool,
+                          @Value("${twitter.dictionary.off-heap:false}") boolean offHeapDictionary,
+                          @Value("${twitter.dictionary.mapped-directory:}") String dictionaryMappedDirectory,
+                          @Value("${twitter.dictionary.prefix-index:false}") boolean prefixIndexEnabled,
+                          @Value("${twitter.dedup.enabled:false}") boolean dedupEnabled,
+                          @Value("${twitter.dedup.expected-tweets:1000000}") long dedupExpectedTweets,
+                          @Value("${twitter.dedup.false-positive-rate:0.001}") double dedupFalsePositiveRate,
+                          @Value("${twitter.dedup.window-seconds:600}") long dedupWindowSeconds,
+                          @Value("${STREAM_BEARER_TOKEN:}") String bearerToken,
+                          @Value("${twitter.stream.url:https://api.twitter.com/2/tweets/sample/stream}") String streamUrl,
+                          @Value("${twitter.stream.idle-timeout-ms:30000}") long streamIdleTimeoutMillis,
+                          @Value("${twitter.stream.tweet-stall-ms:1000}") long streamTweetStallMillis,
+                          @Value("${twitter.stream.standby:true}") boolean streamStandbyEnabled,
+                          @Value("${twitter.stream.entities:false}") boolean streamEntitiesEnabled,
+                          @Value("${twitter.stream.backoff-base-ms:250}") long streamBackoffBaseMillis,
+                          @Value("${twitter.stream.backoff-max-ms:60000}") long streamBackoffMaxMillis,
+                          @Value("${twitter.ingest.pooled-blocks:false}") boolean pooledBlocks,
+                          @Value("${twitter.ingest.block-pool-size:4096}") int blockPoolSize) {
         // Save the shared stats parameter
         stats = statsFactory.getStatsInstance(SampledStreamStatsFactory.DEFAULT_STATS_SIZE);
         // Save the shared queue instance
         tweetQueue = queueFactory.getBackgroundQueueInstance(BackgroundQueueFactory.DEFAULT_QUEUE_SIZE);
+        // Save the shared hashtag dictionary instance
+        var mappedDirectory = StringUtils.isBlank(dictionaryMappedDirectory) ? null : Path.of(dictionaryMappedDirectory);
+        hashtagDictionary = dictionaryFactory.getDictionaryInstance(offHeapDictionary, mappedDirectory);
+        // Create the dictionaries for the other entities stored in the same way
+        for (var type : EntityType.values()) {
+            entityDictionaries.put(type, (type == EntityType.HASHTAG)
+                    ? hashtagDictionary
+                    : dictionaryFactory.createEntityDictionary(type, offHeapDictionary, mappedDirectory));
+        }
+        // Create the processing stages with the entity counting stage followed by any additional stages
+        // (the prefix index keeps every hashtag on the heap so it is never used with the off-heap dictionary)
+        if (prefixIndexEnabled && offHeapDictionary) {
+            log.warn("The hashtag prefix index is not available with the off-heap dictionary so prefix searches are disabled");
+        }
+        var prefixIndex = (prefixIndexEnabled && !offHeapDictionary) ? dictionaryFactory.createPrefixIndexInstance() : null;
+        stages.add(new EntityCountingProcessor(stats, entityDictionaries, prefixIndex));
+        extraProcessors.orderedStream().forEach(stages::add);
+        this.processorPool = processorPool;
+        // Create the pool of reusable blocks if needed
+        blockPool = pooledBlocks ? new TweetBlockPool(blockPoolSize) : null;
+        // Create the duplicate tweet filter if needed
+        duplicateFilter = dedupEnabled
+                ? new RotatingBloomFilter(dedupExpectedTweets, dedupFalsePositiveRate, dedupWindowSeconds * 1000)
+                : null;
+
+        // Save the stream connection settings
+        this.bearerToken = bearerToken;
+        twitterApiUrl = streamUrl;
+        this.streamIdleTimeoutMillis = streamIdleTimeoutMillis;
+        this.streamTweetStallMillis = streamTweetStallMillis;
+        this.streamStandbyEnabled = streamStandbyEnabled;
+        this.streamEntitiesEnabled = streamEntitiesEnabled;
+        this.streamBackoffBaseMillis = streamBackoffBaseMillis;
+        this.streamBackoffMaxMillis = streamBackoffMaxMillis;
+
+        // Create the HTTP client with room for the active, standby and a closing connection and a read timeout as a backstop for stalls
+        httpClient = HttpClients.custom()
+                .setMaxConnPerRoute(4)
+                .setMaxConnTotal(4)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setCookieSpec(CookieSpecs.STANDARD)
+                        .setConnectTimeout((int) streamIdleTimeoutMillis)
+                        .setSocketTimeout((int) (2 * streamIdleTimeoutMillis))
+                        .build())
+                .build();
 
         log.info("Starting the Tweet Collector");
     }
@@ -96,7 +228,7 @@ public class TweetCollector {
 
         log.info("Starting the Tweet Reader");
 
-        if (bearerToken == null) {
+        if (StringUtils.isBlank(bearerToken)) {
             // No bearer token so log it and indicate it in the statistics data
             log.error(bearerTokenMissingMessage);
             stats.setStatus(bearerTokenMissingMessage);
@@ -105,139 +237,158 @@ public class TweetCollector {
 
         try {
             final URIBuilder uriBuilder = new URIBuilder(twitterApiUrl);
+            if (streamEntitiesEnabled) {
+                uriBuilder.addParameter("tweet.fields", "entities");
+            }
 
-            HttpGet httpGet = new HttpGet(uriBuilder.build());
-            httpGet.setHeader("Authorization", String.format("Bearer %s", bearerToken));
+            // Keep the stream connected until the application stops, enqueuing a new block instance for each tweet
+            streamSupervisor = new StreamConnectionSupervisor(httpClient, uriBuilder.build(), bearerToken,
+                    tweetQueue::enqueue, blockPool,
+                    streamIdleTimeoutMillis, streamTweetStallMillis, streamStandbyEnabled, streamBackoffBaseMillis, streamBackoffMaxMillis);
+            streamSupervisor.run();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
 
-            // Initiate the connection with the Twitter stream
-            HttpResponse response = httpClient.execute(httpGet);
-            HttpEntity entity = response.getEntity();
+        return CompletableFuture.completedFuture(true);
+    }
 
-            if (null != entity) {
-                // Set up a reader and get the first line
-                BufferedReader reader = new BufferedReader(new InputStreamReader((entity.getContent())));
-                String line = reader.readLine();
+    /**
+     * Stop reading tweets from Twitter when the application stops.
+     */
+    @PreDestroy
+    public void stopReading() {
+        var supervisor = streamSupervisor;
+        if (supervisor != null) {
+            supervisor.stop();
+        }
+    }
 
-                // Loop until the end of the stream or cancelled
-                while (line != null) {
-//                    log.info(line);
+    /**
+     * Get the time spent in each stage of the tweet processing pipeline.
+     *
+     * @return the timings in pipeline order summed over all the workers (including the retired ones)
+     */
+    public List<TweetProcessorTiming> getPipelineTimings() {
+        timingsLock.lock();
+        try {
+            return TweetProcessorPipeline.addTimings(retiredTimings, TweetProcessorPipeline.sumTimings(pipelines.values()));
+        } finally {
+            timingsLock.unlock();
+        }
+    }
 
-                    if (!StringUtils.isBlank(line)) {
-                        // Not just a keep alive so create a new block instance and enqueue it
-                        tweetQueue.enqueue(new TweetBlock(line));
-                    }
+    /**
+     * Create the block processor for a new worker with its own pipeline.
+     *
+     * @return the block processor
+     */
+    private Consumer<TweetBlock> CreateBlockProcessor() {
+        var pipeline = new TweetProcessorPipeline(stages, streamEntitiesEnabled);
+        Consumer<TweetBlock> blockProcessor = tweetBlock -> ProcessTweetBlockFromQueue(tweetBlock, pipeline);
+        pipelines.put(blockProcessor, pipeline);
+        return blockProcessor;
+    }
 
-                    // Read the next line
-                    line = reader.readLine();
-                }
+    /**
+     * Keep the timings of a retired worker's pipeline and release the pipeline.
+     *
+     * @param blockProcessor the block processor of the retired worker
+     */
+    private void RetireBlockProcessor(Consumer<TweetBlock> blockProcessor) {
+        timingsLock.lock();
+        try {
+            var pipeline = pipelines.remove(blockProcessor);
+            if (pipeline != null) {
+                retiredTimings = TweetProcessorPipeline.addTimings(retiredTimings, pipeline.getTimings());
             }
-        } catch (URISyntaxException | IOException e) {
-            throw new RuntimeException(e);
+        } finally {
+            timingsLock.unlock();
         }
-
-        return CompletableFuture.completedFuture(true);
     }
 
     /**
      * Process an incoming tweet block from the queue.
      *
      * @param tweetBlock the tweet block
+     * @param pipeline   the pipeline of the worker
      */
-    private void ProcessTweetBlockFromQueue(TweetBlock tweetBlock) {
+    private void ProcessTweetBlockFromQueue(TweetBlock tweetBlock, TweetProcessorPipeline pipeline) {
         // Prepare counts for the block
         long tweetCount = 0;
         long hashtagCount = 0;
 
         try {
-            // Deserialize the tweet block
-            Tweet tweet = mapper.readValue(tweetBlock.Contents, Tweet.class);
+            // Deserialize the tweet block (null if it does not look valid)
+            var tweet = pipeline.decode(tweetBlock);
 
-            if ((tweet != null) && (tweet.data != null) && (tweet.data.text != null)) {
+            if ((tweet != null) && isDuplicate(tweet)) {
+                // Already counted (e.g. after a reconnect) so ignore it
+                stats.IncrementDuplicateTweets();
+            } else if (tweet != null) {
                 // It looks valid so use it
                 tweetCount++;
 
-                // Look for hashtags
-                var matcher = hashtagRegex.matcher(tweet.data.text);
-
-                // Loop through the results
-                while (matcher.find()) {
-                    // Get the hashtag without the leading hash
-                    var hashtag = matcher.group().substring(1);
-//                    log.info(hashtag);
-
-                    // One more hashtag found
-                    hashtagCount++;
+                // Extract the entities in one pass over the text and pass the tweet to each stage
+                pipeline.process(tweet);
 
-                    // Increment the counter for this tag
-                    var hashtagLower = hashtag.toLowerCase();
-                    var newCount = hashtagDictionary.getOrDefault(hashtagLower, 0L) + 1;
-                    hashtagDictionary.put(hashtagLower, newCount);
-
-                    // Update the list of top hashtags with a specified hashtag and count
-                    stats.UpdateTopHashtags(hashtag, newCount);
-                }
+                // Add the hashtags found
+                hashtagCount += tweet.getEntities(EntityType.HASHTAG).size();
             }
 
-            long totalTweets = stats.getTotalTweets() + tweetCount;
-
-            // Log a message every 100 tweets
-            if (totalTweets % 100 == 0) {
-                log.info("Have now processed {} tweets", totalTweets);
+            // Add the counts from the block to the statistics
+            stats.AddBasicCounts(hashtagCount, tweetCount, tweetQueue.getCount());
+            if ((tweetCount > 0) && !firstTweetCounted) {
+                LogFirstTweetCounted();
             }
 
-            // Save the new statistics from the block
-            stats.SetBasicFields(stats.getTotalHashtags() + hashtagCount, totalTweets, tweetQueue.getCount());
+            // Log a message every 100 tweets processed by this worker (reading the total only then as it sums all the workers)
+            if ((tweetCount > 0) && (pipeline.getProcessedTweets() % 100 == 0)) {
+                log.info("Have now processed {} tweets", stats.getTotalTweets());
+            }
         } catch (Exception ex) {
             log.error("An error occurred when processing tweets: Exception: ", ex);
             stats.setStatus("An error occurred when processing tweets: Exception: " + ex);
+        } finally {
+            if (tweetBlock instanceof PooledTweetBlock pooledBlock) {
+                // Finished with the block so return it for reuse
+                pooledBlock.release();
+            }
         }
     }
 
     /**
-     * Gets a result (temporary test).
+     * Log how long after the JVM started the first tweet was counted (the time for a deploy to start collecting).
+     */
+    private synchronized void LogFirstTweetCounted() {
+        if (!firstTweetCounted) {
+            firstTweetCounted = true;
+            log.info("Counted the first tweet {} ms after the JVM started", ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+    /**
+     * Check if a tweet has been seen recently using the duplicate filter (if enabled).
      *
-     * @return the result
-     * @throws InterruptedException the interrupted exception
+     * @param tweet the parsed tweet
+     * @return true if the tweet is (probably) a duplicate
+     */
+    private boolean isDuplicate(ParsedTweet tweet) {
+        return (duplicateFilter != null) && (tweet.getId() != null)
+                && !duplicateFilter.addIfAbsent(HyperLogLog.hash(tweet.getId()), tweet.getReceivedAtMillis());
+    }
+
+    /**
+     * Start the pool of workers to process the queued tweet blocks.
+     *
+     * @return the completable future
      */
     @Async
-    public CompletableFuture<Boolean> processTweetBlocks() throws InterruptedException {
-
-        log.info("Starting the Tweet Processor");
-
-        int messageSeconds = 0;
-        while (messageSeconds < 100) {
-            try {
-                // Get the current time for various calculations
-                var time = now(ZoneOffset.UTC);
-                var seconds = time.getSecond();
-
-                if ((seconds % 10 == 0) && (seconds != messageSeconds)) {
-                    // Log a message every 10 seconds or so
-                    log.info("Worker running at: {} with {} tweets queued", time, tweetQueue.getCount());
-
-                    // Remember we have done so for this second so we don't log twice
-                    messageSeconds = seconds;
-                }
-
-                if (tweetQueue.getCount() > 0) {
-                    // Get the next tweet block to process
-                    var tweetBlock = tweetQueue.dequeue();
-
-                    if (tweetBlock != null) {
-//                        log.info("Processing tweet block at: {}", time);
-
-                        // Process the tweet block
-                        ProcessTweetBlockFromQueue(tweetBlock);
-                    }
-                } else {
-                    // There are no more tweets to process so wait a little while
-                    sleep(100);
-                }
-            } catch (Exception ex) {
-                log.error("An error occurred when reading tweets: Exception: ", ex);
-                stats.setStatus("An error occurred when reading tweets: Exception: " + ex);
-            }
-        }
+    public CompletableFuture<Boolean> processTweetBlocks() {
+
+        log.info("Starting the Tweet Processors");
+
+        processorPool.start(tweetQueue, this::CreateBlockProcessor, stats::setProcessorWorkers, this::RetireBlockProcessor);
 
         return CompletableFuture.completedFuture(true);
     }
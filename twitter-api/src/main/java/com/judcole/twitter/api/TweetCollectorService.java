@@ -27,12 +27,8 @@ public class TweetCollectorService {
             log.info("Tweet Reader thread interrupted");
         }
 
-        // Start processing the tweet blocks on a separate thread (asynchronously)
-        log.info("About to start the Tweet Processor");
-        try {
-            tweetCollector.processTweetBlocks();
-        } catch (InterruptedException e) {
-            log.info("Tweet Block Processor thread interrupted");
-        }
+        // Start processing the tweet blocks on separate worker threads
+        log.info("About to start the Tweet Processors");
+        tweetCollector.processTweetBlocks();
     }
 }
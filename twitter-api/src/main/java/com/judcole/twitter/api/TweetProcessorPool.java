@@ -0,0 +1,288 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.CollectorEvents;
+import com.judcole.twitter.shared.IBackgroundQueue;
+import com.judcole.twitter.shared.TweetBlock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * The class to run the workers that process the incoming tweet blocks, adding or retiring workers within bounds as
+ * the queue depth and drain rate change.
+ */
+@Component
+@Slf4j
+public class TweetProcessorPool {
+
+    // Time a worker waits before checking an empty queue again
+    private static final long IDLE_SLEEP_MILLIS = 100;
+
+    // Time between log messages about the pool
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // Policy deciding the number of workers
+    private final WorkerAutoscaler autoscaler;
+
+    // Time between checks of the queue
+    private final long intervalMillis;
+
+    // Running workers (only changed by the controller)
+    private final List<Worker> workers = new ArrayList<>();
+
+    // Total number of blocks processed by all the workers
+    private final AtomicLong processedBlocks = new AtomicLong();
+
+    // Scheduler for the checks (or null if not started)
+    private ScheduledExecutorService scheduler;
+
+    // Queue of blocks to process
+    private IBackgroundQueue<TweetBlock> queue;
+
+    // Factory for the block processor of each new worker
+    private Supplier<Consumer<TweetBlock>> workerFactory;
+
+    // Listener told about each change in the number of workers
+    private IntConsumer workerCountListener;
+
+    // Listener given the block processor of each retired worker once it has finished its last block (or null)
+    private Consumer<Consumer<TweetBlock>> retireListener;
+
+    // Number of blocks processed at the last check
+    private long lastProcessedBlocks;
+
+    // Time of the last check
+    private long lastCheckNanos;
+
+    // Time of the last log message
+    private long lastLogNanos;
+
+    // Number of workers started so far (for naming their threads)
+    private int startedWorkers;
+
+    /**
+     * Instantiates a new tweet processor pool.
+     *
+     * @param minWorkers             the minimum number of workers
+     * @param maxWorkers             the maximum number of workers
+     * @param intervalMillis         the time between checks of the queue
+     * @param scaleUpLatencyMillis   the estimated drain time above which a worker is added
+     * @param scaleDownLatencyMillis the estimated drain time below which a worker is retired
+     * @param scaleUpChecks          the number of checks in a row over the scale up threshold before adding a worker
+     * @param scaleDownChecks        the number of checks in a row under the scale down threshold before retiring a worker
+     */
+    public TweetProcessorPool(@Value("${twitter.processors.min-workers:1}") int minWorkers,
+                              @Value("${twitter.processors.max-workers:4}") int maxWorkers,
+                              @Value("${twitter.processors.interval-ms:1000}") long intervalMillis,
+                              @Value("${twitter.processors.scale-up-latency-ms:1000}") long scaleUpLatencyMillis,
+                              @Value("${twitter.processors.scale-down-latency-ms:100}") long scaleDownLatencyMillis,
+                              @Value("${twitter.processors.scale-up-checks:2}") int scaleUpChecks,
+                              @Value("${twitter.processors.scale-down-checks:10}") int scaleDownChecks) {
+        autoscaler = new WorkerAutoscaler(minWorkers, maxWorkers, scaleUpLatencyMillis, scaleDownLatencyMillis,
+                scaleUpChecks, scaleDownChecks);
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Start the minimum number of workers and the periodic checks of the queue.
+     *
+     * @param queue               the queue of blocks to process
+     * @param workerFactory       the factory for the block processor of each new worker
+     * @param workerCountListener the listener told about each change in the number of workers
+     */
+    public void start(IBackgroundQueue<TweetBlock> queue, Supplier<Consumer<TweetBlock>> workerFactory,
+                      IntConsumer workerCountListener) {
+        start(queue, workerFactory, workerCountListener, null);
+    }
+
+    /**
+     * Start the minimum number of workers and the periodic checks of the queue.
+     *
+     * @param queue               the queue of blocks to process
+     * @param workerFactory       the factory for the block processor of each new worker
+     * @param workerCountListener the listener told about each change in the number of workers
+     * @param retireListener      the listener given the block processor of each retired worker once it has finished its
+     *                            last block (or null)
+     */
+    public synchronized void start(IBackgroundQueue<TweetBlock> queue, Supplier<Consumer<TweetBlock>> workerFactory,
+                                   IntConsumer workerCountListener, Consumer<Consumer<TweetBlock>> retireListener) {
+        if (scheduler != null) {
+            throw new IllegalStateException("The tweet processor pool has already been started");
+        }
+
+        this.queue = queue;
+        this.workerFactory = workerFactory;
+        this.workerCountListener = workerCountListener;
+        this.retireListener = retireListener;
+        lastCheckNanos = lastLogNanos = System.nanoTime();
+        Resize(autoscaler.getMinWorkers());
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "TweetProcessorPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the current number of workers.
+     *
+     * @return the number of workers
+     */
+    public synchronized int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Get the total number of blocks processed by all the workers.
+     *
+     * @return the number of blocks
+     */
+    public long getProcessedBlocks() {
+        return processedBlocks.get();
+    }
+
+    /**
+     * Stop the checks and retire all the workers.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        workers.forEach(Worker::retire);
+        workers.clear();
+    }
+
+    /**
+     * Check the queue depth and drain rate and add or retire a worker if needed.
+     */
+    synchronized void check() {
+        try {
+            var now = System.nanoTime();
+            var processed = processedBlocks.get();
+            var drainPerSecond = (processed - lastProcessedBlocks) * 1e9 / Math.max(1, now - lastCheckNanos);
+            var queueDepth = queue.getCount();
+            lastProcessedBlocks = processed;
+            lastCheckNanos = now;
+
+            var target = autoscaler.decide(workers.size(), queueDepth, drainPerSecond);
+            if (target != workers.size()) {
+                log.info("Changing from {} to {} tweet processors with {} tweets queued and {} processed per second",
+                        workers.size(), target, queueDepth, (long) drainPerSecond);
+                Resize(target);
+            }
+
+            if (now - lastLogNanos >= LOG_INTERVAL_NANOS) {
+                // Log a message every 10 seconds or so
+                log.info("{} tweet processors running with {} tweets queued", workers.size(), queueDepth);
+                lastLogNanos = now;
+            }
+        } catch (Exception ex) {
+            log.error("An error occurred when scaling the tweet processors: Exception: ", ex);
+        }
+    }
+
+    /**
+     * Start or retire workers to reach a number of workers.
+     *
+     * @param target the number of workers
+     */
+    private void Resize(int target) {
+        while (workers.size() < target) {
+            var worker = new Worker(workerFactory.get(), "TweetProcessor-" + ++startedWorkers);
+            workers.add(worker);
+            worker.thread.start();
+        }
+        while (workers.size() > target) {
+            // Retire the newest worker once it finishes its current block
+            workers.remove(workers.size() - 1).retire();
+        }
+        workerCountListener.accept(workers.size());
+    }
+
+    /**
+     * The class for a worker thread taking blocks from the queue.
+     */
+    private class Worker implements Runnable {
+        // Processor for each block
+        private final Consumer<TweetBlock> blockProcessor;
+
+        // Thread running the worker
+        private final Thread thread;
+
+        // True once the worker has been asked to stop
+        private volatile boolean retired;
+
+        /**
+         * Instantiates a new worker.
+         *
+         * @param blockProcessor the processor for each block
+         * @param name           the name of the thread
+         */
+        private Worker(Consumer<TweetBlock> blockProcessor, String name) {
+            this.blockProcessor = blockProcessor;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Ask the worker to stop after its current block.
+         */
+        private void retire() {
+            retired = true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ProcessBlocks();
+            } finally {
+                if (retireListener != null) {
+                    retireListener.accept(blockProcessor);
+                }
+            }
+        }
+
+        /**
+         * Process blocks from the queue until the worker is retired or interrupted.
+         */
+        private void ProcessBlocks() {
+            while (!retired) {
+                try {
+                    var event = new CollectorEvents.BlockDequeueEvent();
+                    event.begin();
+                    var tweetBlock = queue.dequeue();
+                    if (tweetBlock != null) {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.queuedBlocks = queue.getCount();
+                            event.commit();
+                        }
+                        blockProcessor.accept(tweetBlock);
+                        processedBlocks.incrementAndGet();
+                    } else {
+                        // There are no more tweets to process so wait a little while
+                        Thread.sleep(IDLE_SLEEP_MILLIS);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (Exception ex) {
+                    log.error("An error occurred when processing tweets: Exception: ", ex);
+                }
+            }
+        }
+    }
+}
@@ -7,7 +7,12 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class TwitterApiApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(TwitterApiApplication.class, args);
+        var context = SpringApplication.run(TwitterApiApplication.class, args);
+
+        // Stop once started when only recording the classes loaded at startup (e.g. for a class data sharing archive)
+        if (context.getEnvironment().getProperty("twitter.startup.exit-when-ready", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 
 }
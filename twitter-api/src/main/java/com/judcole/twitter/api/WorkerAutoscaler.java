@@ -0,0 +1,107 @@
+package com.judcole.twitter.api;
+
+/**
+ * The class to decide how many workers should process the incoming queue from its depth and drain rate.
+ * <p>
+ * The estimated time for the backlog to drain is compared against separate thresholds for adding and retiring a
+ * worker, and each must be met for several checks in a row, so the count does not flap as the load changes.
+ */
+class WorkerAutoscaler {
+
+    // Minimum number of workers
+    private final int minWorkers;
+
+    // Maximum number of workers
+    private final int maxWorkers;
+
+    // Estimated drain time above which a worker is added
+    private final long scaleUpLatencyMillis;
+
+    // Estimated drain time below which a worker is retired
+    private final long scaleDownLatencyMillis;
+
+    // Number of checks in a row over the scale up threshold before adding a worker
+    private final int scaleUpChecks;
+
+    // Number of checks in a row under the scale down threshold before retiring a worker
+    private final int scaleDownChecks;
+
+    // Number of checks in a row over the scale up threshold
+    private int busyChecks;
+
+    // Number of checks in a row under the scale down threshold
+    private int quietChecks;
+
+    /**
+     * Instantiates a new worker autoscaler.
+     *
+     * @param minWorkers             the minimum number of workers
+     * @param maxWorkers             the maximum number of workers
+     * @param scaleUpLatencyMillis   the estimated drain time above which a worker is added
+     * @param scaleDownLatencyMillis the estimated drain time below which a worker is retired
+     * @param scaleUpChecks          the number of checks in a row over the scale up threshold before adding a worker
+     * @param scaleDownChecks        the number of checks in a row under the scale down threshold before retiring a worker
+     */
+    WorkerAutoscaler(int minWorkers, int maxWorkers, long scaleUpLatencyMillis, long scaleDownLatencyMillis,
+                     int scaleUpChecks, int scaleDownChecks) {
+        this.minWorkers = Math.max(1, minWorkers);
+        this.maxWorkers = Math.max(this.minWorkers, maxWorkers);
+        this.scaleUpLatencyMillis = scaleUpLatencyMillis;
+        this.scaleDownLatencyMillis = Math.min(scaleDownLatencyMillis, scaleUpLatencyMillis);
+        this.scaleUpChecks = Math.max(1, scaleUpChecks);
+        this.scaleDownChecks = Math.max(1, scaleDownChecks);
+    }
+
+    /**
+     * Get the minimum number of workers.
+     *
+     * @return the minimum number of workers
+     */
+    int getMinWorkers() {
+        return minWorkers;
+    }
+
+    /**
+     * Estimate how long the queue would take to drain at the current rate.
+     *
+     * @param queueDepth     the number of blocks in the queue
+     * @param drainPerSecond the number of blocks processed per second since the last check
+     * @return the estimated drain time in milliseconds (Long.MAX_VALUE if blocks are waiting but none are being processed)
+     */
+    static long EstimateLatencyMillis(int queueDepth, double drainPerSecond) {
+        if (queueDepth == 0) {
+            return 0;
+        }
+        return (drainPerSecond <= 0) ? Long.MAX_VALUE : (long) (queueDepth * 1000 / drainPerSecond);
+    }
+
+    /**
+     * Check the queue and decide on the number of workers.
+     *
+     * @param workers        the current number of workers
+     * @param queueDepth     the number of blocks in the queue
+     * @param drainPerSecond the number of blocks processed per second since the last check
+     * @return the new number of workers
+     */
+    int decide(int workers, int queueDepth, double drainPerSecond) {
+        if ((workers < minWorkers) || (workers > maxWorkers)) {
+            // Out of bounds (e.g. at startup) so correct it straight away
+            busyChecks = quietChecks = 0;
+            return Math.max(minWorkers, Math.min(workers, maxWorkers));
+        }
+
+        var latencyMillis = EstimateLatencyMillis(queueDepth, drainPerSecond);
+        busyChecks = (latencyMillis > scaleUpLatencyMillis) ? busyChecks + 1 : 0;
+        quietChecks = (latencyMillis < scaleDownLatencyMillis) ? quietChecks + 1 : 0;
+
+        if ((busyChecks >= scaleUpChecks) && (workers < maxWorkers)) {
+            busyChecks = 0;
+            return workers + 1;
+        }
+        if ((quietChecks >= scaleDownChecks) && (workers > minWorkers)) {
+            quietChecks = 0;
+            return workers - 1;
+        }
+        return workers;
+    }
+}
@@ -0,0 +1,72 @@
+package com.judcole.twitter.shared;
+
+import java.util.Arrays;
+
+/**
+ * The class for a reusable character sequence copied into its own growable buffer.
+ */
+public class CharSlice implements CharSequence {
+
+    // Buffer holding the characters
+    private char[] chars = new char[1024];
+
+    // Number of characters in the sequence
+    private int length;
+
+    /**
+     * Replace the sequence with a copy of some characters, growing the buffer if needed.
+     *
+     * @param source the source characters
+     * @param offset the offset of the first character
+     * @param count  the number of characters
+     */
+    public void set(char[] source, int offset, int count) {
+        if (count > chars.length) {
+            chars = new char[Math.max(chars.length * 2, count)];
+        }
+        System.arraycopy(source, offset, chars, 0, count);
+        length = count;
+    }
+
+    /**
+     * Empty the sequence, keeping its buffer.
+     */
+    void clear() {
+        length = 0;
+    }
+
+    /**
+     * Add a character to the end of the sequence, growing the buffer if needed.
+     *
+     * @param c the character
+     */
+    void append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,220 @@
+package com.judcole.twitter.shared;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Class holding the JDK Flight Recorder events for profiling the hot path of the tweet collector.
+ * <p>
+ * The events are disabled by default so they are only recorded when a recording asks for them (for example the
+ * diagnostic recording or {@code jcmd <pid> JFR.start settings=<file>}). While no recording has them enabled the JVM
+ * leaves their begin and commit calls empty and the event objects are optimized away, so the cost is one
+ * {@code shouldCommit} check where fields need computing.
+ */
+public final class CollectorEvents {
+
+    /**
+     * The category of all the collector events.
+     */
+    public static final String CATEGORY = "Twitter Collector";
+
+    /**
+     * The event types, for enabling them in a recording.
+     */
+    public static final List<Class<? extends Event>> EVENT_TYPES = List.of(BlockDequeueEvent.class, DecodeEvent.class,
+            ExtractionEvent.class, TopHashtagsUpdateEvent.class, LockWaitEvent.class, StreamReconnectEvent.class);
+
+    /**
+     * Instantiates nothing as the class only holds the events.
+     */
+    private CollectorEvents() {
+    }
+
+    /**
+     * Acquire a lock, recording a lock wait event if another thread holds it.
+     *
+     * @param lock     the lock
+     * @param lockName the name of the lock for the event
+     */
+    public static void lock(Lock lock, String lockName) {
+        if (lock.tryLock()) {
+            return;
+        }
+
+        var event = new LockWaitEvent();
+        event.begin();
+        lock.lock();
+        event.end();
+        if (event.shouldCommit()) {
+            event.lockName = lockName;
+            event.commit();
+        }
+    }
+
+    /**
+     * The event for a worker taking a tweet block from the queue.
+     */
+    @Name("com.judcole.twitter.BlockDequeue")
+    @Label("Block Dequeue")
+    @Description("A worker took a tweet block from the queue")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class BlockDequeueEvent extends Event {
+        /**
+         * The number of blocks left in the queue.
+         */
+        @Label("Queued Blocks")
+        public int queuedBlocks;
+    }
+
+    /**
+     * The event for decoding a tweet block.
+     */
+    @Name("com.judcole.twitter.Decode")
+    @Label("Decode")
+    @Description("A tweet block was decoded")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class DecodeEvent extends Event {
+        /**
+         * The size of the block.
+         */
+        @Label("Block Size")
+        @DataAmount
+        public long blockBytes;
+
+        /**
+         * True if the block was decoded in place from a pooled buffer.
+         */
+        @Label("Pooled")
+        public boolean pooled;
+
+        /**
+         * True if the block was a valid tweet.
+         */
+        @Label("Valid")
+        public boolean valid;
+    }
+
+    /**
+     * The event for extracting the entities from a tweet.
+     */
+    @Name("com.judcole.twitter.Extraction")
+    @Label("Entity Extraction")
+    @Description("The entities needed by the stages were extracted from a tweet")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ExtractionEvent extends Event {
+        /**
+         * The length of the tweet text.
+         */
+        @Label("Text Length")
+        public int textLength;
+
+        /**
+         * True if the entities sent with the tweet were used.
+         */
+        @Label("Server Entities")
+        public boolean serverEntities;
+    }
+
+    /**
+     * The event for updating a ranked index of top hashtags.
+     */
+    @Name("com.judcole.twitter.TopHashtagsUpdate")
+    @Label("Top Hashtags Update")
+    @Description("A hashtag count was updated in a ranked index of top hashtags")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class TopHashtagsUpdateEvent extends Event {
+        /**
+         * The new count of the hashtag.
+         */
+        @Label("Count")
+        public long count;
+
+        /**
+         * The lowest rank that changed (or the capacity if the index did not change).
+         */
+        @Label("Changed Rank")
+        public int changedRank;
+
+        /**
+         * The number of hashtags in the index.
+         */
+        @Label("Index Size")
+        public int indexSize;
+    }
+
+    /**
+     * The event for a thread waiting for a lock held by another thread.
+     */
+    @Name("com.judcole.twitter.LockWait")
+    @Label("Lock Wait")
+    @Description("A thread waited for a collector lock held by another thread")
+    @Category(CATEGORY)
+    @Enabled(false)
+    public static final class LockWaitEvent extends Event {
+        /**
+         * The name of the lock.
+         */
+        @Label("Lock")
+        public String lockName;
+    }
+
+    /**
+     * The event for a stream connection that was replaced.
+     */
+    @Name("com.judcole.twitter.StreamReconnect")
+    @Label("Stream Reconnect")
+    @Description("A stream connection stalled or ended and was replaced")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class StreamReconnectEvent extends Event {
+        /**
+         * The name of the connection that stalled or ended.
+         */
+        @Label("Connection")
+        public String connection;
+
+        /**
+         * True if the connection had ended rather than stalled.
+         */
+        @Label("Ended")
+        public boolean ended;
+
+        /**
+         * True if it was the standby connection.
+         */
+        @Label("Standby")
+        public boolean standby;
+
+        /**
+         * True if the standby connection took over straight away.
+         */
+        @Label("Failed Over")
+        public boolean failedOver;
+
+        /**
+         * The delay before the next connection attempt.
+         */
+        @Label("Backoff")
+        @Timespan(Timespan.MILLISECONDS)
+        public long backoffMillis;
+    }
+}
@@ -0,0 +1,71 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The class to reuse the strings for recently seen entities instead of creating a new string for each occurrence.
+ * <p>
+ * Each entity maps to one slot of a fixed size table that keeps the last string seen there, so frequent entities
+ * are usually found while rare ones just replace each other. An instance must only be used by one thread at a time.
+ */
+public class EntityInterner {
+
+    // Strings for the entities by slot
+    private final String[] entities;
+
+    // Mask to convert a hash to a slot
+    private final int slotMask;
+
+    /**
+     * Instantiates a new entity interner.
+     *
+     * @param capacity the number of slots (rounded up to a power of two)
+     */
+    public EntityInterner(int capacity) {
+        var slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        entities = new String[slots];
+        slotMask = slots - 1;
+    }
+
+    /**
+     * Get the string for a run of characters, reusing the last string seen for it if there is one.
+     *
+     * @param text  the text
+     * @param start the index of the first character
+     * @param end   the index after the last character
+     * @return the string
+     */
+    public String intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & slotMask;
+
+        var entity = entities[slot];
+        if ((entity == null) || !RegionEquals(entity, text, start, end)) {
+            entity = text.subSequence(start, end).toString();
+            entities[slot] = entity;
+        }
+        return entity;
+    }
+
+    /**
+     * Check if a string has the same characters as a run of a text.
+     *
+     * @param entity the string
+     * @param text   the text
+     * @param start  the index of the first character
+     * @param end    the index after the last character
+     * @return true if they are the same
+     */
+    private static boolean RegionEquals(String entity, CharSequence text, int start, int end) {
+        if (entity.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < entity.length(); i++) {
+            if (entity.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
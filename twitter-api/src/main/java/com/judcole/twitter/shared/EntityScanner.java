@@ -0,0 +1,335 @@
+package com.judcole.twitter.shared;
+
+import java.util.Arrays;
+
+/**
+ * The class to extract all the entities (hashtags, mentions, cashtags, link domains and emoji) from a tweet in one pass.
+ * <p>
+ * Hashtags match the previous regular expression {@code \B#\w*[a-zA-Z]+\w*}: a hash that does not follow a word
+ * character and then a run of word characters with at least one letter. Links are skipped after their domain so
+ * fragments and paths are not mistaken for hashtags or mentions. An instance keeps the counts for the last scan so
+ * it must only be used by one thread at a time.
+ */
+public class EntityScanner {
+
+    // Maximum length of a user name
+    private static final int MAX_MENTION_LENGTH = 15;
+
+    // Maximum length of a stock symbol
+    private static final int MAX_CASHTAG_LENGTH = 6;
+
+    /**
+     * The interface for consumers of the extracted entities.
+     */
+    public interface EntityConsumer {
+        /**
+         * Accept an entity.
+         *
+         * @param type   the entity type
+         * @param entity the entity text (without its symbol)
+         */
+        void accept(EntityType type, String entity);
+    }
+
+    // Number of each type of entity found by the last scan (by type ordinal)
+    private final int[] counts = new int[EntityType.values().length];
+
+    // Interner to reuse the strings for recently seen entities (or null to create a new string for each one)
+    private final EntityInterner interner;
+
+    /**
+     * Instantiates a new entity scanner that creates a new string for each entity.
+     */
+    public EntityScanner() {
+        this(null);
+    }
+
+    /**
+     * Instantiates a new entity scanner.
+     *
+     * @param interner the interner to reuse the strings for recently seen entities (or null to create a new string for each one)
+     */
+    public EntityScanner(EntityInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Scan a text for entities, passing each one to a consumer in order.
+     *
+     * @param text     the text
+     * @param consumer the consumer of the entities
+     */
+    public void scan(CharSequence text, EntityConsumer consumer) {
+        Arrays.fill(counts, 0);
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            int next = i + 1;
+
+            if ((c == '#') || (c == '@') || (c == '$')) {
+                if ((i == 0) || !IsWordChar(text.charAt(i - 1))) {
+                    next = ScanSymbol(text, i, c, consumer);
+                }
+            } else if (((c == 'h') || (c == 'H')) && ((i == 0) || !IsWordChar(text.charAt(i - 1)))) {
+                next = ScanLink(text, i, consumer);
+            } else if ((c >= 0x2600) && (c <= 0x27BF)) {
+                // Miscellaneous symbols and dingbats
+                Emit(EntityType.EMOJI, Slice(text, i, i + 1), consumer);
+            } else if (Character.isHighSurrogate(c)) {
+                next = ScanSupplementary(text, i, consumer);
+            }
+
+            i = next;
+        }
+    }
+
+    /**
+     * Get the number of entities of a type found by the last scan.
+     *
+     * @param type the entity type
+     * @return the number found
+     */
+    public int getCount(EntityType type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * Scan a hashtag, mention or cashtag starting at its symbol.
+     *
+     * @param text     the text
+     * @param start    the index of the symbol
+     * @param symbol   the symbol
+     * @param consumer the consumer of the entities
+     * @return the index to continue scanning from
+     */
+    private int ScanSymbol(CharSequence text, int start, char symbol, EntityConsumer consumer) {
+        // Find the run of word characters after the symbol and whether it has any letters
+        int end = start + 1;
+        boolean hasLetter = false;
+        boolean allLetters = true;
+        while ((end < text.length()) && IsWordChar(text.charAt(end))) {
+            var isLetter = IsLetter(text.charAt(end));
+            hasLetter |= isLetter;
+            allLetters &= isLetter;
+            end++;
+        }
+
+        int runLength = end - start - 1;
+        var isEntity = switch (symbol) {
+            case '#' -> hasLetter;
+            case '@' -> (runLength > 0) && (runLength <= MAX_MENTION_LENGTH);
+            default -> (runLength > 0) && (runLength <= MAX_CASHTAG_LENGTH) && allLetters;
+        };
+
+        if (!isEntity) {
+            return start + 1;
+        }
+
+        var type = (symbol == '#') ? EntityType.HASHTAG : (symbol == '@') ? EntityType.MENTION : EntityType.CASHTAG;
+        Emit(type, Slice(text, start + 1, end), consumer);
+        return end;
+    }
+
+    /**
+     * Scan a link starting with http:// or https://, emitting its domain and skipping the rest of it.
+     *
+     * @param text     the text
+     * @param start    the index of the start of the link
+     * @param consumer the consumer of the entities
+     * @return the index to continue scanning from
+     */
+    private int ScanLink(CharSequence text, int start, EntityConsumer consumer) {
+        int hostStart = HostStart(text, start);
+        if (hostStart < 0) {
+            return start + 1;
+        }
+
+        // Find the host and emit it if it looks like a domain
+        int hostEnd = HostEnd(text, hostStart);
+        var domain = Domain(text, hostStart, hostEnd, interner);
+        if (domain != null) {
+            Emit(EntityType.DOMAIN, domain, consumer);
+        }
+
+        // Skip the rest of the link
+        int end = hostEnd;
+        while ((end < text.length()) && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Get the domain of a link in the same form as the scanner emits it.
+     *
+     * @param link the link starting with http:// or https://
+     * @return the lower cased domain without any www. prefix (or null if it does not have one)
+     */
+    public static String LinkDomain(CharSequence link) {
+        int hostStart = HostStart(link, 0);
+        return (hostStart < 0) ? null : Domain(link, hostStart, HostEnd(link, hostStart), null);
+    }
+
+    /**
+     * Find the start of the host of a link.
+     *
+     * @param text  the text
+     * @param start the index of the start of the link
+     * @return the index of the host or -1 if it does not start with http:// or https://
+     */
+    private static int HostStart(CharSequence text, int start) {
+        if (RegionMatches(text, start, "https://")) {
+            return start + 8;
+        }
+        return RegionMatches(text, start, "http://") ? start + 7 : -1;
+    }
+
+    /**
+     * Find the end of the host of a link.
+     *
+     * @param text      the text
+     * @param hostStart the index of the host
+     * @return the index after the host
+     */
+    private static int HostEnd(CharSequence text, int hostStart) {
+        int hostEnd = hostStart;
+        while ((hostEnd < text.length()) && IsHostChar(text.charAt(hostEnd))) {
+            hostEnd++;
+        }
+        return hostEnd;
+    }
+
+    /**
+     * Get the domain from the host of a link.
+     *
+     * @param text      the text
+     * @param hostStart the index of the host
+     * @param hostEnd   the index after the host
+     * @param interner  the interner for the domain if it is already lower cased (or null)
+     * @return the lower cased domain without any www. prefix (or null if the host does not look like a domain)
+     */
+    private static String Domain(CharSequence text, int hostStart, int hostEnd, EntityInterner interner) {
+        boolean hasDot = false;
+        boolean hasUpper = false;
+        for (int i = hostStart; i < hostEnd; i++) {
+            var c = text.charAt(i);
+            hasDot |= c == '.';
+            hasUpper |= (c >= 'A') && (c <= 'Z');
+        }
+        if (!hasDot) {
+            return null;
+        }
+
+        if (RegionMatches(text, hostStart, "www.")) {
+            hostStart += 4;
+        }
+        if ((interner != null) && !hasUpper) {
+            return interner.intern(text, hostStart, hostEnd);
+        }
+        return text.subSequence(hostStart, hostEnd).toString().toLowerCase();
+    }
+
+    /**
+     * Scan a supplementary character, emitting it if it is an emoji (or a pair of regional indicators as a flag).
+     *
+     * @param text     the text
+     * @param start    the index of the high surrogate
+     * @param consumer the consumer of the entities
+     * @return the index to continue scanning from
+     */
+    private int ScanSupplementary(CharSequence text, int start, EntityConsumer consumer) {
+        int codePoint = Character.codePointAt(text, start);
+        int end = start + Character.charCount(codePoint);
+
+        if ((codePoint >= 0x1F1E6) && (codePoint <= 0x1F1FF)) {
+            // Regional indicator so pair it with the next one to make a flag
+            if (end < text.length()) {
+                int second = Character.codePointAt(text, end);
+                if ((second >= 0x1F1E6) && (second <= 0x1F1FF)) {
+                    end += Character.charCount(second);
+                    Emit(EntityType.EMOJI, Slice(text, start, end), consumer);
+                }
+            }
+        } else if ((codePoint >= 0x1F300) && (codePoint <= 0x1FAFF) && ((codePoint < 0x1F3FB) || (codePoint > 0x1F3FF))) {
+            // Pictographs, emoticons and symbols (but not the skin tone modifiers)
+            Emit(EntityType.EMOJI, Slice(text, start, end), consumer);
+        }
+        return end;
+    }
+
+    /**
+     * Get the string for a run of the text, reusing a recent one if there is an interner.
+     *
+     * @param text  the text
+     * @param start the index of the first character
+     * @param end   the index after the last character
+     * @return the string
+     */
+    private String Slice(CharSequence text, int start, int end) {
+        return (interner != null) ? interner.intern(text, start, end) : text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Count an entity and pass it on.
+     *
+     * @param type     the entity type
+     * @param entity   the entity text
+     * @param consumer the consumer of the entities
+     */
+    private void Emit(EntityType type, String entity, EntityConsumer consumer) {
+        counts[type.ordinal()]++;
+        consumer.accept(type, entity);
+    }
+
+    /**
+     * Check if a character is a (regular expression) word character.
+     *
+     * @param c the character
+     * @return true if it is a word character
+     */
+    private static boolean IsWordChar(char c) {
+        return IsLetter(c) || ((c >= '0') && (c <= '9')) || (c == '_');
+    }
+
+    /**
+     * Check if a character is an ASCII letter.
+     *
+     * @param c the character
+     * @return true if it is a letter
+     */
+    private static boolean IsLetter(char c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+    }
+
+    /**
+     * Check if a character can be part of a host name.
+     *
+     * @param c the character
+     * @return true if it can be part of a host name
+     */
+    private static boolean IsHostChar(char c) {
+        return IsLetter(c) || ((c >= '0') && (c <= '9')) || (c == '-') || (c == '.');
+    }
+
+    /**
+     * Check if a text has a prefix at an index, ignoring case.
+     *
+     * @param text   the text
+     * @param start  the index
+     * @param prefix the lower cased prefix
+     * @return true if it matches
+     */
+    private static boolean RegionMatches(CharSequence text, int start, String prefix) {
+        if (start + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
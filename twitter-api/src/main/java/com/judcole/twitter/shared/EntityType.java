@@ -0,0 +1,27 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The types of entity extracted from the text of a tweet.
+ */
+public enum EntityType {
+    /**
+     * A hashtag such as #java (without the hash).
+     */
+    HASHTAG,
+    /**
+     * A user mention such as @jack (without the at sign).
+     */
+    MENTION,
+    /**
+     * A stock symbol such as $TWTR (without the dollar sign).
+     */
+    CASHTAG,
+    /**
+     * The lower cased domain of a link such as t.co (without any leading www.).
+     */
+    DOMAIN,
+    /**
+     * An emoji (a single pictograph or a flag).
+     */
+    EMOJI
+}
@@ -0,0 +1,45 @@
+package com.judcole.twitter.shared;
+
+import java.util.List;
+
+/**
+ * The class for the statistics of a filtered view of the tweets that mention any of its keywords.
+ */
+public class FilteredViewStats {
+    /**
+     * The name of the view.
+     */
+    public String name;
+    /**
+     * The (lower cased) keywords of the view.
+     */
+    public List<String> keywords;
+    /**
+     * The number of tweets that mentioned at least one of the keywords.
+     */
+    public long matchedTweets;
+    /**
+     * The top hashtags in the matched tweets.
+     */
+    public String[] topHashtags;
+    /**
+     * The estimated counts of the top hashtags (never below the true counts).
+     */
+    public long[] topHashtagCounts;
+
+    /**
+     * Instantiates a new filtered view stats.
+     *
+     * @param name          the name of the view
+     * @param keywords      the keywords of the view
+     * @param matchedTweets the number of tweets matched
+     * @param topSize       the number of top hashtags
+     */
+    public FilteredViewStats(String name, List<String> keywords, long matchedTweets, int topSize) {
+        this.name = name;
+        this.keywords = keywords;
+        this.matchedTweets = matchedTweets;
+        topHashtags = new String[topSize];
+        topHashtagCounts = new long[topSize];
+    }
+}
@@ -0,0 +1,337 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class for the filtered views of the tweets, each counting the tweets that mention any of its keywords and the
+ * top hashtags in them.
+ * <p>
+ * The keywords of all the views are compiled into one keyword automaton, so each tweet is scanned once however many
+ * views and keywords there are. The automaton is rebuilt when a view is added, replaced or removed and swapped in
+ * atomically, so scanning never waits for a change.
+ */
+public class FilteredViews {
+
+    /**
+     * The maximum length of the name of a view.
+     */
+    public static final int MAX_NAME_LENGTH = 100;
+
+    // Maximum number of views
+    private final int maxViews;
+
+    // Maximum number of distinct keywords over all the views
+    private final int maxKeywords;
+
+    // Number of top hashtags tracked for each view
+    private final int topCapacity;
+
+    // Views by name in the order they were added
+    private final Map<String, View> views = new LinkedHashMap<>();
+
+    // Object to use for simple locking when changing the views
+    private final Lock viewsLock = new ReentrantLock();
+
+    // Compiled keywords of the current views (replaced whenever the views change)
+    private volatile Matcher matcher = new Matcher(List.of(), new View[0][]);
+
+    // Collector of the views matched by the current tweet on each thread (reused for each tweet)
+    private final ThreadLocal<MatchCollector> collectors = ThreadLocal.withInitial(MatchCollector::new);
+
+    /**
+     * Instantiates new filtered views.
+     *
+     * @param maxViews    the maximum number of views
+     * @param maxKeywords the maximum number of distinct keywords over all the views
+     * @param topCapacity the number of top hashtags tracked for each view
+     */
+    public FilteredViews(int maxViews, int maxKeywords, int topCapacity) {
+        this.maxViews = maxViews;
+        this.maxKeywords = maxKeywords;
+        this.topCapacity = topCapacity;
+    }
+
+    /**
+     * Add a view or replace the keywords of an existing one (which starts its counts again if they changed).
+     *
+     * @param name     the name of the view
+     * @param keywords the keywords (matched ignoring case and at word boundaries)
+     * @return the statistics of the view
+     */
+    public FilteredViewStats put(String name, List<String> keywords) {
+        if ((name == null) || name.isBlank() || (name.length() > MAX_NAME_LENGTH)) {
+            throw new InvalidParameterException("View names must have 1 to " + MAX_NAME_LENGTH + " characters");
+        }
+        if ((keywords == null) || keywords.isEmpty()) {
+            throw new InvalidParameterException("Views must have at least one keyword");
+        }
+
+        // Lower case and remove duplicates in the same way as the automaton
+        var distinct = new LinkedHashSet<String>();
+        for (var keyword : keywords) {
+            if ((keyword == null) || keyword.isBlank()) {
+                throw new InvalidParameterException("Keywords must not be blank");
+            }
+            distinct.add(keyword.trim().toLowerCase());
+        }
+        var viewKeywords = List.copyOf(distinct);
+
+        viewsLock.lock();
+        try {
+            var existing = views.get(name);
+            if ((existing != null) && existing.keywords.equals(viewKeywords)) {
+                return existing.toStats(0);
+            }
+            if ((existing == null) && (views.size() >= maxViews)) {
+                throw new InvalidParameterException("There can be at most " + maxViews + " views");
+            }
+
+            var updated = new LinkedHashMap<>(views);
+            var view = new View(name, viewKeywords, topCapacity);
+            updated.put(name, view);
+            matcher = Compile(updated.values());
+            views.put(name, view);
+            return view.toStats(0);
+        } finally {
+            viewsLock.unlock();
+        }
+    }
+
+    /**
+     * Remove a view.
+     *
+     * @param name the name of the view
+     * @return true if the view was removed or false if there is no view with the name
+     */
+    public boolean remove(String name) {
+        viewsLock.lock();
+        try {
+            if (views.remove(name) == null) {
+                return false;
+            }
+            matcher = Compile(views.values());
+            return true;
+        } finally {
+            viewsLock.unlock();
+        }
+    }
+
+    /**
+     * Count a tweet in each view with a keyword in its text (concurrent safe).
+     *
+     * @param text     the text of the tweet
+     * @param hashtags the hashtags in the tweet
+     */
+    public void process(CharSequence text, List<String> hashtags) {
+        var current = matcher;
+        if (current.automaton == null) {
+            return;
+        }
+
+        var collector = collectors.get();
+        collector.matcher = current;
+        current.automaton.scan(text, collector);
+
+        for (int i = 0; i < collector.size; i++) {
+            var view = collector.views[i];
+            view.matchedTweets.increment();
+            for (var hashtag : hashtags) {
+                view.topHashtags.increment(hashtag);
+            }
+            collector.views[i] = null;
+        }
+        collector.size = 0;
+    }
+
+    /**
+     * Get the statistics of a view.
+     *
+     * @param name the name of the view
+     * @param top  the number of top hashtags to return (up to the number tracked)
+     * @return the statistics or null if there is no view with the name
+     */
+    public FilteredViewStats getView(String name, int top) {
+        viewsLock.lock();
+        try {
+            var view = views.get(name);
+            return (view == null) ? null : view.toStats(top);
+        } finally {
+            viewsLock.unlock();
+        }
+    }
+
+    /**
+     * Get the statistics of all the views.
+     *
+     * @param top the number of top hashtags to return for each view (up to the number tracked)
+     * @return the statistics in the order the views were added
+     */
+    public List<FilteredViewStats> getViews(int top) {
+        viewsLock.lock();
+        try {
+            var stats = new ArrayList<FilteredViewStats>(views.size());
+            views.values().forEach(view -> stats.add(view.toStats(top)));
+            return stats;
+        } finally {
+            viewsLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of top hashtags tracked for each view.
+     *
+     * @return the number of top hashtags
+     */
+    public int getTopCapacity() {
+        return topCapacity;
+    }
+
+    /**
+     * Get the number of distinct keywords over all the views.
+     *
+     * @return the number of keywords
+     */
+    public int getKeywordCount() {
+        return matcher.keywordViews.length;
+    }
+
+    /**
+     * Compile the keywords of some views into a matcher.
+     *
+     * @param views the views
+     * @return the matcher
+     */
+    private Matcher Compile(Iterable<View> views) {
+        var keywordViews = new LinkedHashMap<String, List<View>>();
+        for (var view : views) {
+            for (var keyword : view.keywords) {
+                keywordViews.computeIfAbsent(keyword, key -> new ArrayList<>()).add(view);
+            }
+        }
+        if (keywordViews.size() > maxKeywords) {
+            throw new InvalidParameterException("There can be at most " + maxKeywords + " keywords over all the views");
+        }
+
+        var viewsByKeyword = new View[keywordViews.size()][];
+        var index = 0;
+        for (var matchedViews : keywordViews.values()) {
+            viewsByKeyword[index++] = matchedViews.toArray(new View[0]);
+        }
+        return new Matcher(new ArrayList<>(keywordViews.keySet()), viewsByKeyword);
+    }
+
+    /**
+     * The class for a view and its counts.
+     */
+    private static class View {
+        // Name of the view
+        private final String name;
+
+        // Distinct lower cased keywords
+        private final List<String> keywords;
+
+        // Number of tweets matched
+        private final LongAdder matchedTweets = new LongAdder();
+
+        // Top hashtags in the matched tweets
+        private final TopHashtagsIndex topHashtags;
+
+        /**
+         * Instantiates a new view.
+         *
+         * @param name        the name of the view
+         * @param keywords    the distinct lower cased keywords
+         * @param topCapacity the number of top hashtags to track
+         */
+        private View(String name, List<String> keywords, int topCapacity) {
+            this.name = name;
+            this.keywords = keywords;
+            topHashtags = new TopHashtagsIndex(topCapacity);
+        }
+
+        /**
+         * Get a snapshot of the statistics of the view.
+         *
+         * @param top the number of top hashtags to return (up to the number tracked)
+         * @return the statistics
+         */
+        private FilteredViewStats toStats(int top) {
+            var stats = new FilteredViewStats(name, keywords, matchedTweets.sum(),
+                    Math.max(0, Math.min(top, topHashtags.getSize())));
+            topHashtags.getTop(stats.topHashtags, stats.topHashtagCounts);
+            return stats;
+        }
+    }
+
+    /**
+     * The class for the compiled keywords of the views.
+     */
+    private static class Matcher {
+        // Automaton finding the keywords (or null if there are none)
+        private final KeywordAutomaton automaton;
+
+        // Views of each keyword in the automaton
+        private final View[][] keywordViews;
+
+        /**
+         * Instantiates a new matcher.
+         *
+         * @param keywords     the distinct keywords
+         * @param keywordViews the views of each keyword
+         */
+        private Matcher(List<String> keywords, View[][] keywordViews) {
+            automaton = keywords.isEmpty() ? null : new KeywordAutomaton(keywords);
+            this.keywordViews = keywordViews;
+        }
+    }
+
+    /**
+     * The class to collect the distinct views matched by the keywords found in a tweet.
+     */
+    private static class MatchCollector implements KeywordAutomaton.MatchConsumer {
+        // Matcher the keywords are from
+        private Matcher matcher;
+
+        // Views matched so far
+        private View[] views = new View[16];
+
+        // Number of views matched so far
+        private int size;
+
+        @Override
+        public void accept(int keyword) {
+            for (var view : matcher.keywordViews[keyword]) {
+                if (!Contains(view)) {
+                    if (size == views.length) {
+                        views = Arrays.copyOf(views, size * 2);
+                    }
+                    views[size++] = view;
+                }
+            }
+        }
+
+        /**
+         * Check whether a view has already been matched.
+         *
+         * @param view the view
+         * @return true if it has been matched
+         */
+        private boolean Contains(View view) {
+            for (int i = 0; i < size; i++) {
+                if (views[i] == view) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The class for the status of a diagnostic flight recording.
+ */
+public class FlightRecordingStatus {
+    /**
+     * The path of the file the recording is dumped to when it stops.
+     */
+    public String file;
+    /**
+     * The time the recording started in milliseconds since the epoch.
+     */
+    public long startMillis;
+    /**
+     * The length of the recording in milliseconds.
+     */
+    public long durationMillis;
+    /**
+     * The maximum size of the recording in bytes.
+     */
+    public long maxSizeBytes;
+    /**
+     * The state of the recording (RUNNING, or CLOSED once the file has been written).
+     */
+    public String state;
+
+    /**
+     * Instantiates a new flight recording status.
+     *
+     * @param file           the path of the file
+     * @param startMillis    the time the recording started
+     * @param durationMillis the length of the recording
+     * @param maxSizeBytes   the maximum size of the recording
+     * @param state          the state of the recording
+     */
+    public FlightRecordingStatus(String file, long startMillis, long durationMillis, long maxSizeBytes, String state) {
+        this.file = file;
+        this.startMillis = startMillis;
+        this.durationMillis = durationMillis;
+        this.maxSizeBytes = maxSizeBytes;
+        this.state = state;
+    }
+}
@@ -0,0 +1,553 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class to count the pairs of hashtags that appear in the same tweets in a fixed amount of memory.
+ * <p>
+ * The pairs are counted with the Space-Saving heavy hitters algorithm: up to a fixed number of pairs are counted and
+ * a new pair replaces the pair with the lowest count, inheriting that count as its possible error. Any pair seen in
+ * more than 1 / capacity of all the pairs is always kept, and each count is never below its true count and never
+ * more than its error above it. The pairs are held in fixed arrays with a min-heap on the counts and an open
+ * addressing table from the pair hashes, so an update is O(log capacity).
+ * <p>
+ * Large sketches are split into stripes chosen by the pair hash, each with its own lock and a share of the capacity,
+ * so the workers rarely wait for each other and the bounds above hold within each stripe. Each stripe also links the
+ * pairs of each hashtag together, so finding the partners of a hashtag only visits its own pairs.
+ */
+public class HashtagCooccurrenceSketch {
+
+    // Maximum number of distinct hashtags in a tweet that are paired (the rest are ignored)
+    private static final int MAX_TWEET_HASHTAGS = 16;
+
+    // Maximum number of stripes (a power of two)
+    private static final int MAX_STRIPES = 16;
+
+    // Minimum capacity of a stripe (smaller sketches have fewer stripes)
+    private static final int MIN_STRIPE_CAPACITY = 1024;
+
+    // Maximum number of pairs counted
+    private final int capacity;
+
+    // Stripes of the pairs (selected by the pair hash)
+    private final Stripe[] stripes;
+
+    // Mask for a stripe index
+    private final int stripeMask;
+
+    // Buffers for the distinct hashtags of the current tweet on each thread (reused for each tweet)
+    private final ThreadLocal<TweetHashtags> tweetBuffers = ThreadLocal.withInitial(TweetHashtags::new);
+
+    /**
+     * Instantiates a new hashtag co-occurrence sketch.
+     *
+     * @param capacity the maximum number of pairs counted
+     */
+    public HashtagCooccurrenceSketch(int capacity) {
+        if ((capacity <= 0) || (capacity > (1 << 28))) {
+            throw new InvalidParameterException("Invalid co-occurrence sketch capacity");
+        }
+        this.capacity = capacity;
+
+        var stripeCount = Math.max(1, Math.min(MAX_STRIPES, Integer.highestOneBit(capacity / MIN_STRIPE_CAPACITY)));
+        stripes = new Stripe[stripeCount];
+        stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++) {
+            // Share the capacity out exactly
+            stripes[i] = new Stripe(capacity / stripeCount + ((i < capacity % stripeCount) ? 1 : 0));
+        }
+    }
+
+    /**
+     * Count each pair of distinct hashtags in a tweet (concurrent safe).
+     *
+     * @param hashtags the hashtags in the tweet
+     */
+    public void add(List<String> hashtags) {
+        if (hashtags.size() < 2) {
+            return;
+        }
+
+        // Collect the distinct hashtags (ignoring case) in sorted order so each pair has one form
+        var tweet = tweetBuffers.get();
+        var tweetHashtags = tweet.hashtags;
+        var tweetHashes = tweet.hashes;
+        int distinct = 0;
+        for (int i = 0; (i < hashtags.size()) && (distinct < MAX_TWEET_HASHTAGS); i++) {
+            var hashtag = hashtags.get(i).toLowerCase();
+            int j = distinct;
+            while ((j > 0) && (tweetHashtags[j - 1].compareTo(hashtag) > 0)) {
+                j--;
+            }
+            if ((j > 0) && tweetHashtags[j - 1].equals(hashtag)) {
+                continue;
+            }
+            System.arraycopy(tweetHashtags, j, tweetHashtags, j + 1, distinct - j);
+            System.arraycopy(tweetHashes, j, tweetHashes, j + 1, distinct - j);
+            tweetHashtags[j] = hashtag;
+            tweetHashes[j] = NonZero(HyperLogLog.hash(hashtag));
+            distinct++;
+        }
+
+        try {
+            for (int i = 0; i < distinct; i++) {
+                for (int j = i + 1; j < distinct; j++) {
+                    var pairHash = PairHash(tweetHashes[i], tweetHashes[j]);
+                    var stripe = stripes[(int) (pairHash >>> 32) & stripeMask];
+                    CollectorEvents.lock(stripe.stripeLock, "cooccurrenceSketch");
+                    try {
+                        stripe.AddPair(tweetHashtags[i], tweetHashes[i], tweetHashtags[j], tweetHashes[j], pairHash);
+                    } finally {
+                        stripe.stripeLock.unlock();
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < distinct; i++) {
+                tweetHashtags[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Get the hashtags that most often appear in the same tweets as a hashtag (concurrent safe).
+     *
+     * @param hashtag the hashtag
+     * @param limit   the maximum number of partners to return
+     * @return the partners in descending order of count
+     */
+    public List<HashtagPartner> getPartners(String hashtag, int limit) {
+        var key = hashtag.toLowerCase();
+        var keyHash = NonZero(HyperLogLog.hash(key));
+        var partners = new ArrayList<HashtagPartner>();
+
+        for (var stripe : stripes) {
+            stripe.stripeLock.lock();
+            try {
+                stripe.CollectPartners(key, keyHash, partners);
+            } finally {
+                stripe.stripeLock.unlock();
+            }
+        }
+
+        partners.sort(Comparator.comparingLong((HashtagPartner partner) -> partner.count).reversed()
+                .thenComparing(partner -> partner.hashtag));
+        return (partners.size() > limit) ? new ArrayList<>(partners.subList(0, Math.max(0, limit))) : partners;
+    }
+
+    /**
+     * Get the maximum number of pairs counted.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of pairs being counted (concurrent safe).
+     *
+     * @return the number of pairs
+     */
+    public int getSize() {
+        int size = 0;
+        for (var stripe : stripes) {
+            stripe.stripeLock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.stripeLock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the total number of pairs seen (concurrent safe).
+     *
+     * @return the total pairs
+     */
+    public long getTotalPairs() {
+        long totalPairs = 0;
+        for (var stripe : stripes) {
+            stripe.stripeLock.lock();
+            try {
+                totalPairs += stripe.totalPairs;
+            } finally {
+                stripe.stripeLock.unlock();
+            }
+        }
+        return totalPairs;
+    }
+
+    /**
+     * Combine the hashes of two hashtags (in sorted order) into a non-zero pair hash.
+     *
+     * @param firstHash  the hash of the first hashtag
+     * @param secondHash the hash of the second hashtag
+     * @return the pair hash
+     */
+    private static long PairHash(long firstHash, long secondHash) {
+        var hash = firstHash * 0x9e3779b97f4a7c15L + secondHash;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return NonZero(hash);
+    }
+
+    /**
+     * Make a hash non-zero so it can be used in an open addressing table.
+     *
+     * @param hash the hash
+     * @return the hash or 1 if it was zero
+     */
+    private static long NonZero(long hash) {
+        return (hash == 0) ? 1 : hash;
+    }
+
+    /**
+     * The class for a stripe of the pairs with its own lock, heap, pair table and hashtag links.
+     */
+    private static class Stripe {
+        // No link (the end of a list of hashtag pairs)
+        private static final int NO_LINK = -1;
+
+        // Object to use for simple locking when updating the stripe
+        private final Lock stripeLock = new ReentrantLock();
+
+        // Maximum number of pairs counted in the stripe
+        private final int capacity;
+
+        // First (lower cased) hashtag of the pair in each slot
+        private final String[] firstHashtags;
+
+        // Second (lower cased) hashtag of the pair in each slot
+        private final String[] secondHashtags;
+
+        // Hash of the pair in each slot
+        private final long[] pairHashes;
+
+        // Count of the pair in each slot
+        private final long[] counts;
+
+        // Maximum overcount of the pair in each slot
+        private final long[] errors;
+
+        // Slots in min-heap order of count
+        private final int[] heap;
+
+        // Position of each slot in the heap
+        private final int[] heapPositions;
+
+        // Table from the pair hashes to their slots
+        private final HashTable pairTable;
+
+        // Table from the hashtag hashes to the first link in the list of their pairs
+        private final HashTable hashtagTable;
+
+        // Hashtag hash of each link (a link is twice the slot, plus one for the second hashtag of the pair)
+        private final long[] linkHashes;
+
+        // Next link in the list of pairs for the same hashtag
+        private final int[] nextLinks;
+
+        // Previous link in the list of pairs for the same hashtag
+        private final int[] previousLinks;
+
+        // Number of pairs being counted
+        private int size;
+
+        // Total number of pairs seen
+        private long totalPairs;
+
+        /**
+         * Instantiates a new stripe.
+         *
+         * @param capacity the maximum number of pairs counted in the stripe
+         */
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            firstHashtags = new String[capacity];
+            secondHashtags = new String[capacity];
+            pairHashes = new long[capacity];
+            counts = new long[capacity];
+            errors = new long[capacity];
+            heap = new int[capacity];
+            heapPositions = new int[capacity];
+            linkHashes = new long[2 * capacity];
+            nextLinks = new int[2 * capacity];
+            previousLinks = new int[2 * capacity];
+
+            // Keep the tables at most half full (there are up to two hashtags for each pair)
+            pairTable = new HashTable(Integer.highestOneBit(capacity) << 2);
+            hashtagTable = new HashTable(Integer.highestOneBit(capacity) << 3);
+        }
+
+        /**
+         * Count a pair of hashtags, replacing the pair with the lowest count if it is new and the stripe is full.
+         *
+         * @param first      the first hashtag (in sorted order)
+         * @param firstHash  the hash of the first hashtag
+         * @param second     the second hashtag
+         * @param secondHash the hash of the second hashtag
+         * @param pairHash   the hash of the pair
+         */
+        private void AddPair(String first, long firstHash, String second, long secondHash, long pairHash) {
+            totalPairs++;
+
+            var index = pairTable.find(pairHash);
+            if (pairTable.hashes[index] != 0) {
+                // Already counted so move it down the heap past any lower counts
+                var slot = pairTable.values[index];
+                counts[slot]++;
+                SiftDown(heapPositions[slot]);
+                return;
+            }
+
+            int slot;
+            if (size < capacity) {
+                // Use a new slot at the end of the heap
+                slot = size++;
+                counts[slot] = 1;
+                errors[slot] = 0;
+                heap[slot] = slot;
+                heapPositions[slot] = slot;
+                SetPair(slot, first, firstHash, second, secondHash, pairHash, index);
+                SiftUp(slot);
+            } else {
+                // Replace the pair with the lowest count, inheriting its count as the error
+                slot = heap[0];
+                pairTable.remove(pairTable.find(pairHashes[slot]));
+                Unlink(2 * slot);
+                Unlink(2 * slot + 1);
+                errors[slot] = counts[slot];
+                counts[slot]++;
+                SetPair(slot, first, firstHash, second, secondHash, pairHash, pairTable.find(pairHash));
+                SiftDown(0);
+            }
+        }
+
+        /**
+         * Add the partners of a hashtag in the stripe to a list.
+         *
+         * @param key      the lower cased hashtag
+         * @param keyHash  the hash of the hashtag
+         * @param partners the list of partners
+         */
+        private void CollectPartners(String key, long keyHash, List<HashtagPartner> partners) {
+            var index = hashtagTable.find(keyHash);
+            var link = (hashtagTable.hashes[index] == 0) ? NO_LINK : hashtagTable.values[index];
+            while (link != NO_LINK) {
+                var slot = link >>> 1;
+                var isFirst = (link & 1) == 0;
+
+                // Check the hashtag itself in case another one has the same hash
+                if ((isFirst ? firstHashtags[slot] : secondHashtags[slot]).equals(key)) {
+                    partners.add(new HashtagPartner(isFirst ? secondHashtags[slot] : firstHashtags[slot],
+                            counts[slot], counts[slot] - errors[slot]));
+                }
+                link = nextLinks[link];
+            }
+        }
+
+        /**
+         * Set the pair in a slot and add it to the tables.
+         *
+         * @param slot       the slot
+         * @param first      the first hashtag
+         * @param firstHash  the hash of the first hashtag
+         * @param second     the second hashtag
+         * @param secondHash the hash of the second hashtag
+         * @param pairHash   the hash of the pair
+         * @param index      the empty pair table entry for the pair
+         */
+        private void SetPair(int slot, String first, long firstHash, String second, long secondHash, long pairHash, int index) {
+            firstHashtags[slot] = first;
+            secondHashtags[slot] = second;
+            pairHashes[slot] = pairHash;
+            pairTable.hashes[index] = pairHash;
+            pairTable.values[index] = slot;
+            Link(2 * slot, firstHash);
+            Link(2 * slot + 1, secondHash);
+        }
+
+        /**
+         * Add a link to the front of the list of pairs for its hashtag.
+         *
+         * @param link        the link
+         * @param hashtagHash the hash of the hashtag
+         */
+        private void Link(int link, long hashtagHash) {
+            linkHashes[link] = hashtagHash;
+            previousLinks[link] = NO_LINK;
+
+            var index = hashtagTable.find(hashtagHash);
+            if (hashtagTable.hashes[index] == 0) {
+                // The first pair for the hashtag
+                hashtagTable.hashes[index] = hashtagHash;
+                nextLinks[link] = NO_LINK;
+            } else {
+                var head = hashtagTable.values[index];
+                nextLinks[link] = head;
+                previousLinks[head] = link;
+            }
+            hashtagTable.values[index] = link;
+        }
+
+        /**
+         * Remove a link from the list of pairs for its hashtag (and the hashtag if it has no pairs left).
+         *
+         * @param link the link
+         */
+        private void Unlink(int link) {
+            var previous = previousLinks[link];
+            var next = nextLinks[link];
+            if (previous != NO_LINK) {
+                nextLinks[previous] = next;
+            } else {
+                var index = hashtagTable.find(linkHashes[link]);
+                if (next == NO_LINK) {
+                    hashtagTable.remove(index);
+                } else {
+                    hashtagTable.values[index] = next;
+                }
+            }
+            if (next != NO_LINK) {
+                previousLinks[next] = previous;
+            }
+        }
+
+        /**
+         * Move a slot up the heap until its parent's count is not above its count.
+         *
+         * @param position the position of the slot in the heap
+         */
+        private void SiftUp(int position) {
+            var slot = heap[position];
+            while (position > 0) {
+                var parent = (position - 1) >>> 1;
+                if (counts[heap[parent]] <= counts[slot]) {
+                    break;
+                }
+                MoveInHeap(heap[parent], position);
+                position = parent;
+            }
+            MoveInHeap(slot, position);
+        }
+
+        /**
+         * Move a slot down the heap until its children's counts are not below its count.
+         *
+         * @param position the position of the slot in the heap
+         */
+        private void SiftDown(int position) {
+            var slot = heap[position];
+            while (true) {
+                var child = 2 * position + 1;
+                if (child >= size) {
+                    break;
+                }
+                if ((child + 1 < size) && (counts[heap[child + 1]] < counts[heap[child]])) {
+                    child++;
+                }
+                if (counts[heap[child]] >= counts[slot]) {
+                    break;
+                }
+                MoveInHeap(heap[child], position);
+                position = child;
+            }
+            MoveInHeap(slot, position);
+        }
+
+        /**
+         * Put a slot at a position in the heap.
+         *
+         * @param slot     the slot
+         * @param position the position
+         */
+        private void MoveInHeap(int slot, int position) {
+            heap[position] = slot;
+            heapPositions[slot] = position;
+        }
+    }
+
+    /**
+     * The class for an open addressing table from non-zero hashes to int values.
+     */
+    private static class HashTable {
+        // Hashes in the table (0 for an empty entry)
+        private final long[] hashes;
+
+        // Value of each entry
+        private final int[] values;
+
+        // Mask for an index into the table
+        private final int mask;
+
+        /**
+         * Instantiates a new table.
+         *
+         * @param size the number of entries (a power of two)
+         */
+        private HashTable(int size) {
+            hashes = new long[size];
+            values = new int[size];
+            mask = size - 1;
+        }
+
+        /**
+         * Find the entry for a hash or the empty entry where it would go.
+         *
+         * @param hash the hash
+         * @return the index of the entry
+         */
+        private int find(long hash) {
+            var index = (int) hash & mask;
+            while ((hashes[index] != 0) && (hashes[index] != hash)) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * Remove an entry, moving back any later entries in its run that would no longer be found.
+         *
+         * @param index the index of the entry
+         */
+        private void remove(int index) {
+            var next = index;
+            while (true) {
+                next = (next + 1) & mask;
+                if (hashes[next] == 0) {
+                    break;
+                }
+
+                // Move the entry back unless its home is cyclically after the gap and not after it
+                var home = (int) hashes[next] & mask;
+                var stays = (index <= next) ? ((index < home) && (home <= next)) : ((index < home) || (home <= next));
+                if (!stays) {
+                    hashes[index] = hashes[next];
+                    values[index] = values[next];
+                    index = next;
+                }
+            }
+            hashes[index] = 0;
+        }
+    }
+
+    /**
+     * The class for the buffers of the distinct hashtags in a tweet.
+     */
+    private static class TweetHashtags {
+        // Distinct (lower cased) hashtags of the tweet in sorted order
+        private final String[] hashtags = new String[MAX_TWEET_HASHTAGS];
+
+        // Hashes of the distinct hashtags
+        private final long[] hashes = new long[MAX_TWEET_HASHTAGS];
+    }
+}
@@ -0,0 +1,26 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The class for a hashtag and its count.
+ */
+public class HashtagCount {
+    /**
+     * The (lower cased) hashtag.
+     */
+    public String hashtag;
+    /**
+     * The number of times the hashtag has been received.
+     */
+    public long count;
+
+    /**
+     * Instantiates a new hashtag count.
+     *
+     * @param hashtag the hashtag
+     * @param count   the count
+     */
+    public HashtagCount(String hashtag, long count) {
+        this.hashtag = hashtag;
+        this.count = count;
+    }
+}
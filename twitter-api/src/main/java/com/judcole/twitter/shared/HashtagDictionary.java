@@ -0,0 +1,66 @@
+package com.judcole.twitter.shared;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class for the default (on heap) dictionary of hashtags and their counts.
+ */
+public class HashtagDictionary implements IHashtagDictionary {
+
+    // Approximate heap bytes used by each entry apart from its characters (map node, table slot, String, array and AtomicLong)
+    private static final long ENTRY_OVERHEAD_BYTES = 104;
+
+    // Dictionary of all Hashtags and their counts
+    private final ConcurrentHashMap<String, AtomicLong> hashtagCounts = new ConcurrentHashMap<>();
+
+    // Total number of characters in all the hashtags
+    private final AtomicLong totalKeyLength = new AtomicLong();
+
+    /**
+     * Increment the count for a hashtag, adding it to the dictionary if it is new.
+     *
+     * @param hashtag the (lower cased) hashtag
+     * @return the new count for the hashtag
+     */
+    public long increment(String hashtag) {
+        // Increment the counter in place so existing hashtags do not box a new count each time
+        long newCount = hashtagCounts.computeIfAbsent(hashtag, key -> new AtomicLong()).incrementAndGet();
+
+        if (newCount == 1) {
+            // A new hashtag so remember its length for the memory usage
+            totalKeyLength.addAndGet(hashtag.length());
+        }
+
+        return newCount;
+    }
+
+    /**
+     * Get the count for a hashtag.
+     *
+     * @param hashtag the (lower cased) hashtag
+     * @return the count or zero if the hashtag is not in the dictionary
+     */
+    public long getCount(String hashtag) {
+        var count = hashtagCounts.get(hashtag);
+        return (count == null) ? 0 : count.get();
+    }
+
+    /**
+     * Get the number of distinct hashtags in the dictionary.
+     *
+     * @return the number of hashtags
+     */
+    public long getSize() {
+        return hashtagCounts.mappingCount();
+    }
+
+    /**
+     * Get the approximate number of bytes used to store the dictionary.
+     *
+     * @return the number of bytes
+     */
+    public long getMemoryUsage() {
+        return getSize() * ENTRY_OVERHEAD_BYTES + totalKeyLength.get();
+    }
+}
@@ -0,0 +1,93 @@
+package com.judcole.twitter.shared;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+
+/**
+ * The class to generate a shared (singleton) hashtag dictionary instance for the sampled stream.
+ */
+@Component
+public class HashtagDictionaryFactory {
+
+    // Shared hashtag dictionary
+    private volatile IHashtagDictionary sharedDictionary = null;
+
+    // Shared prefix index of the hashtags in the dictionary (or null if prefix searches are not enabled)
+    private volatile HashtagPrefixIndex sharedPrefixIndex = null;
+
+    /**
+     * Gets a shared hashtag dictionary instance.
+     *
+     * @param offHeap         true to store the dictionary outside the Java heap
+     * @param mappedDirectory the directory for memory-mapped off-heap tables or null to use direct buffers
+     * @return the dictionary instance
+     */
+    public synchronized IHashtagDictionary getDictionaryInstance(boolean offHeap, Path mappedDirectory) {
+        if (sharedDictionary == null) {
+            // Allocate a new instance of the specified type
+            sharedDictionary = offHeap
+                    ? new OffHeapHashtagDictionary(OffHeapHashtagDictionary.DEFAULT_SEGMENT_COUNT, mappedDirectory)
+                    : new HashtagDictionary();
+        } else {
+            // Check for a mismatch in the dictionary type
+            if ((sharedDictionary instanceof OffHeapHashtagDictionary) != offHeap) {
+                throw new InvalidParameterException("Mismatched hashtag dictionary type");
+            }
+        }
+
+        // Return the singleton shared dictionary instance
+        return sharedDictionary;
+    }
+
+    /**
+     * Creates a new (unshared) dictionary for the entities of a type other than hashtags, stored in the same way as
+     * the shared hashtag dictionary so the off-heap setting bounds the heap used by every entity type.
+     *
+     * @param type            the entity type
+     * @param offHeap         true to store the dictionary outside the Java heap
+     * @param mappedDirectory the directory for memory-mapped off-heap tables (each type uses a subdirectory of its own)
+     *                        or null to use direct buffers
+     * @return the dictionary instance
+     */
+    public IHashtagDictionary createEntityDictionary(EntityType type, boolean offHeap, Path mappedDirectory) {
+        if (!offHeap) {
+            return new HashtagDictionary();
+        }
+        var typeDirectory = (mappedDirectory == null) ? null : mappedDirectory.resolve(type.name().toLowerCase());
+        return new OffHeapHashtagDictionary(OffHeapHashtagDictionary.DEFAULT_SEGMENT_COUNT, typeDirectory);
+    }
+
+    /**
+     * Gets the shared hashtag dictionary instance if it has been created.
+     *
+     * @return the dictionary instance or null if not created yet
+     */
+    public IHashtagDictionary getDictionaryInstance() {
+        return sharedDictionary;
+    }
+
+    /**
+     * Gets a shared prefix index of the hashtags in the dictionary, creating it if needed.
+     * <p>
+     * The index holds every distinct hashtag on the heap so it is only created when prefix searches are wanted.
+     *
+     * @return the prefix index instance
+     */
+    public synchronized HashtagPrefixIndex createPrefixIndexInstance() {
+        if (sharedPrefixIndex == null) {
+            sharedPrefixIndex = new HashtagPrefixIndex();
+        }
+        return sharedPrefixIndex;
+    }
+
+    /**
+     * Gets the shared prefix index of the hashtags in the dictionary if it has been created.
+     *
+     * @return the prefix index instance or null if prefix searches are not enabled
+     */
+    public HashtagPrefixIndex getPrefixIndexInstance() {
+        return sharedPrefixIndex;
+    }
+}
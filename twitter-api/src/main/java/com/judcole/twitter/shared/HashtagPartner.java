@@ -0,0 +1,32 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The class for a hashtag that appears in the same tweets as another hashtag.
+ */
+public class HashtagPartner {
+    /**
+     * The (lower cased) partner hashtag.
+     */
+    public String hashtag;
+    /**
+     * The estimated number of tweets with both hashtags (never below the true number).
+     */
+    public long count;
+    /**
+     * The guaranteed number of tweets with both hashtags (never above the true number).
+     */
+    public long minCount;
+
+    /**
+     * Instantiates a new hashtag partner.
+     *
+     * @param hashtag  the partner hashtag
+     * @param count    the estimated number of tweets with both hashtags
+     * @param minCount the guaranteed number of tweets with both hashtags
+     */
+    public HashtagPartner(String hashtag, long count, long minCount) {
+        this.hashtag = hashtag;
+        this.count = count;
+        this.minCount = minCount;
+    }
+}
@@ -0,0 +1,55 @@
+package com.judcole.twitter.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The class for a sorted index of the distinct hashtags to support prefix searches.
+ * <p>
+ * The index is a lock-free skip list so hashtags can be added by the counting path while
+ * searches read it concurrently without blocking or copying the dictionary.
+ */
+public class HashtagPrefixIndex {
+
+    // Sorted set of all the distinct (lower cased) hashtags
+    private final ConcurrentSkipListSet<String> hashtags = new ConcurrentSkipListSet<>();
+
+    /**
+     * Add a new hashtag to the index.
+     *
+     * @param hashtag the (lower cased) hashtag
+     */
+    public void add(String hashtag) {
+        hashtags.add(hashtag);
+    }
+
+    /**
+     * Find the hashtags starting with a prefix in alphabetical order.
+     *
+     * @param prefix the (lower cased) prefix
+     * @param limit  the maximum number of hashtags to return
+     * @return the matching hashtags
+     */
+    public List<String> findByPrefix(String prefix, int limit) {
+        var result = new ArrayList<String>();
+
+        // Walk the skip list from the first hashtag at or after the prefix until it no longer matches
+        for (var hashtag : hashtags.tailSet(prefix)) {
+            if ((result.size() >= limit) || !hashtag.startsWith(prefix)) {
+                break;
+            }
+            result.add(hashtag);
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of hashtags in the index.
+     *
+     * @return the number of hashtags
+     */
+    public long getSize() {
+        return hashtags.size();
+    }
+}
@@ -0,0 +1,227 @@
+package com.judcole.twitter.shared;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Class for a sealed period of hashtag counts stored as a compact columnar file that is read by memory-mapping it.
+ * <p>
+ * The file is a fixed header followed by a column of counts, a column of key offsets and the UTF-8 keys themselves,
+ * all sorted by the unsigned bytes of the keys. Entries can be read by index without parsing the file and several
+ * files can be merged in one pass, so a range of periods is answered without loading them onto the heap.
+ */
+class HashtagRollupFile implements IHashtagCountSource {
+
+    // Marker at the start of each file ("HRUP")
+    private static final int MAGIC = 0x48525550;
+
+    // Version of the file layout
+    private static final int VERSION = 1;
+
+    // Size of the header (magic, version, period start, period length, entry count, padding and total count)
+    private static final int HEADER_BYTES = 40;
+
+    // Position of the entry count in the header
+    private static final int ENTRY_COUNT_POSITION = 24;
+
+    // Position of the total count in the header
+    private static final int TOTAL_COUNT_POSITION = 32;
+
+    // Mapped contents of the file
+    private final MappedByteBuffer buffer;
+
+    // Start of the period in milliseconds since the epoch
+    private final long periodStartMillis;
+
+    // Length of the period in milliseconds
+    private final long periodMillis;
+
+    // Number of entries
+    private final int entryCount;
+
+    // Total of the counts
+    private final long totalCount;
+
+    // Position of the key offsets column
+    private final int offsetsPosition;
+
+    // Position of the keys
+    private final int keysPosition;
+
+    /**
+     * Instantiates a new hashtag rollup file by memory-mapping an existing file.
+     *
+     * @param path the path of the file
+     * @throws IOException the IO exception if the file cannot be read or is not a rollup file
+     */
+    HashtagRollupFile(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid rollup file size: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a rollup file: " + path);
+        }
+        periodStartMillis = buffer.getLong(8);
+        periodMillis = buffer.getLong(16);
+        entryCount = buffer.getInt(ENTRY_COUNT_POSITION);
+        totalCount = buffer.getLong(TOTAL_COUNT_POSITION);
+        if (entryCount < 0 || entryCount > (buffer.capacity() - HEADER_BYTES) / (Long.BYTES + Integer.BYTES)) {
+            throw new IOException("Corrupt rollup file: " + path);
+        }
+        offsetsPosition = HEADER_BYTES + entryCount * Long.BYTES;
+        keysPosition = offsetsPosition + (entryCount + 1) * Integer.BYTES;
+        if (keysPosition > buffer.capacity()
+                || keysPosition + buffer.getInt(offsetsPosition + entryCount * Integer.BYTES) != buffer.capacity()) {
+            throw new IOException("Corrupt rollup file: " + path);
+        }
+    }
+
+    /**
+     * Get the start of the period.
+     *
+     * @return the start in milliseconds since the epoch
+     */
+    long getPeriodStartMillis() {
+        return periodStartMillis;
+    }
+
+    /**
+     * Get the length of the period.
+     *
+     * @return the length in milliseconds
+     */
+    long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    @Override
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Get the total of the counts.
+     *
+     * @return the number of hashtags counted in the period
+     */
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    public long getCount(int index) {
+        return buffer.getLong(HEADER_BYTES + index * Long.BYTES);
+    }
+
+    @Override
+    public byte[] getKey(int index) {
+        var start = buffer.getInt(offsetsPosition + index * Integer.BYTES);
+        var end = buffer.getInt(offsetsPosition + (index + 1) * Integer.BYTES);
+        var key = new byte[end - start];
+        buffer.get(keysPosition + start, key);
+        return key;
+    }
+
+    /**
+     * Write the sorted entries of a sealed period to a file, replacing it atomically so that readers never see part
+     * of a file.
+     *
+     * @param path              the path of the file
+     * @param periodStartMillis the start of the period in milliseconds since the epoch
+     * @param periodMillis      the length of the period in milliseconds
+     * @param entries           the entries sorted by the unsigned bytes of their keys
+     * @throws IOException the IO exception if the file cannot be written
+     */
+    static void write(Path path, long periodStartMillis, long periodMillis, Entries entries) throws IOException {
+        var header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(periodStartMillis).putLong(periodMillis)
+                .putInt(entries.size).putInt(0).putLong(entries.totalCount).flip();
+
+        var counts = ByteBuffer.allocate(entries.size * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        counts.asLongBuffer().put(entries.counts, 0, entries.size);
+        var offsets = ByteBuffer.allocate((entries.size + 1) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        offsets.asIntBuffer().put(entries.offsets, 0, entries.size + 1);
+        var keys = ByteBuffer.wrap(entries.keys, 0, entries.offsets[entries.size]);
+
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            var buffers = new ByteBuffer[]{header, counts, offsets, keys};
+            var remaining = HEADER_BYTES + counts.remaining() + offsets.remaining() + keys.remaining();
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The class to collect the sorted entries of a period before they are written.
+     */
+    static class Entries implements IHashtagCountSource {
+        // Counts of the entries
+        private long[] counts = new long[64];
+
+        // Start of each key in the key bytes (plus the end of the last key)
+        private int[] offsets = new int[65];
+
+        // UTF-8 bytes of the keys
+        private byte[] keys = new byte[1024];
+
+        // Number of entries
+        private int size;
+
+        // Total of the counts
+        private long totalCount;
+
+        /**
+         * Add the next entry (in key order).
+         *
+         * @param key   the UTF-8 key
+         * @param count the count
+         */
+        void add(byte[] key, long count) {
+            if (size == counts.length) {
+                counts = Arrays.copyOf(counts, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2 + 1);
+            }
+            var start = offsets[size];
+            if (start + key.length > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, start + key.length));
+            }
+            System.arraycopy(key, 0, keys, start, key.length);
+            counts[size] = count;
+            offsets[++size] = start + key.length;
+            totalCount += count;
+        }
+
+        @Override
+        public int getEntryCount() {
+            return size;
+        }
+
+        @Override
+        public byte[] getKey(int index) {
+            return Arrays.copyOfRange(keys, offsets[index], offsets[index + 1]);
+        }
+
+        @Override
+        public long getCount(int index) {
+            return counts[index];
+        }
+    }
+}
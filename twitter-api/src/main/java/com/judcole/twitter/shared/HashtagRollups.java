@@ -0,0 +1,667 @@
+package com.judcole.twitter.shared;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Class to roll the hashtag counts up into hourly and daily periods that are kept in local files, so the top hashtags
+ * can be found for any historical time range.
+ * <p>
+ * Hashtags are counted in per-minute buckets in memory. Once an hour (plus a short delay for stragglers) has passed
+ * its minutes are sealed into an hour file, and once a day has passed its hours are merged into a day file. The files
+ * are sorted by hashtag so any number of them can be merged in one streaming pass, with a day file standing in for
+ * the 24 hour files it covers. Hour files are kept for a shorter time than day files to bound the disk used.
+ */
+public class HashtagRollups {
+
+    /**
+     * The length of a minute bucket in milliseconds.
+     */
+    public static final long MINUTE_MILLIS = 60 * 1000;
+
+    /**
+     * The length of an hour rollup in milliseconds.
+     */
+    public static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+    /**
+     * The length of a day rollup in milliseconds.
+     */
+    public static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    // Time after the end of an hour before it is sealed (later hashtags for it are dropped)
+    private static final long SEAL_DELAY_MILLIS = MINUTE_MILLIS;
+
+    // File name prefix of the hour rollups
+    private static final String HOUR_PREFIX = "hour-";
+
+    // File name prefix of the day rollups
+    private static final String DAY_PREFIX = "day-";
+
+    // File name suffix of the rollups
+    private static final String SUFFIX = ".rollup";
+
+    // Format of the (UTC) hour in the hour file names
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HH").withZone(ZoneOffset.UTC);
+
+    // Order of the ranked hashtags with the one to evict first at the head
+    private static final Comparator<RankedHashtag> EVICTION_ORDER =
+            Comparator.<RankedHashtag>comparingLong(ranked -> ranked.count)
+                    .thenComparing((first, second) -> Arrays.compareUnsigned(second.key, first.key));
+
+    // Directory holding the rollup files
+    private final Path directory;
+
+    // Time to keep the hour files for in milliseconds
+    private final long hourRetentionMillis;
+
+    // Time to keep the day files for in milliseconds
+    private final long dayRetentionMillis;
+
+    // Unsealed minute buckets by the start of each minute
+    private final ConcurrentSkipListMap<Long, MinuteBucket> minutes = new ConcurrentSkipListMap<>();
+
+    // Bucket of the minute most recently recorded into (to skip the map lookup for each hashtag)
+    private volatile MinuteBucket currentMinute;
+
+    // Hour files by the start of each hour
+    private final ConcurrentSkipListMap<Long, Path> hourFiles = new ConcurrentSkipListMap<>();
+
+    // Day files by the start of each day
+    private final ConcurrentSkipListMap<Long, Path> dayFiles = new ConcurrentSkipListMap<>();
+
+    // Lock so the files are not replaced or deleted while a query is opening them
+    private final ReentrantReadWriteLock filesLock = new ReentrantReadWriteLock();
+
+    // End of the last sealed hour (hashtags received before it are dropped)
+    private volatile long sealedBeforeMillis;
+
+    // Number of hashtags dropped because their hour had already been sealed
+    private final LongAdder lateHashtags = new LongAdder();
+
+    /**
+     * Instantiates new hashtag rollups using the files already in a directory.
+     *
+     * @param directory           the directory holding the rollup files (created if needed)
+     * @param hourRetentionMillis the time to keep the hour files for in milliseconds
+     * @param dayRetentionMillis  the time to keep the day files for in milliseconds
+     * @throws IOException the IO exception if the directory cannot be created or read
+     */
+    public HashtagRollups(Path directory, long hourRetentionMillis, long dayRetentionMillis) throws IOException {
+        this.directory = directory;
+        this.hourRetentionMillis = hourRetentionMillis;
+        this.dayRetentionMillis = dayRetentionMillis;
+
+        Files.createDirectories(directory);
+        try (var paths = Files.list(directory)) {
+            for (var path : paths.toList()) {
+                LoadFile(path);
+            }
+        }
+
+        // Hours already sealed before a restart are merged with any new counts, but sealed days are final
+        if (!dayFiles.isEmpty()) {
+            sealedBeforeMillis = dayFiles.lastKey() + DAY_MILLIS;
+        }
+    }
+
+    /**
+     * Record a hashtag in the bucket for its minute.
+     *
+     * @param hashtag    the hashtag
+     * @param timeMillis the time it was received in milliseconds since the epoch
+     */
+    public void record(String hashtag, long timeMillis) {
+        var key = hashtag.toLowerCase();
+        var minuteStart = FloorTo(timeMillis, MINUTE_MILLIS);
+        while (true) {
+            if (timeMillis < sealedBeforeMillis) {
+                lateHashtags.increment();
+                return;
+            }
+
+            var bucket = currentMinute;
+            if ((bucket == null) || (bucket.startMillis != minuteStart)) {
+                bucket = minutes.computeIfAbsent(minuteStart, MinuteBucket::new);
+                currentMinute = bucket;
+            }
+            if (bucket.increment(key)) {
+                return;
+            }
+
+            // Sealed while being looked up so drop it and check again (it is late unless it was only flushed)
+            minutes.remove(minuteStart, bucket);
+        }
+    }
+
+    /**
+     * Seal the hours and days that have ended, and delete the files that are no longer kept.
+     *
+     * @param nowMillis the current time in milliseconds since the epoch
+     * @throws IOException the IO exception if a file cannot be written or deleted
+     */
+    public synchronized void seal(long nowMillis) throws IOException {
+        // Seal each hour that ended at least the delay ago
+        var sealBefore = FloorTo(nowMillis - SEAL_DELAY_MILLIS, HOUR_MILLIS);
+        if (sealBefore > sealedBeforeMillis) {
+            sealedBeforeMillis = sealBefore;
+        }
+        SealHours(sealBefore);
+
+        // Merge the hours of each day that has ended into a day file
+        var sealDaysBefore = FloorTo(sealBefore, DAY_MILLIS);
+        var hour = hourFiles.isEmpty() ? null : hourFiles.firstKey();
+        while ((hour != null) && (hour < sealDaysBefore)) {
+            var day = FloorTo(hour, DAY_MILLIS);
+            if (!dayFiles.containsKey(day)) {
+                SealDay(day, new ArrayList<>(hourFiles.subMap(day, day + DAY_MILLIS).values()));
+            }
+            hour = hourFiles.ceilingKey(day + DAY_MILLIS);
+        }
+
+        DeleteExpiredFiles(nowMillis);
+    }
+
+    /**
+     * Seal all the counts still in memory (including the current hour) so they are kept when the application stops.
+     * An hour sealed early is merged with any counts for it recorded afterwards when it is sealed again.
+     *
+     * @throws IOException the IO exception if a file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        SealHours(Long.MAX_VALUE);
+        currentMinute = null;
+    }
+
+    /**
+     * Get the most frequent hashtags in a time range by merging the rollups that cover it.
+     * <p>
+     * The sealed counts are only kept for whole hours (or whole days once the hour files have expired), so the range
+     * is rounded out to whole hours for them and to whole minutes for the counts still in memory.
+     *
+     * @param fromMillis the start of the range in milliseconds since the epoch
+     * @param toMillis   the end of the range (exclusive) in milliseconds since the epoch
+     * @param limit      the maximum number of hashtags to return
+     * @return the hashtags and their counts in descending order of count
+     * @throws IOException the IO exception if a file cannot be read
+     */
+    public List<HashtagCount> getTop(long fromMillis, long toMillis, int limit) throws IOException {
+        if ((toMillis <= fromMillis) || (limit < 0)) {
+            throw new InvalidParameterException("Invalid range or limit");
+        }
+
+        var sources = new ArrayList<IHashtagCountSource>();
+        filesLock.readLock().lock();
+        try {
+            AddFileSources(FloorTo(fromMillis, HOUR_MILLIS), CeilTo(toMillis, HOUR_MILLIS), sources);
+        } finally {
+            filesLock.readLock().unlock();
+        }
+
+        var memory = CollectMinutes(minutes.subMap(FloorTo(fromMillis, MINUTE_MILLIS), CeilTo(toMillis, MINUTE_MILLIS)).values());
+        if (memory.getEntryCount() > 0) {
+            sources.add(memory);
+        }
+
+        // Keep the best hashtags seen so far with the worst at the head
+        var best = new PriorityQueue<>(Math.max(1, limit), EVICTION_ORDER);
+        if (limit > 0) {
+            Merge(sources, (key, count) -> {
+                // Keys arrive in order so a later key with an equal count never outranks the worst one kept
+                if (best.size() < limit) {
+                    best.add(new RankedHashtag(key, count));
+                } else if (count > best.peek().count) {
+                    best.poll();
+                    best.add(new RankedHashtag(key, count));
+                }
+            });
+        }
+
+        var top = new ArrayList<HashtagCount>(best.size());
+        while (!best.isEmpty()) {
+            var ranked = best.poll();
+            top.add(new HashtagCount(new String(ranked.key, StandardCharsets.UTF_8), ranked.count));
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+    /**
+     * Get the number of hour files.
+     *
+     * @return the number of hour files
+     */
+    public int getHourFileCount() {
+        return hourFiles.size();
+    }
+
+    /**
+     * Get the number of day files.
+     *
+     * @return the number of day files
+     */
+    public int getDayFileCount() {
+        return dayFiles.size();
+    }
+
+    /**
+     * Get the number of unsealed minute buckets in memory.
+     *
+     * @return the number of minute buckets
+     */
+    public int getMinuteBucketCount() {
+        return minutes.size();
+    }
+
+    /**
+     * Get the number of hashtags dropped because their hour had already been sealed.
+     *
+     * @return the number of late hashtags
+     */
+    public long getLateHashtags() {
+        return lateHashtags.sum();
+    }
+
+    /**
+     * Add the file sources covering the whole hours in a range, using a day file wherever it covers a whole day.
+     *
+     * @param startMillis the start of the range (on an hour boundary)
+     * @param endMillis   the end of the range (on an hour boundary)
+     * @param sources     the list to add the sources to
+     * @throws IOException the IO exception if a file cannot be opened
+     */
+    private void AddFileSources(long startMillis, long endMillis, List<IHashtagCountSource> sources) throws IOException {
+        if (hourFiles.isEmpty() && dayFiles.isEmpty()) {
+            return;
+        }
+
+        // Only step through the hours that could have files
+        var first = Math.min(hourFiles.isEmpty() ? Long.MAX_VALUE : hourFiles.firstKey(),
+                dayFiles.isEmpty() ? Long.MAX_VALUE : dayFiles.firstKey());
+        var last = Math.max(hourFiles.isEmpty() ? Long.MIN_VALUE : hourFiles.lastKey() + HOUR_MILLIS,
+                dayFiles.isEmpty() ? Long.MIN_VALUE : dayFiles.lastKey() + DAY_MILLIS);
+        var hour = Math.max(startMillis, first);
+        var end = Math.min(endMillis, last);
+
+        while (hour < end) {
+            var dayPath = ((hour % DAY_MILLIS == 0) && (hour + DAY_MILLIS <= endMillis)) ? dayFiles.get(hour) : null;
+            if (dayPath != null) {
+                sources.add(new HashtagRollupFile(dayPath));
+                hour += DAY_MILLIS;
+            } else {
+                var hourPath = hourFiles.get(hour);
+                if (hourPath != null) {
+                    sources.add(new HashtagRollupFile(hourPath));
+                }
+                hour += HOUR_MILLIS;
+            }
+        }
+    }
+
+    /**
+     * Seal the minute buckets of each hour that starts before a time into its hour file.
+     *
+     * @param beforeMillis the time before which the hours are sealed
+     * @throws IOException the IO exception if a file cannot be written
+     */
+    private void SealHours(long beforeMillis) throws IOException {
+        while (!minutes.isEmpty()) {
+            var hour = FloorTo(minutes.firstKey(), HOUR_MILLIS);
+            if (hour >= beforeMillis) {
+                break;
+            }
+
+            // Seal the buckets first so no count can be added after they are collected
+            var hourMinutes = new ArrayList<>(minutes.subMap(hour, hour + HOUR_MILLIS).values());
+            for (var bucket : hourMinutes) {
+                bucket.seal();
+                if (currentMinute == bucket) {
+                    currentMinute = null;
+                }
+            }
+            var sources = new ArrayList<IHashtagCountSource>();
+            sources.add(CollectMinutes(hourMinutes));
+            var path = hourFiles.get(hour);
+            if (path != null) {
+                // Merge with the counts sealed before a restart or flush
+                sources.add(new HashtagRollupFile(path));
+            }
+
+            path = directory.resolve(HOUR_PREFIX + HOUR_FORMAT.format(Instant.ofEpochMilli(hour)) + SUFFIX);
+            WriteMerged(path, hour, HOUR_MILLIS, sources);
+            hourFiles.put(hour, path);
+            for (var bucket : hourMinutes) {
+                minutes.remove(bucket.startMillis, bucket);
+            }
+        }
+    }
+
+    /**
+     * Merge the hour files of a day into its day file.
+     *
+     * @param day       the start of the day
+     * @param hourPaths the paths of the hour files in the day
+     * @throws IOException the IO exception if a file cannot be read or written
+     */
+    private void SealDay(long day, List<Path> hourPaths) throws IOException {
+        var sources = new ArrayList<IHashtagCountSource>();
+        for (var hourPath : hourPaths) {
+            sources.add(new HashtagRollupFile(hourPath));
+        }
+
+        var path = directory.resolve(DAY_PREFIX + DateTimeFormatter.BASIC_ISO_DATE.format(Instant.ofEpochMilli(day).atOffset(ZoneOffset.UTC)) + SUFFIX);
+        WriteMerged(path, day, DAY_MILLIS, sources);
+        dayFiles.put(day, path);
+    }
+
+    /**
+     * Merge some sources and write the result to a rollup file.
+     *
+     * @param path              the path of the file
+     * @param periodStartMillis the start of the period
+     * @param periodMillis      the length of the period
+     * @param sources           the sources to merge
+     * @throws IOException the IO exception if the file cannot be written
+     */
+    private void WriteMerged(Path path, long periodStartMillis, long periodMillis, List<IHashtagCountSource> sources) throws IOException {
+        var entries = new HashtagRollupFile.Entries();
+        Merge(sources, entries::add);
+
+        filesLock.writeLock().lock();
+        try {
+            HashtagRollupFile.write(path, periodStartMillis, periodMillis, entries);
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Delete the day files older than their retention time, and the hour files older than theirs once they are
+     * covered by a day file (or their day has expired too).
+     *
+     * @param nowMillis the current time in milliseconds since the epoch
+     * @throws IOException the IO exception if a file cannot be deleted
+     */
+    private void DeleteExpiredFiles(long nowMillis) throws IOException {
+        filesLock.writeLock().lock();
+        try {
+            var expiredDays = dayFiles.headMap(nowMillis - dayRetentionMillis - DAY_MILLIS, true);
+            for (var path : expiredDays.values()) {
+                Files.deleteIfExists(path);
+            }
+            expiredDays.clear();
+
+            var expiredHours = hourFiles.headMap(nowMillis - hourRetentionMillis - HOUR_MILLIS, true);
+            for (var iterator = expiredHours.entrySet().iterator(); iterator.hasNext(); ) {
+                var hour = iterator.next();
+                var day = FloorTo(hour.getKey(), DAY_MILLIS);
+                if (dayFiles.containsKey(day) || (day + DAY_MILLIS <= nowMillis - dayRetentionMillis)) {
+                    Files.deleteIfExists(hour.getValue());
+                    iterator.remove();
+                }
+            }
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add an existing file in the directory to the hour or day files, deleting any left over from a failed write.
+     *
+     * @param path the path of the file
+     * @throws IOException the IO exception if a left over file cannot be deleted
+     */
+    private void LoadFile(Path path) throws IOException {
+        var name = path.getFileName().toString();
+        if (name.endsWith(SUFFIX + ".tmp")) {
+            Files.delete(path);
+            return;
+        }
+        if (!name.endsWith(SUFFIX)) {
+            return;
+        }
+
+        try {
+            if (name.startsWith(HOUR_PREFIX)) {
+                var time = name.substring(HOUR_PREFIX.length(), name.length() - SUFFIX.length());
+                if (time.length() == 11 && time.charAt(8) == 'T') {
+                    var day = LocalDate.parse(time.substring(0, 8), DateTimeFormatter.BASIC_ISO_DATE);
+                    var hour = Integer.parseInt(time.substring(9));
+                    hourFiles.put(day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() + hour * HOUR_MILLIS, path);
+                }
+            } else if (name.startsWith(DAY_PREFIX)) {
+                var day = LocalDate.parse(name.substring(DAY_PREFIX.length(), name.length() - SUFFIX.length()),
+                        DateTimeFormatter.BASIC_ISO_DATE);
+                dayFiles.put(day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(), path);
+            }
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            // Not one of ours so leave it alone
+        }
+    }
+
+    /**
+     * Sum the counts in some minute buckets into a source sorted by key.
+     *
+     * @param buckets the minute buckets
+     * @return the summed counts
+     */
+    private static HashtagRollupFile.Entries CollectMinutes(Collection<MinuteBucket> buckets) {
+        var sums = new HashMap<String, Long>();
+        for (var bucket : buckets) {
+            bucket.counts.forEach((hashtag, count) -> sums.merge(hashtag, count.sum(), Long::sum));
+        }
+
+        // Sort by the UTF-8 bytes to match the order of the files
+        var sorted = new ArrayList<RankedHashtag>(sums.size());
+        sums.forEach((hashtag, count) -> sorted.add(new RankedHashtag(hashtag.getBytes(StandardCharsets.UTF_8), count)));
+        sorted.sort((first, second) -> Arrays.compareUnsigned(first.key, second.key));
+
+        var entries = new HashtagRollupFile.Entries();
+        for (var ranked : sorted) {
+            entries.add(ranked.key, ranked.count);
+        }
+        return entries;
+    }
+
+    /**
+     * Merge sources sorted by key in one pass, passing each key and its summed count to a consumer in key order.
+     *
+     * @param sources  the sources
+     * @param consumer the consumer of the merged entries
+     */
+    private static void Merge(List<IHashtagCountSource> sources, EntryConsumer consumer) {
+        var cursors = new PriorityQueue<Cursor>((first, second) -> Arrays.compareUnsigned(first.key, second.key));
+        for (var source : sources) {
+            if (source.getEntryCount() > 0) {
+                cursors.add(new Cursor(source));
+            }
+        }
+
+        while (!cursors.isEmpty()) {
+            var cursor = cursors.poll();
+            var key = cursor.key;
+            var count = cursor.source.getCount(cursor.index);
+            Advance(cursor, cursors);
+
+            // Sum the same key from the other sources
+            while (!cursors.isEmpty() && Arrays.equals(cursors.peek().key, key)) {
+                cursor = cursors.poll();
+                count += cursor.source.getCount(cursor.index);
+                Advance(cursor, cursors);
+            }
+            consumer.accept(key, count);
+        }
+    }
+
+    /**
+     * Move a cursor to its next entry and put it back in the queue if it has one.
+     *
+     * @param cursor  the cursor
+     * @param cursors the queue of cursors
+     */
+    private static void Advance(Cursor cursor, PriorityQueue<Cursor> cursors) {
+        if (++cursor.index < cursor.source.getEntryCount()) {
+            cursor.key = cursor.source.getKey(cursor.index);
+            cursors.add(cursor);
+        }
+    }
+
+    /**
+     * Round a time down to a multiple of a period.
+     *
+     * @param timeMillis   the time
+     * @param periodMillis the period
+     * @return the rounded time
+     */
+    private static long FloorTo(long timeMillis, long periodMillis) {
+        return timeMillis - Math.floorMod(timeMillis, periodMillis);
+    }
+
+    /**
+     * Round a time up to a multiple of a period.
+     *
+     * @param timeMillis   the time
+     * @param periodMillis the period
+     * @return the rounded time
+     */
+    private static long CeilTo(long timeMillis, long periodMillis) {
+        var floor = FloorTo(timeMillis, periodMillis);
+        return (floor == timeMillis) ? floor : floor + periodMillis;
+    }
+
+    /**
+     * The interface for a consumer of merged entries.
+     */
+    private interface EntryConsumer {
+        /**
+         * Accept a merged entry.
+         *
+         * @param key   the UTF-8 key
+         * @param count the summed count
+         */
+        void accept(byte[] key, long count);
+    }
+
+    /**
+     * The class for the counts of one minute.
+     */
+    private static class MinuteBucket {
+        // Start of the minute in milliseconds since the epoch
+        private final long startMillis;
+
+        // Counts of the hashtags received in the minute
+        private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        // Lock shared by the increments and held exclusively to seal the bucket
+        private final ReentrantReadWriteLock sealLock = new ReentrantReadWriteLock();
+
+        // True once the counts have been collected for sealing (so no more can be added)
+        private boolean sealed;
+
+        /**
+         * Instantiates a new minute bucket.
+         *
+         * @param startMillis the start of the minute
+         */
+        private MinuteBucket(long startMillis) {
+            this.startMillis = startMillis;
+        }
+
+        /**
+         * Increment the count of a hashtag unless the bucket has been sealed.
+         *
+         * @param key the lower cased hashtag
+         * @return true if it was counted or false if the bucket has been sealed
+         */
+        private boolean increment(String key) {
+            sealLock.readLock().lock();
+            try {
+                if (sealed) {
+                    return false;
+                }
+                counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+                return true;
+            } finally {
+                sealLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Seal the bucket, waiting for any increments in progress to finish.
+         */
+        private void seal() {
+            sealLock.writeLock().lock();
+            try {
+                sealed = true;
+            } finally {
+                sealLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The class for the position of a merge in one source.
+     */
+    private static class Cursor {
+        // Source being read
+        private final IHashtagCountSource source;
+
+        // Index of the current entry
+        private int index;
+
+        // Key of the current entry
+        private byte[] key;
+
+        /**
+         * Instantiates a new cursor at the first entry of a source.
+         *
+         * @param source the source (with at least one entry)
+         */
+        private Cursor(IHashtagCountSource source) {
+            this.source = source;
+            key = source.getKey(0);
+        }
+    }
+
+    /**
+     * The class for the UTF-8 key of a hashtag and its count.
+     */
+    private static class RankedHashtag {
+        // UTF-8 key of the hashtag
+        private final byte[] key;
+
+        // Count of the hashtag
+        private final long count;
+
+        /**
+         * Instantiates a new ranked hashtag.
+         *
+         * @param key   the UTF-8 key
+         * @param count the count
+         */
+        private RankedHashtag(byte[] key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class for the recent example tweets of each hashtag, for drilling down into the top hashtags.
+ * <p>
+ * Each hashtag currently in the top list has a fixed size ring of its most recent tweets and the tweets with any other
+ * hashtags share one reservoir sample, so the number of samples kept never exceeds a global maximum. A tweet is only
+ * copied when it is kept and then into one sample shared by every ring and reservoir slot it is kept in, and adding a
+ * sample takes no locks, so a tweet that is not kept costs a lookup for each of its hashtags and nothing more.
+ */
+public class HashtagSamples {
+
+    /**
+     * The maximum length of the text kept for a sample.
+     */
+    public static final int MAX_TEXT_LENGTH = 560;
+
+    // Maximum number of hashtags with their own ring
+    private final int maxTopHashtags;
+
+    // Number of samples in the ring of each top hashtag
+    private final int samplesPerHashtag;
+
+    // Reservoir sample of the tweets with hashtags outside the top list
+    private final AtomicReferenceArray<TweetSample> reservoir;
+
+    // Number of tweets offered to the reservoir
+    private final AtomicLong reservoirTweets = new AtomicLong();
+
+    // Rings of the top hashtags ignoring case (replaced whenever the top list changes)
+    private volatile Map<String, Ring> rings = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    // Object to use for simple locking when replacing the rings
+    private final Lock ringsLock = new ReentrantLock();
+
+    /**
+     * Instantiates new hashtag samples.
+     *
+     * @param maxSamples        the maximum number of samples kept over all the hashtags
+     * @param maxTopHashtags    the maximum number of top hashtags with their own ring
+     * @param samplesPerHashtag the number of recent samples kept for each top hashtag
+     */
+    public HashtagSamples(int maxSamples, int maxTopHashtags, int samplesPerHashtag) {
+        if ((maxTopHashtags < 0) || (samplesPerHashtag <= 0)) {
+            throw new InvalidParameterException("The top hashtags must not be negative and the samples per hashtag must be positive");
+        }
+        var reservoirSize = (long) maxSamples - (long) maxTopHashtags * samplesPerHashtag;
+        if (reservoirSize <= 0) {
+            throw new InvalidParameterException("The maximum samples must exceed the samples of all the top hashtags");
+        }
+        this.maxTopHashtags = maxTopHashtags;
+        this.samplesPerHashtag = samplesPerHashtag;
+        reservoir = new AtomicReferenceArray<>((int) Math.min(reservoirSize, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Give the top hashtags their own rings, keeping the rings of those already in the top list.
+     *
+     * @param hashtags the top hashtags (any nulls and those beyond the maximum number of top hashtags are ignored)
+     */
+    public void setTopHashtags(String[] hashtags) {
+        ringsLock.lock();
+        try {
+            var current = rings;
+            var updated = new TreeMap<String, Ring>(String.CASE_INSENSITIVE_ORDER);
+            for (var hashtag : hashtags) {
+                if ((hashtag != null) && (updated.size() < maxTopHashtags)) {
+                    var ring = current.get(hashtag);
+                    updated.put(hashtag, (ring == null) ? new Ring(samplesPerHashtag) : ring);
+                }
+            }
+            if (!updated.keySet().equals(current.keySet())) {
+                rings = updated;
+            }
+        } finally {
+            ringsLock.unlock();
+        }
+    }
+
+    /**
+     * Keep a tweet as a sample of its hashtags if it is among the most recent for a top hashtag or chosen for the
+     * reservoir (concurrent safe).
+     *
+     * @param id               the tweet id (or null if it has none)
+     * @param text             the tweet text
+     * @param hashtags         the hashtags in the tweet
+     * @param receivedAtMillis the time the tweet was processed
+     */
+    public void add(CharSequence id, CharSequence text, List<String> hashtags, long receivedAtMillis) {
+        if (hashtags.isEmpty()) {
+            return;
+        }
+
+        // Keep it in the ring of each top hashtag
+        var current = rings;
+        TweetSample sample = null;
+        var untracked = false;
+        for (int i = 0; i < hashtags.size(); i++) {
+            var ring = current.get(hashtags.get(i));
+            if (ring == null) {
+                untracked = true;
+            } else if (!RepeatsEarlier(hashtags, i)) {
+                if (sample == null) {
+                    sample = NewSample(id, text, hashtags, receivedAtMillis);
+                }
+                ring.add(sample);
+            }
+        }
+
+        // Offer it to the reservoir for the other hashtags, replacing a random slot once it is full (algorithm R)
+        if (untracked) {
+            var offered = reservoirTweets.incrementAndGet();
+            var slot = (offered <= reservoir.length()) ? offered - 1 : ThreadLocalRandom.current().nextLong(offered);
+            if (slot < reservoir.length()) {
+                if (sample == null) {
+                    sample = NewSample(id, text, hashtags, receivedAtMillis);
+                }
+                reservoir.set((int) slot, sample);
+            }
+        }
+    }
+
+    /**
+     * Get the most recent samples of a hashtag from its ring and the reservoir.
+     *
+     * @param hashtag the hashtag (ignoring case)
+     * @param limit   the maximum number of samples to return
+     * @return the samples from the most recent
+     */
+    public List<TweetSample> get(String hashtag, int limit) {
+        Set<TweetSample> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        var ring = rings.get(hashtag);
+        if (ring != null) {
+            ring.collect(found);
+        }
+        for (int i = 0; i < reservoir.length(); i++) {
+            var sample = reservoir.get(i);
+            if ((sample != null) && Mentions(sample, hashtag)) {
+                found.add(sample);
+            }
+        }
+
+        var samples = new ArrayList<>(found);
+        samples.sort(Comparator.comparingLong((TweetSample sample) -> sample.receivedAtMillis).reversed());
+        return samples.subList(0, Math.max(0, Math.min(limit, samples.size())));
+    }
+
+    /**
+     * Check whether a hashtag currently has its own ring.
+     *
+     * @param hashtag the hashtag (ignoring case)
+     * @return true if it is one of the top hashtags
+     */
+    public boolean isTopHashtag(String hashtag) {
+        return rings.containsKey(hashtag);
+    }
+
+    /**
+     * Get the number of samples the reservoir can hold.
+     *
+     * @return the reservoir size
+     */
+    public int getReservoirSize() {
+        return reservoir.length();
+    }
+
+    /**
+     * Copy a tweet into a new sample.
+     *
+     * @param id               the tweet id (or null if it has none)
+     * @param text             the tweet text
+     * @param hashtags         the hashtags in the tweet
+     * @param receivedAtMillis the time the tweet was processed
+     * @return the sample
+     */
+    private static TweetSample NewSample(CharSequence id, CharSequence text, List<String> hashtags,
+                                         long receivedAtMillis) {
+        String sampleText;
+        if (text.length() <= MAX_TEXT_LENGTH) {
+            sampleText = text.toString();
+        } else {
+            // Truncate without splitting a surrogate pair
+            var end = Character.isHighSurrogate(text.charAt(MAX_TEXT_LENGTH - 1)) ? MAX_TEXT_LENGTH - 1 : MAX_TEXT_LENGTH;
+            sampleText = text.subSequence(0, end).toString();
+        }
+        return new TweetSample((id == null) ? null : id.toString(), sampleText, List.copyOf(hashtags), receivedAtMillis);
+    }
+
+    /**
+     * Check whether a hashtag in a tweet already appeared earlier in the tweet (ignoring case).
+     *
+     * @param hashtags the hashtags in the tweet
+     * @param index    the index of the hashtag
+     * @return true if it is a repeat
+     */
+    private static boolean RepeatsEarlier(List<String> hashtags, int index) {
+        var hashtag = hashtags.get(index);
+        for (int i = 0; i < index; i++) {
+            if (hashtags.get(i).equalsIgnoreCase(hashtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a sample has a hashtag.
+     *
+     * @param sample  the sample
+     * @param hashtag the hashtag (ignoring case)
+     * @return true if the hashtag is in the sample
+     */
+    private static boolean Mentions(TweetSample sample, String hashtag) {
+        for (var sampleHashtag : sample.hashtags) {
+            if (sampleHashtag.equalsIgnoreCase(hashtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The class for the ring of the most recent samples of a top hashtag.
+     */
+    private static class Ring {
+        // Samples in the order they were added (wrapping around)
+        private final AtomicReferenceArray<TweetSample> samples;
+
+        // Number of samples added
+        private final AtomicLong added = new AtomicLong();
+
+        /**
+         * Instantiates a new ring.
+         *
+         * @param size the number of samples to keep
+         */
+        private Ring(int size) {
+            samples = new AtomicReferenceArray<>(size);
+        }
+
+        /**
+         * Add a sample, replacing the oldest once the ring is full.
+         *
+         * @param sample the sample
+         */
+        private void add(TweetSample sample) {
+            samples.set((int) (added.getAndIncrement() % samples.length()), sample);
+        }
+
+        /**
+         * Add the samples in the ring to a set.
+         *
+         * @param found the set
+         */
+        private void collect(Set<TweetSample> found) {
+            for (int i = 0; i < samples.length(); i++) {
+                var sample = samples.get(i);
+                if (sample != null) {
+                    found.add(sample);
+                }
+            }
+        }
+    }
+}
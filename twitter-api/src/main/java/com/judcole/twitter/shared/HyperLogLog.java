@@ -0,0 +1,199 @@
+package com.judcole.twitter.shared;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.security.InvalidParameterException;
+
+/**
+ * Class for a mergeable HyperLogLog sketch to estimate the number of distinct items.
+ * <p>
+ * The sketch uses one byte register per bucket so its memory is fixed by the precision
+ * (4 KB at the default precision of 12 for a standard error of about 1.6%) regardless of the
+ * number of items added. Adding is lock free so many threads can share an instance.
+ */
+public class HyperLogLog {
+
+    // Default number of bits of the hash used to select a register
+    public static final int DEFAULT_PRECISION = 12;
+
+    // Minimum and maximum supported precision
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    // Handle for atomic updates of individual registers
+    private static final VarHandle REGISTER = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    // Number of bits of the hash used to select a register
+    private final int precision;
+
+    // Registers holding the maximum rank seen for each bucket
+    private final byte[] registers;
+
+    /**
+     * Instantiates a new empty sketch with the default precision.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Instantiates a new empty sketch with a specified precision.
+     *
+     * @param precision the number of bits of the hash used to select a register
+     */
+    public HyperLogLog(int precision) {
+        if ((precision < MIN_PRECISION) || (precision > MAX_PRECISION)) {
+            throw new InvalidParameterException("HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Instantiates a new sketch from previously exported registers.
+     *
+     * @param registers the registers (a power of two in length)
+     */
+    public HyperLogLog(byte[] registers) {
+        this(Integer.numberOfTrailingZeros(registers.length));
+        if (Integer.bitCount(registers.length) != 1) {
+            throw new InvalidParameterException("HyperLogLog register count must be a power of two");
+        }
+        System.arraycopy(registers, 0, this.registers, 0, registers.length);
+    }
+
+    /**
+     * Add an item using its 64-bit hash.
+     *
+     * @param hash the hash of the item
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+
+        // Raise the register to the new rank unless another thread has already raised it further
+        byte current = (byte) REGISTER.getOpaque(registers, index);
+        while (rank > current) {
+            if (REGISTER.weakCompareAndSet(registers, index, current, rank)) {
+                break;
+            }
+            current = (byte) REGISTER.getOpaque(registers, index);
+        }
+    }
+
+    /**
+     * Add a string item.
+     *
+     * @param item the item
+     */
+    public void add(CharSequence item) {
+        add(hash(item));
+    }
+
+    /**
+     * Estimate the number of distinct items added.
+     *
+     * @return the estimate
+     */
+    public long estimate() {
+        int count = registers.length;
+        double sum = 0;
+        int zeros = 0;
+
+        for (int i = 0; i < count; i++) {
+            int rank = (byte) REGISTER.getOpaque(registers, i);
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+
+        // Raw HyperLogLog estimate with its bias correction constant
+        double alpha = switch (count) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / count);
+        };
+        double estimate = alpha * count * count / sum;
+
+        if ((estimate <= 2.5 * count) && (zeros > 0)) {
+            // Small range so use linear counting which is more accurate
+            estimate = count * Math.log((double) count / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    /**
+     * Merge another sketch of the same precision into this one.
+     *
+     * @param other the other sketch
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new InvalidParameterException("Mismatched HyperLogLog precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            byte rank = (byte) REGISTER.getOpaque(other.registers, i);
+            byte current = (byte) REGISTER.getOpaque(registers, i);
+            while (rank > current) {
+                if (REGISTER.weakCompareAndSet(registers, i, current, rank)) {
+                    break;
+                }
+                current = (byte) REGISTER.getOpaque(registers, i);
+            }
+        }
+    }
+
+    /**
+     * Reset the sketch to empty.
+     */
+    public void clear() {
+        for (int i = 0; i < registers.length; i++) {
+            REGISTER.setOpaque(registers, i, (byte) 0);
+        }
+    }
+
+    /**
+     * Get a copy of the registers (for exporting the sketch).
+     *
+     * @return the registers
+     */
+    public byte[] getRegisters() {
+        var copy = new byte[registers.length];
+        for (int i = 0; i < registers.length; i++) {
+            copy[i] = (byte) REGISTER.getOpaque(registers, i);
+        }
+        return copy;
+    }
+
+    /**
+     * Get the number of bits of the hash used to select a register.
+     *
+     * @return the precision
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Calculate a 64-bit hash of a string item (FNV-1a with a MurmurHash3 finalizer).
+     *
+     * @param item the item
+     * @return the hash
+     */
+    public static long hash(CharSequence item) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < item.length(); i++) {
+            hash = (hash ^ item.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,30 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The interface for hashtag counts sorted by the unsigned bytes of their UTF-8 keys, so several can be merged in one pass.
+ */
+interface IHashtagCountSource {
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of distinct hashtags
+     */
+    int getEntryCount();
+
+    /**
+     * Get the UTF-8 key of an entry.
+     *
+     * @param index the index of the entry
+     * @return a new array holding the key
+     */
+    byte[] getKey(int index);
+
+    /**
+     * Get the count of an entry.
+     *
+     * @param index the index of the entry
+     * @return the count
+     */
+    long getCount(int index);
+}
@@ -0,0 +1,37 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The interface for dictionaries of hashtags and their counts.
+ */
+public interface IHashtagDictionary {
+
+    /**
+     * Increment the count for a hashtag, adding it to the dictionary if it is new.
+     *
+     * @param hashtag the (lower cased) hashtag
+     * @return the new count for the hashtag
+     */
+    long increment(String hashtag);
+
+    /**
+     * Get the count for a hashtag.
+     *
+     * @param hashtag the (lower cased) hashtag
+     * @return the count or zero if the hashtag is not in the dictionary
+     */
+    long getCount(String hashtag);
+
+    /**
+     * Get the number of distinct hashtags in the dictionary.
+     *
+     * @return the number of hashtags
+     */
+    long getSize();
+
+    /**
+     * Get the approximate number of bytes used to store the dictionary.
+     *
+     * @return the number of bytes
+     */
+    long getMemoryUsage();
+}
@@ -0,0 +1,36 @@
+package com.judcole.twitter.shared;
+
+import java.util.Set;
+
+/**
+ * The interface for the stages of the tweet processing pipeline.
+ * <p>
+ * Each stage declares the entity types it reads so the pipeline only extracts what at least one stage needs. Stages
+ * are called in order with the same parsed view of each tweet, which is reused for the next tweet so it must not be
+ * kept. The stages are shared by the pipelines of all the processing workers so they must be safe to call concurrently.
+ */
+public interface ITweetProcessor {
+
+    /**
+     * Get the name of the stage (used for its timing).
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Get the entity types the stage reads from the parsed tweets.
+     *
+     * @return the entity types (empty if the stage only reads the tweet data)
+     */
+    default Set<EntityType> getEntityTypes() {
+        return Set.of();
+    }
+
+    /**
+     * Process a tweet.
+     *
+     * @param tweet the parsed view of the tweet
+     */
+    void process(ParsedTweet tweet);
+}
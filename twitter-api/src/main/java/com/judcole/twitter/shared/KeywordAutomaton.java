@@ -0,0 +1,210 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class for an Aho-Corasick automaton that finds any number of keywords in a text in one pass.
+ * <p>
+ * The keywords are compiled into a deterministic automaton over the characters that appear in them, so scanning a
+ * text is one table lookup for each character however many keywords there are. Matching ignores case and a keyword
+ * that starts or ends with a letter or digit only matches at a word boundary there (so "cat" is not found in
+ * "concatenate"). An instance is immutable and can be shared by any number of threads.
+ */
+public class KeywordAutomaton {
+
+    /**
+     * The interface for the consumer of the keywords found in a text.
+     */
+    public interface MatchConsumer {
+        /**
+         * Accept a keyword found in the text.
+         *
+         * @param keyword the index of the keyword in the list the automaton was compiled from
+         */
+        void accept(int keyword);
+    }
+
+    /**
+     * The maximum length of a keyword.
+     */
+    public static final int MAX_KEYWORD_LENGTH = 100;
+
+    // Maximum number of entries in the transition table (256 MB)
+    private static final long MAX_TRANSITIONS = 1 << 26;
+
+    // Character class of each character (0 for the characters that do not appear in any keyword)
+    private final char[] characterClasses = new char[Character.MAX_VALUE + 1];
+
+    // Number of character classes (including class 0)
+    private final int classCount;
+
+    // Next state for each state and character class
+    private final int[] transitions;
+
+    // Index of the keyword ending at each state (or -1 if none does)
+    private final int[] stateKeywords;
+
+    // Nearest state on the failure path of each state where a keyword ends (or 0 if there is none)
+    private final int[] outputLinks;
+
+    // Length of each keyword
+    private final int[] keywordLengths;
+
+    // True for each keyword that has to start at a word boundary
+    private final boolean[] boundaryStarts;
+
+    // True for each keyword that has to end at a word boundary
+    private final boolean[] boundaryEnds;
+
+    /**
+     * Instantiates a new keyword automaton.
+     *
+     * @param keywords the keywords (a duplicate is only reported with the index of its first occurrence)
+     */
+    public KeywordAutomaton(List<String> keywords) {
+        var keywordCount = keywords.size();
+        keywordLengths = new int[keywordCount];
+        boundaryStarts = new boolean[keywordCount];
+        boundaryEnds = new boolean[keywordCount];
+
+        // Assign a class to each distinct (lower cased) character, shared with its other cases
+        var nextClass = 1;
+        var maxStates = 1;
+        var normalized = new String[keywordCount];
+        for (int i = 0; i < keywordCount; i++) {
+            var keyword = keywords.get(i).toLowerCase();
+            if (keyword.isEmpty() || (keyword.length() > MAX_KEYWORD_LENGTH)) {
+                throw new InvalidParameterException("Keywords must have 1 to " + MAX_KEYWORD_LENGTH + " characters");
+            }
+            normalized[i] = keyword;
+            keywordLengths[i] = keyword.length();
+            boundaryStarts[i] = Character.isLetterOrDigit(keyword.charAt(0));
+            boundaryEnds[i] = Character.isLetterOrDigit(keyword.charAt(keyword.length() - 1));
+            maxStates += keyword.length();
+            for (int j = 0; j < keyword.length(); j++) {
+                var c = keyword.charAt(j);
+                if (characterClasses[c] == 0) {
+                    if (nextClass > Character.MAX_VALUE) {
+                        throw new InvalidParameterException("Too many different characters in the keywords");
+                    }
+                    SetClass(c, (char) nextClass++);
+                }
+            }
+        }
+        classCount = nextClass;
+        if ((long) maxStates * classCount > MAX_TRANSITIONS) {
+            throw new InvalidParameterException("Too many keywords or different characters in the keywords");
+        }
+
+        // Build the trie of the keywords (state 0 is the root and 0 also marks a missing edge)
+        var trie = new int[maxStates * classCount];
+        var keywordAtState = new int[maxStates];
+        Arrays.fill(keywordAtState, -1);
+        var stateCount = 1;
+        for (int i = 0; i < keywordCount; i++) {
+            var state = 0;
+            for (int j = 0; j < normalized[i].length(); j++) {
+                var edge = state * classCount + characterClasses[normalized[i].charAt(j)];
+                if (trie[edge] == 0) {
+                    trie[edge] = stateCount++;
+                }
+                state = trie[edge];
+            }
+            if (keywordAtState[state] < 0) {
+                keywordAtState[state] = i;
+            }
+        }
+
+        // Fill in the missing edges from the failure links in breadth first order to make it deterministic
+        transitions = Arrays.copyOf(trie, stateCount * classCount);
+        stateKeywords = Arrays.copyOf(keywordAtState, stateCount);
+        outputLinks = new int[stateCount];
+        var failures = new int[stateCount];
+        var queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < classCount; c++) {
+            if (transitions[c] != 0) {
+                queue[tail++] = transitions[c];
+            }
+        }
+        while (head < tail) {
+            var state = queue[head++];
+            var failure = failures[state];
+            outputLinks[state] = (stateKeywords[failure] >= 0) ? failure : outputLinks[failure];
+            for (int c = 0; c < classCount; c++) {
+                var edge = state * classCount + c;
+                var child = transitions[edge];
+                if (child == 0) {
+                    transitions[edge] = transitions[failure * classCount + c];
+                } else {
+                    failures[child] = transitions[failure * classCount + c];
+                    queue[tail++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the keywords in a text, passing each occurrence to a consumer in the order they end.
+     *
+     * @param text     the text
+     * @param consumer the consumer of the keywords found
+     */
+    public void scan(CharSequence text, MatchConsumer consumer) {
+        var state = 0;
+        var length = text.length();
+        for (int i = 0; i < length; i++) {
+            state = transitions[state * classCount + characterClasses[text.charAt(i)]];
+
+            // Report each keyword ending here (from the longest)
+            var output = (stateKeywords[state] >= 0) ? state : outputLinks[state];
+            while (output != 0) {
+                var keyword = stateKeywords[output];
+                if (AtBoundary(text, keyword, i)) {
+                    consumer.accept(keyword);
+                }
+                output = outputLinks[output];
+            }
+        }
+    }
+
+    /**
+     * Get the number of states.
+     *
+     * @return the number of states (including the root)
+     */
+    public int getStateCount() {
+        return stateKeywords.length;
+    }
+
+    /**
+     * Check whether a keyword ending at a position is at the word boundaries it needs.
+     *
+     * @param text    the text
+     * @param keyword the index of the keyword
+     * @param end     the position of the last character of the keyword
+     * @return true if it is a match
+     */
+    private boolean AtBoundary(CharSequence text, int keyword, int end) {
+        var start = end - keywordLengths[keyword] + 1;
+        if (boundaryStarts[keyword] && (start > 0) && Character.isLetterOrDigit(text.charAt(start - 1))) {
+            return false;
+        }
+        return !boundaryEnds[keyword] || (end + 1 == text.length()) || !Character.isLetterOrDigit(text.charAt(end + 1));
+    }
+
+    /**
+     * Set the class of a character and its other cases.
+     *
+     * @param c          the (lower cased) character
+     * @param classIndex the class
+     */
+    private void SetClass(char c, char classIndex) {
+        characterClasses[c] = classIndex;
+        characterClasses[Character.toUpperCase(c)] = classIndex;
+        characterClasses[Character.toTitleCase(c)] = classIndex;
+    }
+}
@@ -0,0 +1,536 @@
+package com.judcole.twitter.shared;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Class for a compact dictionary of hashtags and their counts that is stored outside the Java heap.
+ * <p>
+ * Each segment is an open addressing table of 16 byte slots (key reference and count) plus an arena
+ * of length prefixed UTF-8 keys, so there are no per-entry Java objects. The tables are either direct
+ * buffers or memory-mapped scratch files in a specified directory.
+ */
+public class OffHeapHashtagDictionary implements IHashtagDictionary {
+
+    // Default number of independently locked segments
+    public static final int DEFAULT_SEGMENT_COUNT = 64;
+
+    // Maximum number of segments (selected by the top 8 bits of the hash)
+    private static final int MAX_SEGMENT_COUNT = 256;
+
+    // Number of bytes in each slot (key reference followed by count)
+    private static final int SLOT_BYTES = 16;
+
+    // Initial number of slots in each segment
+    private static final int INITIAL_SLOT_COUNT = 1024;
+
+    // Maximum number of slots in each segment (so the slot table fits in a single buffer)
+    private static final int MAX_SLOT_COUNT = 1 << 26;
+
+    // Initial number of key bytes in each segment
+    private static final int INITIAL_KEY_BYTES = 16 * 1024;
+
+    // Maximum number of key bytes in each segment
+    private static final int MAX_KEY_BYTES = Integer.MAX_VALUE - 8;
+
+    // Maximum length of a single UTF-8 encoded hashtag (the length prefix is an unsigned short)
+    private static final int MAX_HASHTAG_BYTES = 0xFFFF;
+
+    // Proportion of used slots that triggers a segment to grow
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    // Mask for the key offset part of a slot reference (the rest holds some hash bits)
+    private static final long OFFSET_MASK = (1L << 40) - 1;
+
+    // Mask for the hash bits stored in a slot reference
+    private static final long TAG_MASK = (1L << 24) - 1;
+
+    // Directory for memory-mapped tables or null to use direct buffers
+    private final Path mappedDirectory;
+
+    // Independently locked segments of the dictionary
+    private final Segment[] segments;
+
+    // Per-thread scratch space for encoding hashtags
+    private final ThreadLocal<KeyBuffer> keyBuffers = ThreadLocal.withInitial(KeyBuffer::new);
+
+    /**
+     * Instantiates a new off-heap hashtag dictionary using direct buffers.
+     */
+    public OffHeapHashtagDictionary() {
+        this(DEFAULT_SEGMENT_COUNT, null);
+    }
+
+    /**
+     * Instantiates a new off-heap hashtag dictionary.
+     *
+     * @param segmentCount    the number of segments (a power of two up to 256)
+     * @param mappedDirectory the directory for memory-mapped tables or null to use direct buffers
+     */
+    public OffHeapHashtagDictionary(int segmentCount, Path mappedDirectory) {
+        if ((segmentCount <= 0) || (segmentCount > MAX_SEGMENT_COUNT) || (Integer.bitCount(segmentCount) != 1)) {
+            throw new InvalidParameterException("Segment count must be a power of two up to " + MAX_SEGMENT_COUNT);
+        }
+
+        this.mappedDirectory = mappedDirectory;
+        if (mappedDirectory != null) {
+            try {
+                Files.createDirectories(mappedDirectory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Create the segments with their initial tables
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(i);
+        }
+    }
+
+    /**
+     * Increment the count for a hashtag, adding it to the dictionary if it is new.
+     *
+     * @param hashtag the (lower cased) hashtag
+     * @return the new count for the hashtag
+     */
+    public long increment(String hashtag) {
+        var key = encode(hashtag);
+        var hash = hash(key.bytes, key.length);
+        return segmentFor(hash).increment(hash, key);
+    }
+
+    /**
+     * Get the count for a hashtag.
+     *
+     * @param hashtag the (lower cased) hashtag
+     * @return the count or zero if the hashtag is not in the dictionary
+     */
+    public long getCount(String hashtag) {
+        var key = encode(hashtag);
+        var hash = hash(key.bytes, key.length);
+        return segmentFor(hash).getCount(hash, key);
+    }
+
+    /**
+     * Get the number of distinct hashtags in the dictionary.
+     *
+     * @return the number of hashtags
+     */
+    public long getSize() {
+        long size = 0;
+        for (var segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of bytes allocated for the dictionary tables.
+     *
+     * @return the number of bytes
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (var segment : segments) {
+            bytes += segment.memoryUsage;
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the segment for a hash.
+     *
+     * @param hash the hash
+     * @return the segment
+     */
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 56) & (segments.length - 1)];
+    }
+
+    /**
+     * Encode a hashtag as UTF-8 into the scratch space for the current thread.
+     *
+     * @param hashtag the hashtag
+     * @return the scratch space containing the encoded hashtag
+     */
+    private KeyBuffer encode(String hashtag) {
+        var key = keyBuffers.get();
+        key.clear(hashtag.length() * 3);
+
+        for (int i = 0; i < hashtag.length(); i++) {
+            char c = hashtag.charAt(i);
+            if (c < 0x80) {
+                key.put(c);
+            } else if (c < 0x800) {
+                key.put(0xC0 | (c >> 6));
+                key.put(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && (i + 1 < hashtag.length()) && Character.isLowSurrogate(hashtag.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, hashtag.charAt(++i));
+                key.put(0xF0 | (codePoint >> 18));
+                key.put(0x80 | ((codePoint >> 12) & 0x3F));
+                key.put(0x80 | ((codePoint >> 6) & 0x3F));
+                key.put(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate so replace it as the standard encoder does
+                key.put('?');
+            } else {
+                key.put(0xE0 | (c >> 12));
+                key.put(0x80 | ((c >> 6) & 0x3F));
+                key.put(0x80 | (c & 0x3F));
+            }
+        }
+
+        if (key.length > MAX_HASHTAG_BYTES) {
+            throw new InvalidParameterException("Hashtag is too long");
+        }
+
+        return key;
+    }
+
+    /**
+     * Calculate the 64-bit hash of a key (FNV-1a with a MurmurHash3 finalizer).
+     *
+     * @param bytes  the key bytes
+     * @param length the key length
+     * @return the hash
+     */
+    private static long hash(byte[] bytes, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Calculate the 64-bit hash of a key stored in a key arena.
+     *
+     * @param keys   the key arena
+     * @param offset the offset of the key bytes
+     * @param length the key length
+     * @return the hash
+     */
+    private static long hash(ByteBuffer keys, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (keys.get(offset + i) & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spread the bits of a hash (MurmurHash3 fmix64).
+     *
+     * @param hash the hash
+     * @return the mixed hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Class for the per-thread scratch space used to encode a hashtag.
+     */
+    private static final class KeyBuffer {
+        // The encoded bytes
+        byte[] bytes = new byte[64];
+
+        // The number of encoded bytes
+        int length;
+
+        /**
+         * Empty the buffer and make sure it has room for a number of bytes.
+         *
+         * @param capacity the number of bytes needed
+         */
+        void clear(int capacity) {
+            if (bytes.length < capacity) {
+                bytes = new byte[capacity];
+            }
+            length = 0;
+        }
+
+        /**
+         * Append a byte.
+         *
+         * @param value the byte value
+         */
+        void put(int value) {
+            bytes[length++] = (byte) value;
+        }
+    }
+
+    /**
+     * Class for an independently locked open addressing table and its key arena.
+     */
+    private final class Segment {
+        // Lock allowing optimistic lookups while the segment is being updated
+        private final StampedLock lock = new StampedLock();
+
+        // Index of the segment (used to name mapped files)
+        private final int index;
+
+        // Generation of the buffers (used to name mapped files)
+        private int generation;
+
+        // Table of slots (key reference and count)
+        private volatile ByteBuffer slots;
+
+        // Mask to convert a hash into a slot index
+        private volatile int slotMask;
+
+        // Arena of length prefixed keys
+        private volatile ByteBuffer keys;
+
+        // Number of key bytes used in the arena
+        private int keysUsed;
+
+        // Number of hashtags in the segment
+        private volatile int size;
+
+        // Number of bytes allocated for the segment
+        private volatile long memoryUsage;
+
+        /**
+         * Instantiates a new segment.
+         *
+         * @param index the index of the segment
+         */
+        Segment(int index) {
+            this.index = index;
+            slots = allocate("slots", INITIAL_SLOT_COUNT * SLOT_BYTES);
+            slotMask = INITIAL_SLOT_COUNT - 1;
+            keys = allocate("keys", INITIAL_KEY_BYTES);
+            memoryUsage = slots.capacity() + keys.capacity();
+        }
+
+        /**
+         * Increment the count for a key, adding it if it is new.
+         *
+         * @param hash the hash of the key
+         * @param key  the encoded key
+         * @return the new count
+         */
+        long increment(long hash, KeyBuffer key) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = findSlot(slots, slotMask, keys, hash, key);
+                if (slot >= 0) {
+                    // Existing hashtag so just update its count
+                    var count = slots.getLong(slot * SLOT_BYTES + 8) + 1;
+                    slots.putLong(slot * SLOT_BYTES + 8, count);
+                    return count;
+                }
+
+                // New hashtag so add the key to the arena
+                var offset = appendKey(key);
+
+                if (size + 1 > (slotMask + 1) * MAX_LOAD_FACTOR) {
+                    // Too full so grow the table and find the new empty slot
+                    growSlots();
+                    slot = findSlot(slots, slotMask, keys, hash, key);
+                }
+
+                // Fill in the empty slot with the count before the reference so lookups never see a partial entry
+                int empty = -slot - 1;
+                slots.putLong(empty * SLOT_BYTES + 8, 1);
+                slots.putLong(empty * SLOT_BYTES, (((hash >>> 32) & TAG_MASK) << 40) | (offset + 1));
+                size++;
+                return 1;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Get the count for a key, trying an optimistic lookup without locking first.
+         *
+         * @param hash the hash of the key
+         * @param key  the encoded key
+         * @return the count or zero if not found
+         */
+        long getCount(long hash, KeyBuffer key) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    var count = lookup(hash, key);
+                    if (lock.validate(stamp)) {
+                        return count;
+                    }
+                } catch (IndexOutOfBoundsException ex) {
+                    // The tables changed underneath the lookup so fall through and lock them
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                return lookup(hash, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Look up the count for a key.
+         *
+         * @param hash the hash of the key
+         * @param key  the encoded key
+         * @return the count or zero if not found
+         */
+        private long lookup(long hash, KeyBuffer key) {
+            var table = slots;
+            int slot = findSlot(table, slotMask, keys, hash, key);
+            return (slot >= 0) ? table.getLong(slot * SLOT_BYTES + 8) : 0;
+        }
+
+        /**
+         * Append a key to the arena, growing it if necessary.
+         *
+         * @param key the encoded key
+         * @return the offset of the key
+         */
+        private int appendKey(KeyBuffer key) {
+            int needed = 2 + key.length;
+            if (keysUsed + needed > keys.capacity()) {
+                if ((long) keysUsed + needed > MAX_KEY_BYTES) {
+                    throw new IllegalStateException("Hashtag dictionary segment is full");
+                }
+
+                // Double the arena (or more for a huge key) and copy the existing keys across
+                var grown = allocate("keys", (int) Math.min(MAX_KEY_BYTES, Math.max(2L * keys.capacity(), (long) keysUsed + needed)));
+                grown.put(0, keys, 0, keysUsed);
+                memoryUsage += grown.capacity() - keys.capacity();
+                keys = grown;
+            }
+
+            int offset = keysUsed;
+            keys.putShort(offset, (short) key.length);
+            keys.put(offset + 2, key.bytes, 0, key.length);
+            keysUsed += needed;
+            return offset;
+        }
+
+        /**
+         * Double the slot table and rehash all the entries into it.
+         */
+        private void growSlots() {
+            int oldCount = slotMask + 1;
+            if (oldCount >= MAX_SLOT_COUNT) {
+                throw new IllegalStateException("Hashtag dictionary segment is full");
+            }
+
+            int newMask = oldCount * 2 - 1;
+            var grown = allocate("slots", oldCount * 2 * SLOT_BYTES);
+
+            for (int i = 0; i < oldCount; i++) {
+                var ref = slots.getLong(i * SLOT_BYTES);
+                if (ref != 0) {
+                    // Rehash the key to find its home slot in the new table and probe for an empty one
+                    int offset = (int) ((ref & OFFSET_MASK) - 1);
+                    int index = (int) hash(keys, offset + 2, keys.getShort(offset) & 0xFFFF) & newMask;
+                    while (grown.getLong(index * SLOT_BYTES) != 0) {
+                        index = (index + 1) & newMask;
+                    }
+                    grown.putLong(index * SLOT_BYTES + 8, slots.getLong(i * SLOT_BYTES + 8));
+                    grown.putLong(index * SLOT_BYTES, ref);
+                }
+            }
+
+            // Publish the new table
+            memoryUsage += grown.capacity() - slots.capacity();
+            slots = grown;
+            slotMask = newMask;
+        }
+
+        /**
+         * Allocate a new zeroed buffer for the segment.
+         *
+         * @param name the name of the buffer
+         * @param size the size in bytes
+         * @return the buffer
+         */
+        private ByteBuffer allocate(String name, int size) {
+            if (mappedDirectory == null) {
+                return ByteBuffer.allocateDirect(size);
+            }
+
+            // Map a new scratch file which can be unlinked immediately as the mapping keeps it alive
+            var file = mappedDirectory.resolve(String.format("segment-%03d-%s-%d.bin", index, name, generation++));
+            try (var channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+                var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    // Some platforms cannot delete a mapped file so tidy it up later instead
+                    file.toFile().deleteOnExit();
+                }
+                return buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Find the slot for a key.
+     *
+     * @param slots    the table of slots
+     * @param slotMask the mask to convert a hash into a slot index
+     * @param keys     the key arena
+     * @param hash     the hash of the key
+     * @param key      the encoded key
+     * @return the index of the slot holding the key or (-index - 1) of the empty slot where it belongs
+     */
+    private static int findSlot(ByteBuffer slots, int slotMask, ByteBuffer keys, long hash, KeyBuffer key) {
+        long tag = (hash >>> 32) & TAG_MASK;
+        int index = (int) hash & slotMask;
+
+        // Probe linearly (the table is never full) and give up if the tables changed and no empty slot appears
+        for (int probes = 0; probes <= slotMask; probes++) {
+            var ref = slots.getLong(index * SLOT_BYTES);
+            if (ref == 0) {
+                return -index - 1;
+            }
+            if (((ref >>> 40) == tag) && keyEquals(keys, (int) ((ref & OFFSET_MASK) - 1), key)) {
+                return index;
+            }
+            index = (index + 1) & slotMask;
+        }
+
+        throw new IndexOutOfBoundsException("No empty slot found");
+    }
+
+    /**
+     * Check if a key in the arena matches an encoded key.
+     *
+     * @param keys   the key arena
+     * @param offset the offset of the stored key
+     * @param key    the encoded key
+     * @return true if they match
+     */
+    private static boolean keyEquals(ByteBuffer keys, int offset, KeyBuffer key) {
+        if ((keys.getShort(offset) & 0xFFFF) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (keys.get(offset + 2 + i) != key.bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
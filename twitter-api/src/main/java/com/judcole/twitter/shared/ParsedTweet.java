@@ -0,0 +1,151 @@
+package com.judcole.twitter.shared;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The class for the parsed view of a tweet shared by the stages of the tweet processing pipeline.
+ * <p>
+ * Tweets decoded from pooled blocks have no tweet data object and their id and text are reused buffers, so stages
+ * should read the id and text from here rather than from the data.
+ */
+public class ParsedTweet {
+
+    // Tweet data decoded from the block (or null if decoded from a pooled block)
+    private TweetData data;
+
+    // Tweet id
+    private CharSequence id;
+
+    // Tweet text
+    private CharSequence text;
+
+    // Reusable buffer for the id of a tweet decoded from a pooled block
+    private final CharSlice idBuffer = new CharSlice();
+
+    // Reusable buffer for the text of a tweet decoded from a pooled block
+    private final CharSlice textBuffer = new CharSlice();
+
+    // Time the tweet was processed in milliseconds since the epoch
+    private long receivedAtMillis;
+
+    // Entities extracted from the text (by type ordinal)
+    private final List<List<String>> entities = new ArrayList<>();
+
+    // Read only views of the entities (by type ordinal)
+    private final List<List<String>> entityViews = new ArrayList<>();
+
+    /**
+     * Instantiates a new parsed tweet.
+     */
+    ParsedTweet() {
+        for (int i = 0; i < EntityType.values().length; i++) {
+            var list = new ArrayList<String>();
+            entities.add(list);
+            entityViews.add(Collections.unmodifiableList(list));
+        }
+    }
+
+    /**
+     * Get the tweet data.
+     *
+     * @return the tweet data (or null if decoded from a pooled block)
+     */
+    public TweetData getData() {
+        return data;
+    }
+
+    /**
+     * Get the tweet id.
+     *
+     * @return the id (or null if the tweet has none)
+     */
+    public CharSequence getId() {
+        return id;
+    }
+
+    /**
+     * Get the tweet text.
+     *
+     * @return the text
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * Get the time the tweet was processed.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getReceivedAtMillis() {
+        return receivedAtMillis;
+    }
+
+    /**
+     * Get the entities of a type extracted from the text in order.
+     *
+     * @param type the entity type
+     * @return the entities (always empty for types that no stage reads)
+     */
+    public List<String> getEntities(EntityType type) {
+        return entityViews.get(type.ordinal());
+    }
+
+    /**
+     * Start the view of a new tweet.
+     *
+     * @param data             the tweet data
+     * @param receivedAtMillis the time the tweet was processed
+     */
+    void reset(TweetData data, long receivedAtMillis) {
+        this.data = data;
+        id = data.id;
+        text = data.text;
+        this.receivedAtMillis = receivedAtMillis;
+        entities.forEach(List::clear);
+    }
+
+    /**
+     * Start the view of a new tweet whose id and text have been decoded into the reusable buffers.
+     *
+     * @param hasId            true if the id buffer holds the id
+     * @param receivedAtMillis the time the tweet was processed
+     */
+    void resetFromBuffers(boolean hasId, long receivedAtMillis) {
+        data = null;
+        id = hasId ? idBuffer : null;
+        text = textBuffer;
+        this.receivedAtMillis = receivedAtMillis;
+        entities.forEach(List::clear);
+    }
+
+    /**
+     * Get the reusable buffer for the id.
+     *
+     * @return the buffer
+     */
+    CharSlice getIdBuffer() {
+        return idBuffer;
+    }
+
+    /**
+     * Get the reusable buffer for the text.
+     *
+     * @return the buffer
+     */
+    CharSlice getTextBuffer() {
+        return textBuffer;
+    }
+
+    /**
+     * Add an entity extracted from the text.
+     *
+     * @param type   the entity type
+     * @param entity the entity text (without its symbol)
+     */
+    void addEntity(EntityType type, String entity) {
+        entities.get(type.ordinal()).add(entity);
+    }
+}
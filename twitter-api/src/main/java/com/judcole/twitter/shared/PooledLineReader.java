@@ -0,0 +1,82 @@
+package com.judcole.twitter.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The class to read the lines of a stream into pooled tweet blocks without creating a string for each line.
+ */
+public class PooledLineReader {
+
+    // Size of the read buffer
+    private static final int BUFFER_SIZE = 8192;
+
+    // Stream to read
+    private final InputStream input;
+
+    // Pool of blocks for the lines
+    private final TweetBlockPool pool;
+
+    // Buffer of bytes read from the stream
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    // Index of the next unread byte in the buffer
+    private int position;
+
+    // Number of bytes in the buffer
+    private int limit;
+
+    /**
+     * Instantiates a new pooled line reader.
+     *
+     * @param input the stream to read
+     * @param pool  the pool of blocks for the lines
+     */
+    public PooledLineReader(InputStream input, TweetBlockPool pool) {
+        this.input = input;
+        this.pool = pool;
+    }
+
+    /**
+     * Read the next line (without its line ending) into a block from the pool.
+     *
+     * @return the block holding the line (which may be blank) or null at the end of the stream
+     * @throws IOException the IO exception
+     */
+    public PooledTweetBlock readLine() throws IOException {
+        PooledTweetBlock block = null;
+        while (true) {
+            if (position == limit) {
+                // Refill the buffer
+                limit = Math.max(0, input.read(buffer));
+                position = 0;
+                if (limit == 0) {
+                    // End of the stream so return any unterminated last line
+                    if ((block != null) && (block.getLength() == 0)) {
+                        block.release();
+                        block = null;
+                    }
+                    return block;
+                }
+            }
+
+            if (block == null) {
+                block = pool.acquire();
+            }
+
+            // Copy up to the end of the line or the buffer
+            int start = position;
+            while ((position < limit) && (buffer[position] != '\n')) {
+                position++;
+            }
+            block.append(buffer, start, position - start);
+
+            if (position < limit) {
+                // Skip the line feed and finish the line
+                position++;
+                block.trimCarriageReturn();
+                return block;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The class for a tweet block holding the raw UTF-8 bytes of a line in a buffer that is reused via a pool.
+ * <p>
+ * The block belongs to whoever it was last passed to and must be released exactly once after it has been
+ * processed, after which it must not be used again.
+ */
+public class PooledTweetBlock extends TweetBlock {
+
+    // Initial size of the buffer (enough for most tweets)
+    private static final int INITIAL_CAPACITY = 4096;
+
+    // Pool the block is returned to
+    private final TweetBlockPool pool;
+
+    // Buffer for the bytes of the line
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    // Number of bytes in the buffer
+    private int length;
+
+    /**
+     * Instantiates a new pooled tweet block.
+     *
+     * @param pool the pool the block is returned to
+     */
+    PooledTweetBlock(TweetBlockPool pool) {
+        super(null);
+        this.pool = pool;
+    }
+
+    /**
+     * Get the buffer holding the bytes of the line (which may be longer than the line).
+     *
+     * @return the buffer
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of bytes in the line.
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Append bytes to the line, growing the buffer if needed.
+     *
+     * @param source the source bytes
+     * @param offset the offset of the first byte to append
+     * @param count  the number of bytes to append
+     */
+    public void append(byte[] source, int offset, int count) {
+        if (length + count > bytes.length) {
+            var grown = new byte[Math.max(bytes.length * 2, length + count)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+        System.arraycopy(source, offset, bytes, length, count);
+        length += count;
+    }
+
+    /**
+     * Remove a carriage return from the end of the line.
+     */
+    public void trimCarriageReturn() {
+        if ((length > 0) && (bytes[length - 1] == '\r')) {
+            length--;
+        }
+    }
+
+    /**
+     * Check if the line is empty or only white space (such as a keep alive).
+     *
+     * @return true if blank
+     */
+    public boolean isBlank() {
+        for (int i = 0; i < length; i++) {
+            var b = bytes[i];
+            if ((b != ' ') && (b != '\t') && (b != '\r') && (b != '\n')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Empty the line ready for reuse.
+     */
+    void clear() {
+        length = 0;
+    }
+
+    /**
+     * Return the block to its pool.
+     */
+    public void release() {
+        pool.release(this);
+    }
+}
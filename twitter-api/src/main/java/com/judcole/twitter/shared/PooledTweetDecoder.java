@@ -0,0 +1,322 @@
+package com.judcole.twitter.shared;
+
+import java.io.IOException;
+
+/**
+ * The class to read the id and text of a tweet from the JSON bytes of a pooled block straight into reusable buffers.
+ * <p>
+ * Only the {@code data.id} and {@code data.text} strings are read and everything else is skipped without being
+ * decoded, so nothing is allocated for a valid tweet. Field names are matched on their raw bytes so a name written
+ * with escapes is treated as an unknown field. An instance must only be used by one thread at a time.
+ */
+class PooledTweetDecoder {
+
+    // Bytes of the JSON being decoded
+    private byte[] bytes;
+
+    // Index of the next byte to read
+    private int position;
+
+    // Index after the last byte of the JSON
+    private int limit;
+
+    // Whether the last tweet decoded had an id
+    private boolean hasId;
+
+    /**
+     * Decode the id and text of a tweet from a pooled block.
+     *
+     * @param block the pooled block
+     * @param id    the buffer for the id
+     * @param text  the buffer for the text
+     * @return true if the block has the text of a tweet
+     * @throws IOException the IO exception if the block is not well-formed JSON
+     */
+    boolean decode(PooledTweetBlock block, CharSlice id, CharSlice text) throws IOException {
+        bytes = block.getBytes();
+        position = 0;
+        limit = block.getLength();
+        hasId = false;
+        boolean hasText = false;
+
+        if (NextToken() != '{') {
+            return false;
+        }
+
+        // Find the data object, skipping anything else
+        for (var c = FirstMember(); c != '}'; c = NextMember()) {
+            var isData = ReadName("data");
+            if (isData && (NextToken() == '{')) {
+                // Copy the id and text, skipping anything else
+                for (var d = FirstMember(); d != '}'; d = NextMember()) {
+                    var start = position;
+                    if (ReadName("id") && (NextToken() == '"')) {
+                        ReadString(id);
+                        hasId = true;
+                    } else if (NameEquals(start, "text") && (NextToken() == '"')) {
+                        ReadString(text);
+                        hasText = true;
+                    } else {
+                        SkipValue();
+                    }
+                }
+            } else {
+                SkipValue();
+            }
+        }
+        return hasText;
+    }
+
+    /**
+     * Check whether the last tweet decoded had an id.
+     *
+     * @return true if it had an id
+     */
+    boolean hasId() {
+        return hasId;
+    }
+
+    /**
+     * Skip any whitespace and return the next byte without reading it.
+     *
+     * @return the next byte
+     * @throws IOException the IO exception if there are no more bytes
+     */
+    private byte NextToken() throws IOException {
+        while (position < limit) {
+            var c = bytes[position];
+            if ((c != ' ') && (c != '\t') && (c != '\r') && (c != '\n')) {
+                return c;
+            }
+            position++;
+        }
+        throw Malformed();
+    }
+
+    /**
+     * Read the opening brace of an object and return the next byte (a quote for a member or a closing brace).
+     *
+     * @return the next byte
+     * @throws IOException the IO exception if the object is malformed
+     */
+    private byte FirstMember() throws IOException {
+        position++;
+        var c = NextToken();
+        if (c == '}') {
+            position++;
+        } else if (c != '"') {
+            throw Malformed();
+        }
+        return c;
+    }
+
+    /**
+     * Read the separator after an object member and return the next byte (a quote for a member or a closing brace).
+     *
+     * @return the next byte
+     * @throws IOException the IO exception if the object is malformed
+     */
+    private byte NextMember() throws IOException {
+        var c = NextToken();
+        position++;
+        if (c == ',') {
+            if (NextToken() != '"') {
+                throw Malformed();
+            }
+            return '"';
+        } else if (c != '}') {
+            throw Malformed();
+        }
+        return c;
+    }
+
+    /**
+     * Read a member name and its colon, checking whether it is an expected name.
+     *
+     * @param expected the expected name
+     * @return true if the name is the expected one
+     * @throws IOException the IO exception if the member is malformed
+     */
+    private boolean ReadName(String expected) throws IOException {
+        var start = position;
+        SkipString();
+        if (NextToken() != ':') {
+            throw Malformed();
+        }
+        position++;
+        return NameEquals(start, expected);
+    }
+
+    /**
+     * Check whether the member name starting at an index is an expected name.
+     *
+     * @param start    the index of the opening quote of the name
+     * @param expected the expected name
+     * @return true if the name is the expected one
+     */
+    private boolean NameEquals(int start, String expected) {
+        var length = expected.length();
+        if ((start + length + 1 >= limit) || (bytes[start + length + 1] != '"')) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[start + 1 + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skip the next value (including any nested objects and arrays).
+     *
+     * @throws IOException the IO exception if the value is malformed
+     */
+    private void SkipValue() throws IOException {
+        var depth = 0;
+        do {
+            var c = NextToken();
+            if (c == '"') {
+                SkipString();
+            } else if ((c == '{') || (c == '[')) {
+                depth++;
+                position++;
+            } else if ((c == '}') || (c == ']')) {
+                depth--;
+                position++;
+            } else if ((c == ',') || (c == ':')) {
+                if (depth == 0) {
+                    throw Malformed();
+                }
+                position++;
+            } else {
+                // Skip a number or literal
+                while ((position < limit) && (bytes[position] > ' ') && (bytes[position] != ',')
+                        && (bytes[position] != '}') && (bytes[position] != ']')) {
+                    position++;
+                }
+            }
+        } while (depth > 0);
+
+        if (depth < 0) {
+            throw Malformed();
+        }
+    }
+
+    /**
+     * Skip a string without decoding it.
+     *
+     * @throws IOException the IO exception if the string is not terminated
+     */
+    private void SkipString() throws IOException {
+        position++;
+        while (position < limit) {
+            var c = bytes[position++];
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                position++;
+            }
+        }
+        throw Malformed();
+    }
+
+    /**
+     * Decode a UTF-8 string with its escapes into a buffer.
+     *
+     * @param buffer the buffer
+     * @throws IOException the IO exception if the string is malformed
+     */
+    private void ReadString(CharSlice buffer) throws IOException {
+        buffer.clear();
+        position++;
+        while (position < limit) {
+            int c = bytes[position++];
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                buffer.append(ReadEscape());
+            } else if (c >= 0) {
+                buffer.append((char) c);
+            } else if ((c & 0xE0) == 0xC0) {
+                buffer.append((char) (((c & 0x1F) << 6) | Continuation()));
+            } else if ((c & 0xF0) == 0xE0) {
+                buffer.append((char) (((c & 0x0F) << 12) | (Continuation() << 6) | Continuation()));
+            } else if ((c & 0xF8) == 0xF0) {
+                var codePoint = ((c & 0x07) << 18) | (Continuation() << 12) | (Continuation() << 6) | Continuation();
+                buffer.append(Character.highSurrogate(codePoint));
+                buffer.append(Character.lowSurrogate(codePoint));
+            } else {
+                throw Malformed();
+            }
+        }
+        throw Malformed();
+    }
+
+    /**
+     * Read the bits of a UTF-8 continuation byte.
+     *
+     * @return the bits
+     * @throws IOException the IO exception if the byte is not a continuation byte
+     */
+    private int Continuation() throws IOException {
+        if ((position >= limit) || ((bytes[position] & 0xC0) != 0x80)) {
+            throw Malformed();
+        }
+        return bytes[position++] & 0x3F;
+    }
+
+    /**
+     * Read the character for an escape after its backslash.
+     *
+     * @return the character
+     * @throws IOException the IO exception if the escape is malformed
+     */
+    private char ReadEscape() throws IOException {
+        if (position >= limit) {
+            throw Malformed();
+        }
+        return switch (bytes[position++]) {
+            case '"' -> '"';
+            case '\\' -> '\\';
+            case '/' -> '/';
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'u' -> ReadHexCharacter();
+            default -> throw Malformed();
+        };
+    }
+
+    /**
+     * Read the four hex digits of a unicode escape.
+     *
+     * @return the character
+     * @throws IOException the IO exception if the digits are malformed
+     */
+    private char ReadHexCharacter() throws IOException {
+        if (position + 4 > limit) {
+            throw Malformed();
+        }
+        var value = 0;
+        for (int i = 0; i < 4; i++) {
+            var digit = Character.digit(bytes[position++], 16);
+            if (digit < 0) {
+                throw Malformed();
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Create the exception for malformed JSON at the current position.
+     *
+     * @return the exception
+     */
+    private IOException Malformed() {
+        return new IOException("Malformed tweet JSON at offset " + position);
+    }
+}
@@ -0,0 +1,164 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Class for estimating the number of distinct items seen within a rolling time window.
+ * <p>
+ * The window is split into a fixed number of time buckets each with its own HyperLogLog sketch.
+ * Buckets are recycled as time moves on and the estimate merges the buckets still in the window.
+ */
+public class RollingHyperLogLog {
+
+    // Length of each bucket in milliseconds
+    private final long bucketMillis;
+
+    // Sketch for each bucket
+    private final HyperLogLog[] buckets;
+
+    // Epoch (time divided by the bucket length) that each bucket currently holds
+    private final long[] bucketEpochs;
+
+    /**
+     * Instantiates a new rolling sketch.
+     *
+     * @param bucketCount  the number of buckets in the window
+     * @param bucketMillis the length of each bucket in milliseconds
+     * @param precision    the precision of each bucket sketch
+     */
+    public RollingHyperLogLog(int bucketCount, long bucketMillis, int precision) {
+        if ((bucketCount <= 0) || (bucketMillis <= 0)) {
+            throw new InvalidParameterException("Rolling HyperLogLog needs a positive bucket count and length");
+        }
+
+        this.bucketMillis = bucketMillis;
+        buckets = new HyperLogLog[bucketCount];
+        bucketEpochs = new long[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new HyperLogLog(precision);
+            bucketEpochs[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Add an item using its 64-bit hash.
+     *
+     * @param hash       the hash of the item
+     * @param timeMillis the current time in milliseconds
+     */
+    public void add(long hash, long timeMillis) {
+        long epoch = timeMillis / bucketMillis;
+        int index = (int) (epoch % buckets.length);
+
+        if (bucketEpochs[index] != epoch) {
+            // The bucket holds an old epoch so recycle it (rarely so just lock it)
+            synchronized (this) {
+                if (bucketEpochs[index] > epoch) {
+                    // The item is too old for the window so ignore it
+                    return;
+                }
+                if (bucketEpochs[index] < epoch) {
+                    buckets[index].clear();
+                    bucketEpochs[index] = epoch;
+                }
+            }
+        }
+
+        buckets[index].add(hash);
+    }
+
+    /**
+     * Estimate the number of distinct items seen in the window ending at a specified time.
+     *
+     * @param timeMillis the current time in milliseconds
+     * @return the estimate
+     */
+    public long estimate(long timeMillis) {
+        return merged(timeMillis).estimate();
+    }
+
+    /**
+     * Merge the buckets still in the window ending at a specified time into a single sketch.
+     *
+     * @param timeMillis the current time in milliseconds
+     * @return the merged sketch
+     */
+    public synchronized HyperLogLog merged(long timeMillis) {
+        long epoch = timeMillis / bucketMillis;
+        var merged = new HyperLogLog(buckets[0].getPrecision());
+
+        for (int i = 0; i < buckets.length; i++) {
+            if ((bucketEpochs[i] <= epoch) && (bucketEpochs[i] > epoch - buckets.length)) {
+                merged.merge(buckets[i]);
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Merge the bucket for a specified epoch from another sketch (for example on another node).
+     *
+     * @param epoch     the epoch (time divided by the bucket length)
+     * @param registers the registers of the other bucket sketch
+     */
+    public synchronized void mergeBucket(long epoch, byte[] registers) {
+        int index = (int) (epoch % buckets.length);
+
+        if (bucketEpochs[index] < epoch) {
+            // Newer than the bucket we hold so recycle it
+            buckets[index].clear();
+            bucketEpochs[index] = epoch;
+        }
+        if (bucketEpochs[index] == epoch) {
+            buckets[index].merge(new HyperLogLog(registers));
+        }
+    }
+
+    /**
+     * Get the epoch (time divided by the bucket length) held by a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the epoch or Long.MIN_VALUE if the bucket has never been used
+     */
+    public synchronized long getBucketEpoch(int index) {
+        return bucketEpochs[index];
+    }
+
+    /**
+     * Get a copy of the registers for a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the registers
+     */
+    public byte[] getBucketRegisters(int index) {
+        return buckets[index].getRegisters();
+    }
+
+    /**
+     * Get the number of buckets in the window.
+     *
+     * @return the number of buckets
+     */
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    /**
+     * Get the precision of each bucket sketch.
+     *
+     * @return the precision
+     */
+    public int getPrecision() {
+        return buckets[0].getPrecision();
+    }
+
+    /**
+     * Get the length of each bucket in milliseconds.
+     *
+     * @return the length in milliseconds
+     */
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+}
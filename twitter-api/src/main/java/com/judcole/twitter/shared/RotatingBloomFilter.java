@@ -0,0 +1,250 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class for a time-rotating Bloom filter to detect recently seen keys in bounded memory.
+ * <p>
+ * Keys are added to the current generation and checked against both the current and previous
+ * generations, so a key is remembered for between one and two generation periods. Each generation
+ * is sized for half the requested false positive rate so that checking both stays within it.
+ * <p>
+ * Adding a key is atomic: a key is only reported as new by the call that flipped one of its bits, and the calls for
+ * the same key are serialized by a lock chosen from its hash, so concurrent copies of a key are never both new.
+ * <p>
+ * Rotation never clears bits that an add might be reading or setting. The generations are swapped by publishing a new
+ * immutable pair, which each add reads once while holding its key lock, and the retired bits are only cleared (in the
+ * background, to become the next current generation) once every key lock has been passed after the swap.
+ */
+public class RotatingBloomFilter {
+
+    // Number of locks for adding keys (a power of two)
+    private static final int KEY_LOCK_COUNT = 64;
+
+    // Length of each generation in milliseconds
+    private final long generationMillis;
+
+    // Number of bits in each generation
+    private final long bitCount;
+
+    // Number of hash functions (bits set per key)
+    private final int hashCount;
+
+    // Current and previous generations (swapped as a whole on rotation)
+    private volatile Generations generations;
+
+    // Cleared bits ready to become the next current generation (or null if they are still being cleared)
+    private volatile AtomicLongArray spareBits;
+
+    // Locks serializing the adds of keys with the same hash (selected by the top bits of the hash)
+    private final Lock[] keyLocks = new Lock[KEY_LOCK_COUNT];
+
+    /**
+     * Instantiates a new rotating Bloom filter.
+     *
+     * @param expectedKeys      the expected number of keys added in each generation
+     * @param falsePositiveRate the acceptable probability of a new key being reported as seen
+     * @param generationMillis  the length of each generation in milliseconds
+     */
+    public RotatingBloomFilter(long expectedKeys, double falsePositiveRate, long generationMillis) {
+        if ((expectedKeys <= 0) || (falsePositiveRate <= 0) || (falsePositiveRate >= 1) || (generationMillis <= 0)) {
+            throw new InvalidParameterException("Invalid Bloom filter parameters");
+        }
+
+        // Size each generation for half the false positive rate using the standard optimal formulas
+        var generationRate = falsePositiveRate / 2;
+        var bits = Math.ceil(-expectedKeys * Math.log(generationRate) / (Math.log(2) * Math.log(2)));
+        bitCount = Math.max(64, ((long) bits + 63) & ~63L);
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+
+        this.generationMillis = generationMillis;
+        generations = new Generations(NewBits(), NewBits(), Long.MIN_VALUE);
+        spareBits = NewBits();
+        for (int i = 0; i < KEY_LOCK_COUNT; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Add a key if it has not been seen recently (concurrent safe).
+     *
+     * @param keyHash    a 64-bit hash of the key
+     * @param timeMillis the current time in milliseconds
+     * @return true if the key was new or false if it was (probably) seen recently
+     */
+    public boolean addIfAbsent(long keyHash, long timeMillis) {
+        rotate(timeMillis / generationMillis);
+
+        var keyLock = keyLocks[(int) (keyHash >>> (64 - Integer.numberOfTrailingZeros(KEY_LOCK_COUNT)))];
+        keyLock.lock();
+        try {
+            // Read the generations under the key lock so an earlier add of the key is in the bits they hold
+            var held = generations;
+            if (mightContain(held.previous, keyHash)) {
+                return false;
+            }
+
+            // Set the bits for each hash (Kirsch-Mitzenmacher double hashing), noting whether this call flipped any
+            var current = held.current;
+            var flipped = false;
+            long hash2 = (keyHash >>> 32) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(keyHash + i * hash2, bitCount);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word = current.get(index);
+                while ((word & mask) == 0) {
+                    if (current.weakCompareAndSetVolatile(index, word, word | mask)) {
+                        flipped = true;
+                        break;
+                    }
+                    word = current.get(index);
+                }
+            }
+            return flipped;
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Check if a key might have been seen recently without adding it.
+     *
+     * @param keyHash a 64-bit hash of the key
+     * @return true if the key was (probably) seen recently
+     */
+    public boolean mightContain(long keyHash) {
+        var held = generations;
+        return mightContain(held.current, keyHash) || mightContain(held.previous, keyHash);
+    }
+
+    /**
+     * Get the number of bytes used by the filter.
+     *
+     * @return the number of bytes
+     */
+    public long getMemoryUsage() {
+        // Current, previous and spare generations
+        return 3 * bitCount / 8;
+    }
+
+    /**
+     * Get the number of hash functions (bits set per key).
+     *
+     * @return the number of hash functions
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Check if all the bits for a key are set in a generation.
+     *
+     * @param bits    the bits of the generation
+     * @param keyHash the hash of the key
+     * @return true if the key might have been added
+     */
+    private boolean mightContain(AtomicLongArray bits, long keyHash) {
+        long hash2 = (keyHash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(keyHash + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rotate the generations if the time has moved on.
+     *
+     * @param generation the generation number for the current time
+     */
+    private void rotate(long generation) {
+        if (generation <= generations.generation) {
+            return;
+        }
+
+        synchronized (this) {
+            var held = generations;
+            if (generation > held.generation) {
+                // Take the cleared spare bits (or new ones if the last spare is not ready) for the current generation
+                var current = spareBits;
+                spareBits = null;
+                if (current == null) {
+                    current = NewBits();
+                }
+
+                // Keep the current bits for one more generation (or forget both generations after a long gap)
+                var previous = (generation == held.generation + 1) ? held.current : NewBits();
+                generations = new Generations(current, previous, generation);
+
+                // Clear the retired bits in the background to be the next spare
+                CompletableFuture.runAsync(() -> Recycle(held.previous));
+            }
+        }
+    }
+
+    /**
+     * Clear retired bits once no add can still be using them and keep them as the spare bits.
+     *
+     * @param retired the retired bits
+     */
+    private void Recycle(AtomicLongArray retired) {
+        // Any add that read the old generations holds its key lock so wait for each lock to be free once
+        for (var keyLock : keyLocks) {
+            keyLock.lock();
+            keyLock.unlock();
+        }
+
+        for (int i = 0; i < retired.length(); i++) {
+            retired.set(i, 0);
+        }
+
+        synchronized (this) {
+            if (spareBits == null) {
+                spareBits = retired;
+            }
+        }
+    }
+
+    /**
+     * Create cleared bits for a generation.
+     *
+     * @return the bits
+     */
+    private AtomicLongArray NewBits() {
+        return new AtomicLongArray((int) (bitCount / 64));
+    }
+
+    /**
+     * The class for the current and previous generations published together.
+     */
+    private static class Generations {
+        // Bits for the current generation
+        private final AtomicLongArray current;
+
+        // Bits for the previous generation
+        private final AtomicLongArray previous;
+
+        // Generation number (time divided by the generation length) of the current bits
+        private final long generation;
+
+        /**
+         * Instantiates a new pair of generations.
+         *
+         * @param current    the bits for the current generation
+         * @param previous   the bits for the previous generation
+         * @param generation the generation number of the current bits
+         */
+        private Generations(AtomicLongArray current, AtomicLongArray previous, long generation) {
+            this.current = current;
+            this.previous = previous;
+            this.generation = generation;
+        }
+    }
+}
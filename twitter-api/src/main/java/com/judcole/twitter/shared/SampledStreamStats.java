@@ -3,14 +3,26 @@ package com.judcole.twitter.shared;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.lang.reflect.Array;
+import java.security.InvalidParameterException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The class to store statistics for the sampled stream.
+ * <p>
+ * The tweet, hashtag and duplicate totals are striped counters so each processing worker adds to its own padded cell
+ * without locking or sharing a cache line with the others, and the cells are summed whenever a total is read.
  */
 public class SampledStreamStats {
 
@@ -18,6 +30,21 @@ public class SampledStreamStats {
     @Getter
     private long dailyTweets;
 
+    // Number of duplicate tweets received and ignored
+    private final LongAdder duplicateTweets = new LongAdder();
+
+    // Estimated number of distinct hashtags received
+    @Getter
+    private long distinctHashtags;
+
+    // Estimated number of distinct hashtags received in the last day
+    @Getter
+    private long distinctHashtagsLastDay;
+
+    // Estimated number of distinct hashtags received in the last hour
+    @Getter
+    private long distinctHashtagsLastHour;
+
     // Average hourly number of tweets received
     @Getter
     private long hourlyTweets;
@@ -26,6 +53,11 @@ public class SampledStreamStats {
     @Getter
     private LocalDateTime lastUpdated;
 
+    // Number of workers processing the incoming queue
+    @Getter
+    @Setter
+    private int processorWorkers;
+
     // Extra status information
     @Getter
     @Setter
@@ -43,53 +75,221 @@ public class SampledStreamStats {
     @Getter
     private final int topHashtagsSize;
 
-    // Total number of hashtags received
+    // Maximum number of top Hashtags that can be requested
+    @Getter
+    private final int topHashtagsCeiling;
+
+    // Lists of the top other entities (mentions, cashtags, link domains and emoji) by type
+    @Getter
+    private final Map<EntityType, String[]> topEntities = new EnumMap<>(EntityType.class);
+
+    // Lists of the top other entity counts by type
     @Getter
-    private long totalHashtags;
+    private final Map<EntityType, long[]> topEntityCounts = new EnumMap<>(EntityType.class);
+
+    // Total number of hashtags received
+    private final LongAdder totalHashtags = new LongAdder();
 
     // Total number of tweets received
+    private final LongAdder totalTweets = new LongAdder();
+
+    // Top trending hashtags by their exponentially decayed score
+    @Getter
+    private final String[] trendingHashtags;
+
+    // Decayed scores of the top trending hashtags (each occurrence adds 1 and halves every half-life)
+    @Getter
+    private final double[] trendingHashtagScores;
+
+    // Half-life of the trending hashtag scores
     @Getter
-    private long totalTweets;
+    private final long trendingHalfLifeMillis;
 
     // Number of Tweets waiting to be processed in incoming queue
     @Getter
-    private int tweetQueueCount;
+    private volatile int tweetQueueCount;
+
+    // Entity types other than hashtags with their own top lists
+    private static final List<EntityType> OTHER_ENTITY_TYPES = Arrays.stream(EntityType.values())
+            .filter(type -> type != EntityType.HASHTAG).toList();
+
+    // Name of the stats lock in the lock wait events
+    private static final String STATS_LOCK_NAME = "statsLock";
 
     // Object to use for simple locking when updating complex fields
     private final Lock statsLock = new ReentrantLock();
 
+    // Ranked index of the top hashtags up to the ceiling
+    private final TopHashtagsIndex topHashtagsIndex;
+
+    // Decayed scores of the hashtags and a ranked index of the top trending ones up to the ceiling
+    private final TrendingHashtags trendingIndex;
+
+    // Ranked indexes of the top other entities up to the ceiling by type
+    private final Map<EntityType, TopHashtagsIndex> topEntityIndexes = new EnumMap<>(EntityType.class);
+
+    // Sketch of all the distinct hashtags received
+    private final HyperLogLog distinctHashtagsSketch;
+
+    // Sketch of the distinct hashtags received in the last day (in hourly buckets)
+    private final RollingHyperLogLog distinctHashtagsLastDaySketch;
+
+    // Sketch of the distinct hashtags received in the last hour (in 5 minute buckets)
+    private final RollingHyperLogLog distinctHashtagsLastHourSketch;
+
     /**
      * Construct the SampledStreamStats instance with a specified table size.
      *
      * @param topHashtagsSize the size of the list for the top Hashtags
      */
     public SampledStreamStats(int topHashtagsSize) {
+        this(topHashtagsSize, topHashtagsSize);
+    }
+
+    /**
+     * Construct the SampledStreamStats instance with a specified table size and a larger ranked index for snapshots.
+     *
+     * @param topHashtagsSize    the size of the list for the top Hashtags
+     * @param topHashtagsCeiling the maximum number of top Hashtags that can be requested in a snapshot
+     */
+    public SampledStreamStats(int topHashtagsSize, int topHashtagsCeiling) {
+        this(topHashtagsSize, topHashtagsCeiling, SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS);
+    }
+
+    /**
+     * Construct the SampledStreamStats instance with a specified table size, a larger ranked index for snapshots and
+     * a half-life for the trending hashtag scores.
+     *
+     * @param topHashtagsSize        the size of the list for the top Hashtags
+     * @param topHashtagsCeiling     the maximum number of top Hashtags that can be requested in a snapshot
+     * @param trendingHalfLifeMillis the half-life of the trending hashtag scores in milliseconds
+     */
+    public SampledStreamStats(int topHashtagsSize, int topHashtagsCeiling, long trendingHalfLifeMillis) {
         // Set the last updated date and time
         lastUpdated = LocalDateTime.now(ZoneOffset.UTC);
 
-        // Create the top hashtags list
+        // Create the top hashtags list and the ranked index behind it
         this.topHashtagsSize = topHashtagsSize;
         topHashtagCounts = new long[this.topHashtagsSize];
         topHashtags = new String[this.topHashtagsSize];
+        this.topHashtagsCeiling = Math.max(topHashtagsSize, topHashtagsCeiling);
+        topHashtagsIndex = new TopHashtagsIndex(this.topHashtagsCeiling);
+
+        // Create the trending hashtags list and the decayed scores behind it
+        trendingHashtags = new String[this.topHashtagsSize];
+        trendingHashtagScores = new double[this.topHashtagsSize];
+        this.trendingHalfLifeMillis = trendingHalfLifeMillis;
+        trendingIndex = new TrendingHashtags(trendingHalfLifeMillis, this.topHashtagsCeiling);
+
+        // Create the lists and ranked indexes for the other entities
+        for (var type : OTHER_ENTITY_TYPES) {
+            topEntities.put(type, new String[this.topHashtagsSize]);
+            topEntityCounts.put(type, new long[this.topHashtagsSize]);
+            topEntityIndexes.put(type, new TopHashtagsIndex(this.topHashtagsCeiling));
+        }
+
+        // Create the distinct hashtag sketches
+        distinctHashtagsSketch = new HyperLogLog();
+        distinctHashtagsLastDaySketch = new RollingHyperLogLog(24, 60 * 60 * 1000, HyperLogLog.DEFAULT_PRECISION);
+        distinctHashtagsLastHourSketch = new RollingHyperLogLog(12, 5 * 60 * 1000, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Construct a read-only snapshot of another instance with a different number of top Hashtags.
+     * <p>
+     * The snapshot shares the ranked index and sketches of the source so it is cheap to create.
+     *
+     * @param source          the source instance (locked by the caller)
+     * @param topHashtagsSize the number of top Hashtags in the snapshot
+     */
+    private SampledStreamStats(SampledStreamStats source, int topHashtagsSize) {
+        dailyTweets = source.dailyTweets;
+        duplicateTweets.add(source.getDuplicateTweets());
+        distinctHashtags = source.distinctHashtags;
+        distinctHashtagsLastDay = source.distinctHashtagsLastDay;
+        distinctHashtagsLastHour = source.distinctHashtagsLastHour;
+        hourlyTweets = source.hourlyTweets;
+        lastUpdated = source.lastUpdated;
+        processorWorkers = source.processorWorkers;
+        status = source.status;
+        totalHashtags.add(source.getTotalHashtags());
+        totalTweets.add(source.getTotalTweets());
+        tweetQueueCount = source.tweetQueueCount;
+
+        this.topHashtagsSize = topHashtagsSize;
+        topHashtagCounts = new long[topHashtagsSize];
+        topHashtags = new String[topHashtagsSize];
+        topHashtagsCeiling = source.topHashtagsCeiling;
+        topHashtagsIndex = source.topHashtagsIndex;
+        topHashtagsIndex.getTop(topHashtags, topHashtagCounts);
+
+        trendingHashtags = new String[topHashtagsSize];
+        trendingHashtagScores = new double[topHashtagsSize];
+        trendingHalfLifeMillis = source.trendingHalfLifeMillis;
+        trendingIndex = source.trendingIndex;
+        trendingIndex.getTop(trendingHashtags, trendingHashtagScores, lastUpdated.toInstant(ZoneOffset.UTC).toEpochMilli());
+
+        for (var type : OTHER_ENTITY_TYPES) {
+            topEntities.put(type, new String[topHashtagsSize]);
+            topEntityCounts.put(type, new long[topHashtagsSize]);
+            topEntityIndexes.put(type, source.topEntityIndexes.get(type));
+            topEntityIndexes.get(type).getTop(topEntities.get(type), topEntityCounts.get(type));
+        }
+
+        distinctHashtagsSketch = source.distinctHashtagsSketch;
+        distinctHashtagsLastDaySketch = source.distinctHashtagsLastDaySketch;
+        distinctHashtagsLastHourSketch = source.distinctHashtagsLastHourSketch;
     }
 
     /**
-     * Set new values for the basic fields (concurrent safe).
+     * Add the counts from a processed block to the basic fields (concurrent safe without locking).
      *
-     * @param totalHashtags   the total hashtags
-     * @param totalTweets     the total tweets
+     * @param hashtags        the number of hashtags in the block
+     * @param tweets          the number of tweets in the block
      * @param tweetQueueCount the tweet queue count
      */
-    public void SetBasicFields(long totalHashtags, long totalTweets, int tweetQueueCount) {
-        // Play safe and lock the instance while we update it
-        statsLock.lock();
-        try {
-            this.totalHashtags = totalHashtags;
-            this.totalTweets = totalTweets;
-            this.tweetQueueCount = tweetQueueCount;
-        } finally {
-            statsLock.unlock();
+    public void AddBasicCounts(long hashtags, long tweets, int tweetQueueCount) {
+        if (hashtags != 0) {
+            totalHashtags.add(hashtags);
         }
+        if (tweets != 0) {
+            totalTweets.add(tweets);
+        }
+        this.tweetQueueCount = tweetQueueCount;
+    }
+
+    /**
+     * Increment the number of duplicate tweets (concurrent safe without locking).
+     */
+    public void IncrementDuplicateTweets() {
+        duplicateTweets.increment();
+    }
+
+    /**
+     * Get the number of duplicate tweets received and ignored.
+     *
+     * @return the number of duplicate tweets
+     */
+    public long getDuplicateTweets() {
+        return duplicateTweets.sum();
+    }
+
+    /**
+     * Get the total number of hashtags received.
+     *
+     * @return the total hashtags
+     */
+    public long getTotalHashtags() {
+        return totalHashtags.sum();
+    }
+
+    /**
+     * Get the total number of tweets received.
+     *
+     * @return the total tweets
+     */
+    public long getTotalTweets() {
+        return totalTweets.sum();
     }
 
     /**
@@ -99,7 +299,7 @@ public class SampledStreamStats {
      */
     public void SetCalculatedFields(LocalDateTime startTime) {
         // Play safe and lock the instance while we update it
-        statsLock.lock();
+        CollectorEvents.lock(statsLock, STATS_LOCK_NAME);
         try {
             // Update the last updated date and time
             lastUpdated = LocalDateTime.now(ZoneOffset.UTC);
@@ -107,16 +307,208 @@ public class SampledStreamStats {
             // Calculate and set the daily tweet rate with a check for negative durations
             var elapsedTime = ChronoUnit.SECONDS.between(startTime, lastUpdated);
             var elapsedDays = Math.max(1, Math.ceil((double) elapsedTime / (60 * 60 * 24)));
+            var totalTweets = getTotalTweets();
             dailyTweets = (long) (Math.ceil((double) totalTweets) / elapsedDays);
 
             // Calculate and set the hourly tweet rate with a check for negative durations
             var elapsedHours = Math.max(1, Math.ceil((double) elapsedTime / (60 * 60)));
             hourlyTweets = (long) (Math.ceil((double) totalTweets) / elapsedHours);
+
+            // Estimate the distinct hashtag counts from the sketches
+            var timeMillis = lastUpdated.toInstant(ZoneOffset.UTC).toEpochMilli();
+            distinctHashtags = distinctHashtagsSketch.estimate();
+            distinctHashtagsLastDay = distinctHashtagsLastDaySketch.estimate(timeMillis);
+            distinctHashtagsLastHour = distinctHashtagsLastHourSketch.estimate(timeMillis);
+
+            // Decay the trending hashtag scores to the same time
+            trendingIndex.getTop(trendingHashtags, trendingHashtagScores, timeMillis);
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    /**
+     * Take a read-only snapshot of the statistics with a specified number of top Hashtags (concurrent safe).
+     *
+     * @param topHashtagsSize the number of top Hashtags (up to the ceiling)
+     * @return the snapshot
+     */
+    public SampledStreamStats Snapshot(int topHashtagsSize) {
+        if ((topHashtagsSize < 0) || (topHashtagsSize > topHashtagsCeiling)) {
+            throw new InvalidParameterException("Top hashtags size exceeds the ceiling of " + topHashtagsCeiling);
+        }
+
+        // Play safe and lock the instance while we read it
+        CollectorEvents.lock(statsLock, STATS_LOCK_NAME);
+        try {
+            return new SampledStreamStats(this, topHashtagsSize);
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    /**
+     * Export the mergeable state of the statistics (concurrent safe).
+     *
+     * @return the exported state
+     */
+    public SampledStreamStatsExport Export() {
+        // Play safe and lock the instance while we read it
+        CollectorEvents.lock(statsLock, STATS_LOCK_NAME);
+        try {
+            var export = new SampledStreamStatsExport();
+            export.exportedAt = System.currentTimeMillis();
+            export.dailyTweets = dailyTweets;
+            export.duplicateTweets = getDuplicateTweets();
+            export.hourlyTweets = hourlyTweets;
+            export.topHashtags = new String[topHashtagsIndex.getSize()];
+            export.topHashtagCounts = new long[export.topHashtags.length];
+            topHashtagsIndex.getTop(export.topHashtags, export.topHashtagCounts);
+            export.trendingHashtags = new String[trendingIndex.getSize()];
+            export.trendingHashtagScores = new double[export.trendingHashtags.length];
+            trendingIndex.getTop(export.trendingHashtags, export.trendingHashtagScores, export.exportedAt);
+            export.topEntities = new EnumMap<>(EntityType.class);
+            export.topEntityCounts = new EnumMap<>(EntityType.class);
+            for (var type : OTHER_ENTITY_TYPES) {
+                var index = topEntityIndexes.get(type);
+                export.topEntities.put(type, new String[index.getSize()]);
+                export.topEntityCounts.put(type, new long[index.getSize()]);
+                index.getTop(export.topEntities.get(type), export.topEntityCounts.get(type));
+            }
+            export.totalHashtags = getTotalHashtags();
+            export.totalTweets = getTotalTweets();
+            export.distinctHashtagsSketch = distinctHashtagsSketch.getRegisters();
+            export.distinctHashtagsLastDay = ExportSketchWindow(distinctHashtagsLastDaySketch, export.exportedAt);
+            export.distinctHashtagsLastHour = ExportSketchWindow(distinctHashtagsLastHourSketch, export.exportedAt);
+            return export;
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    /**
+     * Check whether an exported state from another node can be merged into this instance.
+     * <p>
+     * The candidate lists must pair each entity with a count and the sketches must have the same precision (and the
+     * windows a bucket for each epoch within the window), so a malformed export cannot break a merge.
+     *
+     * @param export the exported state
+     * @return true if it can be merged
+     */
+    public boolean CanMerge(SampledStreamStatsExport export) {
+        if ((export == null) || !IsPaired(export.topHashtags, export.topHashtagCounts)
+                || !IsPaired(export.trendingHashtags, export.trendingHashtagScores)) {
+            return false;
+        }
+        if ((export.topEntities != null) && (export.topEntityCounts == null)) {
+            return false;
+        }
+        if (export.topEntities != null) {
+            for (var type : OTHER_ENTITY_TYPES) {
+                if (!IsPaired(export.topEntities.get(type), export.topEntityCounts.get(type))) {
+                    return false;
+                }
+            }
+        }
+        return (export.distinctHashtagsSketch != null)
+                && (export.distinctHashtagsSketch.length == 1 << distinctHashtagsSketch.getPrecision())
+                && IsMergeableWindow(distinctHashtagsLastDaySketch, export.distinctHashtagsLastDay)
+                && IsMergeableWindow(distinctHashtagsLastHourSketch, export.distinctHashtagsLastHour);
+    }
+
+    /**
+     * Set all the fields by merging the exported state of several nodes into this (new) instance (concurrent safe).
+     * <p>
+     * Any export that cannot be merged is skipped.
+     *
+     * @param exports the exported states
+     */
+    public void SetMergedFields(List<SampledStreamStatsExport> exports) {
+        // Play safe and lock the instance while we update it
+        CollectorEvents.lock(statsLock, STATS_LOCK_NAME);
+        try {
+            lastUpdated = LocalDateTime.now(ZoneOffset.UTC);
+            var timeMillis = lastUpdated.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+            // Sum the totals and top candidates (keeping the first spelling seen) and merge the sketches
+            var hashtagCounts = new HashMap<String, Long>();
+            var hashtagSpellings = new HashMap<String, String>();
+            var entityCounts = new EnumMap<EntityType, Map<String, Long>>(EntityType.class);
+            var entitySpellings = new EnumMap<EntityType, Map<String, String>>(EntityType.class);
+            for (var type : OTHER_ENTITY_TYPES) {
+                entityCounts.put(type, new HashMap<>());
+                entitySpellings.put(type, new HashMap<>());
+            }
+            for (var export : exports) {
+                if (!CanMerge(export)) {
+                    continue;
+                }
+                dailyTweets += export.dailyTweets;
+                duplicateTweets.add(export.duplicateTweets);
+                hourlyTweets += export.hourlyTweets;
+                totalHashtags.add(export.totalHashtags);
+                totalTweets.add(export.totalTweets);
+
+                AddTopCandidates(hashtagCounts, hashtagSpellings, export.topHashtags, export.topHashtagCounts);
+                MergeTrendingCandidates(trendingIndex, export);
+                if (export.topEntities != null) {
+                    for (var type : OTHER_ENTITY_TYPES) {
+                        AddTopCandidates(entityCounts.get(type), entitySpellings.get(type),
+                                export.topEntities.get(type), export.topEntityCounts.get(type));
+                    }
+                }
+
+                distinctHashtagsSketch.merge(new HyperLogLog(export.distinctHashtagsSketch));
+                MergeSketchWindow(distinctHashtagsLastDaySketch, export.distinctHashtagsLastDay);
+                MergeSketchWindow(distinctHashtagsLastHourSketch, export.distinctHashtagsLastHour);
+            }
+
+            // Rank the candidates and fill the top lists
+            RankTopCandidates(topHashtagsIndex, hashtagCounts, hashtagSpellings);
+            topHashtagsIndex.getTop(topHashtags, topHashtagCounts);
+            for (var type : OTHER_ENTITY_TYPES) {
+                RankTopCandidates(topEntityIndexes.get(type), entityCounts.get(type), entitySpellings.get(type));
+                topEntityIndexes.get(type).getTop(topEntities.get(type), topEntityCounts.get(type));
+            }
+
+            // Estimate the distinct hashtag counts from the merged sketches
+            distinctHashtags = distinctHashtagsSketch.estimate();
+            distinctHashtagsLastDay = distinctHashtagsLastDaySketch.estimate(timeMillis);
+            distinctHashtagsLastHour = distinctHashtagsLastHourSketch.estimate(timeMillis);
+
+            // Decay the summed trending hashtag scores to the same time
+            trendingIndex.getTop(trendingHashtags, trendingHashtagScores, timeMillis);
         } finally {
             statsLock.unlock();
         }
     }
 
+    /**
+     * Record a hashtag in the distinct hashtag sketches (concurrent safe without locking).
+     *
+     * @param hashtag    the lower cased hashtag
+     * @param timeMillis the current time in milliseconds
+     */
+    public void RecordDistinctHashtag(String hashtag, long timeMillis) {
+        var hash = HyperLogLog.hash(hashtag);
+        distinctHashtagsSketch.add(hash);
+        distinctHashtagsLastDaySketch.add(hash, timeMillis);
+        distinctHashtagsLastHourSketch.add(hash, timeMillis);
+    }
+
+    /**
+     * Record an occurrence of a hashtag in the trending hashtag scores (concurrent safe without locking).
+     * <p>
+     * The occurrence is added to a pending score with a compare and set and only ranked when the trending list is
+     * refreshed with the other calculated fields.
+     *
+     * @param hashtag    the hashtag
+     * @param timeMillis the current time in milliseconds
+     */
+    public void RecordTrendingHashtag(String hashtag, long timeMillis) {
+        trendingIndex.add(hashtag, timeMillis);
+    }
+
     /**
      * Update the list of top hashtags with a specified hashtag and count.
      *
@@ -124,48 +516,192 @@ public class SampledStreamStats {
      * @param count   the count of occurrences of the hashtag
      */
     public void UpdateTopHashtags(String hashtag, long count) {
-        // Index of the current hashtag
-        int index;
+        // Play safe and lock the instance while we update it
+        CollectorEvents.lock(statsLock, STATS_LOCK_NAME);
+        try {
+            // Update the ranked index and refresh the list if any of its slots changed
+            if (topHashtagsIndex.update(hashtag, count) < topHashtagsSize) {
+                topHashtagsIndex.getTop(topHashtags, topHashtagCounts);
+            }
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    /**
+     * Copy the current top hashtags from the ranked index (concurrent safe).
+     *
+     * @param count the number of top hashtags (up to the ceiling)
+     * @return the top hashtags in descending order of count (with nulls for any ranks not yet filled)
+     */
+    public String[] CopyTopHashtags(int count) {
+        if ((count < 0) || (count > topHashtagsCeiling)) {
+            throw new InvalidParameterException("Top hashtags size exceeds the ceiling of " + topHashtagsCeiling);
+        }
+        var hashtags = new String[count];
+        topHashtagsIndex.getTop(hashtags, new long[count]);
+        return hashtags;
+    }
+
+    /**
+     * Update the list of top entities of a type with a specified entity and count.
+     *
+     * @param type   the entity type
+     * @param entity the entity to add
+     * @param count  the count of occurrences of the entity
+     */
+    public void UpdateTopEntities(EntityType type, String entity, long count) {
+        if (type == EntityType.HASHTAG) {
+            UpdateTopHashtags(entity, count);
+            return;
+        }
 
         // Play safe and lock the instance while we update it
-        statsLock.lock();
+        CollectorEvents.lock(statsLock, STATS_LOCK_NAME);
         try {
-            // Find if it is already in the list and if so delete it
-            for (index = 0; index < topHashtagsSize; index++)
-                if (hashtag.equalsIgnoreCase(topHashtags[index])) {
-                    // Found the hashtag so shuffle the rest up
-                    for (int i = index; i < topHashtagsSize - 1; i++) {
-                        // Shuffle the lower hashtags up a slot
-                        topHashtags[i] = topHashtags[i + 1];
-                        topHashtagCounts[i] = topHashtagCounts[i + 1];
-                    }
-                    // Clear the last slot to make sure it can be overwritten
-                    topHashtags[topHashtagsSize - 1] = null;
-                    topHashtagCounts[topHashtagsSize - 1] = 0;
+            // Update the ranked index and refresh the list if any of its slots changed
+            var index = topEntityIndexes.get(type);
+            if (index.update(entity, count) < topHashtagsSize) {
+                index.getTop(topEntities.get(type), topEntityCounts.get(type));
+            }
+        } finally {
+            statsLock.unlock();
+        }
+    }
 
-                    // Done with this part
-                    break;
-                }
+    /**
+     * Sum exported top candidates by their lower cased form, keeping the first spelling seen.
+     *
+     * @param counts       the summed counts
+     * @param spellings    the first spellings
+     * @param entities     the exported top candidates (or null)
+     * @param entityCounts the exported counts
+     */
+    private static void AddTopCandidates(Map<String, Long> counts, Map<String, String> spellings, String[] entities, long[] entityCounts) {
+        if (entities == null) {
+            return;
+        }
+        for (int i = 0; i < entities.length; i++) {
+            if (entities[i] != null) {
+                var entityLower = entities[i].toLowerCase();
+                counts.merge(entityLower, entityCounts[i], Long::sum);
+                spellings.putIfAbsent(entityLower, entities[i]);
+            }
+        }
+    }
 
-            // Find if and where the hashtag qualifies to be in the list
-            for (index = 0; (index < topHashtagsSize) && (topHashtagCounts[index] > count); ) {
-                index++;
+    /**
+     * Sum the exported trending hashtag scores into the trending scores, decaying each from the time of its export.
+     *
+     * @param trending the trending scores
+     * @param export   the exported state
+     */
+    private static void MergeTrendingCandidates(TrendingHashtags trending, SampledStreamStatsExport export) {
+        if ((export.trendingHashtags == null) || (export.trendingHashtagScores == null)) {
+            return;
+        }
+        for (int i = 0; i < export.trendingHashtags.length; i++) {
+            if (export.trendingHashtags[i] != null) {
+                trending.merge(export.trendingHashtags[i], export.trendingHashtagScores[i], export.exportedAt);
             }
+        }
+    }
 
-            if (index < topHashtagsSize) {
-                // Found its slot so shuffle the rest down to make room
-                for (int i = topHashtagsSize - 2; i >= index; i--) {
-                    // Shuffle the hashtag down a slot
-                    topHashtags[i + 1] = topHashtags[i];
-                    topHashtagCounts[i + 1] = topHashtagCounts[i];
-                }
+    /**
+     * Add summed candidates to a ranked index in descending order of count.
+     *
+     * @param index     the ranked index
+     * @param counts    the summed counts
+     * @param spellings the spellings
+     */
+    private static void RankTopCandidates(TopHashtagsIndex index, Map<String, Long> counts, Map<String, String> spellings) {
+        var candidates = new ArrayList<>(counts.entrySet());
+        candidates.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        for (int i = 0; (i < candidates.size()) && (i < index.getCapacity()); i++) {
+            index.update(spellings.get(candidates.get(i).getKey()), candidates.get(i).getValue());
+        }
+    }
+
+    /**
+     * Export the buckets of a rolling sketch that are still in its window.
+     *
+     * @param sketch     the rolling sketch
+     * @param timeMillis the current time in milliseconds
+     * @return the exported buckets
+     */
+    private static SampledStreamStatsExport.SketchWindow ExportSketchWindow(RollingHyperLogLog sketch, long timeMillis) {
+        var epoch = timeMillis / sketch.getBucketMillis();
+        var epochs = new ArrayList<Long>();
+        var sketches = new ArrayList<byte[]>();
 
-                // Set the new hashtag value and count in its correct slot
-                topHashtags[index] = hashtag;
-                topHashtagCounts[index] = count;
+        for (int i = 0; i < sketch.getBucketCount(); i++) {
+            var bucketEpoch = sketch.getBucketEpoch(i);
+            if ((bucketEpoch <= epoch) && (bucketEpoch > epoch - sketch.getBucketCount())) {
+                epochs.add(bucketEpoch);
+                sketches.add(sketch.getBucketRegisters(i));
             }
-        } finally {
-            statsLock.unlock();
+        }
+
+        var window = new SampledStreamStatsExport.SketchWindow();
+        window.bucketMillis = sketch.getBucketMillis();
+        window.bucketEpochs = epochs.stream().mapToLong(Long::longValue).toArray();
+        window.bucketSketches = sketches.toArray(new byte[0][]);
+        return window;
+    }
+
+    /**
+     * Check whether the entities and their counts (or scores) of an exported list pair up.
+     *
+     * @param entities the entities (or null)
+     * @param counts   the counts or scores (an array or null)
+     * @return true if both are missing or they have the same length
+     */
+    private static boolean IsPaired(Object[] entities, Object counts) {
+        if ((entities == null) || (counts == null)) {
+            return (entities == null) && (counts == null);
+        }
+        return Array.getLength(counts) == entities.length;
+    }
+
+    /**
+     * Check whether exported buckets can be merged into a rolling sketch (a missing window or one with another bucket
+     * length is ignored by the merge so it is accepted).
+     *
+     * @param sketch the rolling sketch
+     * @param window the exported buckets
+     * @return true if the buckets can be merged
+     */
+    private static boolean IsMergeableWindow(RollingHyperLogLog sketch, SampledStreamStatsExport.SketchWindow window) {
+        if ((window == null) || (window.bucketMillis != sketch.getBucketMillis())) {
+            return true;
+        }
+        if ((window.bucketEpochs == null) || (window.bucketSketches == null)
+                || (window.bucketEpochs.length != window.bucketSketches.length)
+                || (window.bucketEpochs.length > sketch.getBucketCount())) {
+            return false;
+        }
+        var registerCount = 1 << sketch.getPrecision();
+        for (int i = 0; i < window.bucketEpochs.length; i++) {
+            if ((window.bucketEpochs[i] < 0) || (window.bucketSketches[i] == null)
+                    || (window.bucketSketches[i].length != registerCount)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merge exported buckets into a rolling sketch with the same bucket length.
+     *
+     * @param sketch the rolling sketch
+     * @param window the exported buckets
+     */
+    private static void MergeSketchWindow(RollingHyperLogLog sketch, SampledStreamStatsExport.SketchWindow window) {
+        if ((window == null) || (window.bucketMillis != sketch.getBucketMillis())) {
+            return;
+        }
+        for (int i = 0; i < window.bucketEpochs.length; i++) {
+            sketch.mergeBucket(window.bucketEpochs[i], window.bucketSketches[i]);
         }
     }
 }
@@ -0,0 +1,95 @@
+package com.judcole.twitter.shared;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Map;
+
+/**
+ * The class for the mergeable state of a node's statistics, exported to an aggregator.
+ * <p>
+ * Totals and rates are summed, top hashtag (and other entity) candidates are summed by entity, trending hashtag
+ * scores are decayed from the time of their export and summed and the distinct hashtag sketches (including their time
+ * window buckets) are merged register by register.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SampledStreamStatsExport {
+    /**
+     * The time of the export in milliseconds since the epoch.
+     */
+    public long exportedAt;
+    /**
+     * The average daily number of tweets received.
+     */
+    public long dailyTweets;
+    /**
+     * The number of duplicate tweets received and ignored.
+     */
+    public long duplicateTweets;
+    /**
+     * The average hourly number of tweets received.
+     */
+    public long hourlyTweets;
+    /**
+     * The top hashtag candidates.
+     */
+    public String[] topHashtags;
+    /**
+     * The counts for the top hashtag candidates.
+     */
+    public long[] topHashtagCounts;
+    /**
+     * The top trending hashtag candidates.
+     */
+    public String[] trendingHashtags;
+    /**
+     * The decayed scores for the top trending hashtag candidates at the time of the export.
+     */
+    public double[] trendingHashtagScores;
+    /**
+     * The top candidates for the other entity types.
+     */
+    public Map<EntityType, String[]> topEntities;
+    /**
+     * The counts for the top candidates for the other entity types.
+     */
+    public Map<EntityType, long[]> topEntityCounts;
+    /**
+     * The total number of hashtags received.
+     */
+    public long totalHashtags;
+    /**
+     * The total number of tweets received.
+     */
+    public long totalTweets;
+    /**
+     * The registers of the sketch of all the distinct hashtags.
+     */
+    public byte[] distinctHashtagsSketch;
+    /**
+     * The sketch buckets for the distinct hashtags in the last day.
+     */
+    public SketchWindow distinctHashtagsLastDay;
+    /**
+     * The sketch buckets for the distinct hashtags in the last hour.
+     */
+    public SketchWindow distinctHashtagsLastHour;
+
+    /**
+     * The class for the buckets of a rolling sketch that are still in its window.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class SketchWindow {
+        /**
+         * The length of each bucket in milliseconds.
+         */
+        public long bucketMillis;
+        /**
+         * The epoch (time divided by the bucket length) of each bucket.
+         */
+        public long[] bucketEpochs;
+        /**
+         * The registers of each bucket sketch.
+         */
+        public byte[][] bucketSketches;
+    }
+}
@@ -13,19 +13,60 @@ public class SampledStreamStatsFactory {
     // Default size of statistics table
     public static final int DEFAULT_STATS_SIZE = 10;
 
+    // Default maximum number of top hashtags that can be requested
+    public static final int DEFAULT_TOP_HASHTAGS_CEILING = 1000;
+
+    // Default half-life of the trending hashtag scores (one hour)
+    public static final long DEFAULT_TRENDING_HALF_LIFE_MILLIS = 60 * 60 * 1000;
+
+    // Maximum number of top hashtags that can be requested
+    private final int topHashtagsCeiling;
+
+    // Half-life of the trending hashtag scores
+    private final long trendingHalfLifeMillis;
+
     // Shared total statistics
     private SampledStreamStats sharedStats = null;
 
+    /**
+     * Instantiates a new stats factory with the default top hashtags ceiling.
+     */
+    public SampledStreamStatsFactory() {
+        this(DEFAULT_TOP_HASHTAGS_CEILING);
+    }
+
+    /**
+     * Instantiates a new stats factory.
+     *
+     * @param topHashtagsCeiling the maximum number of top hashtags that can be requested
+     */
+    public SampledStreamStatsFactory(int topHashtagsCeiling) {
+        this(topHashtagsCeiling, DEFAULT_TRENDING_HALF_LIFE_MILLIS);
+    }
+
+    /**
+     * Instantiates a new stats factory with a half-life for the trending hashtag scores.
+     *
+     * @param topHashtagsCeiling     the maximum number of top hashtags that can be requested
+     * @param trendingHalfLifeMillis the half-life of the trending hashtag scores in milliseconds
+     */
+    public SampledStreamStatsFactory(int topHashtagsCeiling, long trendingHalfLifeMillis) {
+        this.topHashtagsCeiling = topHashtagsCeiling;
+        this.trendingHalfLifeMillis = trendingHalfLifeMillis;
+    }
+
     /**
      * Gets a shared statics instance with a table of a specified size.
+     * <p>
+     * Other numbers of top hashtags up to the ceiling are available from snapshots of the instance.
      *
      * @param tableSize the table size
      * @return the stats instance
      */
     public SampledStreamStats getStatsInstance(int tableSize) {
         if (sharedStats == null) {
-            // Allocate a new instance of the specified size
-            sharedStats = new SampledStreamStats(tableSize);
+            // Allocate a new instance of the specified size ranking up to the ceiling
+            sharedStats = new SampledStreamStats(tableSize, topHashtagsCeiling, trendingHalfLifeMillis);
         } else {
             // Check for a mismatch in the table size
             if (sharedStats.getTopHashtagsSize() != tableSize) {
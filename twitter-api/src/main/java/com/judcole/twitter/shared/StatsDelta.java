@@ -0,0 +1,64 @@
+package com.judcole.twitter.shared;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class for the changes in the statistics between two published versions.
+ * <p>
+ * A full delta is against an empty state, so a client applies every delta the same way after clearing its state for
+ * a full one.
+ */
+public class StatsDelta {
+    /**
+     * The version of the statistics after the changes.
+     */
+    public long version;
+    /**
+     * The version the changes are from (0 for a full delta).
+     */
+    public long since;
+    /**
+     * True if this contains every field and rank because the requested version is no longer (or not yet) known.
+     */
+    public boolean full;
+    /**
+     * The scalar fields that changed, by name.
+     */
+    public Map<String, Object> fields;
+    /**
+     * The ranks that changed in each top list, by the name of the list.
+     */
+    public Map<String, List<RankChange>> ranks;
+
+    /**
+     * The class for a rank that changed in a top list.
+     */
+    public static class RankChange {
+        /**
+         * The rank (from 0).
+         */
+        public int rank;
+        /**
+         * The entity at the rank (or null if the rank is now empty).
+         */
+        public String name;
+        /**
+         * The count or score of the entity.
+         */
+        public Number value;
+
+        /**
+         * Instantiates a new rank change.
+         *
+         * @param rank  the rank
+         * @param name  the entity at the rank
+         * @param value the count or score of the entity
+         */
+        public RankChange(int rank, String name, Number value) {
+            this.rank = rank;
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The class to give each published state of the statistics a version and return the changes since an earlier one.
+ * <p>
+ * A new state is published at most once per interval however many clients poll, and only gets a new version if
+ * something other than its time changed. The most recent states are kept so a client that polls often only receives
+ * the scalar fields and ranks that changed, while one that has fallen further behind receives everything.
+ * <p>
+ * The trending hashtag scores decay with time alone, so the trending ranks only count as changed when a different
+ * hashtag holds them (and then carry the latest score).
+ */
+public class StatsDeltaTracker {
+
+    /**
+     * The name of the top hashtags list in the deltas.
+     */
+    public static final String TOP_HASHTAGS = "topHashtags";
+
+    /**
+     * The name of the trending hashtags list in the deltas.
+     */
+    public static final String TRENDING_HASHTAGS = "trendingHashtags";
+
+    /**
+     * The prefix of the names of the top lists of the other entity types in the deltas.
+     */
+    public static final String TOP_ENTITIES_PREFIX = "topEntities.";
+
+    // Name of the field that changes with every published state
+    private static final String LAST_UPDATED = "lastUpdated";
+
+    // Minimum time between published states
+    private final long intervalMillis;
+
+    // Maximum number of published states kept
+    private final int capacity;
+
+    // Published states from oldest to newest
+    private final Deque<VersionedState> states = new ArrayDeque<>();
+
+    // Object to use for simple locking when publishing and reading the states
+    private final Lock trackerLock = new ReentrantLock();
+
+    // Time of the last check for a new state
+    private long lastPublishMillis = Long.MIN_VALUE;
+
+    // Latest version
+    private long version;
+
+    /**
+     * Instantiates a new stats delta tracker.
+     *
+     * @param intervalMillis the minimum time between published states in milliseconds
+     * @param capacity       the maximum number of published states kept
+     */
+    public StatsDeltaTracker(long intervalMillis, int capacity) {
+        if ((intervalMillis < 0) || (capacity <= 0)) {
+            throw new InvalidParameterException("Invalid stats delta interval or capacity");
+        }
+        this.intervalMillis = intervalMillis;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Publish the latest statistics if the interval has passed since the last check (concurrent safe).
+     *
+     * @param stats      the supplier of the latest statistics (only called if the interval has passed)
+     * @param timeMillis the current time in milliseconds
+     * @return the latest version
+     */
+    public long publishIfDue(Supplier<SampledStreamStats> stats, long timeMillis) {
+        trackerLock.lock();
+        try {
+            if ((lastPublishMillis != Long.MIN_VALUE) && (timeMillis - lastPublishMillis < intervalMillis)) {
+                return version;
+            }
+            lastPublishMillis = timeMillis;
+
+            var latest = stats.get();
+            if (latest == null) {
+                return version;
+            }
+
+            // Only give it a new version if more than the time changed
+            var state = Capture(latest);
+            var previous = states.peekLast();
+            if ((previous != null) && previous.state.sameAs(state)) {
+                return version;
+            }
+
+            states.addLast(new VersionedState(++version, state));
+            if (states.size() > capacity) {
+                states.removeFirst();
+            }
+            return version;
+        } finally {
+            trackerLock.unlock();
+        }
+    }
+
+    /**
+     * Get the changes from a version to the latest published version (concurrent safe).
+     *
+     * @param since the version the client has (0 or an unknown version for everything)
+     * @return the changes or null if nothing has been published
+     */
+    public StatsDelta getDelta(long since) {
+        VersionedState from = null;
+        VersionedState to;
+
+        trackerLock.lock();
+        try {
+            to = states.peekLast();
+            if (to == null) {
+                return null;
+            }
+            for (var state : states) {
+                if (state.version == since) {
+                    from = state;
+                    break;
+                }
+            }
+        } finally {
+            trackerLock.unlock();
+        }
+
+        return Diff(from, to);
+    }
+
+    /**
+     * Get the latest published version (concurrent safe).
+     *
+     * @return the version or 0 if nothing has been published
+     */
+    public long getVersion() {
+        trackerLock.lock();
+        try {
+            return version;
+        } finally {
+            trackerLock.unlock();
+        }
+    }
+
+    /**
+     * Capture the scalar fields and top lists of a consistent snapshot of the statistics.
+     *
+     * @param latest the statistics
+     * @return the state
+     */
+    private static State Capture(SampledStreamStats latest) {
+        var stats = latest.Snapshot(latest.getTopHashtagsSize());
+        var fields = new LinkedHashMap<String, Object>();
+        fields.put("dailyTweets", stats.getDailyTweets());
+        fields.put("duplicateTweets", stats.getDuplicateTweets());
+        fields.put("distinctHashtags", stats.getDistinctHashtags());
+        fields.put("distinctHashtagsLastDay", stats.getDistinctHashtagsLastDay());
+        fields.put("distinctHashtagsLastHour", stats.getDistinctHashtagsLastHour());
+        fields.put("hourlyTweets", stats.getHourlyTweets());
+        fields.put(LAST_UPDATED, stats.getLastUpdated());
+        fields.put("processorWorkers", stats.getProcessorWorkers());
+        fields.put("status", stats.getStatus());
+        fields.put("topHashtagsCeiling", stats.getTopHashtagsCeiling());
+        fields.put("topHashtagsSize", stats.getTopHashtagsSize());
+        fields.put("totalHashtags", stats.getTotalHashtags());
+        fields.put("totalTweets", stats.getTotalTweets());
+        fields.put("trendingHalfLifeMillis", stats.getTrendingHalfLifeMillis());
+        fields.put("tweetQueueCount", stats.getTweetQueueCount());
+
+        var lists = new LinkedHashMap<String, List<RankEntry>>();
+        lists.put(TOP_HASHTAGS, Ranks(stats.getTopHashtags(), stats.getTopHashtagCounts()));
+        var trendingHashtags = stats.getTrendingHashtags();
+        var trendingHashtagScores = stats.getTrendingHashtagScores();
+        var trending = new ArrayList<RankEntry>();
+        for (int i = 0; i < trendingHashtags.length; i++) {
+            trending.add(new RankEntry(trendingHashtags[i], trendingHashtagScores[i]));
+        }
+        lists.put(TRENDING_HASHTAGS, trending);
+        stats.getTopEntities().forEach((type, entities) ->
+                lists.put(TOP_ENTITIES_PREFIX + type, Ranks(entities, stats.getTopEntityCounts().get(type))));
+
+        return new State(fields, lists);
+    }
+
+    /**
+     * Pair the entities of a top list with their counts.
+     *
+     * @param entities the entities
+     * @param counts   the counts
+     * @return the ranks
+     */
+    private static List<RankEntry> Ranks(String[] entities, long[] counts) {
+        var ranks = new ArrayList<RankEntry>(entities.length);
+        for (int i = 0; i < entities.length; i++) {
+            ranks.add(new RankEntry(entities[i], counts[i]));
+        }
+        return ranks;
+    }
+
+    /**
+     * Find the changes between two published states.
+     *
+     * @param from the earlier state (or null for everything)
+     * @param to   the later state
+     * @return the changes
+     */
+    private static StatsDelta Diff(VersionedState from, VersionedState to) {
+        var delta = new StatsDelta();
+        delta.version = to.version;
+        delta.since = (from == null) ? 0 : from.version;
+        delta.full = (from == null);
+        delta.fields = new LinkedHashMap<>();
+        delta.ranks = new LinkedHashMap<>();
+
+        to.state.fields.forEach((name, value) -> {
+            if ((from == null) || !Objects.equals(from.state.fields.get(name), value)) {
+                delta.fields.put(name, value);
+            }
+        });
+
+        to.state.lists.forEach((name, ranks) -> {
+            var previous = (from == null) ? List.<RankEntry>of() : from.state.lists.getOrDefault(name, List.of());
+            var changes = new ArrayList<StatsDelta.RankChange>();
+            for (int rank = 0; rank < Math.max(ranks.size(), previous.size()); rank++) {
+                var entry = (rank < ranks.size()) ? ranks.get(rank) : null;
+                if ((rank >= previous.size()) || !SameRank(name, previous.get(rank), entry)) {
+                    changes.add((entry == null)
+                            ? new StatsDelta.RankChange(rank, null, null)
+                            : new StatsDelta.RankChange(rank, entry.name, entry.value));
+                }
+            }
+            if (!changes.isEmpty()) {
+                delta.ranks.put(name, changes);
+            }
+        });
+        return delta;
+    }
+
+    /**
+     * Check if a rank of a top list holds the same entry in two states (by hashtag alone for the trending hashtags).
+     *
+     * @param list   the name of the top list
+     * @param before the earlier entry (or null if the rank was missing)
+     * @param after  the later entry (or null if the rank is missing)
+     * @return true if they are the same
+     */
+    private static boolean SameRank(String list, RankEntry before, RankEntry after) {
+        if (TRENDING_HASHTAGS.equals(list) && (before != null) && (after != null)) {
+            return Objects.equals(before.name, after.name);
+        }
+        return Objects.equals(before, after);
+    }
+
+    /**
+     * The class for an entity and its count or score at a rank.
+     */
+    private static class RankEntry {
+        // Entity (or null for an empty rank)
+        private final String name;
+
+        // Count or score
+        private final Number value;
+
+        /**
+         * Instantiates a new rank entry.
+         *
+         * @param name  the entity
+         * @param value the count or score
+         */
+        private RankEntry(String name, Number value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof RankEntry entry) && Objects.equals(name, entry.name) && Objects.equals(value, entry.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, value);
+        }
+    }
+
+    /**
+     * The class for the scalar fields and top lists of the statistics.
+     */
+    private static class State {
+        // Scalar fields by name
+        private final Map<String, Object> fields;
+
+        // Top lists by name
+        private final Map<String, List<RankEntry>> lists;
+
+        /**
+         * Instantiates a new state.
+         *
+         * @param fields the scalar fields by name
+         * @param lists  the top lists by name
+         */
+        private State(Map<String, Object> fields, Map<String, List<RankEntry>> lists) {
+            this.fields = fields;
+            this.lists = lists;
+        }
+
+        /**
+         * Check if another state has the same fields and lists apart from the time (and the decay of the trending
+         * hashtag scores).
+         *
+         * @param other the other state
+         * @return true if they are the same
+         */
+        private boolean sameAs(State other) {
+            if (!lists.keySet().equals(other.lists.keySet())) {
+                return false;
+            }
+            for (var list : lists.entrySet()) {
+                var ranks = list.getValue();
+                var otherRanks = other.lists.get(list.getKey());
+                if (ranks.size() != otherRanks.size()) {
+                    return false;
+                }
+                for (int rank = 0; rank < ranks.size(); rank++) {
+                    if (!SameRank(list.getKey(), ranks.get(rank), otherRanks.get(rank))) {
+                        return false;
+                    }
+                }
+            }
+            for (var field : fields.entrySet()) {
+                if (!field.getKey().equals(LAST_UPDATED) && !Objects.equals(field.getValue(), other.fields.get(field.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The class for a published state and its version.
+     */
+    private static class VersionedState {
+        // Version
+        private final long version;
+
+        // State
+        private final State state;
+
+        /**
+         * Instantiates a new versioned state.
+         *
+         * @param version the version
+         * @param state   the state
+         */
+        private VersionedState(long version, State state) {
+            this.version = version;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class to keep a bounded in-memory history of periodic samples of the statistics.
+ * <p>
+ * The samples are compressed in blocks (see {@link StatsHistoryBlock}) held in a ring buffer that drops its oldest
+ * block once that block is older than the retention period, so days of samples every few seconds take a few MB.
+ * Queries decode the blocks in range and downsample them to the last sample in each step.
+ */
+public class StatsHistory {
+
+    /**
+     * The maximum number of points returned by a query.
+     */
+    public static final int MAX_POINTS = 10000;
+
+    // Number of samples compressed together in a block
+    private static final int SAMPLES_PER_BLOCK = 360;
+
+    // Interval between the samples
+    private final long intervalMillis;
+
+    // Time to keep the samples for
+    private final long retentionMillis;
+
+    // Number of top (and trending) hashtags in each sample
+    private final int topSize;
+
+    // Maximum number of blocks to keep (in case the clock jumps)
+    private final int maxBlocks;
+
+    // Blocks of samples from oldest to newest
+    private final Deque<StatsHistoryBlock> blocks = new ArrayDeque<>();
+
+    // Object to use for simple locking when recording and querying
+    private final Lock historyLock = new ReentrantLock();
+
+    /**
+     * Instantiates a new empty history.
+     *
+     * @param intervalMillis  the interval between the samples in milliseconds
+     * @param retentionMillis the time to keep the samples for in milliseconds
+     * @param topSize         the number of top (and trending) hashtags in each sample
+     */
+    public StatsHistory(long intervalMillis, long retentionMillis, int topSize) {
+        if ((intervalMillis <= 0) || (retentionMillis <= 0) || (topSize < 0)) {
+            throw new InvalidParameterException("Invalid history interval, retention or size");
+        }
+        this.intervalMillis = intervalMillis;
+        this.retentionMillis = retentionMillis;
+        this.topSize = topSize;
+        maxBlocks = (int) Math.min(Integer.MAX_VALUE, retentionMillis / (intervalMillis * SAMPLES_PER_BLOCK) + 2);
+    }
+
+    /**
+     * Record a sample of the statistics (concurrent safe).
+     *
+     * @param latest     the statistics (with their calculated fields set)
+     * @param timeMillis the time of the sample in milliseconds since the epoch
+     */
+    public void record(SampledStreamStats latest, long timeMillis) {
+        // Read from a snapshot so each hashtag is paired with its own count or score
+        var slots = Math.min(topSize, latest.getTopHashtagsSize());
+        var stats = latest.Snapshot(slots);
+
+        var sample = new StatsHistoryPoint(topSize);
+        sample.timeMillis = timeMillis;
+        sample.dailyTweets = stats.getDailyTweets();
+        sample.duplicateTweets = stats.getDuplicateTweets();
+        sample.distinctHashtags = stats.getDistinctHashtags();
+        sample.distinctHashtagsLastDay = stats.getDistinctHashtagsLastDay();
+        sample.distinctHashtagsLastHour = stats.getDistinctHashtagsLastHour();
+        sample.hourlyTweets = stats.getHourlyTweets();
+        sample.processorWorkers = stats.getProcessorWorkers();
+        sample.totalHashtags = stats.getTotalHashtags();
+        sample.totalTweets = stats.getTotalTweets();
+        sample.tweetQueueCount = stats.getTweetQueueCount();
+
+        // Copy as many of the top and trending hashtags as there are slots
+        System.arraycopy(stats.getTopHashtags(), 0, sample.topHashtags, 0, slots);
+        System.arraycopy(stats.getTopHashtagCounts(), 0, sample.topHashtagCounts, 0, slots);
+        System.arraycopy(stats.getTrendingHashtags(), 0, sample.trendingHashtags, 0, slots);
+        System.arraycopy(stats.getTrendingHashtagScores(), 0, sample.trendingHashtagScores, 0, slots);
+        record(sample);
+    }
+
+    /**
+     * Record a sample (concurrent safe).
+     *
+     * @param sample the sample (with slots for the top and trending hashtags)
+     */
+    void record(StatsHistoryPoint sample) {
+        historyLock.lock();
+        try {
+            // Start a new block when the current one is full
+            var block = blocks.peekLast();
+            if ((block == null) || block.isFull(SAMPLES_PER_BLOCK)) {
+                if (block != null) {
+                    block.seal();
+                }
+                block = new StatsHistoryBlock(topSize);
+                blocks.addLast(block);
+            }
+            block.append(sample);
+
+            // Drop the blocks that have expired
+            while ((blocks.size() > maxBlocks)
+                    || ((blocks.size() > 1) && (blocks.peekFirst().getLastTimeMillis() < sample.timeMillis - retentionMillis))) {
+                blocks.removeFirst();
+            }
+        } finally {
+            historyLock.unlock();
+        }
+    }
+
+    /**
+     * Get the samples in a time range downsampled to the last sample in each step (concurrent safe).
+     *
+     * @param fromMillis the start of the range in milliseconds since the epoch
+     * @param toMillis   the end of the range (inclusive) in milliseconds since the epoch
+     * @param stepMillis the length of each step in milliseconds
+     * @return the points in time order
+     * @throws InvalidParameterException if the range or step is invalid or there would be too many points
+     */
+    public List<StatsHistoryPoint> query(long fromMillis, long toMillis, long stepMillis) {
+        if ((stepMillis <= 0) || (toMillis < fromMillis)) {
+            throw new InvalidParameterException("Invalid history range or step");
+        }
+        if ((toMillis - fromMillis) / stepMillis >= MAX_POINTS) {
+            throw new InvalidParameterException("History query exceeds the maximum of " + MAX_POINTS + " points");
+        }
+
+        var points = new ArrayList<StatsHistoryPoint>();
+        var current = new StatsHistoryPoint(topSize);
+        var pending = new StatsHistoryPoint(topSize);
+        long pendingStep = -1;
+        long previousTimeMillis = Long.MIN_VALUE;
+        long previousTotalTweets = 0;
+
+        historyLock.lock();
+        try {
+            for (var block : blocks) {
+                // Skip whole blocks before the range, keeping the last sample for the first rate
+                if (block.getLastTimeMillis() < fromMillis) {
+                    previousTimeMillis = block.getLastTimeMillis();
+                    previousTotalTweets = block.getLastTotalTweets();
+                    continue;
+                }
+                if (block.getFirstTimeMillis() > toMillis) {
+                    break;
+                }
+
+                var reader = block.reader();
+                while (reader.next(current) && (current.timeMillis <= toMillis)) {
+                    if (current.timeMillis < fromMillis) {
+                        previousTimeMillis = current.timeMillis;
+                        previousTotalTweets = current.totalTweets;
+                        continue;
+                    }
+
+                    // Add the last sample of the previous step when a new step starts
+                    var step = (current.timeMillis - fromMillis) / stepMillis;
+                    if ((pendingStep >= 0) && (step != pendingStep)) {
+                        points.add(ToPoint(pending, previousTimeMillis, previousTotalTweets));
+                        previousTimeMillis = pending.timeMillis;
+                        previousTotalTweets = pending.totalTweets;
+                    }
+
+                    var swap = pending;
+                    pending = current;
+                    current = swap;
+                    pendingStep = step;
+                }
+            }
+        } finally {
+            historyLock.unlock();
+        }
+
+        if (pendingStep >= 0) {
+            points.add(ToPoint(pending, previousTimeMillis, previousTotalTweets));
+        }
+        return points;
+    }
+
+    /**
+     * Get the number of samples kept (concurrent safe).
+     *
+     * @return the number of samples
+     */
+    public int getSampleCount() {
+        historyLock.lock();
+        try {
+            return blocks.stream().mapToInt(StatsHistoryBlock::getSamples).sum();
+        } finally {
+            historyLock.unlock();
+        }
+    }
+
+    /**
+     * Get the approximate memory used by the samples kept (concurrent safe).
+     *
+     * @return the size in bytes
+     */
+    public long getSizeBytes() {
+        historyLock.lock();
+        try {
+            return blocks.stream().mapToLong(StatsHistoryBlock::getSizeBytes).sum();
+        } finally {
+            historyLock.unlock();
+        }
+    }
+
+    /**
+     * Get the interval between the samples.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Get the time the samples are kept for.
+     *
+     * @return the retention in milliseconds
+     */
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    /**
+     * Copy a decoded sample to a new point with the tweet rate since a previous sample.
+     *
+     * @param sample              the decoded sample
+     * @param previousTimeMillis  the time of the previous sample (or Long.MIN_VALUE if there is none)
+     * @param previousTotalTweets the total tweets of the previous sample
+     * @return the point
+     */
+    private static StatsHistoryPoint ToPoint(StatsHistoryPoint sample, long previousTimeMillis, long previousTotalTweets) {
+        var point = new StatsHistoryPoint(sample);
+        if ((previousTimeMillis != Long.MIN_VALUE) && (sample.timeMillis > previousTimeMillis)) {
+            point.tweetsPerSecond = (sample.totalTweets - previousTotalTweets) * 1000.0 / (sample.timeMillis - previousTimeMillis);
+        }
+        return point;
+    }
+}
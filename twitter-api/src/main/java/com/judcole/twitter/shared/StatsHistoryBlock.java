@@ -0,0 +1,503 @@
+package com.judcole.twitter.shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class for a block of consecutive statistics samples compressed in the style of Facebook's Gorilla.
+ * <p>
+ * The time and each integer field (including the count in each top hashtag slot) are stored as the difference between
+ * successive deltas, which is usually 0 or a few bits for regular samples of steadily growing totals. The trending
+ * scores are stored as the XOR with the previous score, keeping only the meaningful bits. The hashtag in each slot is
+ * a single bit when unchanged or an id into the hashtags of the block otherwise. Samples can only be read back in
+ * order from the start of the block. A block is not thread safe.
+ */
+class StatsHistoryBlock {
+
+    // Bit lengths of the signed delta of delta buckets (after prefixes of 10, 110, 1110 and 11110, with 11111 for 64)
+    private static final int[] DELTA_BUCKET_BITS = {7, 9, 12, 32};
+
+    // Number of integer fields in each sample
+    private static final int INTEGER_FIELDS = 10;
+
+    // Largest hashtag id
+    private static final int MAX_HASHTAG_ID = 0xffff;
+
+    // Number of top (and trending) hashtag slots in each sample
+    private final int topSize;
+
+    // Hashtags in the samples (the id of each is its index plus 1, with 0 for an empty slot)
+    private final List<String> hashtags = new ArrayList<>();
+
+    // Ids of the hashtags in the samples
+    private final Map<String, Integer> hashtagIds = new HashMap<>();
+
+    // Encoder writing the samples
+    private final Codec encoder;
+
+    // Number of samples in the block
+    private int samples;
+
+    // Time of the first sample
+    private long firstTimeMillis;
+
+    // Time of the last sample
+    private long lastTimeMillis;
+
+    // Total tweets of the last sample
+    private long lastTotalTweets;
+
+    /**
+     * Instantiates a new empty block.
+     *
+     * @param topSize the number of top (and trending) hashtag slots in each sample
+     */
+    StatsHistoryBlock(int topSize) {
+        this.topSize = topSize;
+        encoder = new Codec(new long[16], topSize);
+    }
+
+    /**
+     * Append a sample to the block.
+     *
+     * @param sample the sample
+     */
+    void append(StatsHistoryPoint sample) {
+        if (samples == 0) {
+            firstTimeMillis = sample.timeMillis;
+        }
+        lastTimeMillis = sample.timeMillis;
+        lastTotalTweets = sample.totalTweets;
+        samples++;
+
+        encoder.writeDelta(0, sample.timeMillis);
+        for (int field = 0; field < INTEGER_FIELDS; field++) {
+            encoder.writeDelta(1 + field, GetField(sample, field));
+        }
+        for (int slot = 0; slot < topSize; slot++) {
+            encoder.writeId(slot, HashtagId(sample.topHashtags[slot]));
+            encoder.writeDelta(1 + INTEGER_FIELDS + slot, sample.topHashtagCounts[slot]);
+            encoder.writeId(topSize + slot, HashtagId(sample.trendingHashtags[slot]));
+            encoder.writeXor(slot, sample.trendingHashtagScores[slot]);
+        }
+    }
+
+    /**
+     * Check if another sample should go in a new block.
+     *
+     * @param maxSamples the maximum number of samples in a block
+     * @return true if the block is full
+     */
+    boolean isFull(int maxSamples) {
+        return (samples >= maxSamples) || (hashtags.size() > MAX_HASHTAG_ID - 2 * topSize);
+    }
+
+    /**
+     * Release the spare capacity of a block that is full.
+     */
+    void seal() {
+        encoder.words = Arrays.copyOf(encoder.words, (encoder.position + 63) >>> 6);
+    }
+
+    /**
+     * Create a reader of the samples in the block from the start.
+     *
+     * @return the reader
+     */
+    Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * Get the number of samples in the block.
+     *
+     * @return the number of samples
+     */
+    int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Get the time of the first sample.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    long getFirstTimeMillis() {
+        return firstTimeMillis;
+    }
+
+    /**
+     * Get the time of the last sample.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    long getLastTimeMillis() {
+        return lastTimeMillis;
+    }
+
+    /**
+     * Get the total tweets of the last sample.
+     *
+     * @return the total tweets
+     */
+    long getLastTotalTweets() {
+        return lastTotalTweets;
+    }
+
+    /**
+     * Get the approximate memory used by the compressed samples and their hashtags.
+     *
+     * @return the size in bytes
+     */
+    long getSizeBytes() {
+        long size = encoder.words.length * 8L;
+        for (var hashtag : hashtags) {
+            size += 40 + hashtag.length();
+        }
+        return size;
+    }
+
+    /**
+     * Get the id of a hashtag in the block, adding it if it is new.
+     *
+     * @param hashtag the hashtag (or null for an empty slot)
+     * @return the id
+     */
+    private int HashtagId(String hashtag) {
+        if (hashtag == null) {
+            return 0;
+        }
+        return hashtagIds.computeIfAbsent(hashtag, key -> {
+            hashtags.add(key);
+            return hashtags.size();
+        });
+    }
+
+    /**
+     * Get an integer field of a sample by its position.
+     *
+     * @param sample the sample
+     * @param field  the position of the field
+     * @return the value
+     */
+    private static long GetField(StatsHistoryPoint sample, int field) {
+        return switch (field) {
+            case 0 -> sample.dailyTweets;
+            case 1 -> sample.duplicateTweets;
+            case 2 -> sample.distinctHashtags;
+            case 3 -> sample.distinctHashtagsLastDay;
+            case 4 -> sample.distinctHashtagsLastHour;
+            case 5 -> sample.hourlyTweets;
+            case 6 -> sample.processorWorkers;
+            case 7 -> sample.totalHashtags;
+            case 8 -> sample.totalTweets;
+            default -> sample.tweetQueueCount;
+        };
+    }
+
+    /**
+     * Set an integer field of a sample by its position.
+     *
+     * @param sample the sample
+     * @param field  the position of the field
+     * @param value  the value
+     */
+    private static void SetField(StatsHistoryPoint sample, int field, long value) {
+        switch (field) {
+            case 0 -> sample.dailyTweets = value;
+            case 1 -> sample.duplicateTweets = value;
+            case 2 -> sample.distinctHashtags = value;
+            case 3 -> sample.distinctHashtagsLastDay = value;
+            case 4 -> sample.distinctHashtagsLastHour = value;
+            case 5 -> sample.hourlyTweets = value;
+            case 6 -> sample.processorWorkers = value;
+            case 7 -> sample.totalHashtags = value;
+            case 8 -> sample.totalTweets = value;
+            default -> sample.tweetQueueCount = value;
+        }
+    }
+
+    /**
+     * The class to read the samples of the block in order.
+     */
+    class Reader {
+        // Decoder reading the samples
+        private final Codec decoder = new Codec(encoder.words, topSize);
+
+        // Number of samples in the block when the reader was created
+        private final int available = samples;
+
+        // Number of samples read
+        private int read;
+
+        /**
+         * Read the next sample.
+         *
+         * @param sample the sample to read into (with slots for the top and trending hashtags)
+         * @return true if a sample was read or false at the end of the block
+         */
+        boolean next(StatsHistoryPoint sample) {
+            if (read == available) {
+                return false;
+            }
+            read++;
+
+            sample.timeMillis = decoder.readDelta(0);
+            for (int field = 0; field < INTEGER_FIELDS; field++) {
+                SetField(sample, field, decoder.readDelta(1 + field));
+            }
+            for (int slot = 0; slot < topSize; slot++) {
+                sample.topHashtags[slot] = hashtag(decoder.readId(slot));
+                sample.topHashtagCounts[slot] = decoder.readDelta(1 + INTEGER_FIELDS + slot);
+                sample.trendingHashtags[slot] = hashtag(decoder.readId(topSize + slot));
+                sample.trendingHashtagScores[slot] = decoder.readXor(slot);
+            }
+            sample.tweetsPerSecond = 0;
+            return true;
+        }
+
+        /**
+         * Get the hashtag for an id.
+         *
+         * @param id the id
+         * @return the hashtag (or null for an empty slot)
+         */
+        private String hashtag(int id) {
+            return (id == 0) ? null : hashtags.get(id - 1);
+        }
+    }
+
+    /**
+     * The class to write or read the bits of the samples, keeping the previous values that each one is stored against.
+     */
+    private static class Codec {
+        // Bits of the samples (most significant first)
+        private long[] words;
+
+        // Position of the next bit to write or read
+        private int position;
+
+        // Previous value of each delta of delta series
+        private final long[] values;
+
+        // Previous delta of each delta of delta series
+        private final long[] deltas;
+
+        // Previous id in each hashtag slot
+        private final int[] ids;
+
+        // Previous bits of each XOR series
+        private final long[] xorBits;
+
+        // Leading zeros of the meaningful bits last written for each XOR series
+        private final int[] xorLeading;
+
+        // Length of the meaningful bits last written for each XOR series (or 0 if none yet)
+        private final int[] xorLength;
+
+        /**
+         * Instantiates a new codec.
+         *
+         * @param words   the bits to write into or read from
+         * @param topSize the number of top (and trending) hashtag slots in each sample
+         */
+        private Codec(long[] words, int topSize) {
+            this.words = words;
+            values = new long[1 + INTEGER_FIELDS + topSize];
+            deltas = new long[values.length];
+            ids = new int[2 * topSize];
+            xorBits = new long[topSize];
+            xorLeading = new int[topSize];
+            xorLength = new int[topSize];
+        }
+
+        /**
+         * Write the next value of a delta of delta series.
+         *
+         * @param series the series
+         * @param value  the value
+         */
+        private void writeDelta(int series, long value) {
+            var delta = value - values[series];
+            var deltaOfDelta = delta - deltas[series];
+            values[series] = value;
+            deltas[series] = delta;
+
+            if (deltaOfDelta == 0) {
+                writeBits(0, 1);
+                return;
+            }
+            for (int i = 0; i < DELTA_BUCKET_BITS.length; i++) {
+                var bits = DELTA_BUCKET_BITS[i];
+                if ((deltaOfDelta >= -(1L << (bits - 1))) && (deltaOfDelta < (1L << (bits - 1)))) {
+                    // Prefix of i + 1 ones and a zero
+                    writeBits(((1L << (i + 1)) - 1) << 1, i + 2);
+                    writeBits(deltaOfDelta, bits);
+                    return;
+                }
+            }
+            writeBits(0x1f, 5);
+            writeBits(deltaOfDelta, 64);
+        }
+
+        /**
+         * Read the next value of a delta of delta series.
+         *
+         * @param series the series
+         * @return the value
+         */
+        private long readDelta(int series) {
+            int ones = 0;
+            while ((ones <= DELTA_BUCKET_BITS.length) && (readBits(1) == 1)) {
+                ones++;
+            }
+
+            long deltaOfDelta;
+            if (ones == 0) {
+                deltaOfDelta = 0;
+            } else if (ones > DELTA_BUCKET_BITS.length) {
+                deltaOfDelta = readBits(64);
+            } else {
+                var bits = DELTA_BUCKET_BITS[ones - 1];
+                deltaOfDelta = (readBits(bits) << (64 - bits)) >> (64 - bits);
+            }
+
+            deltas[series] += deltaOfDelta;
+            values[series] += deltas[series];
+            return values[series];
+        }
+
+        /**
+         * Write the next id of a hashtag slot.
+         *
+         * @param slot the slot
+         * @param id   the id
+         */
+        private void writeId(int slot, int id) {
+            if (id == ids[slot]) {
+                writeBits(0, 1);
+                return;
+            }
+            ids[slot] = id;
+            if (id < 16) {
+                writeBits(0b10, 2);
+                writeBits(id, 4);
+            } else {
+                writeBits(0b11, 2);
+                writeBits(id, 16);
+            }
+        }
+
+        /**
+         * Read the next id of a hashtag slot.
+         *
+         * @param slot the slot
+         * @return the id
+         */
+        private int readId(int slot) {
+            if (readBits(1) == 1) {
+                ids[slot] = (int) ((readBits(1) == 0) ? readBits(4) : readBits(16));
+            }
+            return ids[slot];
+        }
+
+        /**
+         * Write the next value of an XOR series.
+         *
+         * @param series the series
+         * @param value  the value
+         */
+        private void writeXor(int series, double value) {
+            var bits = Double.doubleToRawLongBits(value);
+            var xor = bits ^ xorBits[series];
+            xorBits[series] = bits;
+
+            if (xor == 0) {
+                writeBits(0, 1);
+                return;
+            }
+
+            var leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+            var trailing = Long.numberOfTrailingZeros(xor);
+            if ((xorLength[series] > 0) && (leading >= xorLeading[series])
+                    && (trailing >= 64 - xorLeading[series] - xorLength[series])) {
+                // Reuse the previous window of meaningful bits
+                writeBits(0b10, 2);
+                writeBits(xor >>> (64 - xorLeading[series] - xorLength[series]), xorLength[series]);
+            } else {
+                var length = 64 - leading - trailing;
+                writeBits(0b11, 2);
+                writeBits(leading, 5);
+                writeBits(length - 1, 6);
+                writeBits(xor >>> trailing, length);
+                xorLeading[series] = leading;
+                xorLength[series] = length;
+            }
+        }
+
+        /**
+         * Read the next value of an XOR series.
+         *
+         * @param series the series
+         * @return the value
+         */
+        private double readXor(int series) {
+            if (readBits(1) == 1) {
+                if (readBits(1) == 1) {
+                    xorLeading[series] = (int) readBits(5);
+                    xorLength[series] = (int) readBits(6) + 1;
+                }
+                var shift = 64 - xorLeading[series] - xorLength[series];
+                xorBits[series] ^= readBits(xorLength[series]) << shift;
+            }
+            return Double.longBitsToDouble(xorBits[series]);
+        }
+
+        /**
+         * Write the low bits of a value, growing the words if needed.
+         *
+         * @param value the value
+         * @param count the number of bits (1 to 64)
+         */
+        private void writeBits(long value, int count) {
+            if (position + count > words.length * 64L) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            if (count < 64) {
+                value &= (1L << count) - 1;
+            }
+
+            var word = position >>> 6;
+            var free = 64 - (position & 63);
+            if (count <= free) {
+                words[word] |= value << (free - count);
+            } else {
+                words[word] |= value >>> (count - free);
+                words[word + 1] |= value << (64 - (count - free));
+            }
+            position += count;
+        }
+
+        /**
+         * Read bits as the low bits of a value.
+         *
+         * @param count the number of bits (1 to 64)
+         * @return the value
+         */
+        private long readBits(int count) {
+            var word = position >>> 6;
+            var free = 64 - (position & 63);
+            long value;
+            if (count <= free) {
+                value = words[word] >>> (free - count);
+            } else {
+                value = (words[word] << (count - free)) | (words[word + 1] >>> (64 - (count - free)));
+            }
+            position += count;
+            return (count < 64) ? value & ((1L << count) - 1) : value;
+        }
+    }
+}
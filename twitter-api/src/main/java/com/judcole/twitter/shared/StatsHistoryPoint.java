@@ -0,0 +1,107 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The class for a point in the history of the statistics (the last sample recorded in its step).
+ */
+public class StatsHistoryPoint {
+    /**
+     * The time of the sample in milliseconds since the epoch.
+     */
+    public long timeMillis;
+    /**
+     * The average daily number of tweets received.
+     */
+    public long dailyTweets;
+    /**
+     * The number of duplicate tweets received and ignored.
+     */
+    public long duplicateTweets;
+    /**
+     * The estimated number of distinct hashtags received.
+     */
+    public long distinctHashtags;
+    /**
+     * The estimated number of distinct hashtags received in the last day.
+     */
+    public long distinctHashtagsLastDay;
+    /**
+     * The estimated number of distinct hashtags received in the last hour.
+     */
+    public long distinctHashtagsLastHour;
+    /**
+     * The average hourly number of tweets received.
+     */
+    public long hourlyTweets;
+    /**
+     * The number of workers processing the incoming queue.
+     */
+    public long processorWorkers;
+    /**
+     * The total number of hashtags received.
+     */
+    public long totalHashtags;
+    /**
+     * The total number of tweets received.
+     */
+    public long totalTweets;
+    /**
+     * The number of tweets waiting to be processed in the incoming queue.
+     */
+    public long tweetQueueCount;
+    /**
+     * The number of tweets received per second since the previous point (or 0 for the first point).
+     */
+    public double tweetsPerSecond;
+    /**
+     * The top hashtags (with null for empty slots).
+     */
+    public String[] topHashtags;
+    /**
+     * The counts for the top hashtags.
+     */
+    public long[] topHashtagCounts;
+    /**
+     * The top trending hashtags (with null for empty slots).
+     */
+    public String[] trendingHashtags;
+    /**
+     * The decayed scores for the top trending hashtags.
+     */
+    public double[] trendingHashtagScores;
+
+    /**
+     * Instantiates a new empty history point.
+     *
+     * @param topSize the number of top and trending hashtag slots
+     */
+    public StatsHistoryPoint(int topSize) {
+        topHashtags = new String[topSize];
+        topHashtagCounts = new long[topSize];
+        trendingHashtags = new String[topSize];
+        trendingHashtagScores = new double[topSize];
+    }
+
+    /**
+     * Instantiates a copy of another history point.
+     *
+     * @param source the history point to copy
+     */
+    StatsHistoryPoint(StatsHistoryPoint source) {
+        timeMillis = source.timeMillis;
+        dailyTweets = source.dailyTweets;
+        duplicateTweets = source.duplicateTweets;
+        distinctHashtags = source.distinctHashtags;
+        distinctHashtagsLastDay = source.distinctHashtagsLastDay;
+        distinctHashtagsLastHour = source.distinctHashtagsLastHour;
+        hourlyTweets = source.hourlyTweets;
+        processorWorkers = source.processorWorkers;
+        totalHashtags = source.totalHashtags;
+        totalTweets = source.totalTweets;
+        tweetQueueCount = source.tweetQueueCount;
+        tweetsPerSecond = source.tweetsPerSecond;
+        topHashtags = source.topHashtags.clone();
+        topHashtagCounts = source.topHashtagCounts.clone();
+        trendingHashtags = source.trendingHashtags.clone();
+        trendingHashtagScores = source.trendingHashtagScores.clone();
+    }
+}
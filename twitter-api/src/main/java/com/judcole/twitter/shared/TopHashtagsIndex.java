@@ -0,0 +1,266 @@
+package com.judcole.twitter.shared;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class for a ranked index of the top hashtags by count, up to a fixed capacity.
+ * <p>
+ * The hashtags are kept in descending order of count in parallel arrays with a map from each hashtag to its rank,
+ * so an update is a binary search and a shift of the hashtags it overtakes and reading the top N is a copy of N slots.
+ * A hashtag that reaches the count of others is ranked in front of them, as the most recently updated. Counts only
+ * ever grow, so an update with a lower count than a ranked hashtag already has (such as a stale count read by another
+ * worker before a newer one was ranked) is ignored rather than moving it back down.
+ */
+public class TopHashtagsIndex {
+
+    // Name of the index lock in the lock wait events
+    private static final String INDEX_LOCK_NAME = "topHashtagsIndex";
+
+    // Maximum number of hashtags in the index
+    private final int capacity;
+
+    // Hashtags in descending order of count (as most recently spelled)
+    private final String[] hashtags;
+
+    // Lower cased hashtags in the same order
+    private final String[] keys;
+
+    // Counts in descending order
+    private final long[] counts;
+
+    // Rank of each (lower cased) hashtag in the index
+    private final Map<String, Integer> ranks = new HashMap<>();
+
+    // Object to use for simple locking when updating the index
+    private final Lock indexLock = new ReentrantLock();
+
+    // Number of hashtags in the index
+    private int size;
+
+    /**
+     * Instantiates a new top hashtags index.
+     *
+     * @param capacity the maximum number of hashtags to rank
+     */
+    public TopHashtagsIndex(int capacity) {
+        this.capacity = capacity;
+        hashtags = new String[capacity];
+        keys = new String[capacity];
+        counts = new long[capacity];
+    }
+
+    /**
+     * Update the index with a specified hashtag and count (concurrent safe).
+     *
+     * @param hashtag the hashtag
+     * @param count   the count of occurrences of the hashtag (ignored if lower than the ranked count)
+     * @return the lowest rank that changed or the capacity if the index did not change
+     */
+    public int update(String hashtag, long count) {
+        var event = new CollectorEvents.TopHashtagsUpdateEvent();
+        event.begin();
+        var key = hashtag.toLowerCase();
+
+        CollectorEvents.lock(indexLock, INDEX_LOCK_NAME);
+        int changedRank;
+        int indexSize;
+        try {
+            changedRank = Update(hashtag, key, count);
+            indexSize = size;
+        } finally {
+            indexLock.unlock();
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.count = count;
+            event.changedRank = changedRank;
+            event.indexSize = indexSize;
+            event.commit();
+        }
+        return changedRank;
+    }
+
+    /**
+     * Update the index with a specified hashtag and count while holding the lock.
+     *
+     * @param hashtag the hashtag
+     * @param key     the lower cased hashtag
+     * @param count   the count of occurrences of the hashtag
+     * @return the lowest rank that changed or the capacity if the index did not change
+     */
+    private int Update(String hashtag, String key, long count) {
+        var rank = ranks.get(key);
+        int from;
+        if (rank != null) {
+            if (count < counts[rank]) {
+                // Stale count so keep the newer one
+                return capacity;
+            }
+            from = rank;
+        } else if (size < capacity) {
+            // Add it to the end and move it up from there
+            from = size++;
+        } else if (count >= counts[capacity - 1]) {
+            // Replace the lowest ranked hashtag and move it up from there
+            from = capacity - 1;
+            ranks.remove(keys[from]);
+        } else {
+            // Not enough to get in
+            return capacity;
+        }
+
+        // Counts only grow so find the first hashtag it reaches and shift that and the rest down a slot
+        var to = FindFirstNotAbove(count, 0, from);
+        Shift(to, to + 1, from - to);
+        Set(to, hashtag, key, count);
+        return to;
+    }
+
+    /**
+     * Count one more occurrence of a hashtag when the index holds the only counts (concurrent safe).
+     * <p>
+     * When the index is full a new hashtag replaces the lowest ranked one and takes over its count (the Space-Saving
+     * algorithm), so memory stays bounded while any hashtag more frequent than the lowest count is kept, with a count
+     * that overestimates by at most the count it took over.
+     *
+     * @param hashtag the hashtag
+     * @return the lowest rank that changed
+     */
+    public int increment(String hashtag) {
+        CollectorEvents.lock(indexLock, INDEX_LOCK_NAME);
+        try {
+            var rank = ranks.get(hashtag.toLowerCase());
+            long count;
+            if (rank != null) {
+                count = counts[rank] + 1;
+            } else if (size < capacity) {
+                count = 1;
+            } else {
+                count = counts[capacity - 1] + 1;
+            }
+            return update(hashtag, count);
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * Copy the top hashtags and their counts into arrays, clearing any slots beyond the size of the index (concurrent safe).
+     *
+     * @param topHashtags      the array for the top hashtags
+     * @param topHashtagCounts the array for their counts (of the same length)
+     */
+    public void getTop(String[] topHashtags, long[] topHashtagCounts) {
+        indexLock.lock();
+        try {
+            var count = Math.min(size, topHashtags.length);
+            System.arraycopy(hashtags, 0, topHashtags, 0, count);
+            System.arraycopy(counts, 0, topHashtagCounts, 0, count);
+            for (int i = count; i < topHashtags.length; i++) {
+                topHashtags[i] = null;
+                topHashtagCounts[i] = 0;
+            }
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * Get the count of a hashtag in the index (concurrent safe).
+     *
+     * @param hashtag      the hashtag
+     * @param missingCount the count to return if the hashtag is not in the index
+     * @return the count
+     */
+    public long getCount(String hashtag, long missingCount) {
+        var key = hashtag.toLowerCase();
+        indexLock.lock();
+        try {
+            var rank = ranks.get(key);
+            return (rank == null) ? missingCount : counts[rank];
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum number of hashtags in the index.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of hashtags in the index (concurrent safe).
+     *
+     * @return the number of hashtags
+     */
+    public int getSize() {
+        indexLock.lock();
+        try {
+            return size;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * Find the first rank in a range whose count is not above a specified count.
+     *
+     * @param count the count
+     * @param from  the first rank to search (inclusive)
+     * @param to    the last rank to search (exclusive)
+     * @return the rank or the end of the range if all the counts are above
+     */
+    private int FindFirstNotAbove(long count, int from, int to) {
+        while (from < to) {
+            var middle = (from + to) >>> 1;
+            if (counts[middle] > count) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Shift a run of hashtags to a new position and update their ranks.
+     *
+     * @param from   the current rank of the first hashtag
+     * @param to     the new rank of the first hashtag
+     * @param length the number of hashtags
+     */
+    private void Shift(int from, int to, int length) {
+        if (length <= 0) {
+            return;
+        }
+        System.arraycopy(hashtags, from, hashtags, to, length);
+        System.arraycopy(keys, from, keys, to, length);
+        System.arraycopy(counts, from, counts, to, length);
+        for (int i = to; i < to + length; i++) {
+            ranks.put(keys[i], i);
+        }
+    }
+
+    /**
+     * Set the hashtag and count at a rank.
+     *
+     * @param rank    the rank
+     * @param hashtag the hashtag
+     * @param key     the lower cased hashtag
+     * @param count   the count
+     */
+    private void Set(int rank, String hashtag, String key, long count) {
+        hashtags[rank] = hashtag;
+        keys[rank] = key;
+        counts[rank] = count;
+        ranks.put(key, rank);
+    }
+}
@@ -0,0 +1,295 @@
+package com.judcole.twitter.shared;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class for trending scores of hashtags that decay exponentially with a half-life, and a ranked index of the top
+ * trending hashtags.
+ * <p>
+ * Each occurrence adds 1 to the score of a hashtag, which then halves every half-life, so a tag that is rising now
+ * outscores one that was bigger last week. Rather than decaying every score as time passes, each occurrence is added
+ * with a weight that grows exponentially from a fixed landmark time (forward decay) and a score is only scaled back to
+ * the current time when it is read. As every score is scaled by the same factor the ranking never changes with time,
+ * so an update is O(1) (plus the ranked index update) and nothing is ever rescanned. The weights are summed as their
+ * natural logs so they cannot overflow however long it runs.
+ * <p>
+ * Scores are only kept for the hashtags in the ranked index, so memory is bounded by its capacity. Once it is full a
+ * hashtag whose score falls below the lowest ranked score is evicted (and a new one only gets in by reaching it), so a
+ * hashtag that comes back after being evicted starts again from its new occurrences.
+ * <p>
+ * Adding takes no locks: the weight is added with a compare and set to a pending cell for the hashtag, and the pending
+ * weights are folded into the ranked index (under its lock) before it is read or once there are too many of them. A
+ * fold seals the cells it takes so a late add retries against the new pending cells rather than being lost.
+ */
+public class TrendingHashtags {
+
+    // Maximum number of hashtags with pending weights before the adding thread folds them into the index
+    private static final int MAX_PENDING = 4096;
+
+    // Bits of a pending cell that has been folded into the index (a NaN never produced by adding weights)
+    private static final long SEALED = 0x7ff8_dead_0000_0001L;
+
+    // Half-life of the scores
+    private final long halfLifeMillis;
+
+    // Decay rate per millisecond (ln 2 divided by the half-life)
+    private final double decayPerMilli;
+
+    // Time the weights grow from
+    private final long landmarkMillis;
+
+    // Ranked index of the top hashtags by the log of their forward decayed score (as sortable bits)
+    private final TopHashtagsIndex index;
+
+    // Natural log of the weights added since the last fold by hashtag (as spelled), as raw double bits
+    private volatile ConcurrentHashMap<String, AtomicLong> pending = new ConcurrentHashMap<>();
+
+    // Object to use for simple locking so only one thread folds the pending weights into the index at a time
+    private final Lock foldLock = new ReentrantLock();
+
+    /**
+     * Instantiates new trending scores with a landmark of the current time.
+     *
+     * @param halfLifeMillis the half-life of the scores in milliseconds
+     * @param capacity       the maximum number of hashtags to rank
+     */
+    public TrendingHashtags(long halfLifeMillis, int capacity) {
+        this(halfLifeMillis, capacity, System.currentTimeMillis());
+    }
+
+    /**
+     * Instantiates new trending scores.
+     *
+     * @param halfLifeMillis the half-life of the scores in milliseconds
+     * @param capacity       the maximum number of hashtags to rank
+     * @param landmarkMillis the time the weights grow from in milliseconds since the epoch
+     */
+    public TrendingHashtags(long halfLifeMillis, int capacity, long landmarkMillis) {
+        if (halfLifeMillis <= 0) {
+            throw new InvalidParameterException("Trending half-life must be positive");
+        }
+        this.halfLifeMillis = halfLifeMillis;
+        decayPerMilli = Math.log(2) / halfLifeMillis;
+        this.landmarkMillis = landmarkMillis;
+        index = new TopHashtagsIndex(capacity);
+    }
+
+    /**
+     * Add an occurrence of a hashtag (concurrent safe without locking).
+     *
+     * @param hashtag    the hashtag
+     * @param timeMillis the time of the occurrence in milliseconds since the epoch
+     */
+    public void add(String hashtag, long timeMillis) {
+        AddLogWeight(hashtag, decayPerMilli * (timeMillis - landmarkMillis));
+    }
+
+    /**
+     * Add a score that a hashtag had at a specified time, such as from another node (concurrent safe).
+     *
+     * @param hashtag    the hashtag
+     * @param score      the score at the time
+     * @param timeMillis the time of the score in milliseconds since the epoch
+     */
+    public void merge(String hashtag, double score, long timeMillis) {
+        if (score > 0) {
+            AddLogWeight(hashtag, Math.log(score) + decayPerMilli * (timeMillis - landmarkMillis));
+        }
+    }
+
+    /**
+     * Get the score of a hashtag at a specified time (concurrent safe).
+     *
+     * @param hashtag    the hashtag
+     * @param timeMillis the time in milliseconds since the epoch
+     * @return the score or 0 if the hashtag is not in the ranked index
+     */
+    public double getScore(String hashtag, long timeMillis) {
+        FoldPending();
+        var logScore = FromSortableBits(index.getCount(hashtag, ToSortableBits(Double.NEGATIVE_INFINITY)));
+        return Decay(logScore, timeMillis);
+    }
+
+    /**
+     * Copy the top trending hashtags and their scores at a specified time into arrays, clearing any slots beyond the
+     * size of the index (concurrent safe).
+     *
+     * @param topHashtags the array for the top hashtags
+     * @param topScores   the array for their scores (of the same length)
+     * @param timeMillis  the time of the scores in milliseconds since the epoch
+     */
+    public void getTop(String[] topHashtags, double[] topScores, long timeMillis) {
+        FoldPending();
+        var logScores = new long[topHashtags.length];
+        index.getTop(topHashtags, logScores);
+        for (int i = 0; i < topHashtags.length; i++) {
+            topScores[i] = (topHashtags[i] == null) ? 0 : Decay(FromSortableBits(logScores[i]), timeMillis);
+        }
+    }
+
+    /**
+     * Get the half-life of the scores.
+     *
+     * @return the half-life in milliseconds
+     */
+    public long getHalfLifeMillis() {
+        return halfLifeMillis;
+    }
+
+    /**
+     * Get the number of hashtags in the ranked index (concurrent safe).
+     *
+     * @return the number of hashtags
+     */
+    public int getSize() {
+        FoldPending();
+        return index.getSize();
+    }
+
+    /**
+     * Add a weight (as its natural log) to the pending weight of a hashtag without locking.
+     *
+     * @param hashtag   the hashtag
+     * @param logWeight the natural log of the weight
+     */
+    private void AddLogWeight(String hashtag, double logWeight) {
+        while (true) {
+            var cells = pending;
+            var cell = cells.get(hashtag);
+            if (cell == null) {
+                var created = new AtomicLong(Double.doubleToRawLongBits(logWeight));
+                cell = cells.putIfAbsent(hashtag, created);
+                if (cell == null) {
+                    if (pending == cells) {
+                        // Fold if there are too many pending hashtags (unless another thread is already folding)
+                        if ((cells.mappingCount() > MAX_PENDING) && foldLock.tryLock()) {
+                            try {
+                                Fold();
+                            } finally {
+                                foldLock.unlock();
+                            }
+                        }
+                        return;
+                    }
+
+                    // Swapped out by a fold that may have missed the new cell so take back whatever it was not
+                    // folded with (including any weights other threads added to it) and add that again
+                    var bits = created.getAndSet(SEALED);
+                    if (bits == SEALED) {
+                        return;
+                    }
+                    logWeight = Double.longBitsToDouble(bits);
+                    continue;
+                }
+            }
+            if (AddToCell(cell, logWeight)) {
+                return;
+            }
+            // The cell has been folded so add to the new pending cells
+        }
+    }
+
+    /**
+     * Add a weight (as its natural log) to a pending cell with a compare and set.
+     *
+     * @param cell      the pending cell
+     * @param logWeight the natural log of the weight
+     * @return true if added or false if the cell has been sealed by a fold
+     */
+    private static boolean AddToCell(AtomicLong cell, double logWeight) {
+        while (true) {
+            var bits = cell.get();
+            if (bits == SEALED) {
+                return false;
+            }
+            var sum = LogAddExp(Double.longBitsToDouble(bits), logWeight);
+            if (cell.compareAndSet(bits, Double.doubleToRawLongBits(sum))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Fold the pending weights into the ranked index so it can be read.
+     */
+    private void FoldPending() {
+        foldLock.lock();
+        try {
+            Fold();
+        } finally {
+            foldLock.unlock();
+        }
+    }
+
+    /**
+     * Fold the pending weights into the ranked index while holding the fold lock.
+     */
+    private void Fold() {
+        var cells = pending;
+        if (cells.isEmpty()) {
+            return;
+        }
+        pending = new ConcurrentHashMap<>();
+
+        var missing = ToSortableBits(Double.NEGATIVE_INFINITY);
+        for (var entry : cells.entrySet()) {
+            var bits = entry.getValue().getAndSet(SEALED);
+            if (bits != SEALED) {
+                // Add to the ranked score (or start from nothing if it is not ranked) and rank the new score
+                var current = FromSortableBits(index.getCount(entry.getKey(), missing));
+                index.update(entry.getKey(), ToSortableBits(LogAddExp(current, Double.longBitsToDouble(bits))));
+            }
+        }
+    }
+
+    /**
+     * Scale a forward decayed score back to a specified time.
+     *
+     * @param logScore   the natural log of the forward decayed score
+     * @param timeMillis the time in milliseconds since the epoch
+     * @return the score at the time
+     */
+    private double Decay(double logScore, long timeMillis) {
+        return Math.exp(logScore - decayPerMilli * (timeMillis - landmarkMillis));
+    }
+
+    /**
+     * Get the natural log of the sum of two numbers from their natural logs without overflowing.
+     *
+     * @param a the natural log of the first number (or negative infinity for 0)
+     * @param b the natural log of the second number
+     * @return the natural log of their sum
+     */
+    private static double LogAddExp(double a, double b) {
+        if (a == Double.NEGATIVE_INFINITY) {
+            return b;
+        }
+        var max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    /**
+     * Convert a double to a long that sorts in the same order (so it can be ranked as a count).
+     *
+     * @param value the double
+     * @return the sortable bits
+     */
+    private static long ToSortableBits(double value) {
+        var bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Convert sortable bits back to a double.
+     *
+     * @param bits the sortable bits
+     * @return the double
+     */
+    private static double FromSortableBits(long bits) {
+        return Double.longBitsToDouble(bits ^ ((bits >> 63) & Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,70 @@
+package com.judcole.twitter.shared;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class for a pool of reusable tweet blocks shared by the stream reader and the processors.
+ * <p>
+ * A new block is created when the pool is empty and a released block is dropped when the pool is full, so the pool
+ * only needs to be large enough for the blocks usually in flight.
+ */
+public class TweetBlockPool {
+
+    // Blocks ready for reuse
+    private final ArrayBlockingQueue<PooledTweetBlock> freeBlocks;
+
+    // Number of blocks created
+    private final AtomicLong createdBlocks = new AtomicLong();
+
+    /**
+     * Instantiates a new tweet block pool.
+     *
+     * @param capacity the maximum number of blocks kept for reuse
+     */
+    public TweetBlockPool(int capacity) {
+        freeBlocks = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Take an empty block from the pool or create one if there are none (concurrent safe).
+     *
+     * @return the block
+     */
+    public PooledTweetBlock acquire() {
+        var block = freeBlocks.poll();
+        if (block == null) {
+            createdBlocks.incrementAndGet();
+            return new PooledTweetBlock(this);
+        }
+        return block;
+    }
+
+    /**
+     * Return a block to the pool for reuse (concurrent safe).
+     *
+     * @param block the block
+     */
+    void release(PooledTweetBlock block) {
+        block.clear();
+        freeBlocks.offer(block);
+    }
+
+    /**
+     * Get the number of blocks created by the pool.
+     *
+     * @return the number of blocks
+     */
+    public long getCreatedBlocks() {
+        return createdBlocks.get();
+    }
+
+    /**
+     * Get the number of blocks ready for reuse.
+     *
+     * @return the number of blocks
+     */
+    public int getFreeBlocks() {
+        return freeBlocks.size();
+    }
+}
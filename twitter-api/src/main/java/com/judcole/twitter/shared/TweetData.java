@@ -15,4 +15,8 @@ public class TweetData {
      * The tweet text.
      */
     public String text;
+    /**
+     * The entities found by the Twitter API (or null if not requested or there are none).
+     */
+    public TweetEntities entities;
 }
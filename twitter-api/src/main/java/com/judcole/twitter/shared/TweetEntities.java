@@ -0,0 +1,30 @@
+package com.judcole.twitter.shared;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * The class for the entities the Twitter API found in an incoming tweet (only sent when requested).
+ * <p>
+ * Each list is left out of the payload when the tweet has none of that type.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TweetEntities {
+    /**
+     * The hashtags.
+     */
+    public List<TweetEntity> hashtags;
+    /**
+     * The user mentions.
+     */
+    public List<TweetEntity> mentions;
+    /**
+     * The cashtags.
+     */
+    public List<TweetEntity> cashtags;
+    /**
+     * The links.
+     */
+    public List<TweetEntity> urls;
+}
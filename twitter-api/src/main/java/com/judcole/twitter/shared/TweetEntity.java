@@ -0,0 +1,24 @@
+package com.judcole.twitter.shared;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The class for an entity the Twitter API found in an incoming tweet.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TweetEntity {
+    /**
+     * The hashtag or cashtag (without its symbol).
+     */
+    public String tag;
+    /**
+     * The mentioned user name (without its symbol).
+     */
+    public String username;
+    /**
+     * The full link behind a shortened link.
+     */
+    @JsonProperty("expanded_url")
+    public String expandedUrl;
+}
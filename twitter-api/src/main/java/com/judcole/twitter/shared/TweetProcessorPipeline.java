@@ -0,0 +1,383 @@
+package com.judcole.twitter.shared;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The class to decode each tweet block once, extract the entities needed by the stages in one pass and fan the
+ * parsed tweet out to each stage in turn.
+ * <p>
+ * When the stream is requested with its entities, the hashtags, mentions, cashtags and link domains are read from
+ * the payload instead and the text is only scanned for the emoji (or everything when a tweet has no entities). The
+ * time spent decoding, scanning and in each stage is recorded so the cost of a new statistic can be seen.
+ * <p>
+ * Pooled blocks are decoded straight from their bytes into reusable buffers (without creating the tweet
+ * objects or strings for the id and text), and recent entities reuse their strings, so that once warmed up very
+ * little is allocated per tweet. Their entities are always found by scanning. An instance reuses its parsed view
+ * and buffers so it must only be used by one thread at a time.
+ */
+public class TweetProcessorPipeline {
+
+    /**
+     * The timing name for decoding the tweet blocks.
+     */
+    public static final String DECODE_TIMING = "decode";
+
+    /**
+     * The timing name for extracting the entities.
+     */
+    public static final String SCAN_TIMING = "scan";
+
+    // Entity types that the Twitter API can send with each tweet
+    private static final Set<EntityType> SERVER_ENTITY_TYPES =
+            EnumSet.of(EntityType.HASHTAG, EntityType.MENTION, EntityType.CASHTAG, EntityType.DOMAIN);
+
+    // Object mapper for deserializing tweet JSON
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Decoder for the id and text of the pooled blocks
+    private final PooledTweetDecoder pooledDecoder = new PooledTweetDecoder();
+
+    // Number of recent entities whose strings are reused
+    private static final int INTERNED_ENTITIES = 4096;
+
+    // Scanner to extract the entities from the tweets
+    private final EntityScanner entityScanner = new EntityScanner(new EntityInterner(INTERNED_ENTITIES));
+
+    // Stages in the order they are called
+    private final List<ITweetProcessor> stages;
+
+    // Entity types read by at least one stage
+    private final Set<EntityType> entityTypes = EnumSet.noneOf(EntityType.class);
+
+    // Entity types read by at least one stage that can only be found by scanning the text
+    private final Set<EntityType> textOnlyEntityTypes;
+
+    // True to read the entities sent with each tweet instead of scanning for them
+    private final boolean useServerEntities;
+
+    // Parsed view of the current tweet (reused for each tweet)
+    private final ParsedTweet parsedTweet = new ParsedTweet();
+
+    // Consumer adding the scanned entities to the parsed view (created once rather than for each tweet)
+    private final EntityScanner.EntityConsumer entityCollector = this::CollectEntity;
+
+    // Entity types to collect from the current scan
+    private Set<EntityType> scanTypes;
+
+    // Timing of the decoding
+    private final StageTimer decodeTimer = new StageTimer(DECODE_TIMING);
+
+    // Timing of the entity extraction
+    private final StageTimer scanTimer = new StageTimer(SCAN_TIMING);
+
+    // Timings of the stages (in the same order as the stages)
+    private final StageTimer[] stageTimers;
+
+    // Number of tweets passed to the stages (only written by the processing thread)
+    private volatile long processedTweets;
+
+    /**
+     * Instantiates a new tweet processor pipeline.
+     *
+     * @param stages the stages in the order they are called
+     */
+    public TweetProcessorPipeline(List<ITweetProcessor> stages) {
+        this(stages, false);
+    }
+
+    /**
+     * Instantiates a new tweet processor pipeline.
+     *
+     * @param stages            the stages in the order they are called
+     * @param useServerEntities true to read the entities sent with each tweet (when present) instead of scanning for them
+     */
+    public TweetProcessorPipeline(List<ITweetProcessor> stages, boolean useServerEntities) {
+        this.stages = List.copyOf(stages);
+        this.useServerEntities = useServerEntities;
+        stageTimers = new StageTimer[stages.size()];
+        for (int i = 0; i < stageTimers.length; i++) {
+            var stage = this.stages.get(i);
+            stageTimers[i] = new StageTimer(stage.getName());
+            entityTypes.addAll(stage.getEntityTypes());
+        }
+        textOnlyEntityTypes = EnumSet.copyOf(entityTypes);
+        textOnlyEntityTypes.removeAll(SERVER_ENTITY_TYPES);
+    }
+
+    /**
+     * Decode a tweet block into the parsed view.
+     *
+     * @param tweetBlock the tweet block
+     * @return the parsed tweet (without its entities) or null if the block is not a valid tweet
+     * @throws IOException the IO exception if the block cannot be deserialized
+     */
+    public ParsedTweet decode(TweetBlock tweetBlock) throws IOException {
+        var event = new CollectorEvents.DecodeEvent();
+        event.begin();
+        var pooledBlock = (tweetBlock instanceof PooledTweetBlock pooled) ? pooled : null;
+        var tweet = (pooledBlock != null) ? DecodePooled(pooledBlock) : DecodeContents(tweetBlock);
+        event.end();
+        if (event.shouldCommit()) {
+            event.blockBytes = (pooledBlock != null) ? pooledBlock.getLength() : tweetBlock.Contents.length();
+            event.pooled = (pooledBlock != null);
+            event.valid = (tweet != null);
+            event.commit();
+        }
+        return tweet;
+    }
+
+    /**
+     * Decode the JSON contents of a tweet block into the parsed view.
+     *
+     * @param tweetBlock the tweet block
+     * @return the parsed tweet (without its entities) or null if the block is not a valid tweet
+     * @throws IOException the IO exception if the block cannot be deserialized
+     */
+    private ParsedTweet DecodeContents(TweetBlock tweetBlock) throws IOException {
+        var start = System.nanoTime();
+        Tweet tweet = mapper.readValue(tweetBlock.Contents, Tweet.class);
+        decodeTimer.add(System.nanoTime() - start);
+
+        // Check whether it looks valid
+        if ((tweet == null) || (tweet.data == null) || (tweet.data.text == null)) {
+            return null;
+        }
+
+        parsedTweet.reset(tweet.data, System.currentTimeMillis());
+        return parsedTweet;
+    }
+
+    /**
+     * Decode a pooled tweet block into the reusable buffers of the parsed view.
+     *
+     * @param tweetBlock the pooled tweet block
+     * @return the parsed tweet (without its entities) or null if the block is not a valid tweet
+     * @throws IOException the IO exception if the block cannot be parsed
+     */
+    private ParsedTweet DecodePooled(PooledTweetBlock tweetBlock) throws IOException {
+        var start = System.nanoTime();
+        boolean hasText;
+        try {
+            hasText = pooledDecoder.decode(tweetBlock, parsedTweet.getIdBuffer(), parsedTweet.getTextBuffer());
+        } finally {
+            decodeTimer.add(System.nanoTime() - start);
+        }
+
+        if (!hasText) {
+            return null;
+        }
+
+        parsedTweet.resetFromBuffers(pooledDecoder.hasId(), System.currentTimeMillis());
+        return parsedTweet;
+    }
+
+    /**
+     * Extract the entities needed by the stages from a decoded tweet and pass it to each stage in turn.
+     *
+     * @param tweet the tweet returned by the last decode (the pipeline's reused parsed view)
+     */
+    @SuppressWarnings("NonAtomicOperationOnVolatileField")
+    public void process(ParsedTweet tweet) {
+        processedTweets++;
+
+        if (!entityTypes.isEmpty()) {
+            var event = new CollectorEvents.ExtractionEvent();
+            event.begin();
+            var start = System.nanoTime();
+
+            // Use the entities sent with the tweet if there are any so only the rest need scanning for
+            scanTypes = entityTypes;
+            var entities = (tweet.getData() == null) ? null : tweet.getData().entities;
+            if (useServerEntities && (entities != null)) {
+                AddServerEntities(tweet, entities);
+                scanTypes = textOnlyEntityTypes;
+            }
+
+            if (!scanTypes.isEmpty()) {
+                entityScanner.scan(tweet.getText(), entityCollector);
+            }
+            scanTimer.add(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.textLength = tweet.getText().length();
+                event.serverEntities = (scanTypes != entityTypes);
+                event.commit();
+            }
+        }
+
+        for (int i = 0; i < stageTimers.length; i++) {
+            var start = System.nanoTime();
+            stages.get(i).process(tweet);
+            stageTimers[i].add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Add a scanned entity to the parsed view if it is wanted.
+     *
+     * @param type   the entity type
+     * @param entity the entity text
+     */
+    private void CollectEntity(EntityType type, String entity) {
+        if (scanTypes.contains(type)) {
+            parsedTweet.addEntity(type, entity);
+        }
+    }
+
+    /**
+     * Add the wanted entities sent with a tweet to its parsed view.
+     *
+     * @param tweet    the parsed tweet
+     * @param entities the entities sent with the tweet
+     */
+    private void AddServerEntities(ParsedTweet tweet, TweetEntities entities) {
+        if (entityTypes.contains(EntityType.HASHTAG) && (entities.hashtags != null)) {
+            entities.hashtags.forEach(entity -> AddEntity(tweet, EntityType.HASHTAG, entity.tag));
+        }
+        if (entityTypes.contains(EntityType.MENTION) && (entities.mentions != null)) {
+            entities.mentions.forEach(entity -> AddEntity(tweet, EntityType.MENTION, entity.username));
+        }
+        if (entityTypes.contains(EntityType.CASHTAG) && (entities.cashtags != null)) {
+            entities.cashtags.forEach(entity -> AddEntity(tweet, EntityType.CASHTAG, entity.tag));
+        }
+        if (entityTypes.contains(EntityType.DOMAIN) && (entities.urls != null)) {
+            for (var entity : entities.urls) {
+                // Count the domain of the full link rather than the link shortener
+                AddEntity(tweet, EntityType.DOMAIN, (entity.expandedUrl == null) ? null : EntityScanner.LinkDomain(entity.expandedUrl));
+            }
+        }
+    }
+
+    /**
+     * Add an entity sent with a tweet to its parsed view if it has a value.
+     *
+     * @param tweet  the parsed tweet
+     * @param type   the entity type
+     * @param entity the entity text (or null if missing)
+     */
+    private static void AddEntity(ParsedTweet tweet, EntityType type, String entity) {
+        if (entity != null) {
+            tweet.addEntity(type, entity);
+        }
+    }
+
+    /**
+     * Get the number of tweets passed to the stages.
+     *
+     * @return the number of tweets
+     */
+    public long getProcessedTweets() {
+        return processedTweets;
+    }
+
+    /**
+     * Get the entity types read by at least one stage.
+     *
+     * @return the entity types
+     */
+    public Set<EntityType> getEntityTypes() {
+        return EnumSet.copyOf(entityTypes);
+    }
+
+    /**
+     * Get the time spent decoding, scanning and in each stage.
+     *
+     * @return the timings in pipeline order
+     */
+    public List<TweetProcessorTiming> getTimings() {
+        var timings = new ArrayList<TweetProcessorTiming>();
+        timings.add(decodeTimer.toTiming());
+        timings.add(scanTimer.toTiming());
+        for (var timer : stageTimers) {
+            timings.add(timer.toTiming());
+        }
+        return timings;
+    }
+
+    /**
+     * Sum the time spent decoding, scanning and in each stage over several pipelines with the same stages.
+     *
+     * @param pipelines the pipelines
+     * @return the summed timings in pipeline order (empty if there are no pipelines)
+     */
+    public static List<TweetProcessorTiming> sumTimings(Collection<TweetProcessorPipeline> pipelines) {
+        List<TweetProcessorTiming> sums = new ArrayList<>();
+        for (var pipeline : pipelines) {
+            sums = addTimings(sums, pipeline.getTimings());
+        }
+        return sums;
+    }
+
+    /**
+     * Add the timings of a pipeline to timings summed over other pipelines with the same stages.
+     *
+     * @param sums    the summed timings in pipeline order (empty if nothing has been summed yet)
+     * @param timings the timings to add in pipeline order
+     * @return the new summed timings
+     */
+    public static List<TweetProcessorTiming> addTimings(List<TweetProcessorTiming> sums, List<TweetProcessorTiming> timings) {
+        var added = new ArrayList<>(sums);
+        for (int i = 0; i < timings.size(); i++) {
+            var timing = timings.get(i);
+            if (i == added.size()) {
+                added.add(timing);
+            } else {
+                var sum = added.get(i);
+                added.set(i, new TweetProcessorTiming(sum.name, sum.tweets + timing.tweets, sum.totalNanos + timing.totalNanos));
+            }
+        }
+        return added;
+    }
+
+    /**
+     * The class to accumulate the time spent in a stage.
+     * <p>
+     * Only the processing thread writes the totals so volatile fields are enough for readers to see them.
+     */
+    private static class StageTimer {
+        // Name of the stage
+        private final String name;
+
+        // Number of tweets timed
+        private volatile long tweets;
+
+        // Total time in nanoseconds
+        private volatile long totalNanos;
+
+        /**
+         * Instantiates a new stage timer.
+         *
+         * @param name the name of the stage
+         */
+        private StageTimer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Add the time for one tweet.
+         *
+         * @param nanos the time in nanoseconds
+         */
+        @SuppressWarnings("NonAtomicOperationOnVolatileField")
+        private void add(long nanos) {
+            tweets++;
+            totalNanos += nanos;
+        }
+
+        /**
+         * Get a snapshot of the timing.
+         *
+         * @return the timing
+         */
+        private TweetProcessorTiming toTiming() {
+            return new TweetProcessorTiming(name, tweets, totalNanos);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.judcole.twitter.shared;
+
+/**
+ * The class for the time spent in a stage of the tweet processing pipeline.
+ */
+public class TweetProcessorTiming {
+    /**
+     * The name of the stage.
+     */
+    public String name;
+    /**
+     * The number of tweets processed by the stage.
+     */
+    public long tweets;
+    /**
+     * The total time spent in the stage in nanoseconds.
+     */
+    public long totalNanos;
+    /**
+     * The average time spent in the stage per tweet in nanoseconds.
+     */
+    public long averageNanos;
+
+    /**
+     * Instantiates a new tweet processor timing.
+     *
+     * @param name       the name of the stage
+     * @param tweets     the number of tweets processed
+     * @param totalNanos the total time spent in nanoseconds
+     */
+    public TweetProcessorTiming(String name, long tweets, long totalNanos) {
+        this.name = name;
+        this.tweets = tweets;
+        this.totalNanos = totalNanos;
+        this.averageNanos = (tweets == 0) ? 0 : totalNanos / tweets;
+    }
+}
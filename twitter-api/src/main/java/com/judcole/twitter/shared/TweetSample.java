@@ -0,0 +1,40 @@
+package com.judcole.twitter.shared;
+
+import java.util.List;
+
+/**
+ * The class for an example tweet kept for drilling down into its hashtags.
+ */
+public class TweetSample {
+    /**
+     * The tweet id (or null if the tweet had none).
+     */
+    public String id;
+    /**
+     * The tweet text (truncated to the maximum sample text length).
+     */
+    public String text;
+    /**
+     * The hashtags in the tweet (as spelled in the tweet).
+     */
+    public List<String> hashtags;
+    /**
+     * The time the tweet was processed in milliseconds since the epoch.
+     */
+    public long receivedAtMillis;
+
+    /**
+     * Instantiates a new tweet sample.
+     *
+     * @param id               the tweet id
+     * @param text             the tweet text
+     * @param hashtags         the hashtags in the tweet
+     * @param receivedAtMillis the time the tweet was processed
+     */
+    public TweetSample(String id, String text, List<String> hashtags, long receivedAtMillis) {
+        this.id = id;
+        this.text = text;
+        this.hashtags = hashtags;
+        this.receivedAtMillis = receivedAtMillis;
+    }
+}
@@ -0,0 +1,124 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.CollectorEvents;
+import com.judcole.twitter.shared.TopHashtagsIndex;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the DiagnosticRecorder class and the collector events it records.
+ */
+class DiagnosticRecorderTests {
+
+    // Directory for the recording files
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that a recording captures the collector events and is dumped to a file when it stops.
+     */
+    @Test
+    void start_BoundedRecording_DumpsCollectorEvents() throws Exception {
+        var recorder = new DiagnosticRecorder(true, directory.toString(), 60000, 10 * 1024 * 1024, 5);
+        var status = recorder.start(2000);
+        assertThat(status.state).isEqualTo("RUNNING");
+
+        // Only one recording can run at a time
+        assertThat(recorder.start(1000)).isNull();
+
+        // Update an index and wait for a lock held by another thread
+        var index = new TopHashtagsIndex(10);
+        for (int i = 1; i <= 5; i++) {
+            index.update("tag" + i, i);
+        }
+        var lock = new ReentrantLock();
+        var locked = new CountDownLatch(1);
+        var holder = new Thread(() -> {
+            lock.lock();
+            locked.countDown();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+                // Just release the lock
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+        CollectorEvents.lock(lock, "testLock");
+        lock.unlock();
+        holder.join();
+
+        // Wait for it to stop and be dumped
+        for (int i = 0; (i < 200) && !recorder.getStatus().state.equals("CLOSED"); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(recorder.getStatus().state).isEqualTo("CLOSED");
+
+        var events = RecordingFile.readAllEvents(Path.of(status.file));
+        assertThat(events.stream().filter(event -> IsType(event, "TopHashtagsUpdate"))).hasSize(5);
+        assertThat(events.stream().filter(event -> IsType(event, "LockWait")).map(event -> event.getString("lockName")))
+                .containsExactly("testLock");
+        recorder.stop();
+    }
+
+    /**
+     * Test that starting a recording deletes the oldest recording files beyond the number kept.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    void start_ManyOldRecordings_KeepsNewestFiles() throws Exception {
+        var other = Files.writeString(directory.resolve("other.jfr"), "");
+        for (int day = 1; day <= 3; day++) {
+            Files.writeString(directory.resolve("collector-2000010" + day + "T000000.jfr"), "");
+        }
+        var recorder = new DiagnosticRecorder(true, directory.toString(), 60000, 1024 * 1024, 2);
+
+        var status = recorder.start(100);
+        recorder.stop();
+
+        try (var files = Files.list(directory)) {
+            assertThat(files.map(path -> path.getFileName().toString()).sorted()).containsExactly(
+                    "collector-20000103T000000.jfr", Path.of(status.file).getFileName().toString(), other.getFileName().toString());
+        }
+    }
+
+    /**
+     * Test that invalid durations are rejected and that a disabled recorder cannot start.
+     */
+    @Test
+    void start_InvalidOrDisabled_Throws() {
+        var recorder = new DiagnosticRecorder(true, directory.toString(), 60000, 1024 * 1024, 5);
+        assertThatThrownBy(() -> recorder.start(0)).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> recorder.start(60001)).isInstanceOf(InvalidParameterException.class);
+        assertThat(recorder.getStatus()).isNull();
+
+        var disabled = new DiagnosticRecorder(false, directory.toString(), 60000, 1024 * 1024, 5);
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThatThrownBy(() -> disabled.start(1000)).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Check whether a recorded event is a collector event of a type.
+     *
+     * @param event the recorded event
+     * @param type  the name of the type without the prefix
+     * @return true if it is of the type
+     */
+    private static boolean IsType(RecordedEvent event, String type) {
+        return event.getEventType().getName().equals("com.judcole.twitter." + type);
+    }
+}
@@ -0,0 +1,100 @@
+package com.judcole.twitter.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.judcole.twitter.grpc.Stats;
+import com.judcole.twitter.shared.SampledStreamStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the EncodedStatsHttpMessageConverter class.
+ */
+class EncodedStatsHttpMessageConverterTests {
+
+    /**
+     * Test that the statistics are written in each binary format and are smaller than JSON.
+     *
+     * @throws IOException the IO exception
+     */
+    @Test
+    void write_BinaryFormats_DecodesToSameStats() throws IOException {
+        var stats = CreateStats();
+        var converter = new EncodedStatsHttpMessageConverter();
+        var json = Jackson2ObjectMapperBuilder.json().build().writeValueAsBytes(stats);
+
+        var formats = new Object[][]{{MediaType.APPLICATION_CBOR, new CBORMapper()},
+                {EncodedStatsHttpMessageConverter.APPLICATION_SMILE, new SmileMapper()}};
+        for (var format : formats) {
+            var mediaType = (MediaType) format[0];
+            var output = new MockHttpOutputMessage();
+            converter.write(stats, mediaType, output);
+
+            assertThat(output.getHeaders().getContentType()).isEqualTo(mediaType);
+            var body = output.getBodyAsBytes();
+            assertThat(body.length).isLessThan(json.length);
+            var tree = ((ObjectMapper) format[1]).readTree(body);
+            assertThat(tree.get("totalTweets").asLong()).isEqualTo(12345);
+            assertThat(tree.get("topHashtags").get(0).asText()).isEqualTo("tag10");
+            assertThat(tree.get("topHashtagCounts").get(9).asLong()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Test that the statistics are written as the gRPC message when Protocol Buffers are asked for.
+     *
+     * @throws IOException the IO exception
+     */
+    @Test
+    void write_Protobuf_DecodesToSameStats() throws IOException {
+        var stats = CreateStats();
+        var converter = new EncodedStatsHttpMessageConverter();
+        var json = Jackson2ObjectMapperBuilder.json().build().writeValueAsBytes(stats);
+
+        var output = new MockHttpOutputMessage();
+        converter.write(stats, EncodedStatsHttpMessageConverter.APPLICATION_PROTOBUF, output);
+
+        assertThat(output.getHeaders().getContentType()).isEqualTo(EncodedStatsHttpMessageConverter.APPLICATION_PROTOBUF);
+        var body = output.getBodyAsBytes();
+        assertThat(body.length).isLessThan(json.length);
+        var message = Stats.parseFrom(body);
+        assertThat(message.getTotalTweets()).isEqualTo(12345);
+        assertThat(message.getTopHashtags(0).getHashtag()).isEqualTo("tag10");
+        assertThat(message.getTopHashtags(9).getCount()).isEqualTo(1);
+    }
+
+    /**
+     * Test that only a binary format preferred by the Accept header is picked, so JSON and wildcards keep the default.
+     */
+    @Test
+    void PreferredFormat_AcceptHeaders_ReturnsBinaryFormat() {
+        assertThat(EncodedStatsHttpMessageConverter.PreferredFormat("application/cbor")).isEqualTo(MediaType.APPLICATION_CBOR);
+        assertThat(EncodedStatsHttpMessageConverter.PreferredFormat("application/json;q=0.5, application/x-protobuf"))
+                .isEqualTo(EncodedStatsHttpMessageConverter.APPLICATION_PROTOBUF);
+        assertThat(EncodedStatsHttpMessageConverter.PreferredFormat("application/x-jackson-smile;q=0.5, application/json")).isNull();
+        assertThat(EncodedStatsHttpMessageConverter.PreferredFormat("*/*")).isNull();
+        assertThat(EncodedStatsHttpMessageConverter.PreferredFormat(null)).isNull();
+        assertThat(EncodedStatsHttpMessageConverter.PreferredFormat("not a media type")).isNull();
+    }
+
+    /**
+     * Create statistics with some values and top hashtags.
+     *
+     * @return the statistics
+     */
+    private static SampledStreamStats CreateStats() {
+        var stats = new SampledStreamStats(10);
+        stats.AddBasicCounts(100, 12345, 0);
+        for (int i = 1; i <= 10; i++) {
+            stats.UpdateTopHashtags("tag" + i, i);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,38 @@
+package com.judcole.twitter.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the fast-start profile.
+ */
+@SpringBootTest(properties = "twitter.grpc.port=0")
+@ActiveProfiles("fast-start")
+class FastStartProfileTests {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    /**
+     * Test that the collection beans are created at startup and the REST controllers wait for their first use.
+     */
+    @Test
+    void startup_FastStartProfile_OnlyCreatesCollectionBeans() {
+        var beanFactory = context.getBeanFactory();
+
+        assertThat(beanFactory.containsSingleton("tweetCollectorService")).isTrue();
+        assertThat(beanFactory.containsSingleton("tweetCollector")).isTrue();
+        assertThat(beanFactory.containsSingleton("grpcServer")).isTrue();
+        assertThat(beanFactory.containsSingleton("sampledStreamController")).isFalse();
+        assertThat(beanFactory.containsSingleton("sampledStreamStatsService")).isTrue();
+
+        // Created when first used
+        assertThat(context.getBean(SampledStreamController.class)).isNotNull();
+        assertThat(beanFactory.containsSingleton("sampledStreamController")).isTrue();
+    }
+}
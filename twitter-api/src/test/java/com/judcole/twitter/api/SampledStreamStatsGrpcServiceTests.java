@@ -0,0 +1,266 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.grpc.GetStatsRequest;
+import com.judcole.twitter.grpc.SampledStreamStatsServiceGrpc;
+import com.judcole.twitter.grpc.Stats;
+import com.judcole.twitter.grpc.WatchStatsRequest;
+import com.judcole.twitter.shared.SampledStreamStats;
+import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the SampledStreamStatsGrpcService class with a local server and client.
+ */
+class SampledStreamStatsGrpcServiceTests {
+
+    // Service providing the statistics
+    private SampledStreamStatsService statsService;
+
+    // gRPC service under test
+    private SampledStreamStatsGrpcService grpcService;
+
+    // Local gRPC server
+    private GrpcServer server;
+
+    // Channel to the local server (one HTTP/2 connection shared by all the calls)
+    private ManagedChannel channel;
+
+    /**
+     * Start the server and connect the client.
+     *
+     * @throws Exception the exception
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        statsService = new SampledStreamStatsService(new SampledStreamStatsFactory(100), new StatsAggregator("", 1000, 100, SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS), 1000, 300);
+        statsService.getLocalStats().AddBasicCounts(10, 5, 0);
+        statsService.getLocalStats().UpdateTopHashtags("abc", 3);
+        grpcService = new SampledStreamStatsGrpcService(statsService);
+        server = new GrpcServer(0, grpcService);
+        server.start();
+        channel = NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+    }
+
+    /**
+     * Disconnect the client and stop the server.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+        server.stop();
+        grpcService.stop();
+    }
+
+    /**
+     * Test that the unary call returns the latest statistics and rejects too many top hashtags.
+     */
+    @Test
+    void getStats_Unary_ReturnsStats() {
+        var stub = SampledStreamStatsServiceGrpc.newBlockingStub(channel);
+
+        var stats = stub.getStats(GetStatsRequest.newBuilder().setTop(50).build());
+        assertThat(stats.getTotalTweets()).isEqualTo(5);
+        assertThat(stats.getTotalHashtags()).isEqualTo(10);
+        assertThat(stats.getTopHashtagsCount()).isEqualTo(1);
+        assertThat(stats.getTopHashtags(0).getHashtag()).isEqualTo("abc");
+        assertThat(stats.getDelta()).isFalse();
+
+        assertThatThrownBy(() -> stub.getStats(GetStatsRequest.newBuilder().setTop(101).build()))
+                .isInstanceOf(StatusRuntimeException.class)
+                .extracting(ex -> ((StatusRuntimeException) ex).getStatus().getCode())
+                .isEqualTo(Status.Code.INVALID_ARGUMENT);
+    }
+
+    /**
+     * Test that a delta watch sends a full first update and then only the changed fields.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    void watchStats_Deltas_SendsChangedFields() throws InterruptedException {
+        var updates = new CopyOnWriteArrayList<Stats>();
+        var context = Context.current().withCancellation();
+        context.run(() -> SampledStreamStatsServiceGrpc.newStub(channel).watchStats(
+                WatchStatsRequest.newBuilder().setIntervalMs(20).setDeltas(true).build(), Collect(updates, null)));
+
+        // Change the totals once the first update has arrived
+        WaitFor(() -> updates.size() >= 1);
+        statsService.getLocalStats().AddBasicCounts(0, 1, 0);
+        WaitFor(() -> updates.stream().anyMatch(update -> update.hasTotalTweets() && update.getDelta()));
+        context.cancel(null);
+
+        assertThat(updates.get(0).getDelta()).isFalse();
+        assertThat(updates.get(0).getTopHashtagsCount()).isEqualTo(1);
+        var delta = updates.stream().filter(update -> update.hasTotalTweets() && update.getDelta()).findFirst().orElseThrow();
+        assertThat(delta.getTotalTweets()).isEqualTo(6);
+        assertThat(delta.hasTotalHashtags()).isFalse();
+        assertThat(delta.getTopHashtagsCount()).isZero();
+    }
+
+    /**
+     * Test that a watch sends its first update straight away and closes the stream with an error when an update fails.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    void watchStats_UpdateFails_ClosesStreamWithError() throws Exception {
+        // Serve statistics that fail after the request check and the first update
+        var calls = new AtomicInteger();
+        var failingService = new SampledStreamStatsService(new SampledStreamStatsFactory(100), new StatsAggregator("", 1000, 100, SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS), 1000, 300) {
+            @Override
+            public SampledStreamStats getStats() {
+                if (calls.incrementAndGet() > 2) {
+                    throw new IllegalStateException("Stats unavailable");
+                }
+                return super.getStats();
+            }
+        };
+        var failingGrpcService = new SampledStreamStatsGrpcService(failingService);
+        var failingServer = new GrpcServer(0, failingGrpcService);
+        failingServer.start();
+        var failingChannel = NettyChannelBuilder.forAddress("localhost", failingServer.getPort()).usePlaintext().build();
+        try {
+            var updates = new CopyOnWriteArrayList<Stats>();
+            var error = new AtomicReference<Throwable>();
+            SampledStreamStatsServiceGrpc.newStub(failingChannel).watchStats(
+                    WatchStatsRequest.newBuilder().setIntervalMs(1000).build(), new StreamObserver<>() {
+                        @Override
+                        public void onNext(Stats stats) {
+                            updates.add(stats);
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            error.set(throwable);
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+
+            // The first update arrives before the first interval and the failing one closes the stream
+            WaitFor(() -> updates.size() == 1);
+            WaitFor(() -> error.get() != null);
+            assertThat(Status.fromThrowable(error.get()).getCode()).isEqualTo(Status.Code.INTERNAL);
+            assertThat(updates).hasSize(1);
+        } finally {
+            failingChannel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+            failingServer.stop();
+            failingGrpcService.stop();
+        }
+    }
+
+    /**
+     * Load test many concurrent watch streams and unary calls multiplexed over one connection.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    void watchStats_ManyStreams_AllReceiveUpdates() throws InterruptedException {
+        final int STREAM_COUNT = 50;
+        final int CALL_COUNT = 500;
+        final int UPDATES_PER_STREAM = 10;
+
+        // Start the watch streams
+        var done = new CountDownLatch(STREAM_COUNT);
+        var contexts = new ArrayList<Context.CancellableContext>();
+        var received = new AtomicInteger();
+        var start = System.nanoTime();
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            var context = Context.current().withCancellation();
+            contexts.add(context);
+            var updates = new CopyOnWriteArrayList<Stats>();
+            context.run(() -> SampledStreamStatsServiceGrpc.newStub(channel).watchStats(
+                    WatchStatsRequest.newBuilder().setIntervalMs(20).setTop(100).build(), Collect(updates, () -> {
+                        received.incrementAndGet();
+                        if (updates.size() == UPDATES_PER_STREAM) {
+                            done.countDown();
+                        }
+                    })));
+        }
+
+        // Make the unary calls concurrently
+        var stub = SampledStreamStatsServiceGrpc.newBlockingStub(channel);
+        var failures = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < CALL_COUNT; i++) {
+            executor.execute(() -> {
+                if (stub.getStats(GetStatsRequest.getDefaultInstance()).getTotalTweets() != 5) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        contexts.forEach(context -> context.cancel(null));
+
+        System.out.printf("%d unary calls and %d stream updates in %d ms%n", CALL_COUNT, received.get(), elapsedMillis);
+        assertThat(failures.get()).isZero();
+    }
+
+    /**
+     * Create an observer that collects the updates of a stream.
+     *
+     * @param updates  the list for the updates
+     * @param onUpdate the action after each update (or null)
+     * @return the observer
+     */
+    private static StreamObserver<Stats> Collect(List<Stats> updates, Runnable onUpdate) {
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(Stats stats) {
+                updates.add(stats);
+                if (onUpdate != null) {
+                    onUpdate.run();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        };
+    }
+
+    /**
+     * Wait up to 10 seconds for a condition to become true.
+     *
+     * @param condition the condition
+     * @throws InterruptedException the interrupted exception
+     */
+    private static void WaitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,45 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.grpc.Stats;
+import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.security.InvalidParameterException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the SampledStreamStatsService class.
+ */
+class SampledStreamStatsServiceTests {
+
+    /**
+     * Test that a binary encoding is reused until a new version of the statistics is published.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    void getEncodedStats_SameVersion_ReusesEncoding() throws Exception {
+        // Publish a version on every call so only a change in the statistics makes a new one
+        var service = new SampledStreamStatsService(new SampledStreamStatsFactory(100),
+                new StatsAggregator("", 1000, 100, SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS), 0, 300);
+        service.getLocalStats().AddBasicCounts(10, 5, 0);
+        service.getLocalStats().UpdateTopHashtags("abc", 3);
+
+        var first = service.getEncodedStats(null, MediaType.APPLICATION_CBOR);
+        assertThat(service.getEncodedStats(null, MediaType.APPLICATION_CBOR)).isSameAs(first);
+        assertThat(service.getEncodedStats(1, MediaType.APPLICATION_CBOR)).isNotSameAs(first);
+
+        // A change in the statistics publishes a new version with a new encoding
+        service.getLocalStats().AddBasicCounts(0, 1, 0);
+        assertThat(service.getEncodedStats(null, MediaType.APPLICATION_CBOR)).isNotSameAs(first);
+
+        var message = Stats.parseFrom(service.getEncodedStats(1, EncodedStatsHttpMessageConverter.APPLICATION_PROTOBUF));
+        assertThat(message.getTotalTweets()).isEqualTo(6);
+        assertThat(message.getTopHashtagsList()).hasSize(1);
+        assertThatThrownBy(() -> service.getEncodedStats(101, MediaType.APPLICATION_CBOR))
+                .isInstanceOf(InvalidParameterException.class);
+    }
+}
@@ -0,0 +1,179 @@
+package com.judcole.twitter.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.judcole.twitter.shared.SampledStreamStats;
+import com.judcole.twitter.shared.SampledStreamStatsExport;
+import com.judcole.twitter.shared.SampledStreamStatsFactory;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the StatsAggregator class against several local peer nodes.
+ */
+class StatsAggregatorTests {
+
+    // Number of peer nodes
+    private final int PEER_COUNT = 3;
+
+    // Servers exporting the statistics of each peer
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    // Aggregator under test
+    private StatsAggregator aggregator;
+
+    /**
+     * Stop the aggregator and the peer servers.
+     */
+    @AfterEach
+    void tearDown() {
+        if (aggregator != null) {
+            aggregator.stop();
+        }
+        servers.forEach(server -> server.stop(0));
+    }
+
+    /**
+     * Test that aggregator mode is disabled without any peers.
+     */
+    @Test
+    void isEnabled_NoPeers_ReturnsFalse() {
+        aggregator = new StatsAggregator(" ", 100, 100, SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS);
+
+        assertThat(aggregator.isEnabled()).isFalse();
+        assertThat(aggregator.getGlobalStats()).isNull();
+    }
+
+    /**
+     * Test that the aggregator merges the statistics from all the peers and keeps updating them.
+     */
+    @Test
+    void getGlobalStats_SeveralPeers_ReturnsMergedStats() throws Exception {
+        var now = System.currentTimeMillis();
+
+        // Start the peers each with the same hashtag and one of their own
+        var peerStats = new ArrayList<SampledStreamStats>();
+        var peerUrls = new ArrayList<String>();
+        for (int i = 0; i < PEER_COUNT; i++) {
+            var stats = new SampledStreamStats(10);
+            stats.AddBasicCounts(2, 1, 0);
+            stats.UpdateTopHashtags("shared", 10);
+            stats.UpdateTopHashtags("peer" + i, i + 1);
+            stats.RecordDistinctHashtag("shared", now);
+            stats.RecordDistinctHashtag("peer" + i, now);
+            peerStats.add(stats);
+            peerUrls.add(StartPeer(stats));
+        }
+
+        // Start aggregating and wait for the merged totals
+        aggregator = new StatsAggregator(String.join(",", peerUrls), 50, 100, SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS);
+        WaitForTotalTweets(PEER_COUNT);
+
+        var global = aggregator.getGlobalStats();
+        assertThat(aggregator.isEnabled()).isTrue();
+        assertThat(global.getTotalHashtags()).isEqualTo(2 * PEER_COUNT);
+        assertThat(global.getTopHashtags()[0]).isEqualTo("shared");
+        assertThat(global.getTopHashtagCounts()[0]).isEqualTo(10 * PEER_COUNT);
+        assertThat(global.getTopHashtags()[1]).isEqualTo("peer" + (PEER_COUNT - 1));
+        assertThat(global.getDistinctHashtags()).isEqualTo(PEER_COUNT + 1);
+
+        // Update one peer and check the change is pulled on the next cycle
+        peerStats.get(0).AddBasicCounts(0, 10, 0);
+        WaitForTotalTweets(PEER_COUNT + 10);
+    }
+
+    /**
+     * Test that a malformed export is ignored and a peer that stops exporting is left out of the global view.
+     */
+    @Test
+    void getGlobalStats_MalformedAndDeadPeers_MergesLivePeers() throws Exception {
+        // Start two good peers and one with a truncated sketch
+        var peerUrls = new ArrayList<String>();
+        for (int i = 0; i < PEER_COUNT - 1; i++) {
+            var stats = new SampledStreamStats(10);
+            stats.AddBasicCounts(0, i + 1, 0);
+            peerUrls.add(StartPeer(stats));
+        }
+        var malformed = new SampledStreamStats(10);
+        malformed.AddBasicCounts(0, 100, 0);
+        var export = malformed.Export();
+        export.distinctHashtagsSketch = new byte[3];
+        peerUrls.add(StartPeer(export));
+
+        // Start aggregating and check only the good peers are merged
+        aggregator = new StatsAggregator(String.join(",", peerUrls), 50, 100, SampledStreamStatsFactory.DEFAULT_TRENDING_HALF_LIFE_MILLIS);
+        WaitForTotalTweets(3);
+        assertThat(aggregator.getGlobalStats().getStatus()).isEqualTo("Merged from 2 of 3 peers");
+
+        // Stop the second peer and check it drops out after a few intervals
+        servers.get(1).stop(0);
+        WaitForTotalTweets(1);
+        assertThat(aggregator.getGlobalStats().getStatus()).isEqualTo("Merged from 1 of 3 peers");
+    }
+
+    /**
+     * Start a peer server exporting a statistics instance.
+     *
+     * @param stats the statistics instance
+     * @return the base URL of the peer
+     * @throws IOException the IO exception
+     */
+    private String StartPeer(SampledStreamStats stats) throws IOException {
+        return StartPeer(stats::Export);
+    }
+
+    /**
+     * Start a peer server exporting a fixed state.
+     *
+     * @param export the exported state
+     * @return the base URL of the peer
+     * @throws IOException the IO exception
+     */
+    private String StartPeer(SampledStreamStatsExport export) throws IOException {
+        return StartPeer(() -> export);
+    }
+
+    /**
+     * Start a peer server exporting the state from a supplier.
+     *
+     * @param exports the supplier of the exported states
+     * @return the base URL of the peer
+     * @throws IOException the IO exception
+     */
+    private String StartPeer(Supplier<SampledStreamStatsExport> exports) throws IOException {
+        var mapper = new ObjectMapper();
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/exportStats", exchange -> {
+            var body = mapper.writeValueAsBytes(exports.get());
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        servers.add(server);
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Wait up to 10 seconds for the global total tweets to reach a value.
+     *
+     * @param totalTweets the expected total tweets
+     * @throws InterruptedException the interrupted exception
+     */
+    private void WaitForTotalTweets(long totalTweets) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 10000;
+        while ((aggregator.getGlobalStats().getTotalTweets() != totalTweets) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertThat(aggregator.getGlobalStats().getTotalTweets()).isEqualTo(totalTweets);
+    }
+}
@@ -0,0 +1,225 @@
+package com.judcole.twitter.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the StreamConnectionSupervisor class against a local stub stream server.
+ */
+class StreamConnectionSupervisorTests {
+
+    // Idle timeout for testing
+    private final long IDLE_TIMEOUT_MILLIS = 300;
+
+    // Time without tweets on the active connection (while the standby has them) before switching for testing
+    private final long TWEET_STALL_MILLIS = 100;
+
+    // Stub server serving newline-delimited tweet JSON
+    private HttpServer server;
+
+    // Supervisor under test
+    private StreamConnectionSupervisor supervisor;
+
+    // Number of connections the stub server has accepted
+    private final AtomicInteger connections = new AtomicInteger();
+
+    // Tweet lines passed on by the supervisor
+    private final List<String> lines = new CopyOnWriteArrayList<>();
+
+    /**
+     * Stop the supervisor and the stub server.
+     */
+    @AfterEach
+    void tearDown() {
+        if (supervisor != null) {
+            supervisor.stop();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Test that the standby connection takes over quickly when the active connection stalls.
+     */
+    @Test
+    void run_ActiveStalls_SwitchesToStandby() throws Exception {
+        // The first connection sends 3 tweets then stalls and the others stream forever
+        StartServer(exchange -> {
+            var connection = connections.incrementAndGet();
+            StreamTweets(exchange, connection, (connection == 1) ? 3 : Integer.MAX_VALUE);
+            Thread.sleep(60000);
+        });
+        StartSupervisor(true);
+
+        // Wait for tweets from a later connection
+        WaitFor(() -> lines.stream().anyMatch(line -> !line.contains("\"connection\":1")));
+
+        // Check it failed over without reconnecting the active connection from scratch
+        assertThat(supervisor.getFailoverCount()).isEqualTo(1);
+        assertThat(lines.stream().filter(line -> line.contains("\"connection\":1"))).hasSize(3);
+        assertThat(lines.get(3)).doesNotContain("\"connection\":1");
+    }
+
+    /**
+     * Test that the standby takes over long before the idle timeout when the active connection only sends keep alives
+     * while the standby is receiving tweets.
+     */
+    @Test
+    void run_ActiveOnlyKeepAlives_SwitchesToStandbyBeforeIdleTimeout() throws Exception {
+        // The first connection sends 3 tweets then only keep alives and the others stream forever
+        StartServer(exchange -> {
+            var connection = connections.incrementAndGet();
+            StreamTweets(exchange, connection, (connection == 1) ? 3 : Integer.MAX_VALUE);
+            var body = exchange.getResponseBody();
+            while (true) {
+                body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+                body.flush();
+                Thread.sleep(20);
+            }
+        });
+        StartSupervisor(true, 60000);
+
+        // Wait (for much less than the idle timeout) for tweets from a later connection
+        WaitFor(() -> lines.stream().anyMatch(line -> !line.contains("\"connection\":1")));
+
+        assertThat(supervisor.getFailoverCount()).isEqualTo(1);
+        assertThat(lines.stream().filter(line -> line.contains("\"connection\":1"))).hasSize(3);
+    }
+
+    /**
+     * Test that the supervisor reconnects with backoff after errors and ended streams.
+     */
+    @Test
+    void run_ErrorsAndEndedStreams_Reconnects() throws Exception {
+        // The first two connections fail, then each connection sends 2 tweets and ends
+        StartServer(exchange -> {
+            var connection = connections.incrementAndGet();
+            if (connection <= 2) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            } else {
+                StreamTweets(exchange, connection, 2);
+                exchange.close();
+            }
+        });
+        StartSupervisor(false);
+
+        // Wait for tweets from at least 3 successful connections
+        WaitFor(() -> lines.size() >= 6);
+
+        assertThat(supervisor.getConnectionCount()).isGreaterThanOrEqualTo(5);
+        assertThat(supervisor.getFailoverCount()).isZero();
+    }
+
+    /**
+     * Start the stub server with a specified handler.
+     *
+     * @param handler the handler for each stream connection
+     * @throws IOException the IO exception
+     */
+    private void StartServer(StreamHandler handler) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/stream", exchange -> {
+            try {
+                handler.handle(exchange);
+            } catch (Exception ex) {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Start the supervisor on a separate thread with the test idle timeout.
+     *
+     * @param standbyEnabled true to keep a standby connection
+     */
+    private void StartSupervisor(boolean standbyEnabled) {
+        StartSupervisor(standbyEnabled, IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Start the supervisor on a separate thread.
+     *
+     * @param standbyEnabled    true to keep a standby connection
+     * @param idleTimeoutMillis the time without any line after which a connection is considered stalled
+     */
+    private void StartSupervisor(boolean standbyEnabled, long idleTimeoutMillis) {
+        var uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/stream");
+        var httpClient = HttpClients.custom().setMaxConnPerRoute(4).setMaxConnTotal(4).build();
+        supervisor = new StreamConnectionSupervisor(httpClient, uri, "token", block -> lines.add(block.Contents), null,
+                idleTimeoutMillis, TWEET_STALL_MILLIS, standbyEnabled, 10, 100);
+
+        var thread = new Thread(() -> {
+            try {
+                supervisor.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stream a number of tweets (with keep alive lines) tagged with the connection number.
+     *
+     * @param exchange   the HTTP exchange
+     * @param connection the connection number
+     * @param tweetCount the number of tweets to send
+     * @throws Exception the exception
+     */
+    private static void StreamTweets(HttpExchange exchange, int connection, int tweetCount) throws Exception {
+        exchange.sendResponseHeaders(200, 0);
+        var body = exchange.getResponseBody();
+        for (int i = 0; i < tweetCount; i++) {
+            var line = String.format("{\"data\":{\"id\":\"%d\",\"text\":\"Tweet #%d\",\"connection\":%d}}\r\n\r\n", i, i, connection);
+            body.write(line.getBytes(StandardCharsets.UTF_8));
+            body.flush();
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Wait up to 10 seconds for a condition to become true.
+     *
+     * @param condition the condition
+     * @throws InterruptedException the interrupted exception
+     */
+    private static void WaitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    /**
+     * The interface for stub stream handlers.
+     */
+    private interface StreamHandler {
+        /**
+         * Handle a stream connection.
+         *
+         * @param exchange the HTTP exchange
+         * @throws Exception the exception
+         */
+        void handle(HttpExchange exchange) throws Exception;
+    }
+}
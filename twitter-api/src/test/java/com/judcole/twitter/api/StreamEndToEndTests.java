@@ -0,0 +1,241 @@
+package com.judcole.twitter.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.judcole.twitter.emulator.TwitterStreamEmulator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the whole ingest path (stream connection, queue, processors and /getStats) against an emulated
+ * Twitter stream, measuring the sustained tweets per second and the latency from sending a tweet to it being counted.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"twitter.grpc.port=0", "STREAM_BEARER_TOKEN=emulator", "twitter.stream.standby=false",
+                "twitter.stream.idle-timeout-ms=500", "twitter.stream.backoff-base-ms=10",
+                "twitter.stream.backoff-max-ms=100"})
+@Slf4j
+class StreamEndToEndTests {
+
+    // Maximum time to wait for the tweets sent to be counted
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    // Emulated stream the application stays connected to for all the tests
+    private static final TwitterStreamEmulator emulator = CreateEmulator();
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    /**
+     * Point the application at the emulated stream.
+     *
+     * @param registry the registry of dynamic properties
+     */
+    @DynamicPropertySource
+    static void streamProperties(DynamicPropertyRegistry registry) {
+        registry.add("twitter.stream.url", () -> emulator.getUri().toString());
+    }
+
+    /**
+     * Stop the emulated stream.
+     */
+    @AfterAll
+    static void closeEmulator() {
+        emulator.close();
+    }
+
+    /**
+     * Test that every tweet is counted when they are streamed as fast as possible.
+     */
+    @Test
+    void stream_MaximumRate_CountsEveryTweet() throws Exception {
+        emulator.withRate(0).withChunkSize(16384).withStalls(0, 0).withDisconnects(0);
+
+        var result = Measure(20000);
+
+        assertThat(result.countedTweets).isEqualTo(20000);
+        assertThat(result.countedHashtags).isEqualTo(20000L * TwitterStreamEmulator.HASHTAGS_PER_TWEET);
+        assertThat(result.tweetsPerSecond).isGreaterThan(500);
+    }
+
+    /**
+     * Test that a steady rate of tweets split across many small chunks is counted with a low latency.
+     */
+    @Test
+    void stream_SteadyRateSmallChunks_KeepsUp() throws Exception {
+        emulator.withRate(500).withChunkSize(37).withStalls(0, 0).withDisconnects(0);
+
+        var result = Measure(2000);
+
+        assertThat(result.countedTweets).isEqualTo(2000);
+        assertThat(result.p99LatencyMillis).isLessThan(2000);
+    }
+
+    /**
+     * Test that the application reconnects when the stream stalls without losing any of the tweets sent.
+     */
+    @Test
+    void stream_Stalls_ReconnectsAndCountsEveryTweet() throws Exception {
+        emulator.withRate(0).withChunkSize(0).withStalls(300, 2000).withDisconnects(0);
+        var connections = emulator.getConnections();
+
+        var result = Measure(900);
+
+        // Every 300 tweets stall the connection so at least 2 more are needed (and another after the last stall)
+        assertThat(result.countedTweets).isEqualTo(900);
+        assertThat(emulator.getConnections() - connections).isGreaterThanOrEqualTo(2);
+    }
+
+    /**
+     * Test that the application reconnects when the stream is dropped without losing any of the tweets sent.
+     */
+    @Test
+    void stream_Disconnects_ReconnectsAndCountsEveryTweet() throws Exception {
+        emulator.withRate(0).withChunkSize(0).withStalls(0, 0).withDisconnects(250);
+        var connections = emulator.getConnections();
+
+        var result = Measure(1000);
+
+        // Every 250 tweets drop the connection so at least 3 more are needed (and another after the last drop)
+        assertThat(result.countedTweets).isEqualTo(1000);
+        assertThat(emulator.getConnections() - connections).isGreaterThanOrEqualTo(3);
+    }
+
+    /**
+     * Send tweets and poll /getStats until all the tweets sent have been counted.
+     *
+     * @param tweetCount the number of tweets to send
+     * @return the measurement
+     * @throws InterruptedException the interrupted exception
+     */
+    private Measurement Measure(long tweetCount) throws InterruptedException {
+        var baseline = GetStats();
+        var baseTweets = baseline.get("totalTweets").asLong();
+        var baseHashtags = baseline.get("totalHashtags").asLong();
+        var baseSent = emulator.getSentTweets();
+        var latencies = new ArrayList<Long>();
+
+        var startNanos = System.nanoTime();
+        var lastProgressNanos = startNanos;
+        var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long counted = 0;
+        long hashtags = 0;
+        emulator.send(tweetCount);
+
+        while (System.currentTimeMillis() < deadline) {
+            var stats = GetStats();
+            var now = System.nanoTime();
+            var total = stats.get("totalTweets").asLong() - baseTweets;
+            hashtags = stats.get("totalHashtags").asLong() - baseHashtags;
+
+            if (total > counted) {
+                // Record the latency of the latest tweet counted
+                counted = total;
+                lastProgressNanos = now;
+                latencies.add((now - emulator.getSendTimeNanos(baseSent + counted)) / 1_000_000);
+            }
+            if ((counted >= tweetCount)
+                    || (!emulator.isSending() && (counted >= emulator.getSentTweets() - baseSent))) {
+                // Every tweet sent (without any lost to dropped connections) has been counted
+                break;
+            }
+            Thread.sleep(10);
+        }
+
+        var result = new Measurement(counted, hashtags, counted * 1e9 / Math.max(1, lastProgressNanos - startNanos),
+                Percentile(latencies, 50), Percentile(latencies, 99));
+        log.info("Counted {} tweets at {} tweets/sec with a latency of {} ms (p50) and {} ms (p99)",
+                counted, Math.round(result.tweetsPerSecond), result.p50LatencyMillis, result.p99LatencyMillis);
+        return result;
+    }
+
+    /**
+     * Get the latest statistics from the REST API.
+     *
+     * @return the statistics
+     */
+    private JsonNode GetStats() {
+        return Objects.requireNonNull(restTemplate.getForObject("/getStats", JsonNode.class));
+    }
+
+    /**
+     * Get a percentile of some latencies.
+     *
+     * @param latencies  the latencies
+     * @param percentile the percentile (from 0 to 100)
+     * @return the latency at the percentile (or 0 if there are none)
+     */
+    private static long Percentile(List<Long> latencies, int percentile) {
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        var sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+    }
+
+    /**
+     * Create the emulated stream with keep alives well within the idle timeout.
+     *
+     * @return the emulator
+     */
+    private static TwitterStreamEmulator CreateEmulator() {
+        try {
+            return new TwitterStreamEmulator().withKeepAlive(100);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * The class for the results of sending a number of tweets.
+     */
+    private static class Measurement {
+        // Number of tweets counted
+        private final long countedTweets;
+
+        // Number of hashtags counted
+        private final long countedHashtags;
+
+        // Sustained rate from sending the first tweet to counting the last
+        private final double tweetsPerSecond;
+
+        // Median latency from sending a tweet to it being counted
+        private final long p50LatencyMillis;
+
+        // 99th percentile latency from sending a tweet to it being counted
+        private final long p99LatencyMillis;
+
+        /**
+         * Instantiates a new measurement.
+         *
+         * @param countedTweets    the number of tweets counted
+         * @param countedHashtags  the number of hashtags counted
+         * @param tweetsPerSecond  the sustained rate
+         * @param p50LatencyMillis the median latency
+         * @param p99LatencyMillis the 99th percentile latency
+         */
+        private Measurement(long countedTweets, long countedHashtags, double tweetsPerSecond, long p50LatencyMillis,
+                            long p99LatencyMillis) {
+            this.countedTweets = countedTweets;
+            this.countedHashtags = countedHashtags;
+            this.tweetsPerSecond = tweetsPerSecond;
+            this.p50LatencyMillis = p50LatencyMillis;
+            this.p99LatencyMillis = p99LatencyMillis;
+        }
+    }
+}
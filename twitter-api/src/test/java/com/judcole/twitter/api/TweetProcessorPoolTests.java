@@ -0,0 +1,135 @@
+package com.judcole.twitter.api;
+
+import com.judcole.twitter.shared.BackgroundQueue;
+import com.judcole.twitter.shared.TweetBlock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the TweetProcessorPool and WorkerAutoscaler classes.
+ */
+class TweetProcessorPoolTests {
+
+    // Pool under test
+    private TweetProcessorPool pool;
+
+    /**
+     * Stop the pool.
+     */
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.stop();
+        }
+    }
+
+    /**
+     * Test that workers are only added or retired after several checks in a row past the thresholds.
+     */
+    @Test
+    void decide_ChangingLoad_ScalesWithHysteresis() {
+        var autoscaler = new WorkerAutoscaler(1, 3, 1000, 100, 2, 3);
+
+        // Start at the minimum
+        assertThat(autoscaler.decide(0, 0, 0)).isEqualTo(1);
+
+        // A backlog of 5 seconds must be seen twice before adding a worker and a single spike is ignored
+        assertThat(autoscaler.decide(1, 500, 100)).isEqualTo(1);
+        assertThat(autoscaler.decide(1, 10, 100)).isEqualTo(1);
+        assertThat(autoscaler.decide(1, 500, 100)).isEqualTo(1);
+        assertThat(autoscaler.decide(1, 500, 100)).isEqualTo(2);
+        assertThat(autoscaler.decide(2, 500, 100)).isEqualTo(2);
+        assertThat(autoscaler.decide(2, 500, 100)).isEqualTo(3);
+
+        // Never above the maximum
+        assertThat(autoscaler.decide(3, 500, 100)).isEqualTo(3);
+        assertThat(autoscaler.decide(3, 500, 100)).isEqualTo(3);
+
+        // Between the thresholds nothing changes
+        for (int i = 0; i < 10; i++) {
+            assertThat(autoscaler.decide(3, 50, 100)).isEqualTo(3);
+        }
+
+        // Quiet for three checks in a row retires one worker at a time down to the minimum
+        assertThat(autoscaler.decide(3, 0, 0)).isEqualTo(3);
+        assertThat(autoscaler.decide(3, 0, 0)).isEqualTo(3);
+        assertThat(autoscaler.decide(3, 0, 0)).isEqualTo(2);
+        for (int i = 0; i < 10; i++) {
+            assertThat(autoscaler.decide(1, 0, 0)).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Test the estimated time for the queue to drain.
+     */
+    @Test
+    void EstimateLatencyMillis_QueueAndRate_ReturnsDrainTime() {
+        assertThat(WorkerAutoscaler.EstimateLatencyMillis(0, 0)).isZero();
+        assertThat(WorkerAutoscaler.EstimateLatencyMillis(200, 100)).isEqualTo(2000);
+        assertThat(WorkerAutoscaler.EstimateLatencyMillis(1, 0)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    /**
+     * Test that the pool adds workers while a backlog builds up and retires them once it has drained, telling the retire listener.
+     */
+    @Test
+    void start_BacklogThenQuiet_AddsAndRetiresWorkers() throws Exception {
+        var queue = new BackgroundQueue<TweetBlock>(10000);
+        var processed = new AtomicInteger();
+        var reportedWorkers = new AtomicInteger();
+        var retiredWorkers = new AtomicInteger();
+        pool = new TweetProcessorPool(1, 3, 20, 100, 50, 1, 3);
+
+        // Slow block processor so a backlog builds
+        for (int i = 0; i < 2000; i++) {
+            queue.enqueue(new TweetBlock("{}"));
+        }
+        pool.start(queue, () -> block -> {
+            Sleep(1);
+            processed.incrementAndGet();
+        }, reportedWorkers::set, blockProcessor -> retiredWorkers.incrementAndGet());
+        assertThat(pool.getWorkerCount()).isEqualTo(1);
+
+        WaitFor(() -> pool.getWorkerCount() == 3);
+        assertThat(reportedWorkers.get()).isEqualTo(3);
+
+        WaitFor(() -> pool.getWorkerCount() == 1);
+        assertThat(queue.getCount()).isZero();
+        assertThat(processed.get()).isEqualTo(2000);
+        assertThat(pool.getProcessedBlocks()).isEqualTo(2000);
+        assertThat(reportedWorkers.get()).isEqualTo(1);
+        WaitFor(() -> retiredWorkers.get() == 2);
+    }
+
+    /**
+     * Sleep without a checked exception.
+     *
+     * @param millis the time to sleep in milliseconds
+     */
+    private static void Sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait up to 20 seconds for a condition.
+     *
+     * @param condition the condition
+     * @throws InterruptedException the interrupted exception
+     */
+    private static void WaitFor(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 20000;
+        while (!condition.getAsBoolean() && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -1,13 +1,127 @@
 package com.judcole.twitter.api;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
 
-@SpringBootTest
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "twitter.grpc.port=0")
+@AutoConfigureMockMvc
 class TwitterApiApplicationTests {
 
+    @Autowired
+    private MockMvc mockMvc;
+
     @Test
     void contextLoads() {
     }
 
+    @Test
+    void getStats_Accept_NegotiatesContentType() throws Exception {
+        // JSON stays the default for browsers and other clients that accept anything
+        mockMvc.perform(get("/getStats").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+        // Binary formats are returned when asked for
+        mockMvc.perform(get("/getStats").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR));
+        mockMvc.perform(get("/getStats?top=100").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"));
+        mockMvc.perform(get("/getStats").accept("application/x-protobuf"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-protobuf"));
+        mockMvc.perform(get("/exportStats").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR));
+    }
+
+    @Test
+    void getStatsDelta_SinceVersion_ReturnsChanges() throws Exception {
+        mockMvc.perform(get("/getStats/delta"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.full").value(true))
+                .andExpect(jsonPath("$.fields.totalTweets").exists())
+                .andExpect(jsonPath("$.ranks.topHashtags").isArray());
+        mockMvc.perform(get("/getStats/delta?since=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").isNumber());
+    }
+
+    @Test
+    void getHistory_Ranges_ReturnsPointsOrBadRequest() throws Exception {
+        mockMvc.perform(get("/history"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isArray());
+        mockMvc.perform(get("/history?from=1000&to=0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/history?from=0&to=1000000&step=1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getHashtagPartners_UnknownTag_ReturnsEmptyList() throws Exception {
+        mockMvc.perform(get("/hashtags/%23NoSuchTag/partners?limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    void findHashtags_PrefixIndexDisabled_ReturnsNotFound() throws Exception {
+        mockMvc.perform(get("/hashtags?prefix=java"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getHashtagSamples_UnknownTag_ReturnsEmptyList() throws Exception {
+        mockMvc.perform(get("/hashtags/%23NoSuchTag/samples?limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    void getTopHashtags_RollupsDisabled_ReturnsNotFound() throws Exception {
+        mockMvc.perform(get("/getTopHashtags?limit=5"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void views_PutGetDelete_ManagesView() throws Exception {
+        mockMvc.perform(put("/views/brands").contentType(MediaType.APPLICATION_JSON).content("[\"Acme\", \"Globex\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.keywords[0]").value("acme"));
+        mockMvc.perform(put("/views/empty").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/views/brands?top=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.matchedTweets").isNumber());
+        mockMvc.perform(get("/views"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("brands"));
+        mockMvc.perform(delete("/views/brands"))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(get("/views/brands"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void diagnosticsRecording_Disabled_ReturnsNotFound() throws Exception {
+        mockMvc.perform(post("/diagnostics/recording?durationMs=1000"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/diagnostics/recording"))
+                .andExpect(status().isNotFound());
+    }
+
 }
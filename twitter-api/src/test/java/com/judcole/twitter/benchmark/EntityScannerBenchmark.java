@@ -0,0 +1,78 @@
+package com.judcole.twitter.benchmark;
+
+import com.judcole.twitter.api.TweetCollector;
+import com.judcole.twitter.shared.EntityScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the single pass entity scanner against the hashtag regular expression it replaced.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Djmh.args="EntityScannerBenchmark"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EntityScannerBenchmark {
+
+    // Number of prepared tweet texts
+    private static final int SAMPLE_SIZE = 1 << 10;
+
+    // Words that tweet texts are made from
+    private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "RT",
+            "#java", "#Spring2022", "@jack", "@TwitterDev", "$TWTR", "😀", "🇬🇧", "❤", "100%", "email@example.com",
+            "https://t.co/AbCdEf123", "https://www.example.com/path?q=#frag"};
+
+    // Tweet texts to scan
+    private final String[] texts = new String[SAMPLE_SIZE];
+
+    // Scanner under test
+    private final EntityScanner scanner = new EntityScanner();
+
+    // Index of the next text to scan
+    private int next;
+
+    /**
+     * Prepare the tweet texts of 10 to 30 words.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new Random(42);
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            var text = new StringBuilder();
+            for (int w = 10 + random.nextInt(20); w > 0; w--) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            texts[i] = text.toString();
+        }
+    }
+
+    /**
+     * Find the hashtags in a tweet with the regular expression.
+     *
+     * @param blackhole the sink for the hashtags
+     */
+    @Benchmark
+    public void regexHashtags(Blackhole blackhole) {
+        var matcher = TweetCollector.hashtagRegex.matcher(texts[next++ & (SAMPLE_SIZE - 1)]);
+        while (matcher.find()) {
+            blackhole.consume(matcher.group());
+        }
+    }
+
+    /**
+     * Find all the entities in a tweet with the scanner.
+     *
+     * @param blackhole the sink for the entities
+     */
+    @Benchmark
+    public void scanEntities(Blackhole blackhole) {
+        scanner.scan(texts[next++ & (SAMPLE_SIZE - 1)], (type, entity) -> blackhole.consume(entity));
+    }
+}
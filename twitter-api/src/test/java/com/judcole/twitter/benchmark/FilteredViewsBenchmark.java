@@ -0,0 +1,104 @@
+package com.judcole.twitter.benchmark;
+
+import com.judcole.twitter.shared.FilteredViews;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark of matching the tweets against the keywords of the filtered views as the number of keywords grows,
+ * compared with one regular expression for each view.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Djmh.args="FilteredViewsBenchmark"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FilteredViewsBenchmark {
+
+    // Number of prepared tweet texts
+    private static final int SAMPLE_SIZE = 1 << 10;
+
+    // Number of keywords in each view
+    private static final int KEYWORDS_PER_VIEW = 50;
+
+    // Words that tweet texts are made from
+    private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "RT",
+            "#java", "@jack", "😀", "love", "my", "new", "phone", "https://t.co/AbCdEf123", "brand7", "Brand42"};
+
+    // Total number of keywords over all the views
+    @Param({"50", "500", "5000"})
+    public int keywordCount;
+
+    // Tweet texts to scan
+    private final String[] texts = new String[SAMPLE_SIZE];
+
+    // Hashtags of each tweet
+    private final List<String> hashtags = List.of("java");
+
+    // Views under test
+    private FilteredViews views;
+
+    // Regular expression for each view
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    // Index of the next text to scan
+    private int next;
+
+    /**
+     * Prepare the views and the tweet texts of 10 to 30 words.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        views = new FilteredViews(keywordCount, keywordCount, 100);
+        for (int v = 0; v < keywordCount / KEYWORDS_PER_VIEW; v++) {
+            var keywords = new ArrayList<String>();
+            for (int k = 0; k < KEYWORDS_PER_VIEW; k++) {
+                keywords.add("brand" + (v * KEYWORDS_PER_VIEW + k));
+            }
+            views.put("view" + v, keywords);
+            patterns.add(Pattern.compile("\\b(?:" + String.join("|", keywords) + ")\\b", Pattern.CASE_INSENSITIVE));
+        }
+
+        var random = new Random(42);
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            var text = new StringBuilder();
+            for (int w = 10 + random.nextInt(20); w > 0; w--) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            texts[i] = text.toString();
+        }
+    }
+
+    /**
+     * Match a tweet against all the views with the keyword automaton.
+     */
+    @Benchmark
+    public void matchAutomaton() {
+        views.process(texts[next++ & (SAMPLE_SIZE - 1)], hashtags);
+    }
+
+    /**
+     * Match a tweet against each view with its regular expression.
+     *
+     * @return the number of views matched
+     */
+    @Benchmark
+    public int matchRegexPerView() {
+        var text = texts[next++ & (SAMPLE_SIZE - 1)];
+        var matched = 0;
+        for (var pattern : patterns) {
+            if (pattern.matcher(text).find()) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,127 @@
+package com.judcole.twitter.benchmark;
+
+import com.judcole.twitter.shared.HashtagDictionary;
+import com.judcole.twitter.shared.IHashtagDictionary;
+import com.judcole.twitter.shared.OffHeapHashtagDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the memory per entry and lookup cost of the hashtag dictionaries.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Djmh.args="HashtagDictionaryBenchmark -jvmArgs -Xmx24g"}
+ * (the 50M heap dictionary needs a large heap).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HashtagDictionaryBenchmark {
+
+    // Number of prepared hashtags to look up (so the benchmark does not allocate keys)
+    private static final int SAMPLE_SIZE = 1 << 16;
+
+    // Number of distinct hashtags in the dictionary
+    @Param({"1000000", "10000000", "50000000"})
+    public int distinctHashtags;
+
+    // Type of dictionary
+    @Param({"heap", "offheap"})
+    public String type;
+
+    // The dictionary under test
+    private IHashtagDictionary dictionary;
+
+    // Hashtags that are in the dictionary
+    private final String[] existing = new String[SAMPLE_SIZE];
+
+    // Hashtags that are not in the dictionary
+    private final String[] missing = new String[SAMPLE_SIZE];
+
+    // Index of the next hashtag to look up
+    private int next;
+
+    /**
+     * Fill the dictionary and report its memory per entry.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        var usedBefore = usedHeap();
+        dictionary = type.equals("offheap") ? new OffHeapHashtagDictionary() : new HashtagDictionary();
+
+        // Add 10 character hashtags
+        for (int i = 0; i < distinctHashtags; i++) {
+            dictionary.increment(hashtag(i));
+        }
+
+        var heapBytes = usedHeap() - usedBefore;
+        var offHeapBytes = type.equals("offheap") ? dictionary.getMemoryUsage() : 0;
+        System.out.printf("%n%s dictionary with %,d hashtags: %.1f heap bytes and %.1f off-heap bytes per entry%n",
+                type, distinctHashtags, (double) heapBytes / distinctHashtags, (double) offHeapBytes / distinctHashtags);
+
+        // Prepare the hashtags to look up
+        var random = new Random(42);
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            existing[i] = hashtag(random.nextInt(distinctHashtags));
+            missing[i] = hashtag(distinctHashtags + random.nextInt(distinctHashtags));
+        }
+    }
+
+    /**
+     * Look up a hashtag that is in the dictionary.
+     *
+     * @return the count
+     */
+    @Benchmark
+    public long getCountExisting() {
+        return dictionary.getCount(existing[next++ & (SAMPLE_SIZE - 1)]);
+    }
+
+    /**
+     * Look up a hashtag that is not in the dictionary.
+     *
+     * @return the count
+     */
+    @Benchmark
+    public long getCountMissing() {
+        return dictionary.getCount(missing[next++ & (SAMPLE_SIZE - 1)]);
+    }
+
+    /**
+     * Increment a hashtag that is in the dictionary.
+     *
+     * @return the new count
+     */
+    @Benchmark
+    public long incrementExisting() {
+        return dictionary.increment(existing[next++ & (SAMPLE_SIZE - 1)]);
+    }
+
+    /**
+     * Generate the 10 character hashtag for a number.
+     *
+     * @param number the number
+     * @return the hashtag
+     */
+    private static String hashtag(int number) {
+        var digits = Integer.toString(number, 36);
+        return "tag" + "0000000".substring(digits.length()) + digits;
+    }
+
+    /**
+     * Get the heap in use after a garbage collection.
+     *
+     * @return the number of bytes
+     */
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
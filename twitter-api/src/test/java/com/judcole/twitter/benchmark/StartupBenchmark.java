@@ -0,0 +1,125 @@
+package com.judcole.twitter.benchmark;
+
+import com.judcole.twitter.emulator.TwitterStreamEmulator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the time from launching the application to counting its first tweet from a local stream, with the
+ * default settings against the fast-start profile with and without its class data sharing archive.
+ * <p>
+ * Build the fast-start layout first and then run with
+ * {@code mvn -P fast-start package -DskipTests && mvn -P benchmark test -Djmh.args="StartupBenchmark"}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class StartupBenchmark {
+
+    // Log message written when the first tweet has been counted
+    private static final String FIRST_TWEET_MESSAGE = "Counted the first tweet";
+
+    // Application jar built by the fast-start profile
+    private static final Path APPLICATION_JAR = Path.of("target", "twitter-api.jar");
+
+    // Class data sharing archive built by the fast-start profile
+    private static final Path CLASS_DATA_ARCHIVE = Path.of("target", "twitter-api.jsa");
+
+    /**
+     * Startup settings: the defaults, the fast-start profile or the fast-start profile with its archive.
+     */
+    @Param({"default", "fast-start", "fast-start-cds"})
+    public String settings;
+
+    // Local stream sending tweets to the application
+    private TwitterStreamEmulator emulator;
+
+    // Running application
+    private Process application;
+
+    /**
+     * Check that the fast-start layout has been built and start the local stream.
+     *
+     * @throws IOException if the local stream cannot be started
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (!Files.exists(APPLICATION_JAR) || !Files.exists(CLASS_DATA_ARCHIVE)) {
+            throw new IllegalStateException("Build the fast-start layout first with mvn -P fast-start package");
+        }
+
+        // Send a tweet every few milliseconds to whichever launch is connected
+        emulator = new TwitterStreamEmulator().withRate(100).withKeepAlive(1000);
+        emulator.send(Long.MAX_VALUE / 2);
+    }
+
+    /**
+     * Stop the local stream.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        emulator.close();
+    }
+
+    /**
+     * Stop the application after each launch.
+     *
+     * @throws InterruptedException if interrupted while waiting for it to stop
+     */
+    @TearDown(Level.Invocation)
+    public void stopApplication() throws InterruptedException {
+        if (application != null) {
+            application.destroyForcibly().waitFor();
+            application = null;
+        }
+    }
+
+    /**
+     * Launch the application and wait until it has counted its first tweet.
+     *
+     * @return the log message with the time the application reported between the JVM starting and counting the first tweet
+     * @throws IOException if the application cannot be launched or exits before counting a tweet
+     */
+    @Benchmark
+    public String launchToFirstTweet() throws IOException {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (settings.endsWith("-cds")) {
+            command.add("-XX:SharedArchiveFile=" + CLASS_DATA_ARCHIVE);
+        }
+        if (settings.startsWith("fast-start")) {
+            command.add("-Dspring.profiles.active=fast-start");
+        }
+        command.add("-jar");
+        command.add(APPLICATION_JAR.toString());
+        command.add("--server.port=0");
+        command.add("--twitter.grpc.port=0");
+        command.add("--twitter.stream.standby=false");
+        command.add("--twitter.stream.url=" + emulator.getUri());
+
+        var builder = new ProcessBuilder(command).redirectErrorStream(true);
+        builder.environment().put("STREAM_BEARER_TOKEN", "benchmark");
+        application = builder.start();
+
+        // Read the log until the first tweet has been counted
+        var reader = new BufferedReader(new InputStreamReader(application.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.contains(FIRST_TWEET_MESSAGE)) {
+                return line;
+            }
+        }
+        throw new IOException("The application exited before counting a tweet");
+    }
+}
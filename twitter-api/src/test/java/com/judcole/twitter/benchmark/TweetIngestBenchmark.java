@@ -0,0 +1,169 @@
+package com.judcole.twitter.benchmark;
+
+import com.judcole.twitter.shared.EntityType;
+import com.judcole.twitter.shared.ITweetProcessor;
+import com.judcole.twitter.shared.ParsedTweet;
+import com.judcole.twitter.shared.PooledLineReader;
+import com.judcole.twitter.shared.TweetBlock;
+import com.judcole.twitter.shared.TweetBlockPool;
+import com.judcole.twitter.shared.TweetProcessorPipeline;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of reading, decoding and scanning tweets from the stream with a new block per line against the pooled
+ * blocks and parse buffers.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Djmh.args="TweetIngestBenchmark -prof gc"} to compare the bytes allocated
+ * per tweet ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TweetIngestBenchmark {
+
+    // Number of prepared tweet lines
+    private static final int SAMPLE_SIZE = 1 << 10;
+
+    // Words that tweet texts are made from
+    private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "RT",
+            "#java", "#spring2022", "@jack", "@twitterdev", "$TWTR", "😀", "❤", "100%", "caf\\u00e9", "\\\"quoted\\\"",
+            "https://t.co/AbCdEf123", "https://www.example.com/path?q=#frag"};
+
+    // Stage that sums the entity lengths so the scan is not optimized away
+    private final ChecksumProcessor checksum = new ChecksumProcessor();
+
+    // Pipeline for the blocks
+    private final TweetProcessorPipeline pipeline = new TweetProcessorPipeline(List.of(checksum));
+
+    // Reader for the stream with a new block per line
+    private BufferedReader lineReader;
+
+    // Reader for the stream with pooled blocks
+    private PooledLineReader pooledReader;
+
+    /**
+     * Prepare a stream of tweet lines of 10 to 30 words that repeats forever.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new Random(42);
+        var stream = new StringBuilder();
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            stream.append("{\"data\":{\"edit_history_tweet_ids\":[\"").append(1580000000000000000L + i)
+                    .append("\"],\"id\":\"").append(1580000000000000000L + i).append("\",\"text\":\"");
+            for (int w = 10 + random.nextInt(20); w > 0; w--) {
+                stream.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            stream.append("\"}}\r\n");
+        }
+        var bytes = stream.toString().getBytes(StandardCharsets.UTF_8);
+
+        lineReader = new BufferedReader(new InputStreamReader(new RepeatingInputStream(bytes), StandardCharsets.UTF_8));
+        pooledReader = new PooledLineReader(new RepeatingInputStream(bytes), new TweetBlockPool(16));
+    }
+
+    /**
+     * Read, decode and scan a tweet with a new block per line.
+     *
+     * @return the checksum of the entities
+     * @throws IOException if the stream cannot be read
+     */
+    @Benchmark
+    public long lineBlocks() throws IOException {
+        pipeline.process(pipeline.decode(new TweetBlock(lineReader.readLine())));
+        return checksum.total;
+    }
+
+    /**
+     * Read, decode and scan a tweet with the pooled blocks and parse buffers.
+     *
+     * @return the checksum of the entities
+     * @throws IOException if the stream cannot be read
+     */
+    @Benchmark
+    public long pooledBlocks() throws IOException {
+        var block = pooledReader.readLine();
+        try {
+            pipeline.process(pipeline.decode(block));
+        } finally {
+            block.release();
+        }
+        return checksum.total;
+    }
+
+    /**
+     * The class for a processor stage that sums the lengths of all the entities.
+     */
+    private static class ChecksumProcessor implements ITweetProcessor {
+        // Sum of the entity lengths
+        private long total;
+
+        @Override
+        public String getName() {
+            return "checksum";
+        }
+
+        @Override
+        public Set<EntityType> getEntityTypes() {
+            return Set.of(EntityType.values());
+        }
+
+        @Override
+        public void process(ParsedTweet tweet) {
+            for (var type : EntityType.values()) {
+                var entities = tweet.getEntities(type);
+                for (int i = 0; i < entities.size(); i++) {
+                    total += entities.get(i).length();
+                }
+            }
+        }
+    }
+
+    /**
+     * The class for an input stream that repeats the same bytes forever.
+     */
+    private static class RepeatingInputStream extends InputStream {
+        // Bytes to repeat
+        private final byte[] bytes;
+
+        // Index of the next byte to return
+        private int position;
+
+        /**
+         * Instantiates a new repeating input stream.
+         *
+         * @param bytes the bytes to repeat
+         */
+        private RepeatingInputStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            var value = bytes[position++] & 0xFF;
+            position %= bytes.length;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            var count = Math.min(length, bytes.length - position);
+            System.arraycopy(bytes, position, buffer, offset, count);
+            position = (position + count) % bytes.length;
+            return count;
+        }
+    }
+}
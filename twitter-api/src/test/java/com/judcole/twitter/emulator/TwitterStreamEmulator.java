@@ -0,0 +1,376 @@
+package com.judcole.twitter.emulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The class for an embedded server emulating the Twitter sampled stream API for offline end-to-end tests.
+ * <p>
+ * Each connection streams newline-delimited tweet JSON with blank keep alive lines while idle. Tweets are only sent
+ * once they have been queued with {@link #send(long)}, so a test knows exactly how many to expect, and each tweet is
+ * sent once across all the connections. The rate, the size of the chunks the stream is written in and the stalls and
+ * disconnects injected into each connection can be changed at any time. Tweets being written when a client drops its
+ * connection are counted as lost rather than sent.
+ */
+@Slf4j
+public class TwitterStreamEmulator implements AutoCloseable {
+
+    /**
+     * The path of the emulated stream.
+     */
+    public static final String STREAM_PATH = "/2/tweets/sample/stream";
+
+    /**
+     * The number of hashtags in each emulated tweet.
+     */
+    public static final int HASHTAGS_PER_TWEET = 2;
+
+    // Number of recent tweets whose send times are kept
+    private static final int SEND_TIMES_SIZE = 1 << 20;
+
+    // Line sent as a keep alive
+    private static final byte[] KEEP_ALIVE = "\r\n".getBytes(StandardCharsets.UTF_8);
+
+    // HTTP server for the stream
+    private final HttpServer server;
+
+    // Threads streaming to the connections
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    // Number of tweets queued but not yet sent
+    private final AtomicLong pendingTweets = new AtomicLong();
+
+    // Number of tweets numbered for sending
+    private final AtomicLong numberedTweets = new AtomicLong();
+
+    // Number of tweets sent
+    private final AtomicLong sentTweets = new AtomicLong();
+
+    // Number of tweets lost because the client dropped the connection while they were being written
+    private final AtomicLong lostTweets = new AtomicLong();
+
+    // Number of connections accepted
+    private final AtomicInteger connections = new AtomicInteger();
+
+    // Time each recent tweet was sent in nanoseconds (by tweet number modulo the size)
+    private final AtomicLongArray sendTimes = new AtomicLongArray(SEND_TIMES_SIZE);
+
+    // Tweets sent per second on each connection (0 for as fast as possible)
+    private volatile int tweetsPerSecond;
+
+    // Maximum number of bytes in each write of the stream (0 for a write for each batch of lines)
+    private volatile int chunkSize;
+
+    // Time without a tweet before a keep alive line is sent
+    private volatile long keepAliveMillis = 20000;
+
+    // Number of tweets after which each connection stalls (0 to never stall)
+    private volatile long stallAfterTweets;
+
+    // Length of each stall before the connection is dropped
+    private volatile long stallMillis;
+
+    // Number of tweets after which each connection is dropped (0 to never drop)
+    private volatile long disconnectAfterTweets;
+
+    // True once closed
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a new emulator listening on a free local port.
+     *
+     * @throws IOException the IO exception if the server cannot be started
+     */
+    public TwitterStreamEmulator() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext(STREAM_PATH, this::Stream);
+        server.start();
+    }
+
+    /**
+     * Get the URI of the emulated stream.
+     *
+     * @return the URI
+     */
+    public URI getUri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + STREAM_PATH);
+    }
+
+    /**
+     * Set the number of tweets sent per second on each connection.
+     *
+     * @param tweetsPerSecond the rate (0 for as fast as possible)
+     * @return the emulator
+     */
+    public TwitterStreamEmulator withRate(int tweetsPerSecond) {
+        this.tweetsPerSecond = tweetsPerSecond;
+        return this;
+    }
+
+    /**
+     * Set the maximum size of each write of the stream (splitting lines across writes if smaller than a line).
+     *
+     * @param chunkSize the maximum number of bytes (0 for a write for each batch of lines)
+     * @return the emulator
+     */
+    public TwitterStreamEmulator withChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Set the time without a tweet before a keep alive line is sent.
+     *
+     * @param keepAliveMillis the time in milliseconds
+     * @return the emulator
+     */
+    public TwitterStreamEmulator withKeepAlive(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    /**
+     * Make each connection stall (sending nothing at all) after a number of tweets and then drop it.
+     *
+     * @param afterTweets the number of tweets sent on a connection before it stalls (0 to never stall)
+     * @param stallMillis the length of each stall in milliseconds
+     * @return the emulator
+     */
+    public TwitterStreamEmulator withStalls(long afterTweets, long stallMillis) {
+        this.stallAfterTweets = afterTweets;
+        this.stallMillis = stallMillis;
+        return this;
+    }
+
+    /**
+     * Make each connection drop after a number of tweets.
+     *
+     * @param afterTweets the number of tweets sent on a connection before it is dropped (0 to never drop)
+     * @return the emulator
+     */
+    public TwitterStreamEmulator withDisconnects(long afterTweets) {
+        this.disconnectAfterTweets = afterTweets;
+        return this;
+    }
+
+    /**
+     * Queue tweets to be sent on the open connections.
+     *
+     * @param tweetCount the number of tweets
+     */
+    public void send(long tweetCount) {
+        pendingTweets.addAndGet(tweetCount);
+    }
+
+    /**
+     * Get the number of tweets queued but not yet sent.
+     *
+     * @return the number of tweets
+     */
+    public long getPendingTweets() {
+        return pendingTweets.get();
+    }
+
+    /**
+     * Get the number of tweets sent.
+     *
+     * @return the number of tweets
+     */
+    public long getSentTweets() {
+        return sentTweets.get();
+    }
+
+    /**
+     * Get the number of tweets lost because the client dropped the connection while they were being written.
+     *
+     * @return the number of tweets
+     */
+    public long getLostTweets() {
+        return lostTweets.get();
+    }
+
+    /**
+     * Check whether there are tweets queued or being written.
+     *
+     * @return true if sending
+     */
+    public boolean isSending() {
+        return (pendingTweets.get() > 0) || (numberedTweets.get() != sentTweets.get() + lostTweets.get());
+    }
+
+    /**
+     * Get the number of connections accepted.
+     *
+     * @return the number of connections
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Get the time a recent tweet was sent.
+     *
+     * @param tweetNumber the number of the tweet (from 1 for the first tweet sent)
+     * @return the time in nanoseconds (comparable with {@link System#nanoTime()})
+     */
+    public long getSendTimeNanos(long tweetNumber) {
+        return sendTimes.get((int) ((tweetNumber - 1) % SEND_TIMES_SIZE));
+    }
+
+    /**
+     * Stop the server and drop all the connections.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Stream tweets to a connection until it is dropped.
+     *
+     * @param exchange the HTTP exchange for the connection
+     */
+    private void Stream(HttpExchange exchange) {
+        var connection = connections.incrementAndGet();
+        var batch = new ByteArrayOutputStream();
+        long connectionTweets = 0;
+        long pacedTweets = 0;
+        var paceStartNanos = System.nanoTime();
+        var lastWriteNanos = paceStartNanos;
+
+        try (exchange; var body = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+
+            while (!closed) {
+                // Work out how many tweets are due on this connection (pacing from when tweets were first queued and
+                // only up to the next stall or disconnect)
+                var now = System.nanoTime();
+                if (pendingTweets.get() == 0) {
+                    paceStartNanos = now;
+                    pacedTweets = 0;
+                }
+                var rate = tweetsPerSecond;
+                var due = (rate > 0) ? ((now - paceStartNanos) * rate / 1_000_000_000L) - pacedTweets : 1000;
+                var limit = ConnectionLimit();
+                if (limit > 0) {
+                    due = Math.min(due, limit - connectionTweets);
+                }
+                var count = TakeTweets(due);
+
+                if (count > 0) {
+                    // Record when the batch of tweets was sent and write it
+                    batch.reset();
+                    var first = numberedTweets.getAndAdd(count) + 1;
+                    for (long number = first; number < first + count; number++) {
+                        batch.writeBytes(TweetLine(number));
+                        sendTimes.set((int) ((number - 1) % SEND_TIMES_SIZE), now);
+                    }
+                    try {
+                        Write(body, batch.toByteArray());
+                    } catch (IOException ex) {
+                        lostTweets.addAndGet(count);
+                        throw ex;
+                    }
+                    sentTweets.addAndGet(count);
+                    connectionTweets += count;
+                    pacedTweets += count;
+                    lastWriteNanos = System.nanoTime();
+                } else if (now - lastWriteNanos >= keepAliveMillis * 1_000_000L) {
+                    Write(body, KEEP_ALIVE);
+                    lastWriteNanos = now;
+                }
+
+                if ((stallAfterTweets > 0) && (connectionTweets >= stallAfterTweets)) {
+                    // Stall and then drop the connection
+                    log.info("Emulated stream connection {} stalling after {} tweets", connection, connectionTweets);
+                    Thread.sleep(stallMillis);
+                    return;
+                }
+                if ((disconnectAfterTweets > 0) && (connectionTweets >= disconnectAfterTweets)) {
+                    log.info("Emulated stream connection {} dropping after {} tweets", connection, connectionTweets);
+                    return;
+                }
+                if (count == 0) {
+                    Thread.sleep(1);
+                }
+            }
+        } catch (IOException | InterruptedException ex) {
+            // The client disconnected or the emulator was closed
+        }
+    }
+
+    /**
+     * Get the number of tweets a connection can send before it stalls or is dropped.
+     *
+     * @return the total tweets allowed on a connection (0 for no limit)
+     */
+    private long ConnectionLimit() {
+        var stallAfter = stallAfterTweets;
+        var disconnectAfter = disconnectAfterTweets;
+        if (stallAfter <= 0) {
+            return Math.max(0, disconnectAfter);
+        }
+        return (disconnectAfter <= 0) ? stallAfter : Math.min(stallAfter, disconnectAfter);
+    }
+
+    /**
+     * Take up to a number of tweets from the queued tweets.
+     *
+     * @param maxTweets the maximum number of tweets to take
+     * @return the number of tweets taken
+     */
+    private long TakeTweets(long maxTweets) {
+        while (maxTweets > 0) {
+            var pending = pendingTweets.get();
+            var count = Math.min(pending, maxTweets);
+            if ((count == 0) || pendingTweets.compareAndSet(pending, pending - count)) {
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Write bytes to the stream in chunks of the configured size.
+     *
+     * @param body  the stream
+     * @param bytes the bytes
+     * @throws IOException the IO exception if the client has disconnected
+     */
+    private void Write(OutputStream body, byte[] bytes) throws IOException {
+        var size = (chunkSize > 0) ? chunkSize : bytes.length;
+        for (int offset = 0; offset < bytes.length; offset += size) {
+            body.write(bytes, offset, Math.min(size, bytes.length - offset));
+            body.flush();
+        }
+    }
+
+    /**
+     * Create the JSON line for a tweet.
+     *
+     * @param number the number of the tweet
+     * @return the line
+     */
+    private static byte[] TweetLine(long number) {
+        return String.format("{\"data\":{\"edit_history_tweet_ids\":[\"%d\"],\"id\":\"%d\","
+                        + "\"text\":\"Emulated tweet %d for @tester #emulator #topic%d https://t.co/a%d\"}}\r\n",
+                number, number, number, number % 100, number).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+package com.judcole.twitter.shared;
+
+import com.judcole.twitter.api.TweetCollector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the EntityScanner class.
+ */
+class EntityScannerTests {
+
+    /**
+     * Test that all the types of entity are found in order in one pass.
+     */
+    @Test
+    void scan_MixedText_ReturnsAllEntities() {
+        var scanner = new EntityScanner();
+        var entities = Scan(scanner, "RT @Jack: #Java and #java2 beat $TWTR 😀 today 🇬🇧 see https://www.Example.com/a#b?c=@d #end");
+
+        assertThat(entities).containsExactly("MENTION:Jack", "HASHTAG:Java", "HASHTAG:java2", "CASHTAG:TWTR",
+                "EMOJI:😀", "EMOJI:🇬🇧", "DOMAIN:example.com", "HASHTAG:end");
+        assertThat(scanner.getCount(EntityType.HASHTAG)).isEqualTo(3);
+        assertThat(scanner.getCount(EntityType.MENTION)).isEqualTo(1);
+        assertThat(scanner.getCount(EntityType.DOMAIN)).isEqualTo(1);
+        assertThat(scanner.getCount(EntityType.EMOJI)).isEqualTo(2);
+    }
+
+    /**
+     * Test the edge cases of each type of entity.
+     *
+     * @param text     the text to scan
+     * @param expected the expected entities separated by spaces (or empty)
+     */
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "#123 #_1a a#b #a#b|HASHTAG:_1a HASHTAG:a",
+            "me@example.com @ @a_very_long_user_name @ok|MENTION:ok",
+            "$100 $ABCDEFG $abc1 $Abc.|CASHTAG:Abc",
+            "http:// https://localhost/x HTTP://T.CO/abc|DOMAIN:t.co",
+            "👍🏽 ❤ 🇺 x|EMOJI:👍 EMOJI:❤",
+            "no entities here|"})
+    void scan_EdgeCases_ReturnsEntities(String text, String expected) {
+        var entities = Scan(new EntityScanner(), text);
+
+        assertThat(entities).containsExactlyElementsOf((expected == null) ? List.of() : List.of(expected.split(" ")));
+    }
+
+    /**
+     * Test that the hashtags found match the regular expression on random text without links.
+     */
+    @Test
+    void scan_RandomText_MatchesHashtagRegex() {
+        final String ALPHABET = "aZ9_#@$ .,!-\n";
+        var scanner = new EntityScanner();
+        var random = new Random(42);
+
+        for (int t = 0; t < 10000; t++) {
+            var text = new StringBuilder();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+
+            var expected = new ArrayList<String>();
+            var matcher = TweetCollector.hashtagRegex.matcher(text);
+            while (matcher.find()) {
+                expected.add("HASHTAG:" + matcher.group().substring(1));
+            }
+
+            var hashtags = Scan(scanner, text).stream().filter(entity -> entity.startsWith("HASHTAG:")).toList();
+            assertThat(hashtags).as(text.toString()).isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Scan a text and return the entities as type:text strings.
+     *
+     * @param scanner the scanner
+     * @param text    the text
+     * @return the entities
+     */
+    private static List<String> Scan(EntityScanner scanner, CharSequence text) {
+        var entities = new ArrayList<String>();
+        scanner.scan(text, (type, entity) -> entities.add(type + ":" + entity));
+        return entities;
+    }
+}
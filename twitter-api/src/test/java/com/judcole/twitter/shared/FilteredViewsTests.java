@@ -0,0 +1,109 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the FilteredViews class.
+ */
+class FilteredViewsTests {
+
+    /**
+     * Test that each view counts a tweet once however many of its keywords it mentions, with its hashtags.
+     */
+    @Test
+    void process_SharedKeywords_CountsEachViewOnce() {
+        var views = new FilteredViews(10, 100, 5);
+        views.put("fruit", List.of("Apple", "banana", "apple"));
+        views.put("tech", List.of("apple", "java"));
+
+        views.process("Apple pie and banana bread", List.of("Baking", "food"));
+        views.process("Java on the new Apple laptop", List.of("java"));
+        views.process("pineapple and javascript", List.of("food"));
+
+        var fruit = views.getView("fruit", 10);
+        assertThat(fruit.keywords).containsExactly("apple", "banana");
+        assertThat(fruit.matchedTweets).isEqualTo(2);
+        assertThat(fruit.topHashtags).containsExactlyInAnyOrder("Baking", "food", "java");
+        assertThat(fruit.topHashtagCounts).containsExactly(1, 1, 1);
+
+        var tech = views.getView("tech", 1);
+        assertThat(tech.matchedTweets).isEqualTo(2);
+        assertThat(tech.topHashtags).hasSize(1);
+        assertThat(views.getKeywordCount()).isEqualTo(3);
+        assertThat(views.getViews(0)).extracting(view -> view.name).containsExactly("fruit", "tech");
+    }
+
+    /**
+     * Test that replacing the keywords of a view starts its counts again and that removed views stop counting.
+     */
+    @Test
+    void putAndRemove_ChangedViews_UpdatesMatching() {
+        var views = new FilteredViews(10, 100, 5);
+        views.put("brand", List.of("acme"));
+        views.process("ACME rockets", List.of());
+
+        // The same keywords keep the counts
+        assertThat(views.put("brand", List.of("Acme")).matchedTweets).isEqualTo(1);
+
+        views.put("brand", List.of("globex"));
+        views.process("ACME rockets", List.of());
+        views.process("Globex corp", List.of());
+        assertThat(views.getView("brand", 0).matchedTweets).isEqualTo(1);
+
+        assertThat(views.remove("brand")).isTrue();
+        assertThat(views.remove("brand")).isFalse();
+        assertThat(views.getView("brand", 0)).isNull();
+        views.process("Globex corp", List.of());
+        assertThat(views.getKeywordCount()).isZero();
+    }
+
+    /**
+     * Test that thousands of keywords over many views are matched.
+     */
+    @Test
+    void process_ThousandsOfKeywords_MatchesEachView() {
+        var views = new FilteredViews(100, 10000, 5);
+        for (int v = 0; v < 50; v++) {
+            var keywords = new ArrayList<String>();
+            for (int k = 0; k < 100; k++) {
+                keywords.add("brand" + v + "x" + k);
+            }
+            views.put("view" + v, keywords);
+        }
+
+        views.process("Loving my new BRAND7x42 and brand7x43, not brand7x4200", List.of("gadgets"));
+        views.process("brand49x99!", List.of());
+
+        assertThat(views.getKeywordCount()).isEqualTo(5000);
+        assertThat(views.getView("view7", 1).matchedTweets).isEqualTo(1);
+        assertThat(views.getView("view7", 1).topHashtags).containsExactly("gadgets");
+        assertThat(views.getView("view49", 0).matchedTweets).isEqualTo(1);
+        assertThat(views.getView("view8", 0).matchedTweets).isZero();
+    }
+
+    /**
+     * Test that invalid views and too many views or keywords are rejected without changing the views.
+     */
+    @Test
+    void put_InvalidView_Throws() {
+        var views = new FilteredViews(2, 3, 5);
+        views.put("one", List.of("a", "b"));
+
+        assertThatThrownBy(() -> views.put(" ", List.of("a"))).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> views.put("two", List.of())).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> views.put("two", List.of("c", " "))).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> views.put("two", List.of("c", "d"))).isInstanceOf(InvalidParameterException.class);
+        views.put("two", List.of("b", "c"));
+        assertThatThrownBy(() -> views.put("three", List.of("a"))).isInstanceOf(InvalidParameterException.class);
+
+        assertThat(views.getViews(0)).extracting(view -> view.name).containsExactly("one", "two");
+        assertThat(views.getKeywordCount()).isEqualTo(3);
+    }
+}
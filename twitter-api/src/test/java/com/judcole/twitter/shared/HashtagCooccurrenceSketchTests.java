@@ -0,0 +1,135 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the HashtagCooccurrenceSketch class.
+ */
+class HashtagCooccurrenceSketchTests {
+
+    /**
+     * Test that the pairs are counted exactly while they fit, ignoring case and repeats within a tweet.
+     */
+    @Test
+    void getPartners_BelowCapacity_ReturnsExactCounts() {
+        var sketch = new HashtagCooccurrenceSketch(100);
+        sketch.add(List.of("Java", "spring", "java"));
+        sketch.add(List.of("spring", "JAVA", "boot"));
+        sketch.add(List.of("java"));
+        sketch.add(List.of("boot", "Spring"));
+
+        CheckPartners(sketch.getPartners("java", 10), new String[]{"spring", "boot"}, new long[]{2, 1});
+        CheckPartners(sketch.getPartners("Spring", 10), new String[]{"boot", "java"}, new long[]{2, 2});
+        CheckPartners(sketch.getPartners("spring", 1), new String[]{"boot"}, new long[]{2});
+        assertThat(sketch.getPartners("kotlin", 10)).isEmpty();
+        assertThat(sketch.getSize()).isEqualTo(3);
+        assertThat(sketch.getTotalPairs()).isEqualTo(5);
+    }
+
+    /**
+     * Test that the frequent pairs keep their counts within the error bound while a large vocabulary of rare pairs
+     * churns through a small sketch.
+     */
+    @Test
+    void getPartners_ManyRarePairs_KeepsFrequentPairs() {
+        var sketch = new HashtagCooccurrenceSketch(200);
+        var random = new Random(42);
+        var trueCounts = new HashMap<String, Long>();
+        for (int i = 0; i < 50000; i++) {
+            var tweet = new ArrayList<String>();
+            if (i % 5 == 0) {
+                tweet.add("news");
+                tweet.add((i % 10 == 0) ? "breaking" : "world");
+            }
+            tweet.add("rare" + random.nextInt(100000));
+            tweet.add("rare" + random.nextInt(100000));
+            if (tweet.contains("news")) {
+                trueCounts.merge(tweet.get(1), 1L, Long::sum);
+            }
+            sketch.add(tweet);
+        }
+
+        // The error is at most the total pairs over the capacity
+        var maxError = sketch.getTotalPairs() / sketch.getCapacity();
+        var partners = sketch.getPartners("news", 2);
+        assertThat(partners).extracting(partner -> partner.hashtag).containsExactlyInAnyOrder("breaking", "world");
+        for (var partner : partners) {
+            var trueCount = trueCounts.get(partner.hashtag);
+            assertThat(partner.count).isBetween(trueCount, trueCount + maxError);
+            assertThat(partner.minCount).isBetween(trueCount - maxError, trueCount);
+        }
+        assertThat(sketch.getSize()).isEqualTo(200);
+    }
+
+    /**
+     * Test that pairs added by several threads to a striped sketch are all counted and found from either hashtag, while
+     * rare pairs churn through each stripe.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    void getPartners_ConcurrentStripedSketch_CountsEveryPair() throws InterruptedException {
+        final int THREADS = 4;
+        final int TWEETS = 20000;
+        var sketch = new HashtagCooccurrenceSketch(4096);
+
+        var threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            var random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < TWEETS; i++) {
+                    sketch.add(List.of("news", "tag" + (i % 4), "rare" + random.nextInt(1000000)));
+                    if (i % 1000 == 0) {
+                        sketch.getPartners("news", 4);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        // Each tweet has three pairs
+        assertThat(sketch.getTotalPairs()).isEqualTo(3L * THREADS * TWEETS);
+        var maxError = sketch.getTotalPairs() / sketch.getCapacity();
+        var partners = sketch.getPartners("NEWS", 4);
+        assertThat(partners).extracting(partner -> partner.hashtag).containsExactlyInAnyOrder("tag0", "tag1", "tag2", "tag3");
+        for (var partner : partners) {
+            assertThat(partner.minCount).isBetween((long) THREADS * TWEETS / 4 - 4 * maxError, (long) THREADS * TWEETS / 4);
+            assertThat(sketch.getPartners(partner.hashtag, 1)).extracting(other -> other.hashtag).containsExactly("news");
+        }
+        assertThat(sketch.getSize()).isEqualTo(4096);
+    }
+
+    /**
+     * Test that an invalid capacity is rejected.
+     */
+    @Test
+    void HashtagCooccurrenceSketch_ZeroCapacity_Throws() {
+        assertThatThrownBy(() -> new HashtagCooccurrenceSketch(0)).isInstanceOf(InvalidParameterException.class);
+    }
+
+    /**
+     * Check the partners returned for a hashtag.
+     *
+     * @param partners the partners
+     * @param hashtags the expected partner hashtags
+     * @param counts   the expected counts
+     */
+    private static void CheckPartners(List<HashtagPartner> partners, String[] hashtags, long[] counts) {
+        assertThat(partners).extracting(partner -> partner.hashtag).containsExactly(hashtags);
+        assertThat(partners).extracting(partner -> partner.count).containsExactly(Arrays.stream(counts).boxed().toArray(Long[]::new));
+        assertThat(partners).allMatch(partner -> partner.minCount == partner.count);
+    }
+}
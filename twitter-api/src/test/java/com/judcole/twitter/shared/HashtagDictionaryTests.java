@@ -0,0 +1,127 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Class for testing the hashtag dictionary classes.
+ */
+class HashtagDictionaryTests {
+
+    // Some test values
+    private final String HASHTAG1 = "abc";
+    private final String HASHTAG2 = "abc1";
+    private final String HASHTAG3 = "éte_日本_😀";
+
+    // Temporary directory for memory-mapped tables
+    @TempDir
+    Path mappedDirectory;
+
+    /**
+     * Test that incrementing hashtags returns the correct counts for each type of dictionary.
+     *
+     * @param type the type of dictionary
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "direct", "mapped"})
+    void increment_AddHashtags_ReturnsCorrectCounts(String type) {
+        var dictionary = CreateDictionary(type);
+
+        // Check the empty dictionary
+        assertThat(dictionary.getSize()).isZero();
+        assertThat(dictionary.getCount(HASHTAG1)).isZero();
+
+        // Add some hashtags and check the results
+        assertThat(dictionary.increment(HASHTAG1)).isEqualTo(1);
+        assertThat(dictionary.increment(HASHTAG2)).isEqualTo(1);
+        assertThat(dictionary.increment(HASHTAG1)).isEqualTo(2);
+        assertThat(dictionary.increment(HASHTAG3)).isEqualTo(1);
+        assertThat(dictionary.increment(HASHTAG3)).isEqualTo(2);
+        assertThat(dictionary.increment(HASHTAG3)).isEqualTo(3);
+
+        assertThat(dictionary.getCount(HASHTAG1)).isEqualTo(2);
+        assertThat(dictionary.getCount(HASHTAG2)).isEqualTo(1);
+        assertThat(dictionary.getCount(HASHTAG3)).isEqualTo(3);
+        assertThat(dictionary.getCount("missing")).isZero();
+        assertThat(dictionary.getSize()).isEqualTo(3);
+        assertThat(dictionary.getMemoryUsage()).isPositive();
+    }
+
+    /**
+     * Test that the off-heap dictionary matches a map as its segments grow.
+     *
+     * @param type the type of dictionary
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"direct", "mapped"})
+    void increment_GrowSegments_MatchesMap(String type) {
+        final int HASHTAG_COUNT = 200000;
+        var dictionary = CreateDictionary(type);
+        var expected = new HashMap<String, Long>();
+
+        // Add lots of hashtags with a spread of counts
+        for (int i = 0; i < HASHTAG_COUNT * 2; i++) {
+            var hashtag = "tag" + Integer.toString((i * 7919) % HASHTAG_COUNT, 36);
+            var count = expected.merge(hashtag, 1L, Long::sum);
+            assertThat(dictionary.increment(hashtag)).isEqualTo(count);
+        }
+
+        // Check that all the counts survived the growth
+        assertThat(dictionary.getSize()).isEqualTo(expected.size());
+        expected.forEach((hashtag, count) -> assertThat(dictionary.getCount(hashtag)).isEqualTo(count));
+    }
+
+    /**
+     * Test that the off-heap dictionary uses less memory per entry than the heap dictionary.
+     */
+    @Test
+    void getMemoryUsage_OffHeap_SmallerThanHeap() {
+        final int HASHTAG_COUNT = 100000;
+        var heap = CreateDictionary("heap");
+        var offHeap = CreateDictionary("direct");
+
+        for (int i = 0; i < HASHTAG_COUNT; i++) {
+            var hashtag = "hashtag" + i;
+            heap.increment(hashtag);
+            offHeap.increment(hashtag);
+        }
+
+        assertThat(offHeap.getMemoryUsage()).isLessThan(heap.getMemoryUsage());
+    }
+
+    /**
+     * Test that the dictionaries for the other entity types follow the off-heap setting, each in its own directory.
+     */
+    @Test
+    void createEntityDictionary_OffHeap_StoredOffHeap() {
+        var factory = new HashtagDictionaryFactory();
+
+        assertThat(factory.createEntityDictionary(EntityType.MENTION, false, null)).isInstanceOf(HashtagDictionary.class);
+        var mentions = factory.createEntityDictionary(EntityType.MENTION, true, mappedDirectory);
+        assertThat(mentions).isInstanceOf(OffHeapHashtagDictionary.class);
+        assertThat(mentions.increment("someone")).isEqualTo(1);
+        assertThat(Files.isDirectory(mappedDirectory.resolve("mention"))).isTrue();
+    }
+
+    /**
+     * Create a dictionary of a specified type.
+     *
+     * @param type the type of dictionary
+     * @return the dictionary
+     */
+    private IHashtagDictionary CreateDictionary(String type) {
+        return switch (type) {
+            case "direct" -> new OffHeapHashtagDictionary(4, null);
+            case "mapped" -> new OffHeapHashtagDictionary(4, mappedDirectory);
+            default -> new HashtagDictionary();
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the HashtagPrefixIndex class.
+ */
+class HashtagPrefixIndexTests {
+
+    /**
+     * Test that a prefix search returns only the matching hashtags in alphabetical order.
+     */
+    @Test
+    void findByPrefix_AddHashtags_ReturnsMatchesInOrder() {
+        var index = new HashtagPrefixIndex();
+        index.add("election2024");
+        index.add("elections");
+        index.add("elect");
+        index.add("electric");
+        index.add("elephant");
+        index.add("ele");
+        index.add("elections");
+
+        assertThat(index.getSize()).isEqualTo(6);
+        assertThat(index.findByPrefix("elec", 10)).containsExactly("elect", "election2024", "elections", "electric");
+        assertThat(index.findByPrefix("elect", 2)).containsExactly("elect", "election2024");
+        assertThat(index.findByPrefix("elections", 10)).containsExactly("elections");
+        assertThat(index.findByPrefix("elk", 10)).isEmpty();
+        assertThat(index.findByPrefix("", 3)).containsExactly("ele", "elect", "election2024");
+    }
+
+    /**
+     * Test that searches see a consistent sorted view while hashtags are being added.
+     */
+    @Test
+    void findByPrefix_ConcurrentAdds_ReturnsSortedMatches() throws InterruptedException {
+        final int HASHTAG_COUNT = 100000;
+        var index = new HashtagPrefixIndex();
+        var done = new AtomicBoolean();
+
+        // Add hashtags on a separate thread while searching
+        var writer = new Thread(() -> {
+            for (int i = 0; i < HASHTAG_COUNT; i++) {
+                index.add("tag" + i);
+            }
+            done.set(true);
+        });
+        writer.start();
+
+        while (!done.get()) {
+            var matches = index.findByPrefix("tag1", 50);
+            assertThat(matches).isSorted().allMatch(hashtag -> hashtag.startsWith("tag1"));
+        }
+        writer.join();
+
+        assertThat(index.getSize()).isEqualTo(HASHTAG_COUNT);
+        assertThat(index.findByPrefix("tag9999", 100)).containsExactly("tag9999", "tag99990", "tag99991", "tag99992",
+                "tag99993", "tag99994", "tag99995", "tag99996", "tag99997", "tag99998", "tag99999");
+    }
+}
@@ -0,0 +1,244 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.judcole.twitter.shared.HashtagRollups.DAY_MILLIS;
+import static com.judcole.twitter.shared.HashtagRollups.HOUR_MILLIS;
+import static com.judcole.twitter.shared.HashtagRollups.MINUTE_MILLIS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the HashtagRollups class.
+ */
+class HashtagRollupsTests {
+
+    // Start of the first day (midnight UTC)
+    private static final long START = 1_600_041_600_000L;
+
+    // Time to keep the hour files for
+    private static final long HOUR_RETENTION = 2 * DAY_MILLIS;
+
+    // Time to keep the day files for
+    private static final long DAY_RETENTION = 30 * DAY_MILLIS;
+
+    // Directory for the rollup files
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that the counts of the sealed hours and the current minutes are merged for a range.
+     */
+    @Test
+    void getTop_SealedAndCurrentHours_MergesCounts() throws IOException {
+        var rollups = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+        Record(rollups, "Alpha", 3, START + 10 * MINUTE_MILLIS);
+        Record(rollups, "beta", 5, START + 20 * MINUTE_MILLIS);
+        Record(rollups, "alpha", 4, START + HOUR_MILLIS + 5 * MINUTE_MILLIS);
+        Record(rollups, "gamma", 1, START + 2 * HOUR_MILLIS + 30 * MINUTE_MILLIS);
+
+        // Seal the first two hours and leave the third in memory
+        rollups.seal(START + 2 * HOUR_MILLIS + 40 * MINUTE_MILLIS);
+
+        assertThat(rollups.getHourFileCount()).isEqualTo(2);
+        assertThat(rollups.getMinuteBucketCount()).isEqualTo(1);
+        AssertTop(rollups.getTop(START, START + 3 * HOUR_MILLIS, 10), "alpha", 7L, "beta", 5L, "gamma", 1L);
+        AssertTop(rollups.getTop(START, START + 3 * HOUR_MILLIS, 1), "alpha", 7L);
+        AssertTop(rollups.getTop(START + HOUR_MILLIS, START + 2 * HOUR_MILLIS, 10), "alpha", 4L);
+        AssertTop(rollups.getTop(START + 2 * HOUR_MILLIS + 31 * MINUTE_MILLIS, START + 3 * HOUR_MILLIS, 10));
+        assertThat(rollups.getTop(START, START + HOUR_MILLIS, 0)).isEmpty();
+    }
+
+    /**
+     * Test that a random stream over several days gives the exact top hashtags for whole days and part days, after the
+     * hour files covered by the day files have been deleted.
+     */
+    @Test
+    void getTop_RandomDays_MatchesExactCounts() throws IOException {
+        var rollups = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+        var random = new Random(42);
+        var counts = new HashMap<Long, Map<String, Long>>();
+        for (long time = START; time < START + 5 * DAY_MILLIS; time += 7 * MINUTE_MILLIS) {
+            for (int i = 0; i < 5; i++) {
+                // Skew the hashtags so there is a clear top
+                var hashtag = "tag" + (int) Math.abs(random.nextGaussian() * 20) + (i == 0 ? "é" : "");
+                rollups.record(hashtag, time);
+                counts.computeIfAbsent(time - time % HOUR_MILLIS, hour -> new HashMap<>()).merge(hashtag, 1L, Long::sum);
+            }
+            rollups.seal(time);
+        }
+        rollups.seal(START + 5 * DAY_MILLIS + 2 * MINUTE_MILLIS);
+
+        assertThat(rollups.getDayFileCount()).isEqualTo(5);
+        assertThat(rollups.getHourFileCount()).isEqualTo(48);
+
+        // Whole days from the day files (before the hour files kept), part of a day from the hour files, and both
+        AssertExact(rollups, counts, START, START + 2 * DAY_MILLIS);
+        AssertExact(rollups, counts, START + 4 * DAY_MILLIS + 5 * HOUR_MILLIS, START + 4 * DAY_MILLIS + 9 * HOUR_MILLIS);
+        AssertExact(rollups, counts, START + DAY_MILLIS, START + 4 * DAY_MILLIS + 2 * HOUR_MILLIS);
+    }
+
+    /**
+     * Test that the files are used after a restart and that counts flushed early are merged with later ones.
+     */
+    @Test
+    void flush_Restart_KeepsAndMergesCounts() throws IOException {
+        var rollups = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+        Record(rollups, "alpha", 2, START + 10 * MINUTE_MILLIS);
+        rollups.flush();
+
+        var restarted = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+        Record(restarted, "alpha", 3, START + 50 * MINUTE_MILLIS);
+        Record(restarted, "beta", 1, START + 55 * MINUTE_MILLIS);
+        AssertTop(restarted.getTop(START, START + HOUR_MILLIS, 10), "alpha", 5L, "beta", 1L);
+
+        restarted.seal(START + HOUR_MILLIS + 2 * MINUTE_MILLIS);
+        assertThat(restarted.getHourFileCount()).isEqualTo(1);
+        assertThat(restarted.getMinuteBucketCount()).isZero();
+        AssertTop(restarted.getTop(START, START + HOUR_MILLIS, 10), "alpha", 5L, "beta", 1L);
+    }
+
+    /**
+     * Test that hashtags for an hour that has been sealed are dropped and counted as late.
+     */
+    @Test
+    void record_SealedHour_CountsAsLate() throws IOException {
+        var rollups = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+        rollups.seal(START + HOUR_MILLIS + 2 * MINUTE_MILLIS);
+        Record(rollups, "alpha", 2, START + 30 * MINUTE_MILLIS);
+        Record(rollups, "alpha", 1, START + HOUR_MILLIS + 3 * MINUTE_MILLIS);
+
+        assertThat(rollups.getLateHashtags()).isEqualTo(2);
+        AssertTop(rollups.getTop(START, START + 2 * HOUR_MILLIS, 10), "alpha", 1L);
+    }
+
+    /**
+     * Test that no count is lost when the buckets being recorded into are sealed at the same time.
+     */
+    @Test
+    void record_WhileSealing_KeepsEveryCount() throws Exception {
+        final int THREADS = 3;
+        final int RECORDS = 20000;
+        var rollups = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+
+        var threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> Record(rollups, "alpha", RECORDS, START + MINUTE_MILLIS));
+            threads[t].start();
+        }
+        var recording = true;
+        while (recording) {
+            rollups.flush();
+            recording = false;
+            for (var thread : threads) {
+                recording |= thread.isAlive();
+            }
+        }
+        rollups.flush();
+
+        assertThat(rollups.getLateHashtags()).isZero();
+        assertThat(rollups.getMinuteBucketCount()).isZero();
+        AssertTop(rollups.getTop(START, START + HOUR_MILLIS, 10), "alpha", (long) THREADS * RECORDS);
+    }
+
+    /**
+     * Test that expired files are deleted and that files that are not rollups are left alone.
+     */
+    @Test
+    void seal_Expired_DeletesFiles() throws IOException {
+        Files.writeString(directory.resolve("notes.txt"), "keep");
+        Files.writeString(directory.resolve("hour-20200914T00.rollup.tmp"), "partial");
+        var rollups = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+        Record(rollups, "alpha", 1, START);
+        rollups.seal(START + DAY_MILLIS + 2 * MINUTE_MILLIS);
+        assertThat(rollups.getDayFileCount()).isEqualTo(1);
+
+        rollups.seal(START + DAY_MILLIS + DAY_RETENTION + MINUTE_MILLIS);
+
+        assertThat(rollups.getDayFileCount()).isZero();
+        assertThat(rollups.getHourFileCount()).isZero();
+        try (var files = Files.list(directory)) {
+            assertThat(files.map(path -> path.getFileName().toString()).toList()).containsExactly("notes.txt");
+        }
+    }
+
+    /**
+     * Test that an invalid range is rejected.
+     */
+    @Test
+    void getTop_InvalidRange_Throws() throws IOException {
+        var rollups = new HashtagRollups(directory, HOUR_RETENTION, DAY_RETENTION);
+
+        assertThatThrownBy(() -> rollups.getTop(START, START, 10)).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> rollups.getTop(START, START + 1, -1)).isInstanceOf(InvalidParameterException.class);
+    }
+
+    /**
+     * Record a hashtag several times.
+     *
+     * @param rollups    the rollups
+     * @param hashtag    the hashtag
+     * @param times      the number of times
+     * @param timeMillis the time received
+     */
+    private static void Record(HashtagRollups rollups, String hashtag, int times, long timeMillis) {
+        for (int i = 0; i < times; i++) {
+            rollups.record(hashtag, timeMillis);
+        }
+    }
+
+    /**
+     * Assert the hashtags and counts returned by a query.
+     *
+     * @param top      the hashtags returned
+     * @param expected the expected hashtags and counts in order
+     */
+    private static void AssertTop(List<HashtagCount> top, Object... expected) {
+        assertThat(top).hasSize(expected.length / 2);
+        for (int i = 0; i < top.size(); i++) {
+            assertThat(top.get(i).hashtag).isEqualTo(expected[i * 2]);
+            assertThat(top.get(i).count).isEqualTo(expected[i * 2 + 1]);
+        }
+    }
+
+    /**
+     * Assert that the top hashtags for a range of whole hours match the exact counts.
+     *
+     * @param rollups    the rollups
+     * @param counts     the exact counts by hour
+     * @param fromMillis the start of the range
+     * @param toMillis   the end of the range
+     * @throws IOException the IO exception if the files cannot be read
+     */
+    private static void AssertExact(HashtagRollups rollups, Map<Long, Map<String, Long>> counts, long fromMillis, long toMillis)
+            throws IOException {
+        var sums = new HashMap<String, Long>();
+        counts.forEach((hour, hourCounts) -> {
+            if ((hour >= fromMillis) && (hour < toMillis)) {
+                hourCounts.forEach((hashtag, count) -> sums.merge(hashtag, count, Long::sum));
+            }
+        });
+        var expected = sums.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(10)
+                .toList();
+
+        var top = rollups.getTop(fromMillis, toMillis, 10);
+
+        assertThat(top).hasSize(expected.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertThat(top.get(i).count).isEqualTo(expected.get(i).getValue());
+            assertThat(sums.get(top.get(i).hashtag)).isEqualTo(top.get(i).count);
+        }
+    }
+}
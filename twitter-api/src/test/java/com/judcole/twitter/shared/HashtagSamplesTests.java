@@ -0,0 +1,110 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the HashtagSamples class.
+ */
+class HashtagSamplesTests {
+
+    /**
+     * Test that a top hashtag keeps its most recent tweets, ignoring case and repeats within a tweet.
+     */
+    @Test
+    void get_TopHashtag_ReturnsMostRecent() {
+        var samples = new HashtagSamples(100, 2, 3);
+        samples.setTopHashtags(new String[]{"Java", null});
+        assertThat(samples.isTopHashtag("java")).isTrue();
+
+        for (int i = 1; i <= 5; i++) {
+            samples.add("id" + i, "Tweet " + i, List.of("java", "JAVA"), i);
+        }
+
+        var recent = samples.get("JAVA", 10);
+        assertThat(recent).extracting(sample -> sample.id).containsExactly("id5", "id4", "id3");
+        assertThat(recent.get(0).text).isEqualTo("Tweet 5");
+        assertThat(recent.get(0).hashtags).containsExactly("java", "JAVA");
+        assertThat(samples.get("java", 2)).hasSize(2);
+        assertThat(samples.get("kotlin", 10)).isEmpty();
+    }
+
+    /**
+     * Test that a tweet kept for several hashtags is copied into one sample shared by all of them.
+     */
+    @Test
+    void add_SeveralHashtags_SharesOneSample() {
+        var samples = new HashtagSamples(100, 2, 3);
+        samples.setTopHashtags(new String[]{"java", "spring"});
+
+        samples.add(null, "Both", List.of("java", "spring", "boot"), 1);
+
+        var java = samples.get("java", 1).get(0);
+        assertThat(samples.get("spring", 1).get(0)).isSameAs(java);
+        assertThat(samples.get("boot", 1).get(0)).isSameAs(java);
+        assertThat(java.id).isNull();
+    }
+
+    /**
+     * Test that the hashtags outside the top list share a reservoir that never exceeds its size.
+     */
+    @Test
+    void add_OtherHashtags_KeepsReservoirSample() {
+        var samples = new HashtagSamples(20, 2, 5);
+        samples.setTopHashtags(new String[]{"java"});
+        assertThat(samples.getReservoirSize()).isEqualTo(10);
+
+        for (int i = 0; i < 1000; i++) {
+            samples.add(Integer.toString(i), "Other " + i, List.of("other"), i);
+        }
+
+        var kept = samples.get("other", 100);
+        assertThat(kept).hasSize(10);
+        assertThat(kept).extracting(sample -> sample.receivedAtMillis).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+        assertThat(samples.get("java", 10)).isEmpty();
+    }
+
+    /**
+     * Test that a hashtag keeps its ring while it stays in the top list and loses it when it drops out.
+     */
+    @Test
+    void setTopHashtags_Changed_KeepsRemainingRings() {
+        var samples = new HashtagSamples(100, 2, 3);
+        samples.setTopHashtags(new String[]{"java", "spring"});
+        samples.add("1", "Java", List.of("java"), 1);
+        samples.add("2", "Spring", List.of("spring"), 2);
+
+        samples.setTopHashtags(new String[]{"SPRING", "kotlin"});
+
+        assertThat(samples.isTopHashtag("java")).isFalse();
+        assertThat(samples.get("java", 10)).isEmpty();
+        assertThat(samples.get("spring", 10)).extracting(sample -> sample.id).containsExactly("2");
+        assertThat(samples.isTopHashtag("kotlin")).isTrue();
+    }
+
+    /**
+     * Test that long texts are truncated.
+     */
+    @Test
+    void add_LongText_TruncatesText() {
+        var samples = new HashtagSamples(10, 0, 1);
+
+        samples.add("1", "x".repeat(HashtagSamples.MAX_TEXT_LENGTH * 2), List.of("long"), 1);
+
+        assertThat(samples.get("long", 1).get(0).text).hasSize(HashtagSamples.MAX_TEXT_LENGTH);
+    }
+
+    /**
+     * Test that the samples of the top hashtags must leave room for the reservoir.
+     */
+    @Test
+    void constructor_TooFewSamples_Throws() {
+        assertThatThrownBy(() -> new HashtagSamples(30, 10, 3)).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> new HashtagSamples(100, 10, 0)).isInstanceOf(InvalidParameterException.class);
+    }
+}
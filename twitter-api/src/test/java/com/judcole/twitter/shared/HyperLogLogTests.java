@@ -0,0 +1,80 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Class for testing the HyperLogLog and RollingHyperLogLog classes.
+ */
+class HyperLogLogTests {
+
+    // Length of a rolling bucket for testing
+    private final long BUCKET_MILLIS = 1000;
+
+    /**
+     * Test that the estimate is within a few standard errors of the real number of distinct items.
+     *
+     * @param distinctCount the number of distinct items
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 10, 1000, 100000, 1000000})
+    void estimate_AddDistinctItems_ReturnsCloseEstimate(int distinctCount) {
+        var sketch = new HyperLogLog();
+
+        // Add each item a few times
+        for (int repeat = 0; repeat < 3; repeat++) {
+            for (int i = 0; i < distinctCount; i++) {
+                sketch.add("hashtag" + i);
+            }
+        }
+
+        // Check the result is within 5% (about 3 standard errors)
+        assertThat((double) sketch.estimate()).isCloseTo(distinctCount, within(Math.max(1, distinctCount * 0.05)));
+    }
+
+    /**
+     * Test that merging two sketches estimates the size of the union.
+     */
+    @Test
+    void merge_OverlappingSketches_EstimatesUnion() {
+        var sketch1 = new HyperLogLog();
+        var sketch2 = new HyperLogLog();
+
+        // Add 0 to 59999 and 40000 to 99999
+        for (int i = 0; i < 60000; i++) {
+            sketch1.add("hashtag" + i);
+            sketch2.add("hashtag" + (i + 40000));
+        }
+
+        // Merge a copy made from the exported registers and check the result
+        sketch1.merge(new HyperLogLog(sketch2.getRegisters()));
+        assertThat((double) sketch1.estimate()).isCloseTo(100000, within(5000.0));
+    }
+
+    /**
+     * Test that a rolling sketch forgets items once their bucket leaves the window.
+     */
+    @Test
+    void estimate_RollingWindow_ForgetsOldBuckets() {
+        var sketch = new RollingHyperLogLog(3, BUCKET_MILLIS, HyperLogLog.DEFAULT_PRECISION);
+
+        // Add a different 1000 items in each of 4 consecutive buckets
+        for (int bucket = 0; bucket < 4; bucket++) {
+            for (int i = 0; i < 1000; i++) {
+                sketch.add(HyperLogLog.hash("hashtag" + bucket + "_" + i), bucket * BUCKET_MILLIS);
+            }
+        }
+
+        // Check that each window only includes the buckets still held (the first was recycled for the last)
+        assertThat((double) sketch.estimate(BUCKET_MILLIS)).isCloseTo(1000, within(50.0));
+        assertThat((double) sketch.estimate(2 * BUCKET_MILLIS)).isCloseTo(2000, within(100.0));
+        assertThat((double) sketch.estimate(3 * BUCKET_MILLIS)).isCloseTo(3000, within(150.0));
+        assertThat((double) sketch.estimate(4 * BUCKET_MILLIS)).isCloseTo(2000, within(100.0));
+        assertThat((double) sketch.estimate(5 * BUCKET_MILLIS)).isCloseTo(1000, within(50.0));
+        assertThat(sketch.estimate(10 * BUCKET_MILLIS)).isZero();
+    }
+}
@@ -0,0 +1,118 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the KeywordAutomaton class.
+ */
+class KeywordAutomatonTests {
+
+    /**
+     * Test that overlapping keywords are all found, ignoring case and only at word boundaries.
+     */
+    @Test
+    void scan_OverlappingKeywords_FindsWholeWords() {
+        var automaton = new KeywordAutomaton(List.of("new york", "York", "cat", "c++", "#java", "🍎"));
+
+        assertThat(Scan(automaton, "I ❤ NEW YORK and new yorkers")).containsExactly(0, 1);
+        assertThat(Scan(automaton, "concatenate the cat, Cat's catalog")).containsExactly(2, 2);
+        assertThat(Scan(automaton, "c++17 beats #JAVA, #Java21 and #javascript🍎🍎")).containsExactly(3, 4, 5, 5);
+        assertThat(Scan(automaton, "")).isEmpty();
+    }
+
+    /**
+     * Test that random keywords and texts give the same matches as checking each keyword at each position.
+     */
+    @Test
+    void scan_RandomKeywords_MatchesBruteForce() {
+        var random = new Random(42);
+        var alphabet = "abAB1 -";
+        var keywords = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            keywords.add(RandomText(random, alphabet, 1 + random.nextInt(5)));
+        }
+        var automaton = new KeywordAutomaton(keywords);
+
+        for (int t = 0; t < 200; t++) {
+            var text = RandomText(random, alphabet, random.nextInt(60));
+            assertThat(Scan(automaton, text)).containsExactlyInAnyOrderElementsOf(BruteForce(keywords, text));
+        }
+        assertThat(automaton.getStateCount()).isLessThanOrEqualTo(1 + keywords.stream().mapToInt(String::length).sum());
+    }
+
+    /**
+     * Test that empty and overlong keywords are rejected.
+     */
+    @Test
+    void constructor_InvalidKeyword_Throws() {
+        assertThatThrownBy(() -> new KeywordAutomaton(List.of("ok", ""))).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> new KeywordAutomaton(List.of("x".repeat(KeywordAutomaton.MAX_KEYWORD_LENGTH + 1))))
+                .isInstanceOf(InvalidParameterException.class);
+    }
+
+    /**
+     * Scan a text and collect the keywords found.
+     *
+     * @param automaton the automaton
+     * @param text      the text
+     * @return the indexes of the keywords found in the order they end
+     */
+    private static List<Integer> Scan(KeywordAutomaton automaton, String text) {
+        var found = new ArrayList<Integer>();
+        automaton.scan(text, found::add);
+        return found;
+    }
+
+    /**
+     * Find the keywords in a text by checking each one at each position.
+     *
+     * @param keywords the keywords
+     * @param text     the text
+     * @return the indexes of the keywords found (once for each occurrence, with duplicates using the first index)
+     */
+    private static List<Integer> BruteForce(List<String> keywords, String text) {
+        var found = new ArrayList<Integer>();
+        var lowerText = text.toLowerCase();
+        for (int k = 0; k < keywords.size(); k++) {
+            var keyword = keywords.get(k).toLowerCase();
+            if (keywords.subList(0, k).stream().anyMatch(previous -> previous.equalsIgnoreCase(keyword))) {
+                continue;
+            }
+            for (int start = lowerText.indexOf(keyword); start >= 0; start = lowerText.indexOf(keyword, start + 1)) {
+                var end = start + keyword.length();
+                var startOk = !Character.isLetterOrDigit(keyword.charAt(0)) || (start == 0)
+                        || !Character.isLetterOrDigit(text.charAt(start - 1));
+                var endOk = !Character.isLetterOrDigit(keyword.charAt(keyword.length() - 1)) || (end == text.length())
+                        || !Character.isLetterOrDigit(text.charAt(end));
+                if (startOk && endOk) {
+                    found.add(k);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Create a random text.
+     *
+     * @param random   the random number generator
+     * @param alphabet the characters to use
+     * @param length   the length
+     * @return the text
+     */
+    private static String RandomText(Random random, String alphabet, int length) {
+        var text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
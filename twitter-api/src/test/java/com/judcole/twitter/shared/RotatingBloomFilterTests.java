@@ -0,0 +1,144 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Class for testing the RotatingBloomFilter class.
+ */
+class RotatingBloomFilterTests {
+
+    // Length of a generation for testing
+    private final long GENERATION_MILLIS = 1000;
+
+    /**
+     * Test that keys are reported as new the first time and seen afterwards.
+     */
+    @Test
+    void addIfAbsent_AddTwice_ReportsDuplicate() {
+        var filter = new RotatingBloomFilter(1000, 0.001, GENERATION_MILLIS);
+
+        assertThat(filter.addIfAbsent(HyperLogLog.hash("1551234567890123456"), 0)).isTrue();
+        assertThat(filter.addIfAbsent(HyperLogLog.hash("1551234567890123457"), 0)).isTrue();
+        assertThat(filter.addIfAbsent(HyperLogLog.hash("1551234567890123456"), 0)).isFalse();
+        assertThat(filter.addIfAbsent(HyperLogLog.hash("1551234567890123457"), 10)).isFalse();
+    }
+
+    /**
+     * Test that when several threads add the same keys at once each key is reported as new exactly once.
+     */
+    @Test
+    void addIfAbsent_ConcurrentCopies_ReportsEachKeyOnce() throws InterruptedException {
+        final int THREADS = 4;
+        final int KEYS = 10000;
+        var filter = new RotatingBloomFilter(KEYS, 0.000001, GENERATION_MILLIS);
+        var newKeys = new AtomicInteger();
+
+        var threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < KEYS; i++) {
+                    if (filter.addIfAbsent(HyperLogLog.hash(Integer.toString(i)), 0)) {
+                        newKeys.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        // Allow for the odd false positive reporting a new key as seen
+        assertThat(newKeys.get()).isBetween(KEYS - 5, KEYS);
+    }
+
+    /**
+     * Test that copies of keys added by several threads either side of each rotation are each reported as new once.
+     */
+    @Test
+    void addIfAbsent_ConcurrentCopiesAcrossRotations_ReportsEachKeyOnce() throws InterruptedException {
+        final int THREADS = 4;
+        final int BATCHES = 20;
+        final int KEYS = 2000;
+        var filter = new RotatingBloomFilter(2 * KEYS, 0.000001, GENERATION_MILLIS);
+        var newKeys = new AtomicInteger();
+        var barrier = new CyclicBarrier(THREADS);
+
+        var threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            // Half the threads add each batch just before a generation starts and half just after it
+            long offset = (t % 2 == 0) ? -1 : 0;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int batch = 1; batch <= BATCHES; batch++) {
+                        barrier.await();
+                        for (int i = 0; i < KEYS; i++) {
+                            if (filter.addIfAbsent(HyperLogLog.hash(batch + ":" + i), batch * GENERATION_MILLIS + offset)) {
+                                newKeys.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (InterruptedException | BrokenBarrierException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[t].start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        // Allow for the odd false positive reporting a new key as seen
+        assertThat(newKeys.get()).isBetween(BATCHES * KEYS - 5, BATCHES * KEYS);
+    }
+
+    /**
+     * Test that keys are remembered for the next generation and then forgotten.
+     */
+    @Test
+    void addIfAbsent_Rotate_ForgetsAfterTwoGenerations() {
+        var filter = new RotatingBloomFilter(1000, 0.001, GENERATION_MILLIS);
+        var key = HyperLogLog.hash("12345");
+
+        assertThat(filter.addIfAbsent(key, 0)).isTrue();
+        assertThat(filter.addIfAbsent(key, GENERATION_MILLIS)).isFalse();
+        assertThat(filter.addIfAbsent(key, 3 * GENERATION_MILLIS)).isTrue();
+        assertThat(filter.addIfAbsent(key, 3 * GENERATION_MILLIS)).isFalse();
+        assertThat(filter.addIfAbsent(key, 10 * GENERATION_MILLIS)).isTrue();
+    }
+
+    /**
+     * Test that the false positive rate of a full generation is close to the configured rate.
+     *
+     * @param falsePositiveRate the configured false positive rate
+     */
+    @ParameterizedTest
+    @ValueSource(doubles = {0.01, 0.001})
+    void addIfAbsent_FullGeneration_KeepsFalsePositiveRate(double falsePositiveRate) {
+        final int KEY_COUNT = 100000;
+        var filter = new RotatingBloomFilter(KEY_COUNT, falsePositiveRate, GENERATION_MILLIS);
+
+        // Fill the generation
+        for (int i = 0; i < KEY_COUNT; i++) {
+            filter.addIfAbsent(HyperLogLog.hash("tweet" + i), 0);
+        }
+
+        // Count new keys wrongly reported as seen
+        int falsePositives = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if (filter.mightContain(HyperLogLog.hash("other" + i))) {
+                falsePositives++;
+            }
+        }
+
+        assertThat((double) falsePositives / KEY_COUNT).isLessThan(falsePositiveRate * 1.5);
+    }
+}
@@ -5,10 +5,16 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.security.InvalidParameterException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
 
 /**
  * Class for testing the SampleStreamStats class.
@@ -23,7 +29,7 @@ class SampledStreamStatsTests {
     private final String HASHTAG5 = "aLongHashTag";
 
     /**
-     * Test that setting new values for the basic fields is successful.
+     * Test that adding counts to the basic fields is successful.
      *
      * @param totalHashtags   the total hashtags
      * @param totalTweets     the total tweets
@@ -31,11 +37,11 @@ class SampledStreamStatsTests {
      */
     @ParameterizedTest
     @CsvSource({"0, 0, 0", "1, 0, 0", "0, 1, 0", "0, 0, 1", "10, 20, 0", "10, 0, 20", "20, 30, 40"})
-    void setBasicFields_SetValues_ReturnsCorrectValues(long totalHashtags, long totalTweets, int tweetQueueCount) {
+    void AddBasicCounts_AddValues_ReturnsCorrectValues(long totalHashtags, long totalTweets, int tweetQueueCount) {
         var stats = CreateStatsInstance(1);
 
-        // Set the basic fields
-        stats.SetBasicFields(totalHashtags, totalTweets, tweetQueueCount);
+        // Add to the basic fields
+        stats.AddBasicCounts(totalHashtags, totalTweets, tweetQueueCount);
 
         // Check the result
         assertThat(stats.getTotalHashtags()).isEqualTo(totalHashtags);
@@ -43,6 +49,57 @@ class SampledStreamStatsTests {
         assertThat(stats.getTweetQueueCount()).isEqualTo(tweetQueueCount);
     }
 
+    /**
+     * Test that adding block counts and duplicates from many threads at once does not lose any of them and that
+     * a concurrent reader never sees the totals go backwards.
+     *
+     * @param threadCount the number of writing threads
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {16, 32})
+    void AddBasicCounts_ConcurrentWorkers_ReturnsAllCounts(int threadCount) throws InterruptedException {
+        final int BLOCKS = 50000;
+        var stats = CreateStatsInstance(1);
+        var start = new CountDownLatch(1);
+        var writers = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            writers[t] = new Thread(() -> {
+                AwaitQuietly(start);
+                for (int i = 0; i < BLOCKS; i++) {
+                    stats.AddBasicCounts(2, 1, 5);
+                    if (i % 10 == 0) {
+                        stats.IncrementDuplicateTweets();
+                    }
+                }
+            });
+            writers[t].start();
+        }
+
+        // Read the totals while they are being updated
+        var backwards = new AtomicBoolean();
+        var reader = new Thread(() -> {
+            long lastTweets = 0;
+            while (lastTweets < (long) threadCount * BLOCKS) {
+                var tweets = stats.getTotalTweets();
+                backwards.compareAndSet(false, tweets < lastTweets);
+                lastTweets = tweets;
+            }
+        });
+        reader.start();
+        start.countDown();
+        for (var writer : writers) {
+            writer.join();
+        }
+        reader.join(10000);
+
+        assertThat(backwards.get()).isFalse();
+        assertThat(stats.getTotalTweets()).isEqualTo((long) threadCount * BLOCKS);
+        assertThat(stats.getTotalHashtags()).isEqualTo(2L * threadCount * BLOCKS);
+        assertThat(stats.getDuplicateTweets()).isEqualTo((long) threadCount * BLOCKS / 10);
+        assertThat(stats.getTweetQueueCount()).isEqualTo(5);
+        assertThat(stats.Export().totalTweets).isEqualTo((long) threadCount * BLOCKS);
+    }
+
     /**
      * Test that calculating the calculated fields from the total tweet count is successful.
      *
@@ -55,7 +112,7 @@ class SampledStreamStatsTests {
     @CsvSource({"0, 0, 0, 0", "1, 0, 1, 1", "99, 0, 99, 99", "0, 1, 0, 0", "1, 1, 1, 1", "99, 1, 99, 99", "0, 12345, 0, 0", "1, 12345, 0, 0", "98, 12345, 0, 0", "9999, 12345, 19, 0", "99999, 12345, 194, 8", "2000000, 12345, 3883, 162", "0, 54321, 0, 0", "1, 54321, 0, 0", "97, 54321, 0, 0", "9999, 54321, 4, 0", "99999, 54321, 44, 1", "2000000, 54321, 883, 36"})
     void setCalculatedFields_SetValues_ReturnsCorrect(long totalTweets, int elapsedHours, long expectedDaily, long expectedHourly) {
         var stats = CreateStatsInstance(1);
-        stats.SetBasicFields(0, totalTweets, 0);
+        stats.AddBasicCounts(0, totalTweets, 0);
 
         // Set a start date from the data allowing a margin of a second for the test
         var startDate = stats.getLastUpdated().plusHours(-elapsedHours).plusSeconds(1);
@@ -68,6 +125,179 @@ class SampledStreamStatsTests {
         assertThat(stats.getHourlyTweets()).isEqualTo(expectedHourly);
     }
 
+    /**
+     * Test that recording hashtags sets the estimated distinct hashtag counts.
+     */
+    @Test
+    void RecordDistinctHashtag_AddHashtags_ReturnsDistinctCounts() {
+        var stats = CreateStatsInstance(1);
+        var now = System.currentTimeMillis();
+
+        // Record some hashtags twice with some from two days ago
+        for (int i = 0; i < 200; i++) {
+            stats.RecordDistinctHashtag("hashtag" + (i % 100), now);
+            stats.RecordDistinctHashtag("old" + (i % 100), now - 2 * 24 * 60 * 60 * 1000);
+        }
+
+        // Calculate the estimates and check the result
+        stats.SetCalculatedFields(stats.getLastUpdated());
+        assertThat(stats.getDistinctHashtags()).isBetween(195L, 205L);
+        assertThat(stats.getDistinctHashtagsLastDay()).isBetween(98L, 102L);
+        assertThat(stats.getDistinctHashtagsLastHour()).isBetween(98L, 102L);
+    }
+
+    /**
+     * Test that merging the exports of several nodes sums the totals and top hashtags and merges the sketches.
+     */
+    @Test
+    void SetMergedFields_MergeExports_ReturnsGlobalStats() {
+        var now = System.currentTimeMillis();
+
+        // Set up two nodes with overlapping hashtags
+        var node1 = CreateStatsInstance(3);
+        node1.AddBasicCounts(30, 10, 0);
+        node1.UpdateTopHashtags(HASHTAG1, 5);
+        node1.UpdateTopHashtags(HASHTAG2, 4);
+        node1.UpdateTopHashtags(HASHTAG3, 3);
+        var node2 = CreateStatsInstance(3);
+        node2.AddBasicCounts(20, 5, 0);
+        node2.UpdateTopHashtags(HASHTAG4, 6);
+        node2.UpdateTopHashtags(HASHTAG3.toUpperCase(), 4);
+        for (int i = 0; i < 150; i++) {
+            node1.RecordDistinctHashtag("hashtag" + i, now);
+            node2.RecordDistinctHashtag("hashtag" + (i + 50), now);
+        }
+
+        // Merge them into a new instance and check the result
+        var merged = CreateStatsInstance(3);
+        merged.SetMergedFields(List.of(node1.Export(), node2.Export()));
+
+        assertThat(merged.getTotalHashtags()).isEqualTo(50);
+        assertThat(merged.getTotalTweets()).isEqualTo(15);
+        CheckTopHashtag(merged, 0, HASHTAG3, 7);
+        CheckTopHashtag(merged, 1, HASHTAG4, 6);
+        CheckTopHashtag(merged, 2, HASHTAG1, 5);
+        assertThat(merged.getDistinctHashtags()).isBetween(196L, 204L);
+        assertThat(merged.getDistinctHashtagsLastHour()).isBetween(196L, 204L);
+    }
+
+    /**
+     * Test that exports that cannot be merged are skipped instead of failing the whole merge.
+     */
+    @Test
+    void SetMergedFields_MalformedExports_SkipsThem() {
+        var node = CreateStatsInstance(3);
+        node.AddBasicCounts(0, 10, 0);
+        node.RecordDistinctHashtag(HASHTAG1, System.currentTimeMillis());
+
+        var missingSketch = node.Export();
+        missingSketch.distinctHashtagsSketch = null;
+        var unpairedCounts = node.Export();
+        unpairedCounts.topHashtagCounts = new long[unpairedCounts.topHashtags.length + 1];
+        var oversizedWindow = node.Export();
+        oversizedWindow.distinctHashtagsLastHour.bucketEpochs = new long[100];
+        oversizedWindow.distinctHashtagsLastHour.bucketSketches = new byte[100][];
+        var wrongBucketSize = node.Export();
+        wrongBucketSize.distinctHashtagsLastDay.bucketSketches[0] = new byte[16];
+
+        var merged = CreateStatsInstance(3);
+        assertThat(merged.CanMerge(node.Export())).isTrue();
+        assertThat(merged.CanMerge(missingSketch)).isFalse();
+        assertThat(merged.CanMerge(unpairedCounts)).isFalse();
+        assertThat(merged.CanMerge(oversizedWindow)).isFalse();
+        assertThat(merged.CanMerge(wrongBucketSize)).isFalse();
+
+        merged.SetMergedFields(List.of(missingSketch, node.Export(), unpairedCounts, oversizedWindow, wrongBucketSize));
+        assertThat(merged.getTotalTweets()).isEqualTo(10);
+        assertThat(merged.getDistinctHashtags()).isEqualTo(1);
+    }
+
+    /**
+     * Test that the trending hashtags are ranked by decayed score and are summed from the exports of several nodes.
+     */
+    @Test
+    void RecordTrendingHashtag_RecentAndOldHashtags_ReturnsTrendingHashtags() {
+        var now = System.currentTimeMillis();
+        var halfLife = 60 * 60 * 1000L;
+
+        // Record a big hashtag from a day ago and a smaller one now
+        var node1 = new SampledStreamStats(2, 10, halfLife);
+        for (int i = 0; i < 1000; i++) {
+            node1.RecordTrendingHashtag(HASHTAG1, now - 24 * halfLife);
+        }
+        for (int i = 0; i < 5; i++) {
+            node1.RecordTrendingHashtag(HASHTAG4, now);
+        }
+        node1.SetCalculatedFields(node1.getLastUpdated());
+
+        assertThat(node1.getTrendingHalfLifeMillis()).isEqualTo(halfLife);
+        assertThat(node1.getTrendingHashtags()).containsExactly(HASHTAG4, HASHTAG1);
+        assertThat(node1.getTrendingHashtagScores()[0]).isCloseTo(5, within(0.01));
+        assertThat(node1.Snapshot(1).getTrendingHashtags()).containsExactly(HASHTAG4);
+
+        // Merge with a second node where the same hashtag is trending
+        var node2 = new SampledStreamStats(2, 10, halfLife);
+        for (int i = 0; i < 3; i++) {
+            node2.RecordTrendingHashtag(HASHTAG4.toUpperCase(), now);
+        }
+        var merged = new SampledStreamStats(2, 10, halfLife);
+        merged.SetMergedFields(List.of(node1.Export(), node2.Export()));
+
+        assertThat(merged.getTrendingHashtags()[0]).isEqualToIgnoringCase(HASHTAG4);
+        assertThat(merged.getTrendingHashtagScores()[0]).isCloseTo(8, within(0.01));
+    }
+
+    /**
+     * Test that snapshots return any number of top hashtags up to the ceiling.
+     */
+    @Test
+    void Snapshot_DifferentSizes_ReturnsTopHashtags() {
+        var stats = new SampledStreamStats(2, 100);
+        stats.AddBasicCounts(10, 20, 0);
+        for (int i = 1; i <= 150; i++) {
+            stats.UpdateTopHashtags("tag" + i, i);
+        }
+
+        // Check the default list is unchanged and the snapshots are the requested sizes
+        assertThat(stats.getTopHashtagsSize()).isEqualTo(2);
+        CheckTopHashtag(stats, 1, "tag149", 149);
+
+        var snapshot = stats.Snapshot(100);
+        assertThat(snapshot.getTopHashtagsSize()).isEqualTo(100);
+        assertThat(snapshot.getTotalTweets()).isEqualTo(20);
+        CheckTopHashtag(snapshot, 0, "tag150", 150);
+        CheckTopHashtag(snapshot, 99, "tag51", 51);
+
+        assertThat(stats.Snapshot(0).getTopHashtags()).isEmpty();
+        assertThatThrownBy(() -> stats.Snapshot(101)).isInstanceOf(InvalidParameterException.class);
+    }
+
+    /**
+     * Test that the top lists of the other entity types are kept separately and survive snapshots and merges.
+     */
+    @Test
+    void UpdateTopEntities_SeveralTypes_ReturnsSeparateTopLists() {
+        var stats = new SampledStreamStats(2, 10);
+        stats.UpdateTopEntities(EntityType.HASHTAG, HASHTAG1, 3);
+        stats.UpdateTopEntities(EntityType.MENTION, "jack", 5);
+        stats.UpdateTopEntities(EntityType.MENTION, "Biz", 7);
+        stats.UpdateTopEntities(EntityType.MENTION, "ev", 1);
+        stats.UpdateTopEntities(EntityType.EMOJI, "😀", 2);
+
+        CheckTopHashtag(stats, 0, HASHTAG1, 3);
+        assertThat(stats.getTopEntities().get(EntityType.MENTION)).containsExactly("Biz", "jack");
+        assertThat(stats.getTopEntityCounts().get(EntityType.MENTION)).containsExactly(7, 5);
+        assertThat(stats.getTopEntities().get(EntityType.EMOJI)).containsExactly("😀", null);
+        assertThat(stats.getTopEntities().get(EntityType.CASHTAG)).containsOnlyNulls();
+        assertThat(stats.getTopEntities()).doesNotContainKey(EntityType.HASHTAG);
+
+        // Check a bigger snapshot and a merge of two copies
+        assertThat(stats.Snapshot(3).getTopEntities().get(EntityType.MENTION)).containsExactly("Biz", "jack", "ev");
+        var merged = new SampledStreamStats(2, 10);
+        merged.SetMergedFields(List.of(stats.Export(), stats.Export()));
+        assertThat(merged.getTopEntityCounts().get(EntityType.MENTION)).containsExactly(14, 10);
+    }
+
     /**
      * Test that the creation of a new SampledStreamStats object is successful.
      *
@@ -138,18 +368,9 @@ class SampledStreamStatsTests {
         CheckTopHashtag(stats, 0, hashtag, 10);
         CheckTopHashtag(stats, 1, null, 0);
 
-        // Add the same hashtag lower-cased with lower count and check the result
-        final String hashtag_lower = hashtag.toLowerCase();
-        stats.UpdateTopHashtags(hashtag_lower, 9);
-        CheckTopHashtag(stats, 0, hashtag_lower, 9);
-        CheckTopHashtag(stats, 1, null, 0);
-
-        // Restore the mixed case hashtag and check the result
-        stats.UpdateTopHashtags(hashtag, 10);
-        CheckTopHashtag(stats, 0, hashtag, 10);
-        CheckTopHashtag(stats, 1, null, 0);
-
         // Add the same hashtag lower-cased with the same count and check the result
+        final String hashtag_lower = hashtag.toLowerCase();
+        final String hashtag_upper = hashtag.toUpperCase();
         stats.UpdateTopHashtags(hashtag_lower, 10);
         CheckTopHashtag(stats, 0, hashtag_lower, 10);
         CheckTopHashtag(stats, 1, null, 0);
@@ -159,51 +380,50 @@ class SampledStreamStatsTests {
         CheckTopHashtag(stats, 0, hashtag, 10);
         CheckTopHashtag(stats, 1, null, 0);
 
-        // Add the same hashtag lower-cased with higher count and check the result
+        // Add the same hashtag lower-cased with a higher count and check the result
         stats.UpdateTopHashtags(hashtag_lower, 11);
         CheckTopHashtag(stats, 0, hashtag_lower, 11);
         CheckTopHashtag(stats, 1, null, 0);
 
-        // Add the same hashtag upper-cased with lower count and check the result
-        final String hashtag_upper = hashtag.toUpperCase();
-        stats.UpdateTopHashtags(hashtag_upper, 9);
-        CheckTopHashtag(stats, 0, hashtag_upper, 9);
-        CheckTopHashtag(stats, 1, null, 0);
-
-        // Restore the mixed case hashtag and check the result
-        stats.UpdateTopHashtags(hashtag, 10);
-        CheckTopHashtag(stats, 0, hashtag, 10);
+        // Ignore a stale lower count for the mixed case hashtag and check the result
+        stats.UpdateTopHashtags(hashtag, 9);
+        CheckTopHashtag(stats, 0, hashtag_lower, 11);
         CheckTopHashtag(stats, 1, null, 0);
 
         // Add the same hashtag upper-cased with the same count and check the result
-        stats.UpdateTopHashtags(hashtag_upper, 10);
-        CheckTopHashtag(stats, 0, hashtag_upper, 10);
+        stats.UpdateTopHashtags(hashtag_upper, 11);
+        CheckTopHashtag(stats, 0, hashtag_upper, 11);
         CheckTopHashtag(stats, 1, null, 0);
 
         // Restore the mixed case hashtag and check the result
-        stats.UpdateTopHashtags(hashtag, 10);
-        CheckTopHashtag(stats, 0, hashtag, 10);
+        stats.UpdateTopHashtags(hashtag, 11);
+        CheckTopHashtag(stats, 0, hashtag, 11);
         CheckTopHashtag(stats, 1, null, 0);
 
-        // Add the same hashtag lower cased with higher count and check the result
-        stats.UpdateTopHashtags(hashtag_upper, 11);
-        CheckTopHashtag(stats, 0, hashtag_upper, 11);
+        // Add the same hashtag upper-cased with a higher count and check the result
+        stats.UpdateTopHashtags(hashtag_upper, 12);
+        CheckTopHashtag(stats, 0, hashtag_upper, 12);
+        CheckTopHashtag(stats, 1, null, 0);
+
+        // Ignore a stale lower count for the lower-cased hashtag and check the result
+        stats.UpdateTopHashtags(hashtag_lower, 10);
+        CheckTopHashtag(stats, 0, hashtag_upper, 12);
         CheckTopHashtag(stats, 1, null, 0);
 
         // Add a different hashtag with a lower count and check the result
         stats.UpdateTopHashtags(HASHTAG1, 1);
-        CheckTopHashtag(stats, 0, hashtag_upper, 11);
+        CheckTopHashtag(stats, 0, hashtag_upper, 12);
         CheckTopHashtag(stats, 1, HASHTAG1, 1);
 
         // Add a different hashtag with the same count and check the result
-        stats.UpdateTopHashtags(HASHTAG1, 11);
-        CheckTopHashtag(stats, 0, HASHTAG1, 11);
-        CheckTopHashtag(stats, 1, hashtag_upper, 11);
-
-        // Add a different hashtag with a higher count and check the result
         stats.UpdateTopHashtags(HASHTAG1, 12);
         CheckTopHashtag(stats, 0, HASHTAG1, 12);
-        CheckTopHashtag(stats, 1, hashtag_upper, 11);
+        CheckTopHashtag(stats, 1, hashtag_upper, 12);
+
+        // Add a different hashtag with a higher count and check the result
+        stats.UpdateTopHashtags(HASHTAG1, 13);
+        CheckTopHashtag(stats, 0, HASHTAG1, 13);
+        CheckTopHashtag(stats, 1, hashtag_upper, 12);
     }
 
     /**
@@ -507,4 +727,17 @@ class SampledStreamStatsTests {
     private static SampledStreamStats CreateStatsInstance(int topHashtagsSize) {
         return new SampledStreamStats(topHashtagsSize);
     }
+
+    /**
+     * Wait for a latch, ignoring any interruption.
+     *
+     * @param latch the latch
+     */
+    private static void AwaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the StatsDeltaTracker class.
+ */
+class StatsDeltaTrackerTests {
+
+    // Time of the first poll
+    private static final long START = 1_000_000L;
+
+    /**
+     * Test that the decay of the trending hashtag scores alone does not publish a new version or resend the trending
+     * ranks, while a change in their order does.
+     */
+    @Test
+    void publishIfDue_OnlyTimePasses_KeepsVersion() throws InterruptedException {
+        var tracker = new StatsDeltaTracker(1000, 10);
+        var stats = new SampledStreamStats(3, 10, 1000);
+        var startTime = LocalDateTime.now(ZoneOffset.UTC);
+        var now = System.currentTimeMillis();
+        stats.RecordTrendingHashtag("abc", now);
+        stats.RecordTrendingHashtag("abc", now);
+        stats.RecordTrendingHashtag("def", now);
+        stats.SetCalculatedFields(startTime);
+        assertThat(tracker.publishIfDue(() -> stats, START)).isEqualTo(1);
+        var scores = tracker.getDelta(0).ranks.get(StatsDeltaTracker.TRENDING_HASHTAGS);
+
+        // Let the scores decay with nothing new received
+        Thread.sleep(20);
+        stats.SetCalculatedFields(startTime);
+        assertThat(stats.getTrendingHashtagScores()[0]).isNotEqualTo(scores.get(0).value);
+        assertThat(tracker.publishIfDue(() -> stats, START + 1000)).isEqualTo(1);
+        assertThat(tracker.getDelta(1).ranks).isEmpty();
+
+        // Move a hashtag up the trending list
+        for (int i = 0; i < 3; i++) {
+            stats.RecordTrendingHashtag("def", System.currentTimeMillis());
+        }
+        stats.SetCalculatedFields(startTime);
+        assertThat(tracker.publishIfDue(() -> stats, START + 2000)).isEqualTo(2);
+        assertThat(tracker.getDelta(1).ranks.get(StatsDeltaTracker.TRENDING_HASHTAGS))
+                .extracting(change -> change.name).containsExactly("def", "abc");
+    }
+
+    /**
+     * Test that a delta only contains the fields and ranks that changed since the client's version.
+     */
+    @Test
+    void getDelta_SinceLastVersion_ReturnsChangedFieldsAndRanks() {
+        var tracker = new StatsDeltaTracker(1000, 10);
+        var stats = new SampledStreamStats(3, 10);
+        stats.AddBasicCounts(10, 100, 0);
+        stats.UpdateTopHashtags("abc", 5);
+        stats.UpdateTopHashtags("def", 3);
+        assertThat(tracker.getDelta(0)).isNull();
+        assertThat(tracker.publishIfDue(() -> stats, START)).isEqualTo(1);
+
+        // A full delta has every field and rank
+        var full = tracker.getDelta(0);
+        assertThat(full.full).isTrue();
+        assertThat(full.version).isEqualTo(1);
+        assertThat(full.fields).containsEntry("totalTweets", 100L).containsKeys("lastUpdated", "status");
+        assertThat(full.ranks.get(StatsDeltaTracker.TOP_HASHTAGS)).extracting(change -> change.name)
+                .containsExactly("abc", "def", null);
+
+        // Change the tweet total and move a hashtag up
+        stats.AddBasicCounts(0, 50, 0);
+        stats.UpdateTopHashtags("def", 7);
+        assertThat(tracker.publishIfDue(() -> stats, START + 1000)).isEqualTo(2);
+
+        var delta = tracker.getDelta(1);
+        assertThat(delta.full).isFalse();
+        assertThat(delta.since).isEqualTo(1);
+        assertThat(delta.fields).containsOnlyKeys("totalTweets").containsEntry("totalTweets", 150L);
+        assertThat(delta.ranks).containsOnlyKeys(StatsDeltaTracker.TOP_HASHTAGS);
+        var changes = delta.ranks.get(StatsDeltaTracker.TOP_HASHTAGS);
+        assertThat(changes).extracting(change -> change.rank).containsExactly(0, 1);
+        assertThat(changes).extracting(change -> change.name).containsExactly("def", "abc");
+        assertThat(changes).extracting(change -> change.value).containsExactly(7L, 5L);
+
+        // Nothing changed since the latest version
+        var none = tracker.getDelta(2);
+        assertThat(none.version).isEqualTo(2);
+        assertThat(none.fields).isEmpty();
+        assertThat(none.ranks).isEmpty();
+    }
+
+    /**
+     * Test that a new version is only published once per interval and only if more than the time changed.
+     */
+    @Test
+    void publishIfDue_WithinIntervalOrUnchanged_KeepsVersion() {
+        var tracker = new StatsDeltaTracker(1000, 10);
+        var stats = new SampledStreamStats(3, 10);
+        var calls = new int[1];
+
+        tracker.publishIfDue(() -> {
+            calls[0]++;
+            return stats;
+        }, START);
+        stats.AddBasicCounts(1, 1, 0);
+        stats.SetCalculatedFields(stats.getLastUpdated());
+        assertThat(tracker.publishIfDue(() -> {
+            calls[0]++;
+            return stats;
+        }, START + 999)).isEqualTo(1);
+        assertThat(calls[0]).isEqualTo(1);
+
+        // Due and changed
+        assertThat(tracker.publishIfDue(() -> stats, START + 1000)).isEqualTo(2);
+
+        // Due but only the time changed
+        stats.SetCalculatedFields(stats.getLastUpdated());
+        assertThat(tracker.publishIfDue(() -> stats, START + 2000)).isEqualTo(2);
+        assertThat(tracker.getVersion()).isEqualTo(2);
+    }
+
+    /**
+     * Test that a client that has fallen behind the kept versions or has an unknown version receives everything.
+     */
+    @Test
+    void getDelta_TooFarBehind_ReturnsFullDelta() {
+        var tracker = new StatsDeltaTracker(0, 3);
+        var stats = new SampledStreamStats(3, 10);
+        for (int i = 1; i <= 5; i++) {
+            stats.AddBasicCounts(1, 1, 0);
+            tracker.publishIfDue(() -> stats, START + i);
+        }
+
+        assertThat(tracker.getDelta(3).full).isFalse();
+        assertThat(tracker.getDelta(2).full).isTrue();
+        assertThat(tracker.getDelta(99).full).isTrue();
+        assertThat(tracker.getDelta(2).fields).containsEntry("totalTweets", 5L);
+        assertThatThrownBy(() -> new StatsDeltaTracker(0, 0)).isInstanceOf(InvalidParameterException.class);
+    }
+}
@@ -0,0 +1,149 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Class for testing the StatsHistory class.
+ */
+class StatsHistoryTests {
+
+    // Interval between the samples
+    private static final long INTERVAL = 10 * 1000;
+
+    // Number of top and trending hashtags in each sample
+    private static final int TOP_SIZE = 10;
+
+    // Time of the first sample
+    private static final long START = 1_600_000_000_000L;
+
+    /**
+     * Test that every field of every sample reads back exactly, including jumps, empty slots and changing hashtags.
+     */
+    @Test
+    void query_EveryStep_ReturnsExactSamples() {
+        var history = new StatsHistory(INTERVAL, 24 * 60 * 60 * 1000, TOP_SIZE);
+        var samples = CreateSamples(1000, new Random(42));
+        samples.get(500).totalHashtags = Long.MIN_VALUE;
+        samples.get(501).trendingHashtagScores[0] = Double.MIN_VALUE;
+        samples.forEach(history::record);
+
+        var points = history.query(START, START + 1000 * INTERVAL, INTERVAL);
+
+        assertThat(points).hasSize(samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertThat(points.get(i)).usingRecursiveComparison().ignoringFields("tweetsPerSecond").isEqualTo(samples.get(i));
+        }
+        assertThat(points.get(0).tweetsPerSecond).isZero();
+        assertThat(points.get(1).tweetsPerSecond)
+                .isCloseTo((samples.get(1).totalTweets - samples.get(0).totalTweets) * 1000.0
+                        / (samples.get(1).timeMillis - samples.get(0).timeMillis), within(1e-9));
+    }
+
+    /**
+     * Test that a longer step returns the last sample in each step with the tweet rate since the previous point.
+     */
+    @Test
+    void query_LongerStep_ReturnsLastSampleInEachStep() {
+        var history = new StatsHistory(INTERVAL, 24 * 60 * 60 * 1000, TOP_SIZE);
+        var samples = CreateSamples(100, new Random(1));
+        samples.forEach(history::record);
+
+        // Start part way through so the first rate is from the sample before the range
+        var points = history.query(START + 5 * INTERVAL, START + 64 * INTERVAL, 6 * INTERVAL);
+
+        assertThat(points).hasSize(10);
+        assertThat(points.get(0).timeMillis).isEqualTo(samples.get(10).timeMillis);
+        assertThat(points.get(0).tweetsPerSecond)
+                .isCloseTo((samples.get(10).totalTweets - samples.get(4).totalTweets) / 60.0, within(1e-9));
+        assertThat(points.get(9).timeMillis).isEqualTo(samples.get(64).timeMillis);
+        assertThat(points.get(9).topHashtags).containsExactly(samples.get(64).topHashtags);
+        assertThat(points.get(9).tweetsPerSecond)
+                .isCloseTo((samples.get(64).totalTweets - samples.get(58).totalTweets) / 60.0, within(1e-9));
+        assertThat(history.query(START + 1000 * INTERVAL, START + 2000 * INTERVAL, INTERVAL)).isEmpty();
+    }
+
+    /**
+     * Test that three days of samples every 10 seconds fit in a few MB and that older samples are dropped.
+     */
+    @Test
+    void record_PastRetention_KeepsBoundedHistory() {
+        var retention = 3 * 24 * 60 * 60 * 1000L;
+        var history = new StatsHistory(INTERVAL, retention, TOP_SIZE);
+        var samples = CreateSamples(2 * (int) (retention / INTERVAL), new Random(7));
+        samples.forEach(history::record);
+
+        // Check the retention is kept with at most one extra block and the size is a few MB
+        var last = samples.get(samples.size() - 1);
+        assertThat(history.getSampleCount()).isBetween(25920, 25920 + 360);
+        assertThat(history.getSizeBytes()).isLessThan(4 * 1024 * 1024);
+        var points = history.query(last.timeMillis - retention, last.timeMillis, 60 * INTERVAL);
+        assertThat(points).hasSize(433);
+        assertThat(points.get(points.size() - 1)).usingRecursiveComparison().ignoringFields("tweetsPerSecond").isEqualTo(last);
+        assertThat(history.query(START, START + 1000 * INTERVAL, INTERVAL)).isEmpty();
+    }
+
+    /**
+     * Test that invalid ranges and steps and queries for too many points are rejected.
+     */
+    @Test
+    void query_InvalidRanges_Throws() {
+        var history = new StatsHistory(INTERVAL, 60 * 60 * 1000, TOP_SIZE);
+
+        assertThatThrownBy(() -> history.query(START, START - 1, INTERVAL)).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> history.query(START, START, 0)).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> history.query(START, START + StatsHistory.MAX_POINTS, 1)).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> new StatsHistory(0, 1000, TOP_SIZE)).isInstanceOf(InvalidParameterException.class);
+    }
+
+    /**
+     * Create samples that look like a live stream, with steadily growing totals, slowly changing top hashtags and
+     * decaying trending scores.
+     *
+     * @param count  the number of samples
+     * @param random the random number generator
+     * @return the samples
+     */
+    private static List<StatsHistoryPoint> CreateSamples(int count, Random random) {
+        var samples = new ArrayList<StatsHistoryPoint>();
+        long tweets = 0;
+        var counts = new long[TOP_SIZE];
+        var scores = new double[TOP_SIZE];
+        for (int i = 0; i < count; i++) {
+            var sample = new StatsHistoryPoint(TOP_SIZE);
+            sample.timeMillis = START + i * INTERVAL + ((i % 50 == 0) ? random.nextInt(20) : 0);
+            tweets += 500 + random.nextInt(100);
+            sample.totalTweets = tweets;
+            sample.totalHashtags = tweets / 5;
+            sample.duplicateTweets = i / 100;
+            sample.dailyTweets = tweets / (1 + i / 8640);
+            sample.hourlyTweets = tweets / (1 + i / 360);
+            sample.distinctHashtags = tweets / 20;
+            sample.distinctHashtagsLastDay = 50000 + random.nextInt(1000);
+            sample.distinctHashtagsLastHour = 5000 + random.nextInt(100);
+            sample.processorWorkers = 1 + (i / 1000) % 4;
+            sample.tweetQueueCount = random.nextInt(10);
+            for (int slot = 0; slot < TOP_SIZE; slot++) {
+                // Leave the last slot empty until the hashtags rotate
+                if ((slot < TOP_SIZE - 1) || (i > 200)) {
+                    counts[slot] += random.nextInt(20);
+                    scores[slot] = scores[slot] * 0.998 + random.nextInt(20);
+                    sample.topHashtags[slot] = "Tag" + (slot + i / 300);
+                    sample.topHashtagCounts[slot] = counts[slot];
+                    sample.trendingHashtags[slot] = "trend" + (slot + i / 60);
+                    sample.trendingHashtagScores[slot] = scores[slot];
+                }
+            }
+            samples.add(sample);
+        }
+        return samples;
+    }
+}
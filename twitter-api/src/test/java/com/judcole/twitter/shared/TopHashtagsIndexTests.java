@@ -0,0 +1,140 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the TopHashtagsIndex class.
+ */
+class TopHashtagsIndexTests {
+
+    /**
+     * Test that the index stays ranked by count as hashtags move up and drop out, ignoring stale lower counts.
+     */
+    @Test
+    void update_MoveAndEvict_KeepsRanking() {
+        var index = new TopHashtagsIndex(3);
+
+        assertThat(index.update("abc", 5)).isZero();
+        assertThat(index.update("def", 3)).isEqualTo(1);
+        assertThat(index.update("ghi", 4)).isEqualTo(1);
+        CheckTop(index, new String[]{"abc", "ghi", "def"}, new long[]{5, 4, 3});
+
+        // Move up past a hashtag with the same count
+        assertThat(index.update("DEF", 5)).isZero();
+        CheckTop(index, new String[]{"DEF", "abc", "ghi"}, new long[]{5, 5, 4});
+
+        // Stale lower count is ignored rather than moving down
+        assertThat(index.update("def", 1)).isEqualTo(3);
+        CheckTop(index, new String[]{"DEF", "abc", "ghi"}, new long[]{5, 5, 4});
+
+        // Too low to get in
+        assertThat(index.update("xyz", 0)).isEqualTo(3);
+
+        // Replace the lowest ranked hashtag
+        assertThat(index.update("xyz", 4)).isEqualTo(2);
+        CheckTop(index, new String[]{"DEF", "abc", "xyz"}, new long[]{5, 5, 4});
+        assertThat(index.getSize()).isEqualTo(3);
+    }
+
+    /**
+     * Test that reading fewer or more than the size of the index returns the top slots and clears the rest.
+     */
+    @Test
+    void getTop_DifferentSizes_ReturnsTopSlots() {
+        var index = new TopHashtagsIndex(100);
+        for (int i = 1; i <= 50; i++) {
+            index.update("tag" + i, i);
+        }
+
+        CheckTop(index, new String[]{"tag50", "tag49"}, new long[]{50, 49});
+
+        var hashtags = new String[60];
+        var counts = new long[60];
+        index.getTop(hashtags, counts);
+        assertThat(hashtags[49]).isEqualTo("tag1");
+        assertThat(hashtags[50]).isNull();
+        assertThat(counts[59]).isZero();
+    }
+
+    /**
+     * Test that incrementing random hashtags one at a time ranks the same hashtags as a full sort of the counts.
+     */
+    @Test
+    void update_RandomIncrements_MatchesSortedCounts() {
+        final int CAPACITY = 100;
+        var index = new TopHashtagsIndex(CAPACITY);
+        var counts = new HashMap<String, Long>();
+        var random = new Random(42);
+
+        // Skew the hashtags so there are many ties at the bottom
+        for (int i = 0; i < 200000; i++) {
+            var hashtag = "tag" + (int) Math.abs(random.nextGaussian() * 300);
+            index.update(hashtag, counts.merge(hashtag, 1L, Long::sum));
+        }
+
+        // Check it is in descending order and the counts match the top of the full sort
+        var topHashtags = new String[CAPACITY];
+        var topCounts = new long[CAPACITY];
+        index.getTop(topHashtags, topCounts);
+        var expected = counts.values().stream().sorted((a, b) -> Long.compare(b, a)).limit(CAPACITY).mapToLong(Long::longValue).toArray();
+        assertThat(topCounts).containsExactly(expected);
+        for (int i = 0; i < CAPACITY; i++) {
+            assertThat(counts.get(topHashtags[i])).isEqualTo(topCounts[i]);
+        }
+    }
+
+    /**
+     * Test that counting with a full index keeps the frequent hashtags with counts that never fall below their true counts.
+     */
+    @Test
+    void increment_FullIndex_KeepsFrequentHashtags() {
+        final int CAPACITY = 20;
+        var index = new TopHashtagsIndex(CAPACITY);
+        var counts = new HashMap<String, Long>();
+        var random = new Random(42);
+
+        // Skew the hashtags so a few are far more frequent than the rest
+        for (int i = 0; i < 100000; i++) {
+            var hashtag = "tag" + (int) Math.abs(random.nextGaussian() * 50);
+            counts.merge(hashtag, 1L, Long::sum);
+            index.increment(hashtag.toUpperCase());
+        }
+
+        var topHashtags = new String[CAPACITY];
+        var topCounts = new long[CAPACITY];
+        index.getTop(topHashtags, topCounts);
+        assertThat(index.getSize()).isEqualTo(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            assertThat(topCounts[i]).isGreaterThanOrEqualTo(counts.get(topHashtags[i].toLowerCase()));
+        }
+
+        // Any hashtag more frequent than the lowest estimate has to be kept
+        var kept = Arrays.stream(topHashtags).map(String::toLowerCase).toList();
+        counts.forEach((hashtag, count) -> {
+            if (count > topCounts[CAPACITY - 1]) {
+                assertThat(kept).contains(hashtag);
+            }
+        });
+    }
+
+    /**
+     * Check the top slots of the index.
+     *
+     * @param index            the index
+     * @param expectedHashtags the expected hashtags
+     * @param expectedCounts   the expected counts
+     */
+    private static void CheckTop(TopHashtagsIndex index, String[] expectedHashtags, long[] expectedCounts) {
+        var hashtags = new String[expectedHashtags.length];
+        var counts = new long[expectedCounts.length];
+        index.getTop(hashtags, counts);
+        assertThat(hashtags).containsExactly(expectedHashtags);
+        assertThat(counts).containsExactly(expectedCounts);
+    }
+}
@@ -0,0 +1,196 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidParameterException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Class for testing the TrendingHashtags class.
+ */
+class TrendingHashtagsTests {
+
+    // Half-life used by the tests
+    private static final long HALF_LIFE = 60 * 1000;
+
+    // Landmark time used by the tests
+    private static final long START = 1_000_000_000_000L;
+
+    /**
+     * Test that a score counts each occurrence and halves every half-life.
+     */
+    @Test
+    void getScore_AfterHalfLives_ReturnsDecayedScore() {
+        var trending = new TrendingHashtags(HALF_LIFE, 10, START);
+        for (int i = 0; i < 8; i++) {
+            trending.add("abc", START);
+        }
+
+        assertThat(trending.getScore("abc", START)).isCloseTo(8, within(1e-9));
+        assertThat(trending.getScore("ABC", START + HALF_LIFE)).isCloseTo(4, within(1e-9));
+        assertThat(trending.getScore("abc", START + 3 * HALF_LIFE)).isCloseTo(1, within(1e-9));
+        assertThat(trending.getScore("xyz", START)).isZero();
+
+        // A later occurrence adds 1 on top of the decayed score
+        trending.add("Abc", START + HALF_LIFE);
+        assertThat(trending.getScore("abc", START + HALF_LIFE)).isCloseTo(5, within(1e-9));
+    }
+
+    /**
+     * Test that a hashtag rising now overtakes one that had more occurrences long ago.
+     */
+    @Test
+    void getTop_RisingHashtag_OvertakesOlderHashtag() {
+        var trending = new TrendingHashtags(HALF_LIFE, 10, START);
+        for (int i = 0; i < 100; i++) {
+            trending.add("old", START);
+        }
+        for (int i = 0; i < 30; i++) {
+            trending.add("Rising", START + 3 * HALF_LIFE);
+        }
+        trending.add("other", START + 2 * HALF_LIFE);
+
+        var hashtags = new String[4];
+        var scores = new double[4];
+        trending.getTop(hashtags, scores, START + 3 * HALF_LIFE);
+
+        assertThat(hashtags).containsExactly("Rising", "old", "other", null);
+        assertThat(scores[0]).isCloseTo(30, within(1e-9));
+        assertThat(scores[1]).isCloseTo(12.5, within(1e-9));
+        assertThat(scores[2]).isCloseTo(0.5, within(1e-9));
+        assertThat(scores[3]).isZero();
+        assertThat(trending.getSize()).isEqualTo(3);
+    }
+
+    /**
+     * Test that occurrences many thousands of half-lives after the landmark neither overflow nor lose the ranking.
+     */
+    @Test
+    void add_LongAfterLandmark_DoesNotOverflow() {
+        var trending = new TrendingHashtags(HALF_LIFE, 10, START);
+        var later = START + 100_000 * HALF_LIFE;
+        trending.add("abc", START);
+        trending.add("def", later);
+        trending.add("def", later);
+        trending.add("abc", later);
+
+        var hashtags = new String[2];
+        var scores = new double[2];
+        trending.getTop(hashtags, scores, later);
+        assertThat(hashtags).containsExactly("def", "abc");
+        assertThat(scores[0]).isCloseTo(2, within(1e-6));
+        assertThat(scores[1]).isCloseTo(1, within(1e-6));
+    }
+
+    /**
+     * Test that merging a score from another time decays it and sums it with the local score.
+     */
+    @Test
+    void merge_ScoreFromEarlierTime_SumsDecayedScore() {
+        var trending = new TrendingHashtags(HALF_LIFE, 10, START);
+        trending.add("abc", START + 2 * HALF_LIFE);
+        trending.merge("ABC", 8, START + HALF_LIFE);
+        trending.merge("def", 0, START);
+
+        assertThat(trending.getScore("abc", START + 2 * HALF_LIFE)).isCloseTo(5, within(1e-9));
+        assertThat(trending.getScore("def", START)).isZero();
+        assertThat(trending.getSize()).isEqualTo(1);
+    }
+
+    /**
+     * Test that scores are only kept for the ranked hashtags and one that falls below the lowest ranked score is evicted.
+     */
+    @Test
+    void add_IndexFull_KeepsOnlyRankedScores() {
+        var trending = new TrendingHashtags(HALF_LIFE, 2, START);
+        for (int i = 0; i < 3; i++) {
+            trending.add("a", START);
+        }
+        trending.add("b", START);
+        trending.add("b", START);
+
+        // Not enough to get in so nothing is kept
+        trending.add("c", START);
+        assertThat(trending.getScore("c", START)).isZero();
+        assertThat(trending.getSize()).isEqualTo(2);
+
+        // Rising later it takes the place of the lowest ranked hashtag
+        trending.add("c", START + 2 * HALF_LIFE);
+        assertThat(trending.getScore("c", START + 2 * HALF_LIFE)).isCloseTo(1, within(1e-9));
+        assertThat(trending.getScore("b", START + 2 * HALF_LIFE)).isZero();
+        assertThat(trending.getSize()).isEqualTo(2);
+    }
+
+    /**
+     * Test that concurrent occurrences of a hashtag are all added to its score.
+     */
+    @Test
+    void add_Concurrent_CountsEveryOccurrence() throws InterruptedException {
+        final int THREADS = 4;
+        final int OCCURRENCES = 10000;
+        var trending = new TrendingHashtags(HALF_LIFE, 10, START);
+
+        var threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < OCCURRENCES; i++) {
+                    trending.add("abc", START);
+                }
+            });
+            threads[t].start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        var hashtags = new String[1];
+        var scores = new double[1];
+        trending.getTop(hashtags, scores, START);
+        assertThat(scores[0]).isCloseTo(THREADS * OCCURRENCES, within(1e-6));
+    }
+
+    /**
+     * Test that occurrences added while other threads read (and so fold) the scores are all counted exactly once.
+     */
+    @Test
+    void add_WhileReading_CountsEveryOccurrence() throws InterruptedException {
+        final int THREADS = 4;
+        final int OCCURRENCES = 20000;
+        final int HASHTAGS = 10;
+        var trending = new TrendingHashtags(HALF_LIFE, HASHTAGS, START);
+
+        var threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < OCCURRENCES; i++) {
+                    trending.add("tag" + (i % HASHTAGS), START);
+                }
+            });
+            threads[t].start();
+        }
+        var hashtags = new String[HASHTAGS];
+        var scores = new double[HASHTAGS];
+        while (threads[0].isAlive()) {
+            trending.getTop(hashtags, scores, START);
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        trending.getTop(hashtags, scores, START);
+        for (var score : scores) {
+            assertThat(score).isCloseTo((double) THREADS * OCCURRENCES / HASHTAGS, within(1e-6));
+        }
+    }
+
+    /**
+     * Test that a half-life that is not positive is rejected.
+     */
+    @Test
+    void TrendingHashtags_ZeroHalfLife_Throws() {
+        assertThatThrownBy(() -> new TrendingHashtags(0, 10)).isInstanceOf(InvalidParameterException.class);
+    }
+}
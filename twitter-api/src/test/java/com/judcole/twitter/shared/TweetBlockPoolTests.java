@@ -0,0 +1,108 @@
+package com.judcole.twitter.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Class for testing the TweetBlockPool, PooledTweetBlock and PooledLineReader classes.
+ */
+class TweetBlockPoolTests {
+
+    /**
+     * Test that lines of any length and line ending are read into blocks, even when split across reads.
+     */
+    @Test
+    void readLine_MixedLines_ReturnsEachLine() throws IOException {
+        var longLine = "x".repeat(20000);
+        var text = "first\r\n\r\nsecond\n" + longLine + "\r\nlast";
+        var pool = new TweetBlockPool(10);
+
+        // Deliver a few bytes at a time so lines and line endings are split across reads
+        var reader = new PooledLineReader(new TrickleInputStream(text.getBytes(StandardCharsets.UTF_8), 7), pool);
+        var lines = new ArrayList<String>();
+        var blanks = new ArrayList<Boolean>();
+        PooledTweetBlock block;
+        while ((block = reader.readLine()) != null) {
+            lines.add(new String(block.getBytes(), 0, block.getLength(), StandardCharsets.UTF_8));
+            blanks.add(block.isBlank());
+            block.release();
+        }
+
+        assertThat(lines).containsExactly("first", "", "second", longLine, "last");
+        assertThat(blanks).containsExactly(false, true, false, false, false);
+    }
+
+    /**
+     * Test that released blocks are reused instead of creating new ones.
+     */
+    @Test
+    void acquire_ReleasedBlocks_ReusesBlocks() throws IOException {
+        var pool = new TweetBlockPool(4);
+        var input = "{\"data\":{\"text\":\"a\"}}\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        var reader = new PooledLineReader(new ByteArrayInputStream(input), pool);
+
+        // Keep two blocks in flight at a time
+        List<PooledTweetBlock> inFlight = new ArrayList<>();
+        PooledTweetBlock block;
+        while ((block = reader.readLine()) != null) {
+            assertThat(block.getLength()).isEqualTo(21);
+            inFlight.add(block);
+            if (inFlight.size() == 2) {
+                inFlight.remove(0).release();
+            }
+        }
+        inFlight.forEach(PooledTweetBlock::release);
+
+        assertThat(pool.getCreatedBlocks()).isLessThanOrEqualTo(3);
+        assertThat(pool.getFreeBlocks()).isEqualTo(pool.getCreatedBlocks());
+    }
+
+    /**
+     * The class for an input stream that returns at most a few bytes from each read.
+     */
+    private static class TrickleInputStream extends InputStream {
+        // Bytes to return
+        private final byte[] bytes;
+
+        // Maximum bytes returned by each read
+        private final int chunkSize;
+
+        // Index of the next byte to return
+        private int position;
+
+        /**
+         * Instantiates a new trickle input stream.
+         *
+         * @param bytes     the bytes to return
+         * @param chunkSize the maximum bytes returned by each read
+         */
+        private TrickleInputStream(byte[] bytes, int chunkSize) {
+            this.bytes = bytes;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() {
+            return (position < bytes.length) ? bytes[position++] : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position == bytes.length) {
+                return -1;
+            }
+            var count = Math.min(Math.min(length, chunkSize), bytes.length - position);
+            System.arraycopy(bytes, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.judcole.twitter.shared;
+
+import com.judcole.twitter.api.TweetCollector;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Class for testing the TweetProcessorPipeline class.
+ */
+class TweetProcessorPipelineTests {
+
+    // Tweet block with several types of entity
+    private final TweetBlock TWEET = new TweetBlock("{\"data\":{\"id\":\"1\",\"text\":\"@jack #Java $TWTR #spring 😀\"}}");
+
+    /**
+     * Test that each stage sees the same parsed tweet with the entities it asked for and is timed.
+     */
+    @Test
+    void process_SeveralStages_FansOutParsedTweet() throws Exception {
+        var hashtagStage = new RecordingProcessor("hashtags", Set.of(EntityType.HASHTAG));
+        var mentionStage = new RecordingProcessor("mentions", Set.of(EntityType.MENTION));
+        var pipeline = new TweetProcessorPipeline(List.of(hashtagStage, mentionStage));
+
+        var tweet = pipeline.decode(TWEET);
+        pipeline.process(tweet);
+
+        assertThat(tweet.getData().id).isEqualTo("1");
+        assertThat(tweet.getEntities(EntityType.HASHTAG)).containsExactly("Java", "spring");
+        assertThat(tweet.getEntities(EntityType.MENTION)).containsExactly("jack");
+        // Not read by any stage so not collected
+        assertThat(tweet.getEntities(EntityType.CASHTAG)).isEmpty();
+        assertThat(hashtagStage.seen).containsExactly("1");
+        assertThat(mentionStage.seen).containsExactly("1");
+
+        var timings = pipeline.getTimings();
+        assertThat(timings).extracting(timing -> timing.name).containsExactly(
+                TweetProcessorPipeline.DECODE_TIMING, TweetProcessorPipeline.SCAN_TIMING, "hashtags", "mentions");
+        assertThat(timings).allSatisfy(timing -> assertThat(timing.tweets).isEqualTo(1));
+    }
+
+    /**
+     * Test that the timings of a retired pipeline can be kept and added to those of the running pipelines.
+     */
+    @Test
+    void addTimings_RetiredAndRunningPipelines_SumsTimings() throws Exception {
+        var stage = new RecordingProcessor("hashtags", Set.of(EntityType.HASHTAG));
+        var retired = new TweetProcessorPipeline(List.of(stage));
+        var running = new TweetProcessorPipeline(List.of(stage));
+        retired.process(retired.decode(TWEET));
+        running.process(running.decode(TWEET));
+        running.process(running.decode(TWEET));
+
+        var kept = TweetProcessorPipeline.addTimings(List.of(), retired.getTimings());
+        var timings = TweetProcessorPipeline.addTimings(kept, TweetProcessorPipeline.sumTimings(List.of(running)));
+
+        assertThat(kept).allSatisfy(timing -> assertThat(timing.tweets).isEqualTo(1));
+        assertThat(timings).extracting(timing -> timing.name).containsExactly(
+                TweetProcessorPipeline.DECODE_TIMING, TweetProcessorPipeline.SCAN_TIMING, "hashtags");
+        assertThat(timings).allSatisfy(timing -> assertThat(timing.tweets).isEqualTo(3));
+    }
+
+    /**
+     * Test that the text is not scanned when no stage reads any entities.
+     */
+    @Test
+    void process_NoEntityStages_SkipsScan() throws Exception {
+        var pipeline = new TweetProcessorPipeline(List.of(new RecordingProcessor("ids", Set.of())));
+
+        var tweet = pipeline.decode(TWEET);
+        pipeline.process(tweet);
+
+        assertThat(tweet.getEntities(EntityType.HASHTAG)).isEmpty();
+        assertThat(pipeline.getEntityTypes()).isEmpty();
+        assertThat(pipeline.getTimings().get(1).tweets).isZero();
+    }
+
+    /**
+     * Test that the entities sent with a tweet are used instead of scanning for them, apart from the emoji.
+     */
+    @Test
+    void process_ServerEntities_ReadsEntitiesAndScansForEmoji() throws Exception {
+        var pipeline = new TweetProcessorPipeline(List.of(new RecordingProcessor("all", Set.of(EntityType.values()))), true);
+
+        // Only the hashtag in the entities should be counted (not the one in the text)
+        var tweet = pipeline.decode(new TweetBlock("{\"data\":{\"id\":\"1\",\"text\":\"#ignored @jack 😀 https://t.co/x\","
+                + "\"entities\":{\"hashtags\":[{\"tag\":\"Used\"}],\"mentions\":[{\"username\":\"jack\"}],"
+                + "\"urls\":[{\"url\":\"https://t.co/x\",\"expanded_url\":\"https://WWW.Example.com/page\"}]}}}"));
+        pipeline.process(tweet);
+
+        assertThat(tweet.getEntities(EntityType.HASHTAG)).containsExactly("Used");
+        assertThat(tweet.getEntities(EntityType.MENTION)).containsExactly("jack");
+        assertThat(tweet.getEntities(EntityType.DOMAIN)).containsExactly("example.com");
+        assertThat(tweet.getEntities(EntityType.EMOJI)).containsExactly("😀");
+    }
+
+    /**
+     * Test that the hashtags read from the entities on a recorded stream match the regular expression on the text
+     * (apart from non-ASCII hashtags that the regular expression cuts short) and tweets without entities are scanned.
+     */
+    @Test
+    void process_RecordedStream_MatchesHashtagRegex() throws Exception {
+        var pipeline = new TweetProcessorPipeline(List.of(new RecordingProcessor("hashtags", Set.of(EntityType.HASHTAG))), true);
+        int tweets = 0;
+        int hashtags = 0;
+
+        try (var reader = new BufferedReader(new InputStreamReader(Objects.requireNonNull(
+                getClass().getResourceAsStream("/fixtures/sampled-stream-entities.jsonl")), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var tweet = pipeline.decode(new TweetBlock(line));
+                pipeline.process(tweet);
+
+                var expected = new ArrayList<String>();
+                var matcher = TweetCollector.hashtagRegex.matcher(tweet.getData().text);
+                while (matcher.find()) {
+                    expected.add(matcher.group().substring(1));
+                }
+
+                if (tweet.getData().text.contains("#música")) {
+                    assertThat(expected).containsExactly("m", "Pop2022");
+                    assertThat(tweet.getEntities(EntityType.HASHTAG)).containsExactly("música", "Pop2022");
+                } else {
+                    assertThat(tweet.getEntities(EntityType.HASHTAG)).as(tweet.getData().text).isEqualTo(expected);
+                }
+                tweets++;
+                hashtags += expected.size();
+            }
+        }
+
+        assertThat(tweets).isEqualTo(13);
+        assertThat(hashtags).isEqualTo(24);
+    }
+
+    /**
+     * Test that pooled blocks decode to the same id, text and entities as string blocks, including escaped text.
+     */
+    @Test
+    void decode_PooledBlocks_MatchesStringBlocks() throws Exception {
+        var pool = new TweetBlockPool(2);
+        var stringPipeline = new TweetProcessorPipeline(List.of(new RecordingProcessor("all", Set.of(EntityType.values()))));
+        var pooledPipeline = new TweetProcessorPipeline(List.of(new RecordingProcessor("all", Set.of(EntityType.values()))));
+        var lines = new ArrayList<String>();
+        lines.add("{\"data\":{\"text\":\"Caf\\u00e9 \\\"#Quoted\\\"\\n#Next \\ud83d\\ude00 @you\",\"id\":\"42\"}}");
+        try (var reader = new BufferedReader(new InputStreamReader(Objects.requireNonNull(
+                getClass().getResourceAsStream("/fixtures/sampled-stream-entities.jsonl")), StandardCharsets.UTF_8))) {
+            reader.lines().forEach(lines::add);
+        }
+
+        for (var line : lines) {
+            var expected = stringPipeline.decode(new TweetBlock(line));
+            stringPipeline.process(expected);
+
+            var block = pool.acquire();
+            var bytes = line.getBytes(StandardCharsets.UTF_8);
+            block.append(bytes, 0, bytes.length);
+            var tweet = pooledPipeline.decode(block);
+            pooledPipeline.process(tweet);
+            block.release();
+
+            assertThat(tweet.getData()).isNull();
+            assertThat(tweet.getId().toString()).isEqualTo(expected.getId().toString());
+            assertThat(tweet.getText().toString()).isEqualTo(expected.getText().toString());
+            for (var type : EntityType.values()) {
+                assertThat(tweet.getEntities(type)).as(line).isEqualTo(expected.getEntities(type));
+            }
+        }
+
+        assertThat(stringPipeline.decode(new TweetBlock(lines.get(0))).getText()).isEqualTo("Café \"#Quoted\"\n#Next 😀 @you");
+        assertThat(pool.getCreatedBlocks()).isEqualTo(1);
+
+        // Fields that are not read are skipped in the pooled blocks
+        var block = pool.acquire();
+        var bytes = ("{\"matching_rules\":[{\"id\":\"1\",\"tag\":\"x\"}],\"data\":{\"lang\":\"en\","
+                + "\"edit_history_tweet_ids\":[\"9\"],\"text\":\"Hi #There\",\"id\":\"7\"}}").getBytes(StandardCharsets.UTF_8);
+        block.append(bytes, 0, bytes.length);
+        var tweet = pooledPipeline.decode(block);
+        pooledPipeline.process(tweet);
+
+        assertThat(tweet.getId().toString()).isEqualTo("7");
+        assertThat(tweet.getEntities(EntityType.HASHTAG)).containsExactly("There");
+    }
+
+    /**
+     * Test that a pooled block without tweet text is not decoded into a parsed tweet.
+     */
+    @Test
+    void decode_InvalidPooledBlock_ReturnsNull() throws Exception {
+        var pipeline = new TweetProcessorPipeline(List.of());
+        var block = new TweetBlockPool(1).acquire();
+        var bytes = "{\"data\":{\"id\":\"1\",\"text\":{\"nested\":\"no\"}},\"text\":\"outside\"}".getBytes(StandardCharsets.UTF_8);
+        block.append(bytes, 0, bytes.length);
+
+        assertThat(pipeline.decode(block)).isNull();
+
+        // Truncated JSON cannot be decoded
+        var truncated = new TweetBlockPool(1).acquire();
+        bytes = "{\"data\":{\"id\":\"1\",\"text\":\"cut sh".getBytes(StandardCharsets.UTF_8);
+        truncated.append(bytes, 0, bytes.length);
+
+        assertThatThrownBy(() -> pipeline.decode(truncated)).isInstanceOf(IOException.class);
+    }
+
+    /**
+     * Test that a block without tweet text is not decoded into a parsed tweet.
+     */
+    @Test
+    void decode_InvalidBlock_ReturnsNull() throws Exception {
+        var pipeline = new TweetProcessorPipeline(List.of());
+
+        assertThat(pipeline.decode(new TweetBlock("{\"data\":{\"id\":\"1\"}}"))).isNull();
+        assertThat(pipeline.decode(new TweetBlock("{}"))).isNull();
+    }
+
+    /**
+     * The class for a stage that records the ids of the tweets it processes.
+     */
+    private static class RecordingProcessor implements ITweetProcessor {
+        // Name of the stage
+        private final String name;
+
+        // Entity types read by the stage
+        private final Set<EntityType> entityTypes;
+
+        // Ids of the tweets processed
+        private final List<String> seen = new ArrayList<>();
+
+        /**
+         * Instantiates a new recording processor.
+         *
+         * @param name        the name of the stage
+         * @param entityTypes the entity types read by the stage
+         */
+        private RecordingProcessor(String name, Set<EntityType> entityTypes) {
+            this.name = name;
+            this.entityTypes = entityTypes;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Set<EntityType> getEntityTypes() {
+            return entityTypes;
+        }
+
+        @Override
+        public void process(ParsedTweet tweet) {
+            seen.add(tweet.getId().toString());
+        }
+    }
+}